@@ -1,11 +1,101 @@
+import com.ProjectFiles.library.Library;
 import com.ProjectFiles.library.LibraryGUI;
+import com.ProjectFiles.library.LibraryJournal;
+import com.ProjectFiles.library.LibraryMetrics;
+import com.ProjectFiles.library.LibraryReplica;
+import com.ProjectFiles.library.LibraryServer;
+import com.ProjectFiles.library.ReplicationPrimary;
 import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 
 public class Main {
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            LibraryGUI gui = new LibraryGUI();
-            gui.setVisible(true);
-        });
+    public static void main(String[] args) throws IOException {
+        // The HTTP server modes below need TCP_NODELAY, or each response waits about 40 ms for a delayed ACK; the
+        // property is JVM-wide and read when the first server starts, so it is set here unless given explicitly
+        if (args.length > 0 && args[0].startsWith("--") && System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        // "--replica host:port [port]" serves a read-only replica of a primary over HTTP, without a journal of its own
+        if (args.length > 1 && args[0].equals("--replica")) {
+            String[] primary = args[1].split(":");
+            LibraryReplica replica = LibraryReplica.connect(primary[0], Integer.parseInt(primary[1]),
+                    Long.getLong("library.replica.maxStaleness", 5_000));
+            int port = args.length > 2 ? Integer.parseInt(args[2]) : 8080;
+            LibraryServer server = LibraryServer.start(replica, new InetSocketAddress(port));
+            System.out.println("Serving a replica of " + args[1] + " on port " + server.getPort());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                replica.close();
+            }));
+            return;
+        }
+
+        // Large catalogs can be kept in primitive columns; the store has to be chosen before any books are loaded
+        if ("columnar".equals(System.getProperty("library.store"))) {
+            Library.getInstance().useColumnarStore();
+        }
+        // A catalog file written by Library.writeCatalog can be mapped instead; the journal then replays onto it
+        String catalog = System.getProperty("library.catalog");
+        if (catalog != null) {
+            Library.getInstance().openCatalog(Paths.get(catalog));
+        }
+
+        // Recover the library from its journal before anything reads it; the data directory can be overridden
+        LibraryJournal journal = LibraryJournal.open(Library.getInstance(),
+                Paths.get(System.getProperty("library.data", "library-data")));
+        Library.getInstance().startOverdueChecks();
+
+        // Publish the metrics over JMX, and dump them to a file periodically if one is given
+        LibraryMetrics metrics = Library.getInstance().getMetrics();
+        metrics.registerMBeans();
+        String metricsFile = System.getProperty("library.metrics.file");
+        if (metricsFile != null) {
+            metrics.startDumping(Paths.get(metricsFile),
+                    "json".equals(System.getProperty("library.metrics.format")),
+                    Long.getLong("library.metrics.period", 10_000));
+        }
+
+        // "--server [port]" serves the library over HTTP instead of opening the user interface, and "--shard [port]"
+        // serves it as one shard of a sharded library, which also lends to the members of the other shards
+        LibraryServer server = null;
+        if (args.length > 0 && (args[0].equals("--server") || args[0].equals("--shard"))) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+            InetSocketAddress address = new InetSocketAddress(port);
+            server = args[0].equals("--shard") ? LibraryServer.startShard(Library.getInstance(), address)
+                    : LibraryServer.start(Library.getInstance(), address);
+            System.out.println("Serving the library on port " + server.getPort());
+        }
+        // Stream the journal to read replicas if a replication port is given
+        Integer replicationPort = Integer.getInteger("library.replication.port");
+        ReplicationPrimary replication = replicationPort == null ? null
+                : ReplicationPrimary.start(journal, new InetSocketAddress(replicationPort));
+        if (replication != null) {
+            System.out.println("Replicating the library on port " + replication.getPort());
+        }
+
+        LibraryServer running = server;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                if (running != null) {
+                    running.close();  // Finish the requests in progress before the journal closes
+                }
+                if (replication != null) {
+                    replication.close();
+                }
+                journal.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+
+        if (server == null) {
+            SwingUtilities.invokeLater(() -> {
+                LibraryGUI gui = new LibraryGUI();
+                gui.setVisible(true);
+            });
+        }
     }
 }
@@ -0,0 +1,106 @@
+package com.ProjectFiles.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CirculationAnalytics#report(int)} over a history of 1 to 10 million loans: once from scratch, and
+ * once incrementally after another {@value #DAILY_LOANS} loans, as a report refreshed during the day would be.
+ * <p>
+ * The history is spread over 100,000 books and 100,000 members, popular books and active members borrowing more
+ * than the rest, and nine loans in ten are returned after up to two months. Reports run on the common fork-join
+ * pool, so the scores depend on the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class AnalyticsBenchmark {
+    static final int DAILY_LOANS = 10_000;  // Loans added before each incremental report
+    private static final int BOOKS = 100_000;
+    private static final int MEMBERS = 100_000;
+
+    @Param({"1000000", "10000000"})
+    public int loans;
+
+    private Library library;
+    private Book[] books;
+    private Member[] members;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private CirculationAnalytics analytics;  // Up to date with the history but for the day's loans
+
+    @Setup(Level.Trial)
+    public void setUpHistory() {
+        library = Fixtures.library("heap", BOOKS);
+        Fixtures.addBooks(library, BOOKS, 1);
+        Fixtures.addMembers(library, MEMBERS);
+        books = library.books().asList().toArray(new Book[0]);
+        members = library.members().asList().toArray(new Member[0]);
+        for (int i = 0; i < loans; i++) {
+            addLoan();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void addDailyLoans() {
+        if (analytics == null) {
+            analytics = new CirculationAnalytics(library);
+        }
+        analytics.report(0);
+        for (int i = 0; i < DAILY_LOANS; i++) {
+            addLoan();
+        }
+    }
+
+    /**
+     * Computes a report from scratch, as the first report after a restart does.
+     */
+    @Benchmark
+    public CirculationReport fullReport() {
+        return new CirculationAnalytics(library).report(10);
+    }
+
+    /**
+     * Computes a report from the tallies of the previous one.
+     */
+    @Benchmark
+    public CirculationReport incrementalReport() {
+        return analytics.report(10);
+    }
+
+    /**
+     * Adds a loan of a popular book by an active member, returned after up to two months unless it is still out.
+     */
+    private void addLoan() {
+        Book book = books[skewed(books.length)];
+        Member member = members[skewed(members.length)];
+        long made = 1_600_000_000_000L + random.nextLong(TimeUnit.DAYS.toMillis(1000));
+        Date returned = random.nextInt(10) == 0 ? null : new Date(made + random.nextLong(TimeUnit.DAYS.toMillis(60)));
+        library.addLoan(new Loan(0, member, book, new Date(made), new Date(made + TimeUnit.DAYS.toMillis(14)),
+                returned));
+    }
+
+    /**
+     * Picks a position with a preference for the first ones: the square of a uniform draw.
+     */
+    private int skewed(int bound) {
+        double draw = random.nextDouble();
+        return (int) (draw * draw * bound);
+    }
+}
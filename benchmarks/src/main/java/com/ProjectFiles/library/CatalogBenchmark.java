@@ -0,0 +1,107 @@
+package com.ProjectFiles.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the catalog paths of a library holding 1,000 to 10,000,000 books: adding a book, the title lookups of
+ * the borrow and return handlers in {@link LibraryGUI}, and the status line shown on the status tab.
+ * <p>
+ * Adding books grows the catalog as the benchmark runs; with a second per iteration this is at most a few percent
+ * of the smaller catalogs and does not change what is being measured. The fuzzy lookup of 10,000,000 titles needs
+ * more heap than the fork's 4 GB for its completion index; give it more with {@code -jvmArgsAppend -Xmx12g}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CatalogBenchmark {
+    private static final int QUERIES = 1024;  // Distinct titles looked up, cycled through
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int catalogSize;
+
+    @Param({"auto"})
+    public String store;  // "heap", "columnar", or "auto" to switch to columns above one million books
+
+    private Library library;
+    private String[] titles;      // Titles of books in the catalog, as typed into the title field
+    private String[] misspelled;  // The same titles with one typo each
+    private int next;             // Position in the query arrays
+    private int added;            // Books added so far by addBook
+
+    @Setup
+    public void setUp() {
+        library = Fixtures.library(store, catalogSize);
+        Fixtures.addBooks(library, catalogSize, 2);
+        titles = new String[QUERIES];
+        misspelled = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            int i = (int) ((long) q * catalogSize / QUERIES);
+            titles[q] = Fixtures.title(i);
+            misspelled[q] = Fixtures.misspell(titles[q], q);
+        }
+    }
+
+    /**
+     * Builds the completion index behind fuzzy lookups before they are measured. Only the benchmarks that use the
+     * index ask for this state, so the others run without it, as a library does until the first fuzzy lookup.
+     */
+    @State(Scope.Benchmark)
+    public static class Completions {
+        @Setup
+        public void setUp(CatalogBenchmark catalog) {
+            catalog.library.findBooksApprox(catalog.misspelled[0], 2);
+        }
+    }
+
+    /**
+     * Adds one more book to the catalog.
+     */
+    @Benchmark
+    public Book addBook() {
+        return library.addBook(Fixtures.book(catalogSize + added++, 2));
+    }
+
+    /**
+     * Finds an available copy of a title as the borrow handler does before it falls back to a fuzzy lookup.
+     */
+    @Benchmark
+    public Book borrowLookup() {
+        String title = titles[next++ & (QUERIES - 1)];
+        return library.findBooksByTitle(title).stream().filter(Book::isAvailable).findFirst().orElse(null);
+    }
+
+    /**
+     * Looks up a misspelled title as the borrow and return handlers do when the exact lookup finds nothing:
+     * a miss on the title index followed by a fuzzy lookup allowing two edits.
+     */
+    @Benchmark
+    public List<Book> misspelledLookup(Completions completions) {
+        String title = misspelled[next++ & (QUERIES - 1)];
+        List<Book> exact = library.findBooksByTitle(title);
+        return exact.isEmpty() ? library.findBooksApprox(title, 2) : exact;
+    }
+
+    /**
+     * Builds the status line shown on the status tab.
+     */
+    @Benchmark
+    public String getLibraryStatus() {
+        return library.getLibraryStatus();
+    }
+}
@@ -0,0 +1,115 @@
+package com.ProjectFiles.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long a library of 100,000 to 1 million books takes to open, from a mapped catalog file and from a
+ * journal checkpoint:
+ * <ul>
+ * <li>{@code catalog} maps the catalog file alone.</li>
+ * <li>{@code catalogJournal} maps the catalog file and replays a journal of {@value #CHANGES} checkouts and
+ * returns on top of it, as {@code Main} does with {@code -Dlibrary.catalog}.</li>
+ * <li>{@code checkpoint} recovers a heap library from a journal whose checkpoint holds the whole catalog.</li>
+ * </ul>
+ * Each iteration opens the library once and closes its journal afterwards, so the score is the time to open.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CatalogOpenBenchmark {
+    static final int CHANGES = 10_000;  // Copy changes in the journal replayed onto the catalog
+
+    @Param({"100000", "1000000"})
+    public int catalogSize;
+
+    @Param({"catalog", "catalogJournal", "checkpoint"})
+    public String source;
+
+    private Path directory;         // Holds the catalog file and both journals
+    private Path catalog;           // Catalog file of the generated books
+    private LibraryJournal opened;  // Journal of the library the last iteration opened, null if none
+
+    @Setup(Level.Trial)
+    public void setUpFiles() throws IOException {
+        directory = Files.createTempDirectory("catalog-open");
+        catalog = directory.resolve("catalog.bin");
+        Library heap = Fixtures.library("heap", catalogSize);
+        Fixtures.addBooks(heap, catalogSize, 2);
+        heap.writeCatalog(catalog);
+
+        Library mapped = new Library();
+        mapped.openCatalog(catalog);
+        LibraryJournal journal = LibraryJournal.open(mapped, directory.resolve("catalog-journal"));
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < CHANGES / 2; i++) {
+            Book book = mapped.findBookById(1 + random.nextInt(catalogSize));
+            if (book.tryCheckOut()) {
+                book.checkIn();
+            }
+        }
+        journal.close();
+
+        Library recovered = new Library();
+        journal = LibraryJournal.open(recovered, directory.resolve("checkpoint-journal"));
+        Fixtures.addBooks(recovered, catalogSize, 2);
+        journal.checkpoint().join();
+        journal.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeJournal() throws IOException {
+        if (opened != null) {
+            opened.close();
+            opened = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Opens the library from the chosen source.
+     */
+    @Benchmark
+    public Library open() throws IOException {
+        Library library = new Library();
+        if (source.equals("checkpoint")) {
+            opened = LibraryJournal.open(library, directory.resolve("checkpoint-journal"));
+            return library;
+        }
+        library.openCatalog(catalog);
+        if (source.equals("catalogJournal")) {
+            opened = LibraryJournal.open(library, directory.resolve("catalog-journal"));
+        }
+        return library;
+    }
+}
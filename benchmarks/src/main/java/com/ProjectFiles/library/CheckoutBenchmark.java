@@ -0,0 +1,75 @@
+package com.ProjectFiles.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the checkout throughput of several circulation desks working at once, each lending books to its own
+ * member and taking them back. With one title every desk competes for the same book; with many titles the desks
+ * mostly touch different ones and only share the library's collections and counters.
+ * <p>
+ * Run with {@code -t} to change the number of desks. Every loan is kept in the library's history, so the library
+ * is rebuilt before each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Threads(4)
+public class CheckoutBenchmark {
+    @Param({"1", "1000"})
+    public int titles;
+
+    private Library library;
+    private Book[] books;
+    private final AtomicInteger desks = new AtomicInteger();  // Hands out member IDs to the desk threads
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        library = Fixtures.library("heap", titles);
+        Fixtures.addBooks(library, titles, 1_000);  // Enough copies that a desk never waits for a return
+        books = library.books().asList().toArray(new Book[0]);
+    }
+
+    /**
+     * The member served by one desk thread.
+     */
+    @State(Scope.Thread)
+    public static class Desk {
+        Member member;
+
+        @Setup(Level.Iteration)
+        public void setUp(CheckoutBenchmark benchmark) {
+            member = new Member("Desk", benchmark.desks.incrementAndGet());
+            benchmark.library.addMember(member);
+        }
+    }
+
+    /**
+     * Lends a random book to the desk's member and takes it back.
+     */
+    @Benchmark
+    public Loan checkOutAndReturn(Desk desk) {
+        Book book = books[ThreadLocalRandom.current().nextInt(books.length)];
+        Loan loan = library.borrowBook(desk.member, book);
+        library.returnBook(desk.member, book);
+        return loan;
+    }
+}
@@ -0,0 +1,133 @@
+package com.ProjectFiles.library;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the libraries the benchmarks run against. Titles and authors are made of pseudo-random words, so the
+ * indexes see a realistic spread of keys rather than one long shared prefix, and the same size always yields
+ * the same catalog.
+ */
+final class Fixtures {
+    static final int HEAP_LIMIT = 1_000_000;  // Largest catalog kept on the heap when the store is chosen automatically
+    private static final int BATCH = 10_000;  // Books and members added per batch while filling a library
+    private static final String[] SYLLABLES = {
+            "ka", "ro", "mi", "te", "lu", "san", "dor", "vel", "ith", "an", "bre", "qua", "zo", "mar", "fen", "gil",
+            "ha", "jo", "ny", "pel", "rus", "tor", "ul", "wen", "xi", "yar", "bo", "cel", "di", "em", "for", "gra"};
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates an empty library with the requested book store.
+     *
+     * @param store    "heap", "columnar", or "auto" to use the heap up to {@link #HEAP_LIMIT} books and columns above,
+     *                 as a deployment of that size would
+     * @param capacity the number of books the library is going to hold
+     * @return the empty library
+     */
+    static Library library(String store, int capacity) {
+        Library library = new Library();
+        if (store.equals("columnar") || store.equals("auto") && capacity > HEAP_LIMIT) {
+            library.useColumnarStore();
+        } else if (!store.equals("heap") && !store.equals("auto")) {
+            throw new IllegalArgumentException("Unknown store: " + store);
+        }
+        return library;
+    }
+
+    /**
+     * Adds books 0 to count - 1 to a library, in batches.
+     *
+     * @param library the library to fill
+     * @param count   the number of books
+     * @param copies  the copies of each book
+     */
+    static void addBooks(Library library, int count, int copies) {
+        List<Book> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < count; i++) {
+            batch.add(book(i, copies));
+            if (batch.size() == BATCH) {
+                library.addBooks(batch);
+                batch.clear();
+            }
+        }
+        library.addBooks(batch);
+    }
+
+    /**
+     * Adds members with IDs 1 to count to a library, in batches.
+     *
+     * @param library the library to fill
+     * @param count   the number of members
+     */
+    static void addMembers(Library library, int count) {
+        List<Member> batch = new ArrayList<>(BATCH);
+        for (int id = 1; id <= count; id++) {
+            batch.add(new Member("Member " + id, id));
+            if (batch.size() == BATCH) {
+                library.addMembers(batch);
+                batch.clear();
+            }
+        }
+        library.addMembers(batch);
+    }
+
+    /**
+     * Creates the i-th book of the generated catalog.
+     */
+    static Book book(int i, int copies) {
+        return new Book(title(i), author(i), 1900 + Math.floorMod(mix(i), 125), copies);
+    }
+
+    /**
+     * Gets the title of the i-th book: three to five words, with a number where the words alone would repeat.
+     */
+    static String title(int i) {
+        long bits = mix(i);
+        StringBuilder title = new StringBuilder(word(bits));
+        int words = 3 + (int) ((bits >>> 60) % 3);
+        for (int w = 1; w < words; w++) {
+            bits = mix(bits);
+            title.append(' ').append(word(bits));
+        }
+        return title.append(' ').append(i / 4096).toString();  // About one in a few hundred titles is shared
+    }
+
+    static String author(int i) {
+        long bits = mix(mix(i) + 1);
+        String first = word(bits);
+        String last = word(mix(bits));
+        return Character.toUpperCase(first.charAt(0)) + first.substring(1) + ' '
+                + Character.toUpperCase(last.charAt(0)) + last.substring(1);
+    }
+
+    /**
+     * Introduces one typo into a title, as a hurried desk clerk would.
+     */
+    static String misspell(String title, long seed) {
+        long bits = mix(seed);
+        int at = (int) Math.floorMod(bits, (long) title.length() - 1);
+        char[] chars = title.toCharArray();
+        char swapped = chars[at];  // Swaps two neighbouring letters
+        chars[at] = chars[at + 1];
+        chars[at + 1] = swapped;
+        return new String(chars);
+    }
+
+    private static String word(long bits) {
+        StringBuilder word = new StringBuilder();
+        int syllables = 2 + (int) Math.floorMod(bits, 3L);
+        for (int s = 0; s < syllables; s++) {
+            word.append(SYLLABLES[(int) ((bits >>> (8 + 5 * s)) & 31)]);
+        }
+        return word.toString();
+    }
+
+    private static long mix(long x) {
+        x += 0x9E3779B97F4A7C15L;  // SplitMix64
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
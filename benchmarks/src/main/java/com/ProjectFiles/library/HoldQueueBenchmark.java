@@ -0,0 +1,117 @@
+package com.ProjectFiles.library;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the hold queues under a bestseller rush: 100,000 members place holds on a few hundred hot titles
+ * whose copies are all out, then several circulation desks return and hand over copies as fast as they can.
+ * <p>
+ * Reports the time to place the holds, the latency of queue-position queries, and the throughput of the
+ * return, set aside, and pickup cycle. Run it with {@code java com.ProjectFiles.library.HoldQueueBenchmark
+ * [members] [titles] [desks] [seconds]}.
+ */
+public final class HoldQueueBenchmark {
+    private static final int COPIES = 5;  // Copies of each hot title, all out when the rush starts
+
+    private HoldQueueBenchmark() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int members = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int titles = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int desks = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors() * 2;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        Library library = new Library();
+        BlockingQueue<Hold> ready = new LinkedBlockingQueue<>();
+        library.addHoldReadyListener(ready::add);
+
+        // Every copy of every hot title is out with a member of staff
+        Member staff = new Member("Staff", 0);
+        library.addMember(staff);
+        List<Book> hot = new ArrayList<>(titles);
+        List<Loan> out = new ArrayList<>();
+        for (int i = 0; i < titles; i++) {
+            Book book = library.addBook(new Book("Bestseller " + i, "Author " + i, 2024, COPIES));
+            hot.add(book);
+            for (int copy = 0; copy < COPIES; copy++) {
+                out.add(library.borrowBook(staff, book));
+            }
+        }
+
+        // Members queue up, the most popular titles drawing the longest queues
+        Random random = new Random(42);
+        List<Hold> holds = new ArrayList<>(members);
+        long start = System.nanoTime();
+        for (int id = 1; id <= members; id++) {
+            Member member = new Member("Member " + id, id);
+            library.addMember(member);
+            holds.add(library.placeHold(member, hot.get(skewed(random, titles))));
+        }
+        report("place holds", members, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < members; i++) {
+            checksum += library.getHoldPosition(holds.get(random.nextInt(members)));
+        }
+        report("position queries", members, System.nanoTime() - start);
+
+        // Desks return copies, and each copy set aside is picked up and brought straight back
+        out.forEach(Loan::markAsReturned);
+        AtomicLong handovers = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>(desks);
+        for (int desk = 0; desk < desks; desk++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        Hold hold = ready.poll(10, TimeUnit.MILLISECONDS);
+                        if (hold == null) {
+                            continue;
+                        }
+                        Loan loan = library.borrowBook(hold.getMember(), hold.getBook());
+                        if (loan != null) {
+                            loan.markAsReturned();  // Hands the copy to the next member in the queue
+                            handovers.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "desk-" + desk);
+            threads.add(thread);
+        }
+        start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report("handovers with " + desks + " desks", handovers.get(), System.nanoTime() - start);
+
+        int waiting = 0;
+        for (Book book : hot) {
+            waiting += library.getHoldQueueLength(book);
+        }
+        System.out.printf("%d holds still waiting, %d active loans (checksum %d)%n",
+                waiting, library.getActiveLoanCount(), checksum);
+    }
+
+    /**
+     * Picks a title index with a roughly Zipf-shaped popularity.
+     */
+    private static int skewed(Random random, int titles) {
+        return (int) Math.min(titles - 1, Math.floor(Math.exp(random.nextDouble() * Math.log(titles + 1)) - 1));
+    }
+
+    private static void report(String what, long operations, long nanos) {
+        System.out.printf("%-32s %,12d ops in %,8.1f ms  %,10.0f ops/s  %,8.2f us/op%n", what, operations,
+                nanos / 1e6, operations * 1e9 / nanos, nanos / 1e3 / Math.max(1, operations));
+    }
+}
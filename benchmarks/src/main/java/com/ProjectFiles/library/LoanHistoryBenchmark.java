@@ -0,0 +1,85 @@
+package com.ProjectFiles.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Member#borrowBook(Book)} and {@link Member#returnBook(Book)} for a member whose loan history
+ * already holds 10 to 100,000 returned loans, as a long-standing member's would.
+ * <p>
+ * Every borrowed book adds to the history, so a timed run would keep lengthening it. Instead each iteration starts
+ * from a fresh member with the nominal history and times a batch of {@value #BATCH} round trips, so the score is
+ * the time per batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 500, batchSize = LoanHistoryBenchmark.BATCH)
+@Measurement(iterations = 100, batchSize = LoanHistoryBenchmark.BATCH)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LoanHistoryBenchmark {
+    static final int BATCH = 100;           // Round trips timed per iteration
+    private static final int SHELF = 1024;  // Books the member keeps borrowing and returning
+
+    @Param({"10", "1000", "100000"})
+    public int historyLength;
+
+    private Library library;
+    private Book[] shelf;
+    private List<Loan> history;  // Returned loans making up the history of every member
+    private Member member;       // The member of the current iteration
+    private int next;            // Position on the shelf
+
+    @Setup(Level.Trial)
+    public void setUpLibrary() {
+        library = Fixtures.library("heap", SHELF);
+        Fixtures.addBooks(library, SHELF, 1);
+        shelf = library.books().asList().toArray(new Book[0]);
+        Member earlier = new Member("Earlier", 1);
+        Date past = new Date(0);
+        history = new ArrayList<>(historyLength);
+        for (int i = 0; i < historyLength; i++) {
+            history.add(new Loan(i + 1, earlier, shelf[i & (SHELF - 1)], past, past, past));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpMember() {
+        member = new Member("Regular", library.getMemberCount() + 1);
+        library.addMember(member);
+        history.forEach(member::addLoan);  // Added directly rather than borrowed one by one
+    }
+
+    /**
+     * Borrows a book and hands it back, as a member does at the desk.
+     */
+    @Benchmark
+    public boolean borrowAndReturn() {
+        Book book = shelf[next++ & (SHELF - 1)];
+        return member.borrowBook(book) & member.returnBook(book);
+    }
+
+    /**
+     * Hands back a book the member does not have, which has to look past the whole history to find that out
+     * unless open loans are indexed.
+     */
+    @Benchmark
+    public boolean returnNotBorrowed() {
+        return member.returnBook(shelf[next++ & (SHELF - 1)]);
+    }
+}
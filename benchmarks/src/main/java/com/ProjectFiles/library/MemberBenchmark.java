@@ -0,0 +1,68 @@
+package com.ProjectFiles.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures registering members and checking member IDs in a library with 1,000 to 10,000,000 members.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MemberBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int memberCount;
+
+    private Library library;
+    private int nextId;  // Next ID handed to addMember, above all existing members
+    private int probe;   // Varies the IDs checked by the uniqueness benchmarks
+
+    @Setup
+    public void setUp() {
+        library = Fixtures.library("heap", 0);
+        Fixtures.addMembers(library, memberCount);
+        nextId = memberCount + 1;
+    }
+
+    /**
+     * Registers one more member.
+     */
+    @Benchmark
+    public Member addMember() {
+        Member member = new Member("Member " + nextId, nextId++);
+        library.addMember(member);
+        return member;
+    }
+
+    /**
+     * Checks an ID that is taken, as the member form does before adding a member.
+     */
+    @Benchmark
+    public boolean isMemberIdUniqueTaken() {
+        probe = probe * 1103515245 + 12345;
+        return library.isMemberIdUnique(1 + Math.floorMod(probe, memberCount));
+    }
+
+    /**
+     * Checks an ID that is free.
+     */
+    @Benchmark
+    public boolean isMemberIdUniqueFree() {
+        probe = probe * 1103515245 + 12345;
+        return library.isMemberIdUnique(-1 - Math.floorMod(probe, memberCount));
+    }
+}
@@ -0,0 +1,189 @@
+package com.ProjectFiles.library;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a {@link LibraryServer} with keep-alive connections that pipeline their requests, and reports the
+ * throughput and the latency of the responses.
+ * <p>
+ * Each connection writes a batch of requests in one go, reads the responses in order, and repeats. The {@code read}
+ * mix asks for the status, looks up titles, and fetches books by ID; the {@code circulation} mix borrows and returns
+ * copies, each connection on behalf of its own member. Without a target the generator starts a server in the same
+ * JVM, on a library of generated books and members without a journal; with a target such as
+ * {@code localhost:8080} it drives that server, which should hold the same generated catalog for the lookups to hit.
+ * Run it with {@code java com.ProjectFiles.library.ServerLoadGenerator [connections] [pipeline] [seconds] [mix]
+ * [host:port]}.
+ */
+public final class ServerLoadGenerator {
+    private static final int BOOKS = 100_000;  // Books of the generated catalog
+    private static final int COPIES = 1_000;   // Copies of each book, enough that circulation never runs out
+
+    private ServerLoadGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int pipeline = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        boolean circulation = args.length > 3 && args[3].equals("circulation");
+        String target = args.length > 4 ? args[4] : null;
+        if (circulation && target != null) {
+            throw new IllegalArgumentException("The circulation mix needs the generated library; omit the target.");
+        }
+
+        LibraryServer server = null;
+        InetSocketAddress address;
+        if (target == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");  // As Main sets it for the servers it starts
+            Library library = new Library();
+            Fixtures.addBooks(library, BOOKS, COPIES);
+            Fixtures.addMembers(library, connections);
+            server = LibraryServer.start(library, new InetSocketAddress("127.0.0.1", 0));
+            address = new InetSocketAddress("127.0.0.1", server.getPort());
+        } else {
+            int colon = target.lastIndexOf(':');
+            address = new InetSocketAddress(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+        }
+
+        LatencyHistogram latencies = new LatencyHistogram();  // Nanoseconds from writing a batch to each response
+        AtomicLong failures = new AtomicLong();               // Responses other than 2xx
+        long warmup = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(1, seconds / 5));
+        long deadline = warmup + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>(connections);
+        for (int c = 0; c < connections; c++) {
+            int member = c + 1;
+            Thread thread = new Thread(() -> {
+                try {
+                    drive(address, member, pipeline, circulation, warmup, deadline, latencies, failures);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, "load-" + member);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (server != null) {
+            server.close();
+        }
+
+        long requests = latencies.count();
+        System.out.printf("%d connections, pipeline %d, %s mix: %,d requests in %d s, %,.0f requests/s, %d failed%n",
+                connections, pipeline, circulation ? "circulation" : "read", requests, seconds,
+                (double) requests / seconds, failures.get());
+        System.out.printf("latency: p50 %.0f us, p90 %.0f us, p99 %.0f us, p99.9 %.0f us, max %.0f us%n",
+                latencies.percentile(0.5) / 1e3, latencies.percentile(0.9) / 1e3, latencies.percentile(0.99) / 1e3,
+                latencies.percentile(0.999) / 1e3, latencies.max() / 1e3);
+    }
+
+    private static void drive(InetSocketAddress address, int member, int pipeline, boolean circulation,
+                              long warmup, long deadline, LatencyHistogram latencies, AtomicLong failures)
+            throws IOException {
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+            String host = "Host: " + address.getHostString() + ":" + address.getPort() + "\r\n";
+            int next = member * 7919;  // Spreads the connections over the catalog
+            while (true) {
+                long now = System.nanoTime();
+                if (now >= deadline) {
+                    return;
+                }
+                StringBuilder batch = new StringBuilder();
+                for (int i = 0; i < pipeline; i++) {
+                    appendRequest(batch, host, member, next++, circulation);
+                }
+                long sent = System.nanoTime();
+                out.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                for (int i = 0; i < pipeline; i++) {
+                    int status = readResponse(in);
+                    if (sent >= warmup) {
+                        latencies.record(System.nanoTime() - sent);
+                        if (status / 100 != 2) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void appendRequest(StringBuilder batch, String host, int member, int n, boolean circulation) {
+        int book = Math.floorMod(n / 2, BOOKS);
+        if (circulation) {
+            String body = "{\"member\":" + member + ",\"book\":" + (book + 1) + "}";
+            batch.append("POST ").append(n % 2 == 0 ? "/loans" : "/returns").append(" HTTP/1.1\r\n").append(host)
+                    .append("Content-Type: application/json\r\nContent-Length: ").append(body.length())
+                    .append("\r\n\r\n").append(body);
+            return;
+        }
+        switch (n % 3) {
+            case 0:
+                batch.append("GET /status HTTP/1.1\r\n");
+                break;
+            case 1:
+                batch.append("GET /books?title=").append(URLEncoder.encode(Fixtures.title(book), StandardCharsets.UTF_8))
+                        .append(" HTTP/1.1\r\n");
+                break;
+            default:
+                batch.append("GET /books/").append(book + 1).append(" HTTP/1.1\r\n");
+        }
+        batch.append(host).append("\r\n");
+    }
+
+    /**
+     * Reads one response and skips its body, which must be delimited by Content-Length.
+     *
+     * @return the status code
+     */
+    private static int readResponse(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        int status = Integer.parseInt(statusLine.substring(9, 12));
+        long length = 0;
+        for (String header; !(header = readLine(in)).isEmpty(); ) {
+            if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                length = Long.parseLong(header.substring(15).trim());
+            }
+        }
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("The server closed the connection.");
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+        return status;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c; (c = in.read()) != '\n'; ) {
+            if (c < 0) {
+                throw new IOException("The server closed the connection.");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+}
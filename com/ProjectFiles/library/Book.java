@@ -1,15 +1,43 @@
 package com.ProjectFiles.library;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Represents a book in the library management system.
  * Each book is defined by its title, author, publication year, and the number of copies available.
  * This class provides methods to manage the checkout and return processes by adjusting the number of available copies.
+ * The copy count is updated atomically, so several circulation desks can check the same book out concurrently
+ * without ever handing out more copies than exist. While a book belongs to a {@link Library}, every change to its
+ * copy count is reported to that library so it can keep its totals up to date.
+ * <p>
+ * The physical copies are numbered, and a {@link CopyInventory} tells which of them are on the shelf, so a loan
+ * knows which copy it took. The inventory is created on the first checkout or check-in, from the copies on hand
+ * then, so books that never circulate do not pay for one.
+ * <p>
+ * Storage engines that keep books outside the heap subclass this class with lightweight views; such views
+ * override the accessors and the package-private state hooks, and keep all of the checkout logic here.
  */
 public class Book {
-    private String title;       // Title of the book
-    private String author;      // Author of the book
-    private int year;           // Publication year of the book
-    private int amount;         // Number of copies of the book available
+    static final long ATTACHED = 1L << 32;  // State flag set while the book belongs to a library
+    private static final VarHandle INVENTORY;
+
+    private volatile long id;        // Catalog ID assigned by the library, 0 until the book is added
+    private String title;            // Title of the book
+    private String author;           // Author of the book
+    private int year;                // Publication year of the book
+    private final AtomicLong state;  // Number of copies available (low 32 bits) plus the ATTACHED flag
+    private volatile Library owner;  // Library that is told about copy changes while the book is attached
+    private volatile CopyInventory inventory;  // Copies on the shelf, null until the first checkout or check-in
+
+    static {
+        try {
+            INVENTORY = MethodHandles.lookup().findVarHandle(Book.class, "inventory", CopyInventory.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     /**
      * Constructs a new Book with the specified title, author, year, and initial number of copies.
@@ -30,7 +58,16 @@ public class Book {
         this.title = title;
         this.author = author;
         this.year = year;
-        this.amount = amount;
+        this.state = new AtomicLong(amount);
+    }
+
+    /**
+     * Constructs a view whose properties and copy state are kept by a storage engine rather than in this object.
+     * Subclasses using this constructor must override the accessors and the state hooks, {@link #inventory()}
+     * included, since views of the same book must share one inventory.
+     */
+    Book() {
+        this.state = null;
     }
 
     /**
@@ -38,25 +75,243 @@ public class Book {
      * This method ensures that the amount of books does not fall below zero.
      */
     public void checkOut() {
-        if (amount > 0) {
-            amount--;
-        }
+        tryCheckOut();
+    }
+
+    /**
+     * Atomically takes one copy of the book if at least one is available.
+     * When several threads race for the last copy, exactly one of them succeeds.
+     *
+     * @return true if a copy was taken, false if no copies were available
+     */
+    public boolean tryCheckOut() {
+        return takeCopy(true) != CopyInventory.NO_COPY;
+    }
+
+    /**
+     * Atomically takes the lowest-numbered copy on the shelf if at least one is available, for a loan.
+     *
+     * @return the number of the copy, or {@link CopyInventory#NO_COPY} if no copies were available
+     */
+    int takeCopy() {
+        return takeCopy(false);
+    }
+
+    private int takeCopy(boolean untracked) {
+        CopyInventory copies = inventory();  // Before the count changes, so a new inventory starts from the count
+        long current;
+        do {
+            current = state();
+            if (copies(current) <= 0) {
+                return CopyInventory.NO_COPY;
+            }
+        } while (!compareAndSetState(current, current - 1));
+        int copy = copies.take(untracked);
+        reportChange(current, -1, untracked);  // The record of the loan logs a copy taken for it
+        return copy;
     }
 
     /**
      * Returns a copy of the book to the library, increasing the available amount by one.
      */
     public void checkIn() {
-        amount++;
+        checkIn(CopyInventory.NO_COPY, true);
+    }
+
+    /**
+     * Puts a copy back on the shelf and counts it as available again.
+     *
+     * @param copy   the number of the copy, or {@link CopyInventory#NO_COPY} if it is not known
+     * @param logged whether the library should log the change, false if the record of the returned loan does
+     */
+    void checkIn(int copy, boolean logged) {
+        inventory().putBack(copy);
+        long current;
+        do {
+            current = state();
+        } while (!compareAndSetState(current, current + 1));
+        reportChange(current, 1, logged);
+    }
+
+    /**
+     * Changes the count of copies on hand by a delta replayed from the journal, without the checks of a checkout.
+     * Copy changes are logged after the count changed, by whichever thread made them, so concurrent changes can
+     * reach the log in another order than they happened and the count may pass below zero during replay; it is
+     * right again once every record has been applied. Copies taken this way are marked as loose, as with
+     * {@link #tryCheckOut()}.
+     *
+     * @param delta the change in the number of copies on hand
+     */
+    void replayCopies(int delta) {
+        CopyInventory copies = inventory();
+        for (int i = 0; i < delta; i++) {
+            copies.putBack(CopyInventory.NO_COPY);
+        }
+        long current;
+        do {
+            current = state();
+        } while (!compareAndSetState(current, current & ~0xFFFFFFFFL | (copies(current) + delta) & 0xFFFFFFFFL));
+        for (int i = 0; i > delta; i--) {
+            copies.take(true);
+        }
+        reportChange(current, delta, true);
+    }
+
+    /**
+     * Gets the inventory of the book's copies, creating it from the copies on hand if this is its first use.
+     * Every change to the copy count asks for the inventory first, so the count cannot change between the
+     * moment a new inventory reads it and the moment the inventory is published.
+     *
+     * @return the inventory
+     */
+    CopyInventory inventory() {
+        CopyInventory current = inventory;
+        if (current == null) {
+            CopyInventory created = new CopyInventory(copies(state()));
+            current = (CopyInventory) INVENTORY.compareAndExchange(this, null, created);
+            if (current == null) {
+                current = created;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Attaches the book to a library, which from now on is told about every change to the copy count.
+     * The flag and the copy count change in a single atomic step, so no change is reported twice or missed.
+     * Attaching and detaching are synchronized on the book, so the owner is only replaced while the book is
+     * detached and no change can be reported to a library the book was not added to.
+     *
+     * @param library the library the book is being added to
+     * @return the number of copies available at the moment the book was attached
+     * @throws IllegalArgumentException if the book already belongs to a library
+     */
+    synchronized int attach(Library library) {
+        if (isAttached()) {
+            throw new IllegalArgumentException("Book is already part of a library.");
+        }
+        owner = library;  // Not reported to until the flag is set below
+        long current;
+        do {
+            current = state();
+        } while (!compareAndSetState(current, current | ATTACHED));
+        return copies(current);
+    }
+
+    /**
+     * Detaches the book from its library, which stops receiving copy changes.
+     *
+     * @return the number of copies available at the moment the book was detached
+     */
+    synchronized int detach() {
+        long current;
+        do {
+            current = state();
+        } while (!compareAndSetState(current, current & ~ATTACHED));
+        return copies(current);
+    }
+
+    /**
+     * Checks whether the book currently belongs to a library.
+     *
+     * @return true if the book is attached to a library, false otherwise
+     */
+    boolean isAttached() {
+        return (state() & ATTACHED) != 0;
+    }
+
+    /**
+     * Gets the library the book was last attached to.
+     *
+     * @return the owning library, or null if the book was never added to one
+     */
+    Library getOwner() {
+        return owner;
+    }
+
+    /**
+     * Tells the owning library about a change to the copy count, if the book was attached when it happened.
+     *
+     * @param previous the state before the change
+     * @param delta    the change in the number of available copies
+     * @param logged   whether the library should log the change, false if a loan record carries it
+     */
+    private void reportChange(long previous, int delta, boolean logged) {
+        if ((previous & ATTACHED) != 0) {
+            int before = copies(previous);
+            getOwner().copiesChanged(this, before, before + delta, logged);
+        }
+    }
+
+    /**
+     * Reads the copy state: the number of copies available in the low 32 bits, plus the ATTACHED flag.
+     *
+     * @return the current state
+     */
+    long state() {
+        return state.get();
+    }
+
+    /**
+     * Atomically replaces the copy state if it still holds the expected value.
+     *
+     * @param expected the state the caller last read
+     * @param updated  the new state
+     * @return true if the state was replaced, false if it had changed in the meantime
+     */
+    boolean compareAndSetState(long expected, long updated) {
+        return state.compareAndSet(expected, updated);
+    }
+
+    static int copies(long state) {
+        return (int) state;
     }
 
     /**
      * Checks if at least one copy of the book is available for checkout.
+     * The answer may be stale by the time it is acted on; use {@link #tryCheckOut()} to take a copy safely.
      *
      * @return true if at least one copy is available, false otherwise
      */
     public boolean isAvailable() {
-        return amount > 0;
+        return getAmount() > 0;
+    }
+
+    /**
+     * Gets the number of physical copies of the book, on the shelf or out.
+     *
+     * @return the number of copies
+     */
+    public int getCopyCount() {
+        return inventory().size();
+    }
+
+    /**
+     * Checks whether a physical copy of the book is on the shelf.
+     *
+     * @param copy the number of the copy, from 0 to {@link #getCopyCount()} - 1
+     * @return true if the copy is on the shelf, false if it is out or does not exist
+     */
+    public boolean isCopyOnShelf(int copy) {
+        return inventory().isOnShelf(copy);
+    }
+
+    /**
+     * Gets the catalog ID of the book. The library assigns it when the book is first added.
+     *
+     * @return the catalog ID, or 0 if the book has never been added to a library
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Sets the catalog ID of the book.
+     *
+     * @param id the catalog ID to use
+     */
+    void assignId(long id) {
+        this.id = id;
     }
 
     /**
@@ -92,7 +347,7 @@ public class Book {
      * @return the current number of available copies
      */
     public int getAmount() {
-        return amount;
+        return copies(state());
     }
 
     /**
@@ -103,6 +358,6 @@ public class Book {
      */
     @Override
     public String toString() {
-        return String.format("%s by %s (%d) - Copies: %d", title, author, year, amount);
+        return String.format("%s by %s (%d) - Copies: %d", getTitle(), getAuthor(), getYear(), getAmount());
     }
 }
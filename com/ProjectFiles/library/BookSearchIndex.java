@@ -0,0 +1,570 @@
+package com.ProjectFiles.library;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text index over the titles and authors of a library's books.
+ * Titles and authors are split into tokens, which are case-folded and stripped of accents. Each token has up to
+ * three posting lists, for books that contain it in the title only, in the author only, or in both. A posting list
+ * holds catalog IDs in ascending order as delta-encoded variable-length integers, with a skip entry every
+ * {@value #SKIP_INTERVAL} IDs so that a cursor can jump ahead without decoding everything in between.
+ * <p>
+ * Every query term matches the tokens it is a prefix of, so "tolk hob" finds "The Hobbit" by J.R.R. Tolkien, and all
+ * terms of a query must match. Results are ranked by how well the terms match: whole tokens beat prefixes and title
+ * matches beat author matches, with older catalog entries first among equals. Since every posting list has a
+ * single score for a given term, results can be produced in rank order by reading the best-scoring lists first,
+ * in catalog order, and the search stops as soon as it has enough. A search therefore reads little more than the
+ * books it returns, however common its words are.
+ * <p>
+ * The library updates the index as books are added and removed, while it holds its book lock; searches may run
+ * concurrently from any thread and never block, since posting lists are published as immutable views.
+ */
+public final class BookSearchIndex {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final int SKIP_INTERVAL = 32;     // IDs between two skip entries of a posting list
+    private static final int TITLE = 0;              // List of books with the token in the title only
+    private static final int AUTHOR = 1;             // List of books with the token in the author only
+    private static final int BOTH = 2;               // List of books with the token in title and author
+    private static final int[] EXACT_SCORES = {4, 2, 6};   // Score of a whole-token match, by list
+    private static final int[] PREFIX_SCORES = {2, 1, 3};  // Score of a prefix match, by list
+    private static final int MAX_CURSORS = 32;       // Terms with more lists are checked against the book instead
+
+    private final Library library;  // Library resolving catalog IDs to books
+    private final Map<String, Postings[]> postings = new ConcurrentHashMap<>();  // Posting lists per token
+    private final NavigableSet<String> tokens = new ConcurrentSkipListSet<>();   // All tokens, for prefixes
+
+    /**
+     * Creates an empty index over the given library's books.
+     *
+     * @param library the library whose catalog IDs the index holds
+     */
+    BookSearchIndex(Library library) {
+        this.library = library;
+    }
+
+    /**
+     * Adds a book to the index.
+     *
+     * @param book the book, which must have its catalog ID
+     */
+    void add(Book book) {
+        lists(book).forEach((token, list) -> {
+            Postings[] current = postings.get(token);
+            if (current == null) {
+                tokens.add(token);  // Listed before its postings exist, so searches never miss a new token
+                current = new Postings[3];
+            }
+            Postings[] updated = current.clone();
+            updated[list] = (current[list] == null ? Postings.EMPTY : current[list]).with(book.getId());
+            postings.put(token, updated);
+        });
+    }
+
+    /**
+     * Removes a book from the index.
+     *
+     * @param book the book to remove
+     */
+    void remove(Book book) {
+        lists(book).forEach((token, list) -> {
+            Postings[] current = postings.get(token);
+            if (current != null && current[list] != null) {
+                Postings[] updated = current.clone();
+                Postings remaining = current[list].without(book.getId());
+                updated[list] = remaining.count == 0 ? null : remaining;
+                if (updated[TITLE] == null && updated[AUTHOR] == null && updated[BOTH] == null) {
+                    postings.remove(token);
+                    tokens.remove(token);
+                } else {
+                    postings.put(token, updated);
+                }
+            }
+        });
+    }
+
+    /**
+     * Finds the books matching all terms of a query, best matches first.
+     *
+     * @param query the search terms, separated by spaces or punctuation
+     * @param limit the maximum number of books to return
+     * @return an unmodifiable list of matching books, empty if the query has no terms or nothing matches
+     * @throws IllegalArgumentException if limit is negative
+     */
+    public List<Book> search(String query, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative.");
+        }
+        List<Term> terms = new ArrayList<>();
+        for (String token : tokenize(query)) {
+            Term term = new Term(token);
+            for (String expansion : tokens.subSet(token, true, token + Character.MAX_VALUE, false)) {
+                Postings[] lists = postings.get(expansion);
+                if (lists != null) {
+                    term.add(lists, expansion.length() == token.length());
+                }
+            }
+            if (term.tiers.isEmpty()) {
+                return Collections.emptyList();
+            }
+            terms.add(term);
+        }
+        if (terms.isEmpty() || limit == 0) {
+            return Collections.emptyList();
+        }
+        List<Book> books = new ArrayList<>();
+        for (long id : collect(terms, limit)) {
+            Book book = library.findBookById(id);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return Collections.unmodifiableList(books);
+    }
+
+    /**
+     * Collects the catalog IDs of the best matches, best first.
+     * A book's score for a term is the score of the best tier holding it, so every book belongs to exactly one
+     * combination of tiers, one per term. Combinations are visited in order of falling total score, and all
+     * combinations with the same total are read together in catalog order, which yields the results in rank order
+     * and allows stopping as soon as enough have been found.
+     *
+     * @param terms the terms of the query
+     * @param limit the number of matches wanted
+     * @return the catalog IDs of the best matches, in rank order
+     */
+    private List<Long> collect(List<Term> terms, int limit) {
+        Comparator<int[]> bestFirst = Comparator.comparingInt(combination -> -total(terms, combination));
+        PriorityQueue<int[]> combinations = new PriorityQueue<>(bestFirst);
+        Set<String> queued = new HashSet<>();
+        int[] first = new int[terms.size()];
+        combinations.add(first);
+        queued.add(Arrays.toString(first));
+
+        List<Long> found = new ArrayList<>();
+        while (!combinations.isEmpty() && found.size() < limit) {
+            int total = total(terms, combinations.peek());
+            List<Long> level = new ArrayList<>();
+            while (!combinations.isEmpty() && total(terms, combinations.peek()) == total) {
+                int[] combination = combinations.poll();
+                level.addAll(match(terms, combination, limit - found.size()));
+                for (int t = 0; t < terms.size(); t++) {
+                    if (combination[t] + 1 < terms.get(t).tiers.size()) {
+                        int[] next = combination.clone();
+                        next[t]++;
+                        if (queued.add(Arrays.toString(next))) {
+                            combinations.add(next);
+                        }
+                    }
+                }
+            }
+            Collections.sort(level);
+            found.addAll(level.subList(0, Math.min(level.size(), limit - found.size())));
+        }
+        return found;
+    }
+
+    private static int total(List<Term> terms, int[] combination) {
+        int total = 0;
+        for (int t = 0; t < terms.size(); t++) {
+            total += terms.get(t).tiers.get(combination[t]).score;
+        }
+        return total;
+    }
+
+    /**
+     * Finds the first books, in catalog order, whose best tier for every term is the one in the combination.
+     * The smallest of the combination's tiers drives the search; the others are checked by skipping through
+     * their lists, and the driver jumps ahead to the next book a failed check could still match.
+     *
+     * @param terms       the terms of the query
+     * @param combination the tier of each term
+     * @param needed      the maximum number of books to find
+     * @return the catalog IDs found, in ascending order
+     */
+    private List<Long> match(List<Term> terms, int[] combination, int needed) {
+        int driver = 0;
+        for (int t = 1; t < terms.size(); t++) {
+            if (terms.get(t).tiers.get(combination[t]).cost < terms.get(driver).tiers.get(combination[driver]).cost) {
+                driver = t;
+            }
+        }
+        List<Check> checks = new ArrayList<>();
+        for (int t = 0; t < terms.size(); t++) {
+            checks.add(new Check(terms.get(t), combination[t], t == driver));
+        }
+        PriorityQueue<Cursor> union = new PriorityQueue<>(Comparator.comparingLong(cursor -> cursor.id));
+        for (Postings list : terms.get(driver).tiers.get(combination[driver]).lists) {
+            Cursor cursor = new Cursor(list);
+            if (cursor.next() != Cursor.END) {
+                union.add(cursor);
+            }
+        }
+
+        List<Long> ids = new ArrayList<>();
+        long previous = 0;
+        while (ids.size() < needed && !union.isEmpty()) {
+            Cursor cursor = union.poll();
+            long id = cursor.id;
+            if (cursor.next() != Cursor.END) {
+                union.add(cursor);
+            }
+            if (id == previous) {
+                continue;  // Same book through another token of the driving tier
+            }
+            previous = id;
+            long skipTo = id;
+            for (Check check : checks) {
+                skipTo = check.test(id);
+                if (skipTo != id) {
+                    break;
+                }
+            }
+            if (skipTo == id) {
+                ids.add(id);
+            }
+            while (!union.isEmpty() && union.peek().id < skipTo) {
+                Cursor behind = union.poll();
+                if (behind.advance(skipTo) != Cursor.END) {
+                    union.add(behind);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Checks that a book's best tier for one term is a given tier.
+     * Terms whose tiers span few posting lists are checked by skipping through the lists; terms that expand to
+     * many tokens are checked against the book's own title and author instead.
+     */
+    private final class Check {
+        private final Term term;            // Term being checked
+        private final int score;            // Score of the required tier
+        private final List<Cursor> tier;    // Lists of the required tier, empty for the driving term
+        private final List<Cursor> better;  // Lists of the tiers that score higher
+        private final boolean verify;       // Whether to check against the book instead of the lists
+
+        Check(Term term, int tierIndex, boolean driving) {
+            this.term = term;
+            this.score = term.tiers.get(tierIndex).score;
+            this.tier = new ArrayList<>();
+            this.better = new ArrayList<>();
+            if (!driving) {
+                term.tiers.get(tierIndex).lists.forEach(list -> tier.add(new Cursor(list)));
+            }
+            term.tiers.subList(0, tierIndex).forEach(higher -> higher.lists.forEach(list -> better.add(new Cursor(list))));
+            this.verify = tier.size() + better.size() > MAX_CURSORS;
+        }
+
+        /**
+         * Tests a book, which must not be lower in catalog order than any book tested before.
+         *
+         * @param id the catalog ID of the book
+         * @return the ID itself if the book passes, otherwise the lowest catalog ID that could still pass
+         */
+        long test(long id) {
+            if (verify) {
+                return verify(id) == score ? id : id + 1;
+            }
+            if (!tier.isEmpty()) {
+                long next = Cursor.END;
+                for (Cursor cursor : tier) {
+                    next = Math.min(next, cursor.advance(id));
+                }
+                if (next != id) {
+                    return next;
+                }
+            }
+            for (Cursor cursor : better) {
+                if (cursor.advance(id) == id) {
+                    return id + 1;
+                }
+            }
+            return id;
+        }
+
+        /**
+         * Scores the term against the book's own title and author.
+         */
+        private int verify(long id) {
+            Book book = library.findBookById(id);
+            int best = -1;
+            if (book != null) {
+                for (Map.Entry<String, Integer> token : lists(book).entrySet()) {
+                    if (token.getKey().startsWith(term.token)) {
+                        boolean exact = token.getKey().length() == term.token.length();
+                        best = Math.max(best, (exact ? EXACT_SCORES : PREFIX_SCORES)[token.getValue()]);
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Splits text into case-folded tokens without accents, in order of first appearance and without duplicates.
+     *
+     * @param text the text to split
+     * @return the distinct tokens of the text
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {  // Only text outside ASCII can carry accents
+                text = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+                break;
+            }
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); ) {
+            int c = i < text.length() ? text.codePointAt(i) : ' ';
+            i += Character.charCount(c);
+            if (Character.isLetterOrDigit(c)) {
+                token.appendCodePoint(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Collects the tokens of a book together with the list each belongs in.
+     */
+    private static Map<String, Integer> lists(Book book) {
+        Map<String, Integer> lists = new LinkedHashMap<>();
+        for (String token : tokenize(book.getTitle())) {
+            lists.put(token, TITLE);
+        }
+        for (String token : tokenize(book.getAuthor())) {
+            lists.merge(token, AUTHOR, (title, author) -> BOTH);
+        }
+        return lists;
+    }
+
+    /**
+     * Posting lists that give the same score for a query term.
+     */
+    private static final class Tier {
+        final int score;                                 // Score of every book in the tier
+        final List<Postings> lists = new ArrayList<>();  // Lists of the tier
+        long cost;                                       // Total number of postings across the lists
+
+        Tier(int score) {
+            this.score = score;
+        }
+    }
+
+    /**
+     * One term of a query together with the posting lists of the tokens it is a prefix of, grouped by score.
+     */
+    private static final class Term {
+        final String token;                       // Case-folded query term
+        final List<Tier> tiers = new ArrayList<>();  // Tiers of the matching lists, best first
+
+        Term(String token) {
+            this.token = token;
+        }
+
+        void add(Postings[] byList, boolean exact) {
+            for (int list = TITLE; list <= BOTH; list++) {
+                if (byList[list] != null) {
+                    int score = (exact ? EXACT_SCORES : PREFIX_SCORES)[list];
+                    Tier tier = tiers.stream().filter(existing -> existing.score == score).findFirst().orElse(null);
+                    if (tier == null) {
+                        tier = new Tier(score);
+                        tiers.add(tier);
+                        tiers.sort(Comparator.comparingInt((Tier existing) -> existing.score).reversed());
+                    }
+                    tier.lists.add(byList[list]);
+                    tier.cost += byList[list].count;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a posting list in order, using its skip entries to jump ahead.
+     */
+    private static final class Cursor {
+        static final long END = Long.MAX_VALUE;  // ID reported once the list is exhausted
+
+        final Postings list;
+        long id;      // Current catalog ID, 0 before the first
+        int entry;    // Number of entries read so far
+        int offset;   // Position of the next entry in the encoded data
+
+        Cursor(Postings list) {
+            this.list = list;
+        }
+
+        long next() {
+            if (offset >= list.length) {
+                return id = END;
+            }
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = list.data[offset++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            entry++;
+            return id += delta;
+        }
+
+        /**
+         * Moves to the first catalog ID at or after the target.
+         */
+        long advance(long target) {
+            if (id >= target) {
+                return id;
+            }
+            int low = entry / SKIP_INTERVAL + 1;
+            int high = list.skips - 1;
+            int block = -1;
+            while (low <= high) {  // Finds the last block whose preceding ID is still below the target
+                int mid = (low + high) >>> 1;
+                if (list.skipIds[mid] < target) {
+                    block = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (block > 0) {
+                id = list.skipIds[block];
+                offset = list.skipOffsets[block];
+                entry = block * SKIP_INTERVAL;
+            }
+            while (id < target) {
+                next();
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Immutable view of a posting list: catalog IDs in ascending order, each stored as a variable-length delta from
+     * the previous one, plus a skip entry every {@value #SKIP_INTERVAL} IDs giving the ID before the block and the
+     * block's position. Appending reuses the spare capacity of the newest list, so a new view can be published
+     * after every book.
+     */
+    private static final class Postings {
+        static final Postings EMPTY = new Postings(new byte[0], 0, 0, 0, new long[0], new int[0], 0);
+
+        final byte[] data;        // Encoded IDs, possibly shared with newer views beyond length
+        final int length;         // Bytes in use
+        final int count;          // Number of IDs
+        final long lastId;        // Highest catalog ID in the list
+        final long[] skipIds;     // ID preceding each block, possibly shared with newer views beyond skips
+        final int[] skipOffsets;  // Position of each block in the data
+        final int skips;          // Number of skip entries in use
+
+        Postings(byte[] data, int length, int count, long lastId, long[] skipIds, int[] skipOffsets, int skips) {
+            this.data = data;
+            this.length = length;
+            this.count = count;
+            this.lastId = lastId;
+            this.skipIds = skipIds;
+            this.skipOffsets = skipOffsets;
+            this.skips = skips;
+        }
+
+        /**
+         * Returns a list that also holds the given catalog ID; IDs out of order rebuild the list.
+         */
+        Postings with(long id) {
+            if (id <= lastId) {
+                long[] ids = decode();
+                int position = Arrays.binarySearch(ids, id);
+                if (position >= 0) {
+                    return this;
+                }
+                position = -position - 1;
+                long[] grown = new long[count + 1];
+                System.arraycopy(ids, 0, grown, 0, position);
+                grown[position] = id;
+                System.arraycopy(ids, position, grown, position + 1, count - position);
+                return encode(grown, grown.length);
+            }
+            long[] targetSkipIds = skipIds;
+            int[] targetSkipOffsets = skipOffsets;
+            int targetSkips = skips;
+            if (count % SKIP_INTERVAL == 0) {
+                if (skips == skipIds.length) {
+                    targetSkipIds = Arrays.copyOf(skipIds, Math.max(4, skips * 2));
+                    targetSkipOffsets = Arrays.copyOf(skipOffsets, targetSkipIds.length);
+                }
+                targetSkipIds[skips] = lastId;
+                targetSkipOffsets[skips] = length;
+                targetSkips++;
+            }
+            byte[] target = data;
+            if (length + 10 > target.length) {
+                target = Arrays.copyOf(target, Math.max(16, (length + 10) * 3 / 2));
+            }
+            int end = writeVarLong(target, length, id - lastId);
+            return new Postings(target, end, count + 1, id, targetSkipIds, targetSkipOffsets, targetSkips);
+        }
+
+        /**
+         * Returns a list without the given catalog ID.
+         */
+        Postings without(long id) {
+            long[] ids = decode();
+            int position = Arrays.binarySearch(ids, id);
+            if (position < 0) {
+                return this;
+            }
+            System.arraycopy(ids, position + 1, ids, position, count - position - 1);
+            return encode(ids, count - 1);
+        }
+
+        private long[] decode() {
+            long[] ids = new long[count];
+            Cursor cursor = new Cursor(this);
+            for (int i = 0; i < count; i++) {
+                ids[i] = cursor.next();
+            }
+            return ids;
+        }
+
+        private static Postings encode(long[] ids, int count) {
+            Postings list = EMPTY;
+            for (int i = 0; i < count; i++) {
+                list = list.with(ids[i]);
+            }
+            return list;
+        }
+
+        private static int writeVarLong(byte[] target, int offset, long value) {
+            while ((value & ~0x7FL) != 0) {
+                target[offset++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            target[offset++] = (byte) value;
+            return offset;
+        }
+    }
+}
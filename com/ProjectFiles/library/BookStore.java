@@ -0,0 +1,84 @@
+package com.ProjectFiles.library;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the books of a {@link Library} and answers its book lookups.
+ * The library calls the mutating methods only while it holds its book lock, so implementations need not
+ * serialize writers themselves; the read methods may be called from any thread at any time and must not block.
+ */
+interface BookStore {
+
+    /**
+     * Returns the current snapshot of all books in the store.
+     *
+     * @return an immutable snapshot of the books
+     */
+    Snapshot<Book> snapshot();
+
+    /**
+     * Adds a book to the store and its indexes.
+     *
+     * @param book the book to add, already attached to the library
+     * @return the book as the store keeps it: either the given book, or a view that has taken over its copies,
+     *         in which case the given book has been detached
+     */
+    Book add(Book book);
+
+    /**
+     * Removes a book from the store and its indexes.
+     *
+     * @param book the book to remove
+     * @return true if the book was in the store, false otherwise
+     */
+    boolean remove(Book book);
+
+    /**
+     * Finds the book with the given catalog ID.
+     *
+     * @param id the catalog ID
+     * @return the book, or null if the store holds no such book
+     */
+    Book findById(long id);
+
+    /**
+     * Finds all books with the given normalized title.
+     *
+     * @param title the title, already normalized by {@link Library#normalize(String)}
+     * @return an unmodifiable list of matching books, empty if there are none
+     */
+    List<Book> findByTitle(String title);
+
+    /**
+     * Finds all books by the given normalized author.
+     *
+     * @param author the author, already normalized by {@link Library#normalize(String)}
+     * @return an unmodifiable list of matching books, empty if there are none
+     */
+    List<Book> findByAuthor(String author);
+
+    /**
+     * Finds all books published within the given range of years, in store order.
+     * The default implementation filters the snapshot; stores with a year column scan it instead.
+     *
+     * @param from the first year of the range, inclusive
+     * @param to   the last year of the range, inclusive
+     * @return an unmodifiable list of matching books, empty if there are none
+     */
+    default List<Book> findByYears(int from, int to) {
+        return snapshot().stream()
+                .filter(book -> book.getYear() >= from && book.getYear() <= to)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Finds all books with at least one copy on hand, in store order.
+     * The default implementation filters the snapshot; stores with a copy column scan it instead.
+     *
+     * @return an unmodifiable list of available books, empty if there are none
+     */
+    default List<Book> findAvailable() {
+        return snapshot().stream().filter(Book::isAvailable).collect(Collectors.toUnmodifiableList());
+    }
+}
@@ -0,0 +1,948 @@
+package com.ProjectFiles.library;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Loads books and members into a {@link Library} in bulk from CSV or JSON-lines files, and writes them back out
+ * in the same formats.
+ * <p>
+ * An import streams its input: the calling thread cuts the file into chunks of records, a pool of workers parses
+ * and validates the chunks in parallel with the same rules as {@link Librarian}, and the calling thread adds the
+ * results to the library batch by batch, in file order. Only a few chunks are in flight at any time, so the memory
+ * an import needs does not depend on the size of the file. Rows that fail validation, and members or books whose
+ * ID is already taken, are counted and reported rather than stopping the import.
+ * <p>
+ * CSV files start with a header row naming the columns, in any order: {@code id,name} for members and
+ * {@code id,title,author,year,amount} for books, where the book ID is optional. Fields may be quoted, with doubled
+ * quotes inside, and quoted fields may span lines. JSON-lines files hold one flat object per line with the same
+ * keys. Exports write the current snapshot with the same columns, so an exported file can be imported again.
+ */
+public final class BulkLoader {
+    private static final int DEFAULT_BATCH = 4096;  // Records per chunk and per batch added to the library
+    private static final int MAX_ERRORS = 100;      // Rejected rows described in a result; the rest are only counted
+    private static final int MAX_RECORD = 1 << 20;  // Characters a CSV record may span before its quote is given up on
+    private static final String[] BOOK_COLUMNS = {"id", "title", "author", "year", "amount"};
+    private static final String[] MEMBER_COLUMNS = {"id", "name"};
+
+    /**
+     * The file formats the loader reads and writes.
+     */
+    public enum Format {
+        CSV,         // Comma-separated values with a header row
+        JSON_LINES;  // One JSON object per line
+
+        /**
+         * Picks the format from a file name's extension: .csv for CSV, and .jsonl, .ndjson, or .json for JSON lines.
+         *
+         * @param file the file
+         * @return the format of the file
+         * @throws IllegalArgumentException if the extension is not one of these
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+                return JSON_LINES;
+            }
+            throw new IllegalArgumentException("Unknown file format: " + file.getFileName());
+        }
+    }
+
+    /**
+     * Summarizes an import.
+     */
+    public static final class Result {
+        private final long records;        // Records read from the input
+        private final long added;          // Records added to the library
+        private final long rejected;       // Records that were invalid or had an ID already taken
+        private final List<String> errors;  // Descriptions of the first rejected records
+
+        Result(long records, long added, long rejected, List<String> errors) {
+            this.records = records;
+            this.added = added;
+            this.rejected = rejected;
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * Gets the number of records read from the input, not counting the header or blank lines.
+         *
+         * @return the number of records
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * Gets the number of records added to the library.
+         *
+         * @return the number of records added
+         */
+        public long getAdded() {
+            return added;
+        }
+
+        /**
+         * Gets the number of records that were invalid or whose ID was already taken.
+         *
+         * @return the number of records rejected
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Describes the first rejected records, each with its line number.
+         *
+         * @return an unmodifiable list of at most 100 descriptions
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d records read, %,d added, %,d rejected", records, added, rejected);
+        }
+    }
+
+    private final Library library;      // Library the records are loaded into and written from
+    private final Librarian librarian = new Librarian();  // Validates the records as they are turned into objects
+    private final int batchSize;        // Records per chunk
+    private final int threads;          // Workers parsing chunks
+
+    /**
+     * Creates a loader that parses on one worker per processor, in batches of 4096 records.
+     *
+     * @param library the library to load into and export from
+     */
+    public BulkLoader(Library library) {
+        this(library, DEFAULT_BATCH, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a loader with the given batch size and number of workers.
+     *
+     * @param library   the library to load into and export from
+     * @param batchSize the number of records parsed as one chunk and added to the library as one batch
+     * @param threads   the number of workers parsing chunks
+     * @throws IllegalArgumentException if the batch size or the number of workers is not positive
+     */
+    public BulkLoader(Library library, int batchSize, int threads) {
+        if (batchSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Batch size and number of threads must be positive.");
+        }
+        this.library = library;
+        this.batchSize = batchSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Imports the books in a file, picking the format from its extension.
+     *
+     * @param file     the file to read, in UTF-8
+     * @param progress told the number of records handled so far after each batch, or null
+     * @return a summary of the import
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the format is unknown or a CSV header lacks a required column
+     */
+    public Result importBooks(Path file, LongConsumer progress) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importBooks(in, Format.of(file), progress);
+        }
+    }
+
+    /**
+     * Imports books from a stream of records. Books keep the catalog ID given in the input, if any.
+     *
+     * @param in       the input
+     * @param format   the format of the input
+     * @param progress told the number of records handled so far after each batch, or null
+     * @return a summary of the import
+     * @throws IOException              if the input cannot be read
+     * @throws IllegalArgumentException if a CSV header lacks a required column
+     */
+    public Result importBooks(Reader in, Format format, LongConsumer progress) throws IOException {
+        return load(in, format, BOOK_COLUMNS, 1, fields -> {
+            Book book = librarian.createBook(trim(fields[1]), trim(fields[2]), number(fields[3], "year"),
+                    number(fields[4], "amount"));
+            if (fields[0] != null && !fields[0].isBlank()) {
+                long id;
+                try {
+                    id = Long.parseLong(fields[0].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid book ID: " + fields[0]);
+                }
+                if (id <= 0) {
+                    throw new IllegalArgumentException("Book ID must be positive.");
+                }
+                book.assignId(id);
+            }
+            return book;
+        }, library::addBooks, book -> "Book ID " + book.getId() + " is already taken.", progress);
+    }
+
+    /**
+     * Imports the members in a file, picking the format from its extension.
+     *
+     * @param file     the file to read, in UTF-8
+     * @param progress told the number of records handled so far after each batch, or null
+     * @return a summary of the import
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the format is unknown or a CSV header lacks a required column
+     */
+    public Result importMembers(Path file, LongConsumer progress) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importMembers(in, Format.of(file), progress);
+        }
+    }
+
+    /**
+     * Imports members from a stream of records. Members whose ID is already taken are rejected.
+     *
+     * @param in       the input
+     * @param format   the format of the input
+     * @param progress told the number of records handled so far after each batch, or null
+     * @return a summary of the import
+     * @throws IOException              if the input cannot be read
+     * @throws IllegalArgumentException if a CSV header lacks a required column
+     */
+    public Result importMembers(Reader in, Format format, LongConsumer progress) throws IOException {
+        return load(in, format, MEMBER_COLUMNS, 0,
+                fields -> librarian.createMember(trim(fields[1]), number(fields[0], "member ID")),
+                library::addMembers, member -> "Member ID " + member.getId() + " is already taken.", progress);
+    }
+
+    /**
+     * Writes all books of the library to a file, picking the format from its extension.
+     *
+     * @param file     the file to write, in UTF-8
+     * @param progress told the number of books written so far after each batch, or null
+     * @return the number of books written
+     * @throws IOException              if the file cannot be written
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public long exportBooks(Path file, LongConsumer progress) throws IOException {
+        Format format = Format.of(file);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return exportBooks(out, format, progress);
+        }
+    }
+
+    /**
+     * Writes the current snapshot of books, one record per book, without copying the catalog.
+     *
+     * @param out      the output
+     * @param format   the format to write
+     * @param progress told the number of books written so far after each batch, or null
+     * @return the number of books written
+     * @throws IOException if the output cannot be written
+     */
+    public long exportBooks(Writer out, Format format, LongConsumer progress) throws IOException {
+        return write(out, format, BOOK_COLUMNS, library.books(), book -> new Object[]{
+                book.getId(), book.getTitle(), book.getAuthor(), book.getYear(), book.getAmount()}, progress);
+    }
+
+    /**
+     * Writes all registered members to a file, picking the format from its extension.
+     *
+     * @param file     the file to write, in UTF-8
+     * @param progress told the number of members written so far after each batch, or null
+     * @return the number of members written
+     * @throws IOException              if the file cannot be written
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public long exportMembers(Path file, LongConsumer progress) throws IOException {
+        Format format = Format.of(file);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return exportMembers(out, format, progress);
+        }
+    }
+
+    /**
+     * Writes the current snapshot of members, one record per member.
+     *
+     * @param out      the output
+     * @param format   the format to write
+     * @param progress told the number of members written so far after each batch, or null
+     * @return the number of members written
+     * @throws IOException if the output cannot be written
+     */
+    public long exportMembers(Writer out, Format format, LongConsumer progress) throws IOException {
+        return write(out, format, MEMBER_COLUMNS, library.members(),
+                member -> new Object[]{member.getId(), member.getName()}, progress);
+    }
+
+    /**
+     * Runs an import: cuts the input into chunks, parses them on the workers, and adds them to the library in order.
+     *
+     * @param columns   the columns of a record, in the order the parser expects them
+     * @param optional  the number of leading columns that may be missing
+     * @param parser    turns the fields of a record into an object, throwing IllegalArgumentException if invalid
+     * @param adder     adds a batch to the library and returns the objects it skipped
+     * @param duplicate describes a skipped object
+     */
+    private <T> Result load(Reader in, Format format, String[] columns, int optional, Function<String[], T> parser,
+                            Function<List<T>, List<T>> adder, Function<T, String> duplicate, LongConsumer progress)
+            throws IOException {
+        RecordReader records = new RecordReader(in instanceof BufferedReader ? (BufferedReader) in
+                : new BufferedReader(in), format);
+        int[] layout = format == Format.CSV ? records.header(columns, optional) : null;
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "bulk-loader-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Tally tally = new Tally();
+        try {
+            ArrayDeque<Future<Chunk<T>>> inFlight = new ArrayDeque<>();
+            for (List<Record> chunk; !(chunk = records.next(batchSize)).isEmpty(); ) {
+                List<Record> batch = chunk;
+                inFlight.add(workers.submit(() -> parse(batch, format, columns, layout, parser)));
+                if (inFlight.size() > 2 * threads) {  // Keeps the workers busy without reading ahead unboundedly
+                    apply(take(inFlight), adder, duplicate, tally, progress);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                apply(take(inFlight), adder, duplicate, tally, progress);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return new Result(tally.records, tally.added, tally.rejected, tally.errors);
+    }
+
+    private static <T> Chunk<T> take(ArrayDeque<Future<Chunk<T>>> inFlight) throws IOException {
+        try {
+            return inFlight.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Parses and validates one chunk of records; runs on a worker.
+     */
+    private static <T> Chunk<T> parse(List<Record> records, Format format, String[] columns, int[] layout,
+                                      Function<String[], T> parser) {
+        Chunk<T> chunk = new Chunk<>(records.size());
+        for (Record record : records) {
+            try {
+                String[] fields = format == Format.CSV ? arrange(splitCsv(record.text), layout, columns.length)
+                        : pick(parseJson(record.text), columns);
+                chunk.add(record.line, parser.apply(fields));
+            } catch (IllegalArgumentException e) {
+                chunk.reject(record.line, e.getMessage());
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Adds a parsed chunk to the library and updates the tally; runs on the calling thread, in file order.
+     */
+    private static <T> void apply(Chunk<T> chunk, Function<List<T>, List<T>> adder, Function<T, String> duplicate,
+                                  Tally tally, LongConsumer progress) {
+        for (String error : chunk.errors) {
+            tally.error(error);
+        }
+        tally.records += chunk.items.size() + chunk.errors.size();
+        tally.rejected += chunk.errors.size();
+        List<T> skipped = chunk.items.isEmpty() ? Collections.emptyList() : adder.apply(chunk.items);
+        if (!skipped.isEmpty()) {
+            Map<T, Long> lines = new IdentityHashMap<>();
+            for (int i = 0; i < chunk.items.size(); i++) {
+                lines.putIfAbsent(chunk.items.get(i), chunk.lines[i]);
+            }
+            for (T item : skipped) {
+                tally.error("Line " + lines.get(item) + ": " + duplicate.apply(item));
+            }
+        }
+        tally.added += chunk.items.size() - skipped.size();
+        tally.rejected += skipped.size();
+        if (progress != null) {
+            progress.accept(tally.records);
+        }
+    }
+
+    /**
+     * Writes a snapshot as records, reporting progress after every batch.
+     */
+    private <T> long write(Writer out, Format format, String[] columns, Snapshot<T> snapshot,
+                           Function<T, Object[]> values, LongConsumer progress) throws IOException {
+        Writer target = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+        StringBuilder line = new StringBuilder(256);
+        if (format == Format.CSV) {
+            target.write(String.join(",", columns));
+            target.write('\n');
+        }
+        long written = 0;
+        for (T element : snapshot) {
+            line.setLength(0);
+            Object[] fields = values.apply(element);
+            if (format == Format.CSV) {
+                appendCsv(line, fields);
+            } else {
+                appendJson(line, columns, fields);
+            }
+            line.append('\n');
+            target.append(line);
+            if (++written % batchSize == 0 && progress != null) {
+                progress.accept(written);
+            }
+        }
+        target.flush();
+        if (progress != null) {
+            progress.accept(written);
+        }
+        return written;
+    }
+
+    private static String trim(String field) {
+        return field == null ? null : field.trim();
+    }
+
+    private static int number(String field, String what) {
+        if (field == null || field.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + what + ".");
+        }
+        try {
+            return Integer.parseInt(field.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + what + ": " + field);
+        }
+    }
+
+    /**
+     * Puts the fields of a CSV record into column order.
+     *
+     * @param fields the fields in file order
+     * @param layout the file position of each column, or -1 for a missing optional column
+     * @param width  the number of columns
+     */
+    private static String[] arrange(List<String> fields, int[] layout, int width) {
+        String[] arranged = new String[width];
+        for (int i = 0; i < width; i++) {
+            if (layout[i] >= 0) {
+                if (layout[i] >= fields.size()) {
+                    throw new IllegalArgumentException("Expected at least " + (layout[i] + 1) + " fields.");
+                }
+                arranged[i] = fields.get(layout[i]);
+            }
+        }
+        return arranged;
+    }
+
+    private static String[] pick(Map<String, String> object, String[] columns) {
+        String[] fields = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            fields[i] = object.get(columns[i]);
+        }
+        return fields;
+    }
+
+    /**
+     * Splits one CSV record into its fields, removing the quotes around quoted fields.
+     *
+     * @param text the record, possibly spanning several lines inside quoted fields
+     * @return the fields
+     * @throws IllegalArgumentException if a quoted field is not closed
+     */
+    static List<String> splitCsv(String text) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < text.length() && text.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= text.length()) {
+                        throw new IllegalArgumentException("Unterminated quoted field.");
+                    }
+                    char c = text.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < text.length() && text.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                int comma = text.indexOf(',', i);
+                i = comma < 0 ? text.length() : comma;  // Ignores stray characters after the closing quote
+            } else {
+                int comma = text.indexOf(',', i);
+                int end = comma < 0 ? text.length() : comma;
+                field.append(text, i, end);
+                i = end;
+            }
+            fields.add(field.toString());
+            if (i >= text.length()) {
+                return fields;
+            }
+            i++;  // Skips the comma
+        }
+    }
+
+    private static void appendCsv(StringBuilder line, Object[] fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            String value = String.valueOf(fields[i]);
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                    && value.indexOf('\r') < 0) {
+                line.append(value);
+            } else {
+                line.append('"').append(value.replace("\"", "\"\"")).append('"');
+            }
+        }
+    }
+
+    /**
+     * Parses one flat JSON object whose values are strings, numbers, booleans, or null.
+     *
+     * @param text the object
+     * @return the values by key, numbers and booleans as written and null as a missing value
+     * @throws IllegalArgumentException if the text is not such an object
+     */
+    static Map<String, String> parseJson(String text) {
+        return parseJson(text, false);
+    }
+
+    /**
+     * Parses one JSON object whose values are strings, numbers, booleans, or null, and if allowed arrays and
+     * objects, which are kept as their JSON text to be parsed in turn.
+     *
+     * @param text   the object
+     * @param nested whether values may be arrays and objects
+     * @return the values by key, numbers and booleans as written and null as a missing value
+     * @throws IllegalArgumentException if the text is not such an object
+     */
+    static Map<String, String> parseJson(String text, boolean nested) {
+        JsonCursor cursor = new JsonCursor(text, nested);
+        Map<String, String> object = cursor.object();
+        cursor.end();
+        return object;
+    }
+
+    /**
+     * Parses a JSON array of objects such as {@link #parseJson(String, boolean)} parses.
+     *
+     * @param text   the array
+     * @param nested whether values may be arrays and objects
+     * @return the objects, in order
+     * @throws IllegalArgumentException if the text is not such an array
+     */
+    static List<Map<String, String>> parseJsonArray(String text, boolean nested) {
+        JsonCursor cursor = new JsonCursor(text, nested);
+        List<Map<String, String>> objects = new ArrayList<>();
+        cursor.expect('[');
+        if (!cursor.consume(']')) {
+            do {
+                objects.add(cursor.object());
+            } while (cursor.consume(','));
+            cursor.expect(']');
+        }
+        cursor.end();
+        return objects;
+    }
+
+    private static void appendJson(StringBuilder line, String[] columns, Object[] fields) {
+        line.append('{');
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append('"').append(columns[i]).append("\":");
+            if (fields[i] instanceof Number) {
+                line.append(fields[i]);
+            } else {
+                quoteJson(line, String.valueOf(fields[i]));
+            }
+        }
+        line.append('}');
+    }
+
+    static void quoteJson(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * One record of the input with the line it starts on.
+     */
+    private static final class Record {
+        final long line;    // Line number of the record's first line, starting at 1
+        final String text;  // The record, with the line breaks inside quoted fields kept
+
+        Record(long line, String text) {
+            this.line = line;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Cuts the input into records on the calling thread. A CSV record continues onto the next line while a quoted
+     * field is still open. As in RFC 4180, only a quote at the start of a field opens a quoted field, and inside one
+     * a doubled quote stands for a quote, so quotes in the middle of an unquoted field never join lines. A record
+     * that reaches {@value #MAX_RECORD} characters with its field still open is cut off there and left to the
+     * parser to reject, and reading resumes on the next line.
+     */
+    private static final class RecordReader {
+        private final BufferedReader in;
+        private final Format format;
+        private long line;  // Number of lines read so far
+
+        RecordReader(BufferedReader in, Format format) {
+            this.in = in;
+            this.format = format;
+        }
+
+        /**
+         * Reads the CSV header and finds each column in it.
+         *
+         * @param columns  the expected columns
+         * @param optional the number of leading columns that may be missing
+         * @return the file position of each column, or -1 for a missing optional column
+         */
+        int[] header(String[] columns, int optional) throws IOException {
+            Record header = read();
+            if (header == null) {
+                throw new IllegalArgumentException("CSV file has no header row.");
+            }
+            List<String> names = splitCsv(header.text.replace("\uFEFF", ""));  // Drops a byte order mark
+            int[] layout = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                layout[i] = indexOf(names, columns[i]);
+                if (layout[i] < 0 && i >= optional) {
+                    throw new IllegalArgumentException("CSV header has no '" + columns[i] + "' column.");
+                }
+            }
+            return layout;
+        }
+
+        List<Record> next(int limit) throws IOException {
+            List<Record> records = new ArrayList<>(limit);
+            for (Record record; records.size() < limit && (record = read()) != null; ) {
+                records.add(record);
+            }
+            return records;
+        }
+
+        private Record read() throws IOException {
+            String text;
+            do {
+                text = in.readLine();
+                line++;
+                if (text == null) {
+                    return null;
+                }
+            } while (text.isBlank());
+            long start = line;
+            if (format == Format.CSV && endsQuoted(text, false)) {
+                StringBuilder record = new StringBuilder(text);
+                boolean quoted = true;
+                while (quoted && record.length() < MAX_RECORD) {
+                    String more = in.readLine();
+                    if (more == null) {
+                        break;  // Left to the parser to report the unterminated field
+                    }
+                    line++;
+                    record.append('\n').append(more);
+                    quoted = endsQuoted(more, true);
+                }
+                text = record.toString();
+            }
+            return new Record(start, text);
+        }
+
+        /**
+         * Follows the quoting of one line of a record and tells whether a quoted field is still open at its end.
+         *
+         * @param text   the line
+         * @param quoted whether the line starts inside a quoted field, continued from the previous line
+         */
+        private static boolean endsQuoted(String text, boolean quoted) {
+            boolean fieldStart = !quoted;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                            i++;  // An escaped quote
+                        } else {
+                            quoted = false;
+                        }
+                    }
+                } else if (c == ',') {
+                    fieldStart = true;
+                    continue;
+                } else if (c == '"' && fieldStart) {
+                    quoted = true;
+                }
+                fieldStart = false;
+            }
+            return quoted;
+        }
+
+        private static int indexOf(List<String> names, String column) {
+            for (int i = 0; i < names.size(); i++) {
+                if (names.get(i).trim().equalsIgnoreCase(column)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The objects parsed from one chunk, with the line of each, and the descriptions of the rejected records.
+     */
+    private static final class Chunk<T> {
+        final List<T> items;
+        final long[] lines;
+        final List<String> errors = new ArrayList<>();
+
+        Chunk(int capacity) {
+            items = new ArrayList<>(capacity);
+            lines = new long[capacity];
+        }
+
+        void add(long line, T item) {
+            lines[items.size()] = line;
+            items.add(item);
+        }
+
+        void reject(long line, String reason) {
+            errors.add("Line " + line + ": " + reason);
+        }
+    }
+
+    /**
+     * Running totals of an import, kept by the calling thread.
+     */
+    private static final class Tally {
+        long records;
+        long added;
+        long rejected;
+        final List<String> errors = new ArrayList<>();
+
+        void error(String description) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(description);
+            }
+        }
+    }
+
+    /**
+     * Reads the tokens of a flat JSON object.
+     */
+    private static final class JsonCursor {
+        private final String text;
+        private final boolean nested;  // Whether arrays and objects are accepted as values, kept as their text
+        private int pos;
+
+        JsonCursor(String text, boolean nested) {
+            this.text = text;
+            this.nested = nested;
+        }
+
+        Map<String, String> object() {
+            Map<String, String> object = new HashMap<>();
+            expect('{');
+            if (!consume('}')) {
+                do {
+                    String key = string();
+                    expect(':');
+                    object.put(key, value());
+                } while (consume(','));
+                expect('}');
+            }
+            return object;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("Expected '" + c + "' at column " + (pos + 1) + ".");
+            }
+        }
+
+        boolean consume(char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void end() {
+            skipSpace();
+            if (pos != text.length()) {
+                throw new IllegalArgumentException("Unexpected text after the object at column " + (pos + 1) + ".");
+            }
+        }
+
+        String value() {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                return string();
+            }
+            if (nested && pos < text.length() && (text.charAt(pos) == '[' || text.charAt(pos) == '{')) {
+                return container();
+            }
+            int start = pos;
+            while (pos < text.length() && ",}] \t".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = text.substring(start, pos);
+            if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+                throw new IllegalArgumentException("Expected a string, number, or literal at column " + (start + 1) + ".");
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) {
+                    throw new IllegalArgumentException("Unterminated string.");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    throw new IllegalArgumentException("Unterminated string.");
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("Invalid escape in string.");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Invalid escape in string.");
+                        }
+                        pos += 4;
+                        break;
+                    default:  // Covers \" \\ and \/
+                        value.append(escaped);
+                }
+            }
+        }
+
+        /**
+         * Skips an array or object, nested to any depth, and returns its text.
+         */
+        private String container() {
+            int start = pos;
+            int depth = 0;
+            do {
+                if (pos >= text.length()) {
+                    throw new IllegalArgumentException("Unterminated array or object.");
+                }
+                char c = text.charAt(pos);
+                if (c == '"') {
+                    string();
+                    continue;
+                }
+                if (c == '[' || c == '{') {
+                    depth++;
+                } else if (c == ']' || c == '}') {
+                    depth--;
+                }
+                pos++;
+            } while (depth > 0);
+            return text.substring(start, pos);
+        }
+
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
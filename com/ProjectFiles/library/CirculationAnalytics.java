@@ -0,0 +1,466 @@
+package com.ProjectFiles.library;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Computes {@link CirculationReport}s over a library's loan history and catalog.
+ * <p>
+ * The loan history is scanned in parallel on the common fork-join pool. Each task tallies its range of the loan
+ * snapshot by book and member ID into primitive hash tables, and the tallies are merged as the tasks join, so the
+ * scan neither boxes a count nor touches a string; titles, authors, and member names are looked up only once per
+ * distinct book and member, when the report is put together.
+ * <p>
+ * The tallies are kept between reports. Loans are only ever appended to the history, so the next report scans just
+ * the loans made since the last one, plus the loans that were still out then, to see whether they have been
+ * returned. Only if a loan was removed from the history does a report start again from the beginning. Reports are
+ * computed one at a time; a report asked for while another is running waits for it.
+ * <p>
+ * Returned loans that checkpoints have moved to the {@linkplain LoanHistory loan history} are tallied apart, from
+ * the memory-mapped partitions, and each report scans only the records published since the last one. Since the
+ * library's loan snapshot is rebuilt whenever loans are moved out, the tallies of the loans it keeps start again
+ * then, but those are few: the loans still out and those returned since the checkpoint.
+ */
+public final class CirculationAnalytics {
+    /** Longest loan duration the distribution tells apart; longer loans share its last bucket. */
+    public static final int MAX_DURATION_DAYS = 90;
+    private static final int MIN_SPLIT = 1 << 16;  // Fewest loans worth a fork-join task of their own
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final Library library;
+    private final LibraryMetrics.Timer reportTimer;
+    private Snapshot<Loan> scanned = Snapshot.empty();  // The loans the tallies cover, guarded by this
+    private Tally totals = new Tally();                  // Tallies of the scanned loans, guarded by this
+    private final Map<Integer, Long> archivedRecords = new HashMap<>();  // Records tallied by month, guarded by this
+    private final Tally archived = new Tally();          // Tallies of the records of the loan history, guarded by this
+
+    /**
+     * Creates the analytics of a library. Nothing is computed until the first report.
+     *
+     * @param library the library to report on
+     */
+    public CirculationAnalytics(Library library) {
+        this.library = library;
+        this.reportTimer = library.getMetrics().timer("analytics.report");
+    }
+
+    /**
+     * Computes a report of the library as it is now.
+     *
+     * @param top the number of entries in each ranking
+     * @return the report
+     * @throws IllegalArgumentException if top is negative
+     * @throws UncheckedIOException     if the loan history cannot be read
+     */
+    public synchronized CirculationReport report(int top) {
+        if (top < 0) {
+            throw new IllegalArgumentException("The number of entries must not be negative.");
+        }
+        long start = System.nanoTime();
+        LoanHistory.View view = library.loanView();
+        scanArchived(view);
+        Snapshot<Loan> loans = view.live();
+        if (extendsScanned(loans)) {
+            totals.recheckOpen(loans);
+        } else {
+            totals = new Tally();  // A loan was removed, so the tallies no longer match any prefix of the history
+            scanned = Snapshot.empty();
+        }
+        int fresh = loans.size() - scanned.size();
+        if (fresh > 0) {
+            int grain = Math.max(MIN_SPLIT, fresh / (4 * ForkJoinPool.getCommonPoolParallelism()));  // A few per core
+            totals.merge(ForkJoinPool.commonPool().invoke(new Scan(loans, scanned.size(), loans.size(), grain)));
+        }
+        scanned = loans;
+        Tally all = new Tally();
+        all.merge(archived);
+        all.merge(totals);  // The live subjects replace the missing ones of the history
+        CirculationReport report = all.report(top, booksPerDecade(library.books()), library);
+        reportTimer.record(start, -1);
+        return report;
+    }
+
+    /**
+     * Tallies the records published to the loan history since the last report, one partition at a time, each
+     * split among the pool's threads.
+     */
+    private void scanArchived(LoanHistory.View view) {
+        for (int p = 0; p < view.partitionCount(); p++) {
+            long done = archivedRecords.getOrDefault(view.month(p), 0L);
+            long fresh = view.records(p) - done;
+            if (fresh <= 0) {
+                continue;
+            }
+            ByteBuffer records;
+            try {
+                records = view.map(p);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int grain = (int) Math.max(MIN_SPLIT, fresh / (4 * ForkJoinPool.getCommonPoolParallelism()));
+            archived.merge(ForkJoinPool.commonPool().invoke(
+                    new ArchiveScan(records, (int) done, (int) view.records(p), grain)));
+            archivedRecords.put(view.month(p), view.records(p));
+        }
+    }
+
+    /**
+     * Checks whether a loan snapshot starts with the loans already scanned. A snapshot that shares its backing array
+     * with the scanned one does; otherwise, after the array grew or a loan was removed, the loans are compared one
+     * by one, by identity.
+     */
+    private boolean extendsScanned(Snapshot<Loan> loans) {
+        if (loans.size() < scanned.size()) {
+            return false;
+        }
+        if (scanned.sharesPrefixWith(loans)) {
+            return true;
+        }
+        Snapshot<Loan> previous = scanned;
+        return IntStream.range(0, previous.size()).parallel().allMatch(i -> previous.get(i) == loans.get(i));
+    }
+
+    /**
+     * Counts the books of the catalog by decade of publication, in parallel.
+     */
+    private static SortedMap<Integer, Long> booksPerDecade(Snapshot<Book> books) {
+        IdCounts decades = StreamSupport.stream(books.spliterator(), true).collect(IdCounts::new,
+                (counts, book) -> counts.add(Math.floorDiv(book.getYear(), 10) * 10L, null, 1), IdCounts::addAll);
+        SortedMap<Integer, Long> result = new TreeMap<>();
+        decades.forEach((decade, subject, count) -> result.put((int) decade, count));
+        return result;
+    }
+
+    /**
+     * Tallies a range of the loan history, splitting it among the pool's threads.
+     */
+    private static final class Scan extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Snapshot<Loan> loans;
+        private final int from;
+        private final int to;
+        private final int grain;  // Largest range tallied without splitting
+
+        Scan(Snapshot<Loan> loans, int from, int to, int grain) {
+            this.loans = loans;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (to - from <= grain) {
+                Tally tally = new Tally();
+                for (int i = from; i < to; i++) {
+                    tally.add(loans.get(i), i);
+                }
+                return tally;
+            }
+            int middle = (from + to) >>> 1;
+            Scan right = new Scan(loans, middle, to, grain);
+            right.fork();
+            Tally left = new Scan(loans, from, middle, grain).compute();
+            left.merge(right.join());  // The left tally's open loans come first, keeping them in history order
+            return left;
+        }
+    }
+
+    /**
+     * Tallies a range of records of a loan history partition, splitting it among the pool's threads. The records are
+     * read in place from the mapped file; archived loans have all been returned.
+     */
+    private static final class ArchiveScan extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ByteBuffer records;
+        private final int from;
+        private final int to;
+        private final int grain;  // Largest range tallied without splitting
+
+        ArchiveScan(ByteBuffer records, int from, int to, int grain) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (to - from <= grain) {
+                Tally tally = new Tally();
+                for (int i = from; i < to; i++) {
+                    int offset = i * LoanHistory.RECORD_SIZE;
+                    tally.addArchived(LoanHistory.bookId(records, offset), LoanHistory.memberId(records, offset),
+                            LoanHistory.loanMillis(records, offset), LoanHistory.returnMillis(records, offset));
+                }
+                return tally;
+            }
+            int middle = (from + to) >>> 1;
+            ArchiveScan right = new ArchiveScan(records, middle, to, grain);
+            right.fork();
+            Tally left = new ArchiveScan(records, from, middle, grain).compute();
+            left.merge(right.join());
+            return left;
+        }
+    }
+
+    /**
+     * Loan counts by book and by member, the durations of returned loans, and the positions of the loans that were
+     * still out, over some range of the loan history.
+     */
+    private static final class Tally {
+        private final IdCounts byBook = new IdCounts();
+        private final IdCounts byMember = new IdCounts();
+        private final long[] durationDays = new long[MAX_DURATION_DAYS + 1];
+        private long loans;
+        private int[] open = new int[16];  // Positions in the history of the loans that were out when tallied
+        private int openCount;
+
+        void add(Loan loan, int position) {
+            loans++;
+            byBook.add(loan.getBook().getId(), loan.getBook(), 1);
+            byMember.add(loan.getMember().getId(), loan.getMember(), 1);
+            if (!addDuration(loan)) {
+                if (openCount == open.length) {
+                    open = Arrays.copyOf(open, openCount * 2);
+                }
+                open[openCount++] = position;
+            }
+        }
+
+        /**
+         * Counts a returned loan read from the loan history, whose book and member are known only by ID.
+         */
+        void addArchived(long bookId, int memberId, long loanMillis, long returnMillis) {
+            loans++;
+            byBook.add(bookId, null, 1);
+            byMember.add(memberId, null, 1);
+            addDuration(loanMillis, returnMillis);
+        }
+
+        /**
+         * Counts the duration of a loan if it has been returned.
+         *
+         * @return true if it was counted, false if the loan is still out
+         */
+        private boolean addDuration(Loan loan) {
+            Date returned = loan.getReturnDate();
+            if (returned == null) {
+                return false;
+            }
+            addDuration(loan.getLoanDate().getTime(), returned.getTime());
+            return true;
+        }
+
+        private void addDuration(long loanMillis, long returnMillis) {
+            long days = (returnMillis - loanMillis) / DAY_MILLIS;
+            durationDays[(int) Math.max(0, Math.min(days, MAX_DURATION_DAYS))]++;
+        }
+
+        /**
+         * Counts the durations of the loans that have been returned since they were tallied.
+         */
+        void recheckOpen(Snapshot<Loan> history) {
+            int stillOpen = 0;
+            for (int i = 0; i < openCount; i++) {
+                if (!addDuration(history.get(open[i]))) {
+                    open[stillOpen++] = open[i];
+                }
+            }
+            openCount = stillOpen;
+        }
+
+        /**
+         * Adds the tallies of a later range of the history to these.
+         */
+        void merge(Tally later) {
+            loans += later.loans;
+            byBook.addAll(later.byBook);
+            byMember.addAll(later.byMember);
+            for (int day = 0; day < durationDays.length; day++) {
+                durationDays[day] += later.durationDays[day];
+            }
+            if (openCount + later.openCount > open.length) {
+                open = Arrays.copyOf(open, Math.max(open.length * 2, openCount + later.openCount));
+            }
+            System.arraycopy(later.open, 0, open, openCount, later.openCount);
+            openCount += later.openCount;
+        }
+
+        /**
+         * Puts the report together. Books and members known only by ID, from the loan history, are looked up in the
+         * library; those removed since are named by their ID.
+         */
+        CirculationReport report(int top, SortedMap<Integer, Long> booksPerDecade, Library library) {
+            Map<String, long[]> byTitle = new HashMap<>();
+            Map<String, long[]> byAuthor = new HashMap<>();
+            byBook.forEach((id, subject, count) -> {
+                Book book = subject != null ? (Book) subject : library.findBookById(id);
+                if (book == null) {
+                    byTitle.computeIfAbsent("Book #" + id, key -> new long[1])[0] += count;
+                    return;
+                }
+                byTitle.computeIfAbsent(book.getTitle(), key -> new long[1])[0] += count;
+                byAuthor.computeIfAbsent(book.getAuthor(), key -> new long[1])[0] += count;
+            });
+            long[] membersByLoans = new long[Long.SIZE];
+            PriorityQueue<CirculationReport.Entry> topMembers = new PriorityQueue<>(RANKING.reversed());
+            byMember.forEach((id, subject, count) -> {
+                membersByLoans[Long.SIZE - 1 - Long.numberOfLeadingZeros(count)]++;
+                offer(topMembers, top, count, subject, member -> {
+                    Member found = member != null ? (Member) member : library.findMemberById((int) id);
+                    return found != null ? found.toString() : "Member #" + id;  // Members are named as "Name (ID)"
+                });
+            });
+            int usedBuckets = membersByLoans.length;
+            while (usedBuckets > 0 && membersByLoans[usedBuckets - 1] == 0) {
+                usedBuckets--;
+            }
+            return new CirculationReport(loans, openCount, top(byTitle, top), top(byAuthor, top), ranking(topMembers),
+                    Arrays.copyOf(membersByLoans, usedBuckets), durationDays.clone(), booksPerDecade);
+        }
+    }
+
+    private static final Comparator<CirculationReport.Entry> RANKING =
+            Comparator.comparingLong(CirculationReport.Entry::getLoans).reversed()
+                    .thenComparing(CirculationReport.Entry::getName);
+
+    private static List<CirculationReport.Entry> top(Map<String, long[]> counts, int top) {
+        PriorityQueue<CirculationReport.Entry> best = new PriorityQueue<>(RANKING.reversed());
+        counts.forEach((name, count) -> offer(best, top, count[0], name, Function.identity()));
+        return ranking(best);
+    }
+
+    private static List<CirculationReport.Entry> ranking(PriorityQueue<CirculationReport.Entry> best) {
+        List<CirculationReport.Entry> ranking = new ArrayList<>(best);
+        ranking.sort(RANKING);
+        return ranking;
+    }
+
+    /**
+     * Keeps a candidate among the best entries found so far if it ranks high enough, naming it only then.
+     *
+     * @param best the best entries so far, worst first
+     */
+    private static <T> void offer(PriorityQueue<CirculationReport.Entry> best, int top, long count, T subject,
+                                  Function<T, String> name) {
+        if (top == 0) {
+            return;
+        }
+        if (best.size() == top) {
+            CirculationReport.Entry worst = best.peek();
+            if (count < worst.getLoans()) {
+                return;
+            }
+            CirculationReport.Entry candidate = new CirculationReport.Entry(name.apply(subject), count);
+            if (RANKING.compare(candidate, worst) < 0) {
+                best.poll();
+                best.add(candidate);
+            }
+            return;
+        }
+        best.add(new CirculationReport.Entry(name.apply(subject), count));
+    }
+
+    /**
+     * Hash table from a primitive ID to a count, with open addressing, keeping the first subject seen for each ID.
+     * A slot is free while its count is zero, so any ID can be a key.
+     */
+    static final class IdCounts {
+        private long[] keys = new long[64];
+        private long[] counts = new long[64];
+        private Object[] subjects = new Object[64];
+        private int size;
+
+        /**
+         * Receives the entries of a table.
+         */
+        interface Visitor {
+            void visit(long id, Object subject, long count);
+        }
+
+        /**
+         * Adds to the count of an ID.
+         *
+         * @param id      the ID
+         * @param subject what the ID stands for, kept if the ID is new or has none yet; may be null
+         * @param count   the amount to add, at least 1
+         */
+        void add(long id, Object subject, long count) {
+            int mask = keys.length - 1;
+            int slot = hash(id) & mask;
+            while (counts[slot] != 0) {
+                if (keys[slot] == id) {
+                    counts[slot] += count;
+                    if (subjects[slot] == null) {
+                        subjects[slot] = subject;
+                    }
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = id;
+            counts[slot] = count;
+            subjects[slot] = subject;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        /**
+         * Adds all counts of another table to this one.
+         *
+         * @param other the other table
+         */
+        void addAll(IdCounts other) {
+            other.forEach(this::add);
+        }
+
+        void forEach(Visitor visitor) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (counts[slot] != 0) {
+                    visitor.visit(keys[slot], subjects[slot], counts[slot]);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldCounts = counts;
+            Object[] oldSubjects = subjects;
+            keys = new long[oldKeys.length * 2];
+            counts = new long[oldKeys.length * 2];
+            subjects = new Object[oldKeys.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldCounts[slot] != 0) {
+                    add(oldKeys[slot], oldSubjects[slot], oldCounts[slot]);
+                }
+            }
+        }
+
+        private static int hash(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;  // Fibonacci hashing spreads sequential IDs over the table
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.ProjectFiles.library;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+
+/**
+ * Circulation figures of a library at one point in time, as computed by {@link CirculationAnalytics}: the
+ * most-borrowed titles, the busiest authors, the most active members and how loans spread over the members, how
+ * long returned loans were kept, and how the catalog spreads over the decades of publication.
+ * <p>
+ * A report is immutable. Rankings hold only the top entries that were asked for; the distributions are complete.
+ */
+public final class CirculationReport {
+    private final long loans;
+    private final long openLoans;
+    private final List<Entry> titles;
+    private final List<Entry> authors;
+    private final List<Entry> members;
+    private final long[] membersByLoans;
+    private final long[] durationDays;
+    private final SortedMap<Integer, Long> booksPerDecade;
+
+    /**
+     * One line of a ranking.
+     */
+    public static final class Entry {
+        private final String name;
+        private final long loans;
+
+        Entry(String name, long loans) {
+            this.name = name;
+            this.loans = loans;
+        }
+
+        /**
+         * @return the title, the author, or the member, as shown to a librarian
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of loans
+         */
+        public long getLoans() {
+            return loans;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + loans;
+        }
+    }
+
+    CirculationReport(long loans, long openLoans, List<Entry> titles, List<Entry> authors, List<Entry> members,
+                      long[] membersByLoans, long[] durationDays, SortedMap<Integer, Long> booksPerDecade) {
+        this.loans = loans;
+        this.openLoans = openLoans;
+        this.titles = Collections.unmodifiableList(titles);
+        this.authors = Collections.unmodifiableList(authors);
+        this.members = Collections.unmodifiableList(members);
+        this.membersByLoans = membersByLoans;
+        this.durationDays = durationDays;
+        this.booksPerDecade = Collections.unmodifiableSortedMap(booksPerDecade);
+    }
+
+    /**
+     * @return the number of loans in the history, returned or not
+     */
+    public long getLoanCount() {
+        return loans;
+    }
+
+    /**
+     * @return the number of loans not returned yet, which the duration distribution leaves out
+     */
+    public long getOpenLoanCount() {
+        return openLoans;
+    }
+
+    /**
+     * @return the titles borrowed most often, most borrowed first; copies and editions of a title count together
+     */
+    public List<Entry> getMostBorrowedTitles() {
+        return titles;
+    }
+
+    /**
+     * @return the authors whose books were borrowed most often, busiest first
+     */
+    public List<Entry> getBusiestAuthors() {
+        return authors;
+    }
+
+    /**
+     * @return the members who borrowed most often, most active first
+     */
+    public List<Entry> getMostActiveMembers() {
+        return members;
+    }
+
+    /**
+     * Gets how the loans spread over the members who borrowed at all.
+     *
+     * @return at index k, the number of members with 2<sup>k</sup> to 2<sup>k+1</sup> - 1 loans
+     */
+    public long[] getMembersByLoanCount() {
+        return membersByLoans.clone();
+    }
+
+    /**
+     * Gets how long returned loans were kept.
+     *
+     * @return at index d, the number of loans returned d whole days after they were made; the last index counts
+     * the loans kept {@value CirculationAnalytics#MAX_DURATION_DAYS} days or longer
+     */
+    public long[] getLoanDurationDays() {
+        return durationDays.clone();
+    }
+
+    /**
+     * Gets a percentile of the time returned loans were kept.
+     *
+     * @param quantile the quantile, between 0 and 1, for example 0.5 for the median
+     * @return the number of whole days, or -1 if no loan has been returned
+     */
+    public int getLoanDurationPercentile(double quantile) {
+        long returned = 0;
+        for (long count : durationDays) {
+            returned += count;
+        }
+        if (returned == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * returned));
+        long seen = 0;
+        for (int day = 0; day < durationDays.length; day++) {
+            seen += durationDays[day];
+            if (seen >= rank) {
+                return day;
+            }
+        }
+        return durationDays.length - 1;
+    }
+
+    /**
+     * @return the number of books in the catalog by decade of publication, for example 1990 for 1990 to 1999
+     */
+    public SortedMap<Integer, Long> getBooksPerDecade() {
+        return booksPerDecade;
+    }
+
+    /**
+     * Formats the report for a person to read.
+     *
+     * @return the report as text
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "Loans: %d (%d open)%n", loans, openLoans));
+        appendRanking(text, "Most borrowed titles", titles);
+        appendRanking(text, "Busiest authors", authors);
+        appendRanking(text, "Most active members", members);
+        text.append(String.format(Locale.ROOT, "Loan duration: median %d days, p90 %d days, p99 %d days%n",
+                getLoanDurationPercentile(0.5), getLoanDurationPercentile(0.9), getLoanDurationPercentile(0.99)));
+        text.append("Books per decade:").append(System.lineSeparator());
+        booksPerDecade.forEach((decade, count) ->
+                text.append(String.format(Locale.ROOT, "  %ds: %d%n", decade, count)));
+        return text.toString();
+    }
+
+    /**
+     * Formats the report as one JSON object.
+     *
+     * @return the report as JSON
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"loans\":").append(loans).append(",\"openLoans\":").append(openLoans);
+        appendRanking(json.append(",\"titles\":"), titles);
+        appendRanking(json.append(",\"authors\":"), authors);
+        appendRanking(json.append(",\"members\":"), members);
+        appendCounts(json.append(",\"membersByLoanCount\":"), membersByLoans);
+        appendCounts(json.append(",\"loanDurationDays\":"), durationDays);
+        json.append(",\"booksPerDecade\":{");
+        booksPerDecade.forEach((decade, count) ->
+                json.append(json.charAt(json.length() - 1) == '{' ? "" : ",")
+                        .append('"').append(decade).append("\":").append(count));
+        return json.append("}}").toString();
+    }
+
+    private static void appendRanking(StringBuilder text, String heading, List<Entry> ranking) {
+        text.append(heading).append(':').append(System.lineSeparator());
+        for (int i = 0; i < ranking.size(); i++) {
+            text.append(String.format(Locale.ROOT, "  %2d. %s (%d)%n",
+                    i + 1, ranking.get(i).getName(), ranking.get(i).getLoans()));
+        }
+    }
+
+    private static void appendRanking(StringBuilder json, List<Entry> ranking) {
+        json.append('[');
+        for (int i = 0; i < ranking.size(); i++) {
+            json.append(i == 0 ? "" : ",").append("{\"name\":");
+            BulkLoader.quoteJson(json, ranking.get(i).getName());
+            json.append(",\"loans\":").append(ranking.get(i).getLoans()).append('}');
+        }
+        json.append(']');
+    }
+
+    private static void appendCounts(StringBuilder json, long[] counts) {
+        json.append('[');
+        for (int i = 0; i < counts.length; i++) {
+            json.append(i == 0 ? "" : ",").append(counts[i]);
+        }
+        json.append(']');
+    }
+}
@@ -0,0 +1,80 @@
+package com.ProjectFiles.library;
+
+/**
+ * A flyweight view of one row in a {@link ColumnarBookStore}.
+ * The view holds nothing but its row: every property is read from the store's columns when asked for, and checkouts
+ * update the row's copy state in place. Two views of the same row are equal, so views can be created freely.
+ */
+final class ColumnarBook extends Book {
+    private final ColumnarBookStore store;  // Store holding the row
+    private final int row;                  // Position of the row in the store's columns
+
+    /**
+     * Creates a view of a row.
+     *
+     * @param store the store holding the row
+     * @param row   the position of the row
+     */
+    ColumnarBook(ColumnarBookStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    ColumnarBookStore store() {
+        return store;
+    }
+
+    int row() {
+        return row;
+    }
+
+    @Override
+    public long getId() {
+        return store.id(row);
+    }
+
+    @Override
+    public String getTitle() {
+        return store.title(row);
+    }
+
+    @Override
+    public String getAuthor() {
+        return store.author(row);
+    }
+
+    @Override
+    public int getYear() {
+        return store.year(row);
+    }
+
+    @Override
+    long state() {
+        return store.state(row);
+    }
+
+    @Override
+    boolean compareAndSetState(long expected, long updated) {
+        return store.compareAndSetState(row, expected, updated);
+    }
+
+    @Override
+    CopyInventory inventory() {
+        return store.inventory(row);
+    }
+
+    @Override
+    Library getOwner() {
+        return store.owner();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ColumnarBook && ((ColumnarBook) other).store == store && ((ColumnarBook) other).row == row;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(store) + row;
+    }
+}
@@ -0,0 +1,388 @@
+package com.ProjectFiles.library;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps books in primitive columns rather than as one object per book, which takes a fraction of the heap
+ * of the {@link MemoryBookStore} for large catalogs.
+ * <p>
+ * Catalog IDs, years, and copy states each have their own array, and titles and authors are stored as codes
+ * from a {@link StringDictionary}. The columns grow one fixed-size chunk at a time, so adding books never copies
+ * existing rows. Books are handed out as {@link ColumnarBook} flyweights holding nothing but their row, and copy
+ * states are updated in place with atomic operations on the copy column. Scans by year or availability read the
+ * year and copy columns directly, without creating a view for rows that do not match. The inventories of the
+ * copies are kept only for rows that have circulated, in a map beside the columns.
+ * <p>
+ * A book that is added is taken over by the store: its copies move into a new row and the book itself is detached,
+ * so later changes must be made through the view the store returns. Removed rows are tombstoned rather than reused,
+ * which keeps views held by loans valid, and the snapshot finds the live rows through {@link LiveRows}, so removing
+ * a book does not revisit every row.
+ */
+final class ColumnarBookStore implements BookStore {
+    private static final int CHUNK_BITS = 12;                     // log2 of the rows per chunk
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int ATTACHED_BIT = Integer.MIN_VALUE;    // Copy column bit standing for Book.ATTACHED
+    private static final VarHandle COPIES = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle REMOVED = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final Library owner;                                   // Library told about copy changes
+    private final StringDictionary titles = new StringDictionary();   // Codes of all titles
+    private final StringDictionary authors = new StringDictionary();  // Codes of all authors
+    private final IdIndex rowsById = new IdIndex();                   // Row of each catalog ID
+    private final KeyIndex rowsByTitle = new KeyIndex();   // Rows by normalized title
+    private final KeyIndex rowsByAuthor = new KeyIndex();  // Rows by normalized author
+    private volatile Chunk[] chunks = new Chunk[16];  // Column chunks, in row order
+    private volatile int rows;                        // Rows written so far, published after the row's columns
+    private volatile LiveRows live = LiveRows.all(0);  // Live rows up to its limit; rows above it are all live
+    private volatile Snapshot<Book> snapshot = Snapshot.empty();  // Current snapshot of the live rows
+    private final Map<Integer, CopyInventory> inventories = new ConcurrentHashMap<>();  // By row, once circulated
+
+    /**
+     * One chunk of every column.
+     */
+    private static final class Chunk {
+        final long[] ids = new long[CHUNK_SIZE];            // Catalog IDs
+        final int[] titles = new int[CHUNK_SIZE];           // Title codes
+        final int[] authors = new int[CHUNK_SIZE];          // Author codes
+        final int[] years = new int[CHUNK_SIZE];            // Publication years
+        final int[] copies = new int[CHUNK_SIZE];           // Copies on hand, with ATTACHED_BIT while attached
+        final long[] removed = new long[CHUNK_SIZE / 64];   // Tombstone bits
+    }
+
+    /**
+     * Creates an empty store whose books report their copy changes to the given library.
+     *
+     * @param owner the library the books belong to
+     */
+    ColumnarBookStore(Library owner) {
+        this.owner = owner;
+    }
+
+    @Override
+    public Snapshot<Book> snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public Book add(Book book) {
+        if (book instanceof ColumnarBook && ((ColumnarBook) book).store() == this) {
+            int row = ((ColumnarBook) book).row();
+            if (isRemoved(row)) {
+                setRemoved(row, false);
+                live = live.with(row, false, rows);
+                publish();
+            }
+            return book;
+        }
+        int copies = book.detach();  // The row takes over the copy state from here on
+        int row = rows;
+        Chunk[] directory = chunks;
+        int index = row >>> CHUNK_BITS;
+        if (index == directory.length) {
+            directory = Arrays.copyOf(directory, directory.length * 2);
+        }
+        if (directory[index] == null) {
+            directory[index] = new Chunk();
+        }
+        Chunk chunk = directory[index];
+        int slot = row & CHUNK_MASK;
+        chunk.ids[slot] = book.getId();
+        chunk.titles[slot] = titles.encode(book.getTitle());
+        chunk.authors[slot] = authors.encode(book.getAuthor());
+        chunk.years[slot] = book.getYear();
+        chunk.copies[slot] = ATTACHED_BIT | copies;
+        chunks = directory;
+        rows = row + 1;  // Publishes the row
+        rowsById.put(book.getId(), row);
+        rowsByTitle.add(Library.normalize(book.getTitle()), row);
+        rowsByAuthor.add(Library.normalize(book.getAuthor()), row);
+        publish();
+        return new ColumnarBook(this, row);
+    }
+
+    @Override
+    public boolean remove(Book book) {
+        if (!(book instanceof ColumnarBook) || ((ColumnarBook) book).store() != this) {
+            return false;
+        }
+        int row = ((ColumnarBook) book).row();
+        if (isRemoved(row)) {
+            return false;
+        }
+        setRemoved(row, true);
+        live = live.with(row, true, rows);
+        publish();
+        return true;
+    }
+
+    @Override
+    public Book findById(long id) {
+        int row = rowsById.get(id);
+        return row < 0 || isRemoved(row) ? null : new ColumnarBook(this, row);
+    }
+
+    @Override
+    public List<Book> findByTitle(String title) {
+        return lookup(rowsByTitle, title);
+    }
+
+    @Override
+    public List<Book> findByAuthor(String author) {
+        return lookup(rowsByAuthor, author);
+    }
+
+    /**
+     * Scans the year column chunk by chunk.
+     */
+    @Override
+    public List<Book> findByYears(int from, int to) {
+        int count = rows;
+        Chunk[] directory = chunks;
+        List<Book> matches = new ArrayList<>();
+        for (int base = 0; base < count; base += CHUNK_SIZE) {
+            Chunk chunk = directory[base >>> CHUNK_BITS];
+            int[] years = chunk.years;
+            int end = Math.min(CHUNK_SIZE, count - base);
+            for (int slot = 0; slot < end; slot++) {
+                int year = years[slot];
+                if (year >= from && year <= to && !isRemoved(chunk, slot)) {
+                    matches.add(new ColumnarBook(this, base + slot));
+                }
+            }
+        }
+        return Collections.unmodifiableList(matches);
+    }
+
+    /**
+     * Scans the copy column chunk by chunk.
+     */
+    @Override
+    public List<Book> findAvailable() {
+        int count = rows;
+        Chunk[] directory = chunks;
+        List<Book> matches = new ArrayList<>();
+        for (int base = 0; base < count; base += CHUNK_SIZE) {
+            Chunk chunk = directory[base >>> CHUNK_BITS];
+            int[] copies = chunk.copies;
+            int end = Math.min(CHUNK_SIZE, count - base);
+            for (int slot = 0; slot < end; slot++) {
+                if ((copies[slot] & ~ATTACHED_BIT) > 0 && !isRemoved(chunk, slot)) {
+                    matches.add(new ColumnarBook(this, base + slot));
+                }
+            }
+        }
+        return Collections.unmodifiableList(matches);
+    }
+
+    long id(int row) {
+        return chunk(row).ids[row & CHUNK_MASK];
+    }
+
+    String title(int row) {
+        return titles.decode(chunk(row).titles[row & CHUNK_MASK]);
+    }
+
+    String author(int row) {
+        return authors.decode(chunk(row).authors[row & CHUNK_MASK]);
+    }
+
+    int year(int row) {
+        return chunk(row).years[row & CHUNK_MASK];
+    }
+
+    long state(int row) {
+        int value = (int) COPIES.getVolatile(chunk(row).copies, row & CHUNK_MASK);
+        return (value << 1 >> 1 & 0xFFFFFFFFL) | (value < 0 ? Book.ATTACHED : 0L);  // Copies may replay below 0
+    }
+
+    boolean compareAndSetState(int row, long expected, long updated) {
+        return COPIES.compareAndSet(chunk(row).copies, row & CHUNK_MASK, encodeState(expected), encodeState(updated));
+    }
+
+    CopyInventory inventory(int row) {
+        return inventories.computeIfAbsent(row, key -> new CopyInventory(Book.copies(state(key))));
+    }
+
+    Library owner() {
+        return owner;
+    }
+
+    private static int encodeState(long state) {
+        return (Book.copies(state) & ~ATTACHED_BIT) | ((state & Book.ATTACHED) != 0 ? ATTACHED_BIT : 0);
+    }
+
+    private Chunk chunk(int row) {
+        return chunks[row >>> CHUNK_BITS];
+    }
+
+    private boolean isRemoved(int row) {
+        return isRemoved(chunk(row), row & CHUNK_MASK);
+    }
+
+    private static boolean isRemoved(Chunk chunk, int slot) {
+        return ((long) REMOVED.getVolatile(chunk.removed, slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    private void setRemoved(int row, boolean removed) {
+        long[] words = chunk(row).removed;
+        int word = (row & CHUNK_MASK) >>> 6;
+        long bit = 1L << row;
+        long current = (long) REMOVED.getVolatile(words, word);
+        REMOVED.setVolatile(words, word, removed ? current | bit : current & ~bit);
+    }
+
+    private void publish() {
+        LiveRows current = live;
+        int size = current.size();
+        int limit = current.limit();
+        snapshot = Snapshot.indexed(size + rows - limit, position ->
+                new ColumnarBook(this, position < size ? current.row(position) : limit + position - size));
+    }
+
+    private List<Book> lookup(KeyIndex index, String key) {
+        List<Book> books = new ArrayList<>();
+        for (int row = index.newest(key); row >= 0; row = index.previous(row)) {
+            if (!isRemoved(row)) {
+                books.add(new ColumnarBook(this, row));
+            }
+        }
+        if (books.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.reverse(books);  // Chains run newest first; lookups answer in store order
+        return Collections.unmodifiableList(books);
+    }
+
+    /**
+     * Int column that grows in chunks and can be read while a single writer appends to it.
+     */
+    private static final class IntColumn {
+        private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(int[].class);
+
+        private volatile int[][] chunks = new int[16][];
+
+        int get(int index) {
+            int[][] directory = chunks;
+            int chunk = index >>> CHUNK_BITS;
+            return chunk < directory.length && directory[chunk] != null
+                    ? (int) VALUES.getAcquire(directory[chunk], index & CHUNK_MASK) : 0;
+        }
+
+        void set(int index, int value) {
+            int[][] directory = chunks;
+            int chunk = index >>> CHUNK_BITS;
+            if (chunk >= directory.length) {
+                directory = Arrays.copyOf(directory, Math.max(directory.length * 2, chunk + 1));
+            }
+            if (directory[chunk] == null) {
+                directory[chunk] = new int[CHUNK_SIZE];
+            }
+            VALUES.setRelease(directory[chunk], index & CHUNK_MASK, value);
+            chunks = directory;
+        }
+    }
+
+    /**
+     * Index from a normalized key to its rows, kept as chains through primitive columns: the key is encoded in a
+     * dictionary, a column indexed by key code holds the newest row with that key, and a column indexed by row
+     * links each row to the previous row with the same key.
+     */
+    private static final class KeyIndex {
+        private final StringDictionary keys = new StringDictionary();  // Codes of the normalized keys
+        private final IntColumn newest = new IntColumn();               // Newest row + 1 by key code, 0 if none
+        private final IntColumn previous = new IntColumn();             // Previous row + 1 by row, 0 if none
+
+        void add(String key, int row) {
+            int code = keys.encode(key);
+            previous.set(row, newest.get(code));
+            newest.set(code, row + 1);
+        }
+
+        int newest(String key) {
+            int code = keys.find(key);
+            return code < 0 ? -1 : newest.get(code) - 1;
+        }
+
+        int previous(int row) {
+            return previous.get(row) - 1;
+        }
+    }
+
+    /**
+     * Open-addressing hash table from catalog ID to row, held in two primitive arrays.
+     * A single writer inserts; readers probe without locking and see each entry once its key is published.
+     */
+    private static final class IdIndex {
+        private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+        private static final long EMPTY = 0L;  // Catalog IDs start at 1, so 0 marks a free slot
+
+        private volatile Table table = new Table(1 << 10);
+        private int size;  // Entries in the table, guarded by the store's writer
+
+        private static final class Table {
+            final long[] keys;
+            final int[] rows;
+
+            Table(int capacity) {
+                keys = new long[capacity];
+                rows = new int[capacity];
+            }
+        }
+
+        int get(long id) {
+            Table current = table;
+            int mask = current.keys.length - 1;
+            for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+                long key = (long) KEYS.getAcquire(current.keys, slot);
+                if (key == id) {
+                    return current.rows[slot];
+                }
+                if (key == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(long id, int row) {
+            Table current = table;
+            if ((size + 1) * 2 > current.keys.length) {
+                Table grown = new Table(current.keys.length * 2);
+                for (int slot = 0; slot < current.keys.length; slot++) {
+                    if (current.keys[slot] != EMPTY) {
+                        insert(grown, current.keys[slot], current.rows[slot]);
+                    }
+                }
+                table = grown;
+                current = grown;
+            }
+            if (insert(current, id, row)) {
+                size++;
+            }
+        }
+
+        private static boolean insert(Table table, long id, int row) {
+            int mask = table.keys.length - 1;
+            for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+                long key = table.keys[slot];
+                if (key == id || key == EMPTY) {
+                    table.rows[slot] = row;
+                    KEYS.setRelease(table.keys, slot, id);  // Publishes the row together with the key
+                    return key == EMPTY;
+                }
+            }
+        }
+
+        private static int hash(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
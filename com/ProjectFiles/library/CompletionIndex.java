@@ -0,0 +1,492 @@
+package com.ProjectFiles.library;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Prefix completion over one text field of the library's books, such as titles or authors, ranked by the number of
+ * copies on hand. Books whose field normalizes to the same text share one completion, and its weight is the sum
+ * of their copies.
+ * <p>
+ * Completions live in a sorted array, so the completions of a prefix form one contiguous range found by binary
+ * search. A max segment tree over the weights yields the heaviest completions of that range best first, so a
+ * lookup costs O(limit log n) however many completions share the prefix. Completions added after the array was
+ * built are kept in a small sorted map next to it and merged in once a few thousand have piled up.
+ * <p>
+ * Adding and removing books synchronizes on the index. Checkouts and check-ins adjust the weights without
+ * locking: each weight is an atomic counter, and every node on the path above it is rewritten until it agrees with
+ * its children, so concurrent adjustments settle on the right maxima. A rebuild freezes the state it replaces and
+ * waits for the adjustments in flight, and later ones retry on the new state. Lookups never block and read the
+ * weights from atomic arrays, so they may run on any thread while copies are checked out and in.
+ */
+final class CompletionIndex {
+    private static final int MAX_RECENT = 4096;   // Recent completions kept before a rebuild, each lookup scans them
+    private static final int MIN_REBUILD = 1024;  // Dead completions always tolerated before a rebuild
+    private static final int DEAD = -1;           // Tree value of a completion no book has any more
+
+    private final Function<Book, String> field;  // Text field of a book being completed
+    private volatile State state;                // Current completions, replaced on every rebuild
+
+    /**
+     * Completions of one build: the sorted array with its segment tree, plus the ones added since.
+     */
+    private static final class State {
+        final String[] keys;     // Normalized completions, sorted
+        final String[] texts;    // Completion text as first added, by position
+        final AtomicIntegerArray books;    // Number of books with each completion, changed under the index lock
+        final AtomicIntegerArray weights;  // Copies on hand for each completion
+        final int leaves;        // Position of the first leaf in the tree, a power of two
+        final AtomicIntegerArray tree;  // Max segment tree over the weights, DEAD for empty completions
+        final Map<String, Recent> recent = new ConcurrentSkipListMap<>();  // Completions added since the build
+        final LongAdder adjusting = new LongAdder();  // Adjustments in flight on this state
+        volatile boolean frozen; // Set once a rebuild has started copying the state, guarded by the index
+        int dead;                // Completions that no book has any more, guarded by the index
+
+        State(String[] keys, String[] texts, int[] books, int[] weights) {
+            this.keys = keys;
+            this.texts = texts;
+            this.books = new AtomicIntegerArray(books);
+            this.weights = new AtomicIntegerArray(weights);
+            this.leaves = Integer.highestOneBit(Math.max(1, keys.length - 1)) << 1;
+            this.tree = new AtomicIntegerArray(2 * leaves);
+            for (int i = 0; i < leaves; i++) {
+                tree.set(leaves + i, i < keys.length ? leaf(i) : DEAD);
+            }
+            for (int node = leaves - 1; node > 0; node--) {
+                tree.set(node, children(node));
+            }
+        }
+
+        int position(String key) {
+            int position = Arrays.binarySearch(keys, key);
+            return position >= 0 ? position : -1;
+        }
+
+        /**
+         * Brings the tree up to date with a completion's weight. Each node is written and then checked against
+         * what it was computed from, and written again if that changed meanwhile; whichever of two concurrent
+         * refreshes writes last has checked the latest values, so the tree settles on the right maxima.
+         */
+        void refresh(int position) {
+            int node = leaves + position;
+            int value;
+            do {
+                value = leaf(position);
+                tree.set(node, value);
+            } while (value != leaf(position));
+            for (node >>= 1; node > 0; node >>= 1) {
+                do {
+                    value = children(node);
+                    tree.set(node, value);
+                } while (value != children(node));
+            }
+        }
+
+        private int leaf(int position) {
+            return books.get(position) > 0 ? weights.get(position) : DEAD;
+        }
+
+        private int children(int node) {
+            return Math.max(tree.get(2 * node), tree.get(2 * node + 1));
+        }
+    }
+
+    /**
+     * A completion added since the last build.
+     */
+    private static final class Recent {
+        final String text;     // Completion text as first added
+        final AtomicInteger weight = new AtomicInteger();  // Copies on hand across those books
+        volatile int books;    // Number of books with the completion, changed under the index lock
+
+        Recent(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * Builds an index over one field of the given books.
+     *
+     * @param field the text field to complete
+     * @param books the books to start with
+     */
+    CompletionIndex(Function<Book, String> field, Iterable<Book> books) {
+        this.field = field;
+        Map<String, Recent> totals = new HashMap<>();
+        for (Book book : books) {
+            String text = field.apply(book);
+            Recent total = totals.computeIfAbsent(Library.normalize(text), key -> new Recent(text));
+            total.books++;
+            total.weight.addAndGet(book.getAmount());
+        }
+        String[] keys = totals.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        int[] counts = new int[keys.length];
+        int[] weights = new int[keys.length];
+        String[] texts = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            Recent total = totals.get(keys[i]);
+            counts[i] = total.books;
+            weights[i] = total.weight.get();
+            texts[i] = total.text;
+        }
+        this.state = new State(keys, texts, counts, weights);
+    }
+
+    /**
+     * Adds a book's completion, or adds the book's copies to an existing one.
+     *
+     * @param book the book added to the library
+     */
+    synchronized void add(Book book) {
+        String text = field.apply(book);
+        String key = Library.normalize(text);
+        State current = state;
+        int position = current.position(key);
+        if (position >= 0) {
+            current.weights.addAndGet(position, book.getAmount());
+            if (current.books.getAndIncrement(position) == 0) {
+                current.dead--;
+            }
+            current.refresh(position);
+            return;
+        }
+        Recent recent = current.recent.computeIfAbsent(key, k -> new Recent(text));
+        recent.weight.addAndGet(book.getAmount());
+        recent.books++;
+        if (current.recent.size() > MAX_RECENT) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Takes a book's copies out of its completion, dropping the completion when no book has it any more.
+     *
+     * @param book the book removed from the library
+     */
+    synchronized void remove(Book book) {
+        String key = Library.normalize(field.apply(book));
+        State current = state;
+        int position = current.position(key);
+        if (position >= 0) {
+            current.weights.addAndGet(position, -book.getAmount());
+            if (current.books.decrementAndGet(position) == 0) {
+                current.dead++;
+            }
+            current.refresh(position);
+            if (current.dead > Math.max(MIN_REBUILD, current.keys.length / 8)) {
+                rebuild();
+            }
+            return;
+        }
+        Recent recent = current.recent.get(key);
+        if (recent != null) {
+            recent.weight.addAndGet(-book.getAmount());
+            if (--recent.books == 0) {
+                current.recent.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Moves a book's completion up or down the ranking after a checkout or check-in, without locking. If a
+     * rebuild is copying the state, the adjustment waits for the new state and is made there instead.
+     *
+     * @param book  the book whose copies changed
+     * @param delta the change in copies on hand
+     */
+    void adjust(Book book, int delta) {
+        String key = Library.normalize(field.apply(book));
+        while (true) {
+            State current = state;
+            if (current.frozen) {
+                Thread.onSpinWait();  // The rebuild publishes a new state shortly
+                continue;
+            }
+            current.adjusting.increment();
+            try {
+                if (current.frozen) {
+                    continue;  // Frozen meanwhile; the rebuild may already have copied this weight
+                }
+                int position = current.position(key);
+                if (position >= 0) {
+                    current.weights.addAndGet(position, delta);
+                    current.refresh(position);
+                } else {
+                    Recent recent = current.recent.get(key);
+                    if (recent != null) {
+                        recent.weight.addAndGet(delta);
+                    }
+                }
+                return;
+            } finally {
+                current.adjusting.decrement();
+            }
+        }
+    }
+
+    /**
+     * Returns the completions of a prefix with the most copies on hand, best first.
+     *
+     * @param prefix the normalized prefix
+     * @param limit  the maximum number of completions
+     * @return the completion texts, best first; ties keep alphabetical order
+     */
+    List<String> complete(String prefix, int limit) {
+        State current = state;
+        String end = prefix + Character.MAX_VALUE;
+        int from = lowerBound(current.keys, prefix);
+        int to = lowerBound(current.keys, end);
+
+        List<Candidate> candidates = new ArrayList<>();
+        // Each entry is {weight, first position, node}, read once so concurrent checkouts cannot reorder the queue
+        PriorityQueue<int[]> nodes = new PriorityQueue<>((a, b) -> a[0] != b[0]
+                ? Integer.compare(b[0], a[0]) : Integer.compare(a[1], b[1]));
+        for (int left = from + current.leaves, right = to + current.leaves; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) != 0) {
+                nodes.add(entry(current, left++));
+            }
+            if ((right & 1) != 0) {
+                nodes.add(entry(current, --right));
+            }
+        }
+        while (!nodes.isEmpty() && candidates.size() < limit) {
+            int[] entry = nodes.poll();
+            if (entry[0] == DEAD) {
+                break;  // Only completions without books remain
+            }
+            int node = entry[2];
+            if (node >= current.leaves) {
+                int position = node - current.leaves;
+                candidates.add(new Candidate(current.keys[position], current.texts[position], entry[0]));
+            } else {
+                nodes.add(entry(current, 2 * node));
+                nodes.add(entry(current, 2 * node + 1));
+            }
+        }
+        for (Map.Entry<String, Recent> entry : ((ConcurrentSkipListMap<String, Recent>) current.recent)
+                .subMap(prefix, end).entrySet()) {
+            candidates.add(new Candidate(entry.getKey(), entry.getValue().text, entry.getValue().weight.get()));
+        }
+        candidates.sort(Comparator.comparingInt((Candidate candidate) -> -candidate.weight)
+                .thenComparing(candidate -> candidate.key));
+        List<String> texts = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (Candidate candidate : candidates.subList(0, Math.min(limit, candidates.size()))) {
+            texts.add(candidate.text);
+        }
+        return Collections.unmodifiableList(texts);
+    }
+
+    /**
+     * Finds the completions within the given number of edits of a key, that is insertions, deletions, or
+     * substitutions of single characters.
+     * <p>
+     * The sorted array is walked as an implicit trie: keys sharing a prefix form one range, whose children are
+     * found by binary search on the next character. Each prefix carries one row of the edit distance table against
+     * the key, and a range is left as soon as every entry of its row exceeds the bound, so only prefixes that could
+     * still end up close to the key are visited. The few recent completions are compared one by one.
+     *
+     * @param key      the normalized key
+     * @param maxEdits the largest number of edits allowed
+     * @return the matching keys, fewest edits first, then most copies on hand, then alphabetical
+     */
+    List<String> nearest(String key, int maxEdits) {
+        State current = state;
+        List<Candidate> matches = new ArrayList<>();
+        int[] row = new int[key.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = Math.min(j, maxEdits + 1);
+        }
+        visit(current, key, maxEdits, 0, current.keys.length, 0, row, matches);
+        for (Map.Entry<String, Recent> entry : current.recent.entrySet()) {
+            int distance = distance(key, entry.getKey(), maxEdits);
+            if (distance <= maxEdits) {
+                matches.add(new Candidate(entry.getKey(), distance, entry.getValue().weight.get()));
+            }
+        }
+        matches.sort(Comparator.comparingInt((Candidate match) -> match.edits)
+                .thenComparingInt(match -> -match.weight)
+                .thenComparing(match -> match.key));
+        List<String> keys = new ArrayList<>(matches.size());
+        for (Candidate match : matches) {
+            keys.add(match.key);
+        }
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Visits the keys in [from, to), which all start with the same prefix of the given length.
+     *
+     * @param row the edit distances between that prefix and each prefix of the key
+     */
+    private static void visit(State state, String key, int maxEdits, int from, int to, int depth, int[] row,
+                              List<Candidate> matches) {
+        if (from < to && state.keys[from].length() == depth) {
+            if (row[key.length()] <= maxEdits && state.books.get(from) > 0) {  // The prefix itself is a completion
+                matches.add(new Candidate(state.keys[from], row[key.length()], state.weights.get(from)));
+            }
+            from++;
+        }
+        int low = Math.max(0, depth - maxEdits);        // Entries outside the band are always too far
+        int high = Math.min(key.length(), depth + maxEdits);
+        int best = Integer.MAX_VALUE;
+        for (int j = low; j <= high; j++) {
+            best = Math.min(best, row[j]);
+        }
+        if (best > maxEdits) {
+            return;  // Every extension of the prefix is too far from the key
+        }
+        int far = maxEdits + 1;
+        while (from < to) {
+            char next = state.keys[from].charAt(depth);
+            int end = from + 1;
+            int upper = end;
+            for (int step = 1; upper < to && state.keys[upper].charAt(depth) <= next; step <<= 1) {
+                end = upper + 1;  // Gallop first, most ranges are short
+                upper = Math.min(to, upper + step);
+            }
+            while (end < upper) {  // First key in the range with a larger character at depth
+                int mid = (end + upper) >>> 1;
+                if (state.keys[mid].charAt(depth) <= next) {
+                    end = mid + 1;
+                } else {
+                    upper = mid;
+                }
+            }
+            int[] extended = new int[row.length];
+            Arrays.fill(extended, far);
+            extended[0] = Math.min(far, row[0] + 1);
+            for (int j = Math.max(1, low), last = Math.min(key.length(), high + 1); j <= last; j++) {
+                int substitution = row[j - 1] + (key.charAt(j - 1) == next ? 0 : 1);
+                extended[j] = Math.min(far, Math.min(substitution, Math.min(row[j], extended[j - 1]) + 1));
+            }
+            visit(state, key, maxEdits, from, end, depth + 1, extended, matches);
+            from = end;
+        }
+    }
+
+    /**
+     * Returns the edit distance between two strings, or maxEdits + 1 once it is known to be larger than that.
+     */
+    private static int distance(String key, String other, int maxEdits) {
+        if (Math.abs(key.length() - other.length()) > maxEdits) {
+            return maxEdits + 1;
+        }
+        int[] row = new int[key.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+        for (int i = 0; i < other.length(); i++) {
+            int diagonal = row[0];
+            row[0] = i + 1;
+            int best = row[0];
+            for (int j = 1; j < row.length; j++) {
+                int above = row[j];
+                int substitution = diagonal + (key.charAt(j - 1) == other.charAt(i) ? 0 : 1);
+                row[j] = Math.min(substitution, Math.min(above, row[j - 1]) + 1);
+                diagonal = above;
+                best = Math.min(best, row[j]);
+            }
+            if (best > maxEdits) {
+                return maxEdits + 1;
+            }
+        }
+        return Math.min(row[key.length()], maxEdits + 1);
+    }
+
+    /**
+     * Merges the recent completions into a new sorted array and drops completions without books. The state is
+     * frozen and the adjustments in flight are waited for first, so no adjustment lands after its weight was copied.
+     */
+    private void rebuild() {
+        State current = state;
+        current.frozen = true;
+        while (current.adjusting.sum() != 0) {
+            Thread.onSpinWait();
+        }
+        int size = current.keys.length - current.dead + current.recent.size();
+        String[] keys = new String[size];
+        String[] texts = new String[size];
+        int[] books = new int[size];
+        int[] weights = new int[size];
+        Iterator<Map.Entry<String, Recent>> added = current.recent.entrySet().iterator();  // Sorted by key
+        Map.Entry<String, Recent> next = added.hasNext() ? added.next() : null;
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            while (position < current.keys.length && current.books.get(position) == 0) {
+                position++;
+            }
+            if (next == null || position < current.keys.length && current.keys[position].compareTo(next.getKey()) < 0) {
+                keys[i] = current.keys[position];
+                texts[i] = current.texts[position];
+                books[i] = current.books.get(position);
+                weights[i] = current.weights.get(position++);
+            } else {
+                keys[i] = next.getKey();
+                texts[i] = next.getValue().text;
+                books[i] = next.getValue().books;
+                weights[i] = next.getValue().weight.get();
+                next = added.hasNext() ? added.next() : null;
+            }
+        }
+        state = new State(keys, texts, books, weights);
+    }
+
+    private static int[] entry(State state, int node) {
+        int first = node;
+        while (first < state.leaves) {
+            first <<= 1;
+        }
+        return new int[] {state.tree.get(node), first - state.leaves, node};
+    }
+
+    private static int lowerBound(String[] keys, String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A completion considered for a lookup.
+     */
+    private static final class Candidate {
+        final String key;
+        final String text;
+        final int edits;   // Edits away from the key looked up, 0 for prefix completion
+        final int weight;
+
+        Candidate(String key, String text, int weight) {
+            this.key = key;
+            this.text = text;
+            this.edits = 0;
+            this.weight = weight;
+        }
+
+        Candidate(String key, int edits, int weight) {
+            this.key = key;
+            this.text = key;
+            this.edits = edits;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.ProjectFiles.library;
+
+import java.util.Arrays;
+
+/**
+ * The physical copies of one book, numbered from 0, and which of them are on the shelf.
+ * <p>
+ * The copies on the shelf are kept as a bitset with one bit per copy, plus a summary with one bit per nonzero word
+ * of it, so finding a free copy reads one summary word and one bitset word for every 4,096 copies of the book: a
+ * course reserve with thousands of copies is checked out and in without scanning its copies, and the inventory
+ * costs two bits per copy rather than an object. The copy count on the {@link Book} stays the authority on how
+ * many copies are on hand; a book puts a copy back before it counts it, and takes one after, so the bitset never
+ * has fewer copies on the shelf than the count.
+ * <p>
+ * Copies taken without a loan to remember their number, through {@link Book#tryCheckOut()} or while the journal
+ * replays copy changes, are marked as loose; a copy checked in without a number puts back a loose copy, and only
+ * if there is none is a new copy numbered. All methods are synchronized on the inventory, and each holds the
+ * lock for a few word operations.
+ */
+final class CopyInventory {
+    /** Stands for the number of a copy that is unknown or was not taken. */
+    static final int NO_COPY = -1;
+
+    private long[] shelf;    // Bit c set while copy c is on the shelf
+    private long[] summary;  // Bit w set while word w of the shelf has a copy on it
+    private long[] loose;    // Bit c set while copy c is out without a loan that knows its number
+    private int copies;      // Copies numbered so far
+    private int looseCount;  // Bits set in loose
+
+    /**
+     * Numbers the copies on hand from 0, all on the shelf.
+     *
+     * @param onShelf the number of copies on hand
+     */
+    CopyInventory(int onShelf) {
+        restore(onShelf, new int[0]);
+    }
+
+    /**
+     * Takes the lowest-numbered copy on the shelf.
+     *
+     * @param untracked whether the copy leaves without a loan that knows its number, in which case it is marked
+     *                  as loose
+     * @return the number of the copy, or {@link #NO_COPY} if no copy is on the shelf
+     */
+    synchronized int take(boolean untracked) {
+        int copy = firstOnShelf();
+        if (copy == NO_COPY) {
+            return NO_COPY;
+        }
+        clearShelf(copy);
+        if (untracked) {
+            loose[copy >>> 6] |= 1L << copy;
+            looseCount++;
+        }
+        return copy;
+    }
+
+    /**
+     * Puts a copy back on the shelf. A copy whose number is unknown, or that is already on the shelf, stands for a
+     * loose copy, or a new one if no copy is loose.
+     *
+     * @param copy the number of the copy, or {@link #NO_COPY}
+     * @return the number of the copy put back
+     */
+    synchronized int putBack(int copy) {
+        if (copy < 0 || copy >= copies || isOnShelf(copy)) {
+            copy = looseCount > 0 ? firstLoose() : newCopy();
+        }
+        if ((loose[copy >>> 6] & 1L << copy) != 0) {
+            loose[copy >>> 6] &= ~(1L << copy);
+            looseCount--;
+        }
+        shelf[copy >>> 6] |= 1L << copy;
+        summary[copy >>> 12] |= 1L << (copy >>> 6);
+        return copy;
+    }
+
+    /**
+     * Renumbers the copies from the copies on hand and the copies out on loan, as they are after the journal has
+     * been replayed: the copies out keep their numbers, and the copies on hand take the lowest numbers left.
+     * Copies out without a known number get one when they come back.
+     *
+     * @param onShelf the number of copies on hand
+     * @param out     the numbers of the copies out on loan; {@link #NO_COPY} entries are ignored
+     */
+    synchronized void restore(int onShelf, int[] out) {
+        int highest = NO_COPY;
+        for (int copy : out) {
+            highest = Math.max(highest, copy);
+        }
+        long[] taken = new long[words(highest + 1)];
+        int numbered = 0;
+        for (int copy : out) {
+            if (copy >= 0 && (taken[copy >>> 6] & 1L << copy) == 0) {
+                taken[copy >>> 6] |= 1L << copy;
+                numbered++;
+            }
+        }
+        copies = Math.max(highest + 1, onShelf + numbered);
+        shelf = new long[words(copies)];
+        summary = new long[words(shelf.length)];
+        loose = new long[shelf.length];
+        looseCount = 0;
+        for (int copy = 0, placed = 0; placed < onShelf; copy++) {
+            if (copy >= highest + 1 || (taken[copy >>> 6] & 1L << copy) == 0) {
+                shelf[copy >>> 6] |= 1L << copy;
+                summary[copy >>> 12] |= 1L << (copy >>> 6);
+                placed++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of copies numbered so far, on the shelf or not
+     */
+    synchronized int size() {
+        return copies;
+    }
+
+    /**
+     * @return true if the copy is on the shelf, false if it is out or does not exist
+     */
+    synchronized boolean isOnShelf(int copy) {
+        return copy >= 0 && copy < copies && (shelf[copy >>> 6] & 1L << copy) != 0;
+    }
+
+    private int firstOnShelf() {
+        for (int s = 0; s < summary.length; s++) {
+            if (summary[s] != 0) {
+                int word = s << 6 | Long.numberOfTrailingZeros(summary[s]);
+                return word << 6 | Long.numberOfTrailingZeros(shelf[word]);
+            }
+        }
+        return NO_COPY;
+    }
+
+    private int firstLoose() {
+        for (int word = 0; ; word++) {
+            if (loose[word] != 0) {
+                return word << 6 | Long.numberOfTrailingZeros(loose[word]);
+            }
+        }
+    }
+
+    private void clearShelf(int copy) {
+        int word = copy >>> 6;
+        shelf[word] &= ~(1L << copy);
+        if (shelf[word] == 0) {
+            summary[word >>> 6] &= ~(1L << word);
+        }
+    }
+
+    private int newCopy() {
+        int copy = copies++;
+        if (words(copies) > shelf.length) {
+            int length = Math.max(shelf.length * 2, 1);
+            shelf = Arrays.copyOf(shelf, length);
+            loose = Arrays.copyOf(loose, length);
+            summary = Arrays.copyOf(summary, words(length));
+        }
+        return copy;
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+}
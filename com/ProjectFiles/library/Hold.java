@@ -0,0 +1,115 @@
+package com.ProjectFiles.library;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Represents a member's place in the queue for a book that had no copy on hand.
+ * A hold waits until a returned copy is set aside for it, and is then ready for pickup until its deadline passes.
+ * Holds are served in the order they were placed.
+ */
+public class Hold {
+    /**
+     * The stages of a hold's life.
+     */
+    public enum Status {
+        WAITING,    // In the queue for the next returned copy
+        READY,      // A copy is set aside for the member until the pickup deadline
+        FULFILLED,  // The member borrowed the copy that was set aside
+        CANCELLED,  // Withdrawn before it was fulfilled
+        EXPIRED     // The copy was not picked up in time and went to the next member
+    }
+
+    private final Member member;            // The member waiting for the book
+    private final Book book;                // The book being waited for
+    private final Date placedDate;          // The date on which the hold was placed
+    final long ticket;                      // Order of the hold in its book's queue
+    private volatile Status status = Status.WAITING;  // Current stage, changed under the queue's lock
+    private volatile Date pickupDeadline;   // Date by which a ready copy has to be picked up, null until ready
+    ScheduledFuture<?> expiry;              // Pending expiry of a ready hold, guarded by the queue's lock
+
+    /**
+     * Constructs a waiting hold.
+     *
+     * @param member the member placing the hold
+     * @param book   the book to hold
+     * @param ticket the order of the hold in the book's queue
+     */
+    Hold(Member member, Book book, long ticket) {
+        this.member = member;
+        this.book = book;
+        this.ticket = ticket;
+        this.placedDate = new Date();
+    }
+
+    /**
+     * Moves the hold to another stage.
+     *
+     * @param status         the new stage
+     * @param pickupDeadline the pickup deadline for a ready hold, null otherwise
+     */
+    void moveTo(Status status, Date pickupDeadline) {
+        this.status = status;
+        this.pickupDeadline = pickupDeadline;
+    }
+
+    /**
+     * Checks whether the hold is still waiting or ready, as opposed to fulfilled, cancelled, or expired.
+     *
+     * @return true if the hold is active
+     */
+    public boolean isActive() {
+        Status current = status;
+        return current == Status.WAITING || current == Status.READY;
+    }
+
+    /**
+     * Retrieves the current stage of the hold.
+     *
+     * @return the status of the hold
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Retrieves the member who placed the hold.
+     *
+     * @return the waiting member
+     */
+    public Member getMember() {
+        return member;
+    }
+
+    /**
+     * Retrieves the book being held.
+     *
+     * @return the held book
+     */
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * Retrieves the date the hold was placed.
+     *
+     * @return the date the hold was placed
+     */
+    public Date getPlacedDate() {
+        return placedDate;
+    }
+
+    /**
+     * Retrieves the date by which the copy set aside for the hold has to be picked up.
+     *
+     * @return the pickup deadline, or null if no copy is set aside
+     */
+    public Date getPickupDeadline() {
+        return pickupDeadline;
+    }
+
+    @Override
+    public String toString() {
+        return member + " waiting for " + book + " (" + status + ")";
+    }
+}
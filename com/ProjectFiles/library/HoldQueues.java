@@ -0,0 +1,379 @@
+package com.ProjectFiles.library;
+
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a first-come, first-served hold queue for each book that members have asked to be kept for them.
+ * <p>
+ * Each book's queue has its own lock, so returns and checkouts of different books never wait for each other, and
+ * no lock is held while a copy is checked out or in. A queue sets copies aside rather than taking them off the
+ * shelf: a returned copy stays on hand, but while holds are ready the queue keeps that many copies from anyone
+ * but their holders. When a copy comes back, the next waiting hold becomes ready for pickup, and if it is not
+ * picked up in time the copy passes on to the hold after it.
+ * <p>
+ * Positions in the queue are counted with a Fenwick tree over the holds' tickets, so asking for a position takes
+ * logarithmic time however many holds are placed or withdrawn ahead of it.
+ * Holds are kept in memory only; after a restart the copies they had set aside are simply on hand again.
+ */
+final class HoldQueues {
+    private static final long DEFAULT_PICKUP = TimeUnit.DAYS.toMillis(3);  // Time to pick up a copy set aside
+
+    private final Clock clock;         // Source of the current time
+    private final long pickupMillis;   // Time a ready hold keeps its copy
+    private final Map<Long, Queue> queues = new ConcurrentHashMap<>();  // Hold queues by book ID
+    private final List<Consumer<Hold>> listeners = new CopyOnWriteArrayList<>();
+    private volatile ScheduledThreadPoolExecutor expiries;  // Expires ready holds, started with the first one
+
+    /**
+     * Creates hold queues that keep a copy for three days.
+     *
+     * @param clock the source of the current time
+     */
+    HoldQueues(Clock clock) {
+        this(clock, DEFAULT_PICKUP);
+    }
+
+    /**
+     * Creates hold queues with the given pickup period.
+     *
+     * @param clock        the source of the current time
+     * @param pickupMillis the time a ready hold keeps its copy, in milliseconds
+     */
+    HoldQueues(Clock clock, long pickupMillis) {
+        this.clock = clock;
+        this.pickupMillis = pickupMillis;
+    }
+
+    /**
+     * Registers a listener that is told when a copy has been set aside for a hold.
+     *
+     * @param listener the listener, called on the thread that returned the copy or expired the previous hold
+     */
+    void addListener(Consumer<Hold> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Places a hold for a member, or returns the member's hold on the book if there already is one.
+     * If a copy is free, the hold is ready at once.
+     *
+     * @param member the member
+     * @param book   the book
+     * @return the member's active hold on the book
+     */
+    Hold place(Member member, Book book) {
+        Queue queue = queues.computeIfAbsent(book.getId(), id -> new Queue(book));
+        Hold hold;
+        synchronized (queue) {
+            hold = queue.active.get(member.getId());
+            if (hold == null) {
+                hold = queue.enqueue(member);
+            }
+        }
+        allocate(queue);
+        return hold;
+    }
+
+    /**
+     * Withdraws a hold; a copy set aside for it passes on to the next waiting hold.
+     *
+     * @param hold the hold
+     * @return true if the hold was active, false if it had already ended
+     */
+    boolean cancel(Hold hold) {
+        Queue queue = queues.get(hold.getBook().getId());
+        if (queue == null || !queue.end(hold, Hold.Status.CANCELLED)) {
+            return false;
+        }
+        allocate(queue);
+        return true;
+    }
+
+    /**
+     * Finds a member's active hold on a book.
+     *
+     * @param memberId the ID of the member
+     * @param bookId   the catalog ID of the book
+     * @return the hold, or null if the member has no active hold on the book
+     */
+    Hold find(int memberId, long bookId) {
+        Queue queue = queues.get(bookId);
+        if (queue == null) {
+            return null;
+        }
+        synchronized (queue) {
+            return queue.active.get(memberId);
+        }
+    }
+
+    /**
+     * Gets the position of a hold in its book's queue.
+     *
+     * @param hold the hold
+     * @return 1 for the next hold to be served and so on, 0 if a copy is set aside for it, or -1 if it has ended
+     */
+    int position(Hold hold) {
+        Queue queue = queues.get(hold.getBook().getId());
+        if (queue == null) {
+            return -1;
+        }
+        synchronized (queue) {
+            switch (hold.getStatus()) {
+                case READY:
+                    return 0;
+                case WAITING:
+                    return queue.waitingUpTo(hold.ticket);
+                default:
+                    return -1;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of holds waiting for a book.
+     *
+     * @param bookId the catalog ID of the book
+     * @return the number of waiting holds, not counting those ready for pickup
+     */
+    int waiting(long bookId) {
+        Queue queue = queues.get(bookId);
+        if (queue == null) {
+            return 0;
+        }
+        synchronized (queue) {
+            return queue.waiting;
+        }
+    }
+
+    /**
+     * Checks out a copy for a member, honouring the copies set aside for holds. A member whose hold is ready takes
+     * the copy set aside for them; anyone else only gets a copy left over once every ready and waiting hold has
+     * one, so a copy just checked in goes to the next waiting hold even before it has been set aside.
+     *
+     * @param member the borrowing member
+     * @param book   the book
+     * @return the number of the copy taken, or {@link CopyInventory#NO_COPY} if none was
+     */
+    int tryCheckOut(Member member, Book book) {
+        Queue queue = queues.get(book.getId());
+        if (queue == null) {
+            return book.takeCopy();  // Nobody ever waited for this book
+        }
+        Hold hold;
+        synchronized (queue) {
+            Hold held = queue.active.get(member.getId());
+            if (held != null && held.getStatus() == Hold.Status.READY) {
+                queue.end(held, Hold.Status.FULFILLED);
+                hold = held;
+            } else if (queue.free() > queue.waiting) {
+                hold = null;
+            } else {
+                return CopyInventory.NO_COPY;
+            }
+            queue.claimed++;  // Keeps the copy from being set aside, or taken by others, until it is checked out
+        }
+        int copy = book.takeCopy();
+        boolean taken = copy != CopyInventory.NO_COPY;
+        synchronized (queue) {
+            queue.claimed--;
+            if (hold != null && !taken) {
+                queue.restore(hold);  // The copy was taken before the hold could claim it; wait for the next one
+                long left = Math.max(0, hold.getPickupDeadline().getTime() - clock.millis());
+                hold.expiry = expiries().schedule(() -> expire(queue, hold), left, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (!taken) {
+            allocate(queue);
+        }
+        return copy;
+    }
+
+    /**
+     * Sets a returned copy aside for the next waiting hold, if there is one.
+     *
+     * @param book the book whose copies went up
+     */
+    void copyReturned(Book book) {
+        Queue queue = queues.get(book.getId());
+        if (queue != null) {
+            allocate(queue);
+        }
+    }
+
+    /**
+     * Makes waiting holds ready while copies are free, then schedules their expiry and tells the listeners.
+     */
+    private void allocate(Queue queue) {
+        List<Hold> ready = new ArrayList<>();
+        synchronized (queue) {
+            Date deadline = new Date(clock.millis() + pickupMillis);
+            for (Hold next; queue.free() > 0 && (next = queue.next()) != null; ) {
+                queue.ready(next, deadline);
+                ready.add(next);
+            }
+            for (Hold hold : ready) {
+                hold.expiry = expiries().schedule(() -> expire(queue, hold), pickupMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        for (Hold hold : ready) {
+            for (Consumer<Hold> listener : listeners) {
+                listener.accept(hold);
+            }
+        }
+    }
+
+    private void expire(Queue queue, Hold hold) {
+        synchronized (queue) {
+            Date deadline = hold.getPickupDeadline();
+            if (hold.getStatus() != Hold.Status.READY || deadline == null) {
+                return;
+            }
+            long left = deadline.getTime() - clock.millis();
+            if (left > 0) {  // The clock disagrees with the timer; check again later
+                hold.expiry = expiries().schedule(() -> expire(queue, hold), left, TimeUnit.MILLISECONDS);
+                return;
+            }
+            queue.end(hold, Hold.Status.EXPIRED);
+        }
+        allocate(queue);
+    }
+
+    private ScheduledThreadPoolExecutor expiries() {
+        ScheduledThreadPoolExecutor executor = expiries;
+        if (executor == null) {
+            synchronized (this) {
+                executor = expiries;
+                if (executor == null) {
+                    executor = new ScheduledThreadPoolExecutor(1, task -> {
+                        Thread thread = new Thread(task, "hold-expiry");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor.setRemoveOnCancelPolicy(true);
+                    expiries = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * The holds on one book. All fields are guarded by the queue itself.
+     */
+    private static final class Queue {
+        final Book book;                                   // The book being held
+        final Map<Integer, Hold> active = new HashMap<>();  // Waiting and ready holds by member ID
+        final ArrayDeque<Hold> order = new ArrayDeque<>();  // Waiting holds by ticket, possibly with ended ones
+        int[] tree = new int[16];   // Fenwick tree of waiting holds by ticket, 1-based
+        long nextTicket;            // Ticket of the last hold placed since the queue was last empty
+        int waiting;                // Number of waiting holds
+        int ready;                  // Number of copies set aside for ready holds
+        int claimed;                // Number of copies being checked out right now, for holds or not
+
+        Queue(Book book) {
+            this.book = book;
+        }
+
+        int free() {
+            return book.getAmount() - ready - claimed;
+        }
+
+        Hold enqueue(Member member) {
+            Hold hold = new Hold(member, book, ++nextTicket);
+            if (hold.ticket >= tree.length) {
+                grow();
+            }
+            add((int) hold.ticket, 1);
+            active.put(member.getId(), hold);
+            order.addLast(hold);
+            waiting++;
+            return hold;
+        }
+
+        Hold next() {
+            while (!order.isEmpty() && order.peekFirst().getStatus() != Hold.Status.WAITING) {
+                order.pollFirst();  // Drop holds withdrawn while they waited
+            }
+            return order.peekFirst();
+        }
+
+        void ready(Hold hold, Date deadline) {
+            order.pollFirst();
+            leaveWaiting(hold);
+            hold.moveTo(Hold.Status.READY, deadline);
+            ready++;
+        }
+
+        void restore(Hold hold) {
+            hold.moveTo(Hold.Status.READY, hold.getPickupDeadline());
+            active.put(hold.getMember().getId(), hold);
+            ready++;
+        }
+
+        synchronized boolean end(Hold hold, Hold.Status status) {
+            if (hold.getStatus() == Hold.Status.WAITING) {
+                leaveWaiting(hold);
+            } else if (hold.getStatus() == Hold.Status.READY) {
+                ready--;
+                if (hold.expiry != null && status != Hold.Status.EXPIRED) {
+                    hold.expiry.cancel(false);
+                }
+            } else {
+                return false;
+            }
+            active.remove(hold.getMember().getId());
+            hold.moveTo(status, status == Hold.Status.FULFILLED ? hold.getPickupDeadline() : null);
+            return true;
+        }
+
+        int waitingUpTo(long ticket) {
+            int count = 0;
+            for (int i = (int) ticket; i > 0; i -= i & -i) {
+                count += tree[i];
+            }
+            return count;
+        }
+
+        private void leaveWaiting(Hold hold) {
+            add((int) hold.ticket, -1);
+            if (--waiting == 0) {
+                nextTicket = 0;  // Start numbering afresh so the tree does not grow forever
+                tree = new int[16];
+                order.clear();
+            }
+        }
+
+        private void add(int ticket, int delta) {
+            for (int i = ticket; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        private void grow() {
+            int[] counts = new int[tree.length * 2];
+            for (Hold hold : order) {
+                if (hold.getStatus() == Hold.Status.WAITING) {
+                    counts[(int) hold.ticket]++;
+                }
+            }
+            for (int i = 1; i < counts.length; i++) {  // Builds the tree in place in linear time
+                int parent = i + (i & -i);
+                if (parent < counts.length) {
+                    counts[parent] += counts[i];
+                }
+            }
+            tree = counts;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.ProjectFiles.library;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reaches a shard served by a {@link LibraryServer} over HTTP/1.1. The JDK client keeps the connections alive
+ * between requests, so a router pays for a connection per concurrent request rather than per request.
+ */
+final class HttpShardTransport implements ShardTransport {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);  // Long enough for a journal fsync
+    private static final AtomicInteger CLIENTS = new AtomicInteger();         // Numbers the client threads
+
+    private final URI base;
+    private final ExecutorService executor;  // Runs the client's I/O
+    private final HttpClient client;
+
+    HttpShardTransport(String host, int port) {
+        this.base = URI.create("http://" + host + ":" + port);
+        int client = CLIENTS.incrementAndGet();
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "shard-client-" + client + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public Reply send(String method, String target, String body) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(base.resolve(target))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json; charset=utf-8")
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            return new Reply(response.statusCode(), response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for shard " + base);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return base.toString();
+    }
+}
@@ -0,0 +1,448 @@
+package com.ProjectFiles.library;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Defines the binary format of the library's write-ahead log and checkpoints, and replays them into a library.
+ * Each log record describes one mutation: books, members, and loans being added or removed, loans being
+ * returned, and changes in a book's copies on hand. A loan's record also says whether the loan took a copy, and
+ * the record of its return whether it put one back, so a checkout or return is one record and a crash never keeps
+ * the copy change without the loan or the other way round. Other copy changes are logged as deltas of their own.
+ * All copy changes are logged after the count changed, so concurrent changes to one book may be logged out of
+ * order; replay applies each signed delta as it is, without the checks of a checkout, and since deltas add up in
+ * any order the count is right at the end. Loan records name the copy they took; replayed copy changes do not, so
+ * once replay is done the library renumbers the copies from its open loans.
+ * <p>
+ * An instance keeps every book, member, and loan it has seen by ID, including ones that have since been removed,
+ * so that later records and loan histories can still refer to them.
+ */
+final class JournalRecords {
+    static final byte BOOK_ADDED = 1;      // Book added to the catalog
+    static final byte BOOK_REMOVED = 2;    // Book removed from the catalog
+    static final byte MEMBER_ADDED = 3;    // Member registered
+    static final byte MEMBER_REMOVED = 4;  // Member removed
+    static final byte LOAN_ADDED = 5;      // Loan registered, with its due date and copy and whether it took one
+    static final byte LOAN_RETURNED = 6;   // Registered loan returned, and whether its copy went back
+    static final byte LOAN_REMOVED = 7;    // Loan record removed
+    static final byte COPIES_CHANGED = 8;  // Copies on hand changed by a checkout or check-in without a loan
+    static final byte MEMBER_GUEST = 9;    // Member of another shard borrowing from this one
+
+    private static final int CHECKPOINT_MAGIC = 0x4C494231;  // "LIB1", identifies a checkpoint file
+    private static final long NO_DATE = -1L;                 // Encodes a missing return date
+    private static final int MAX_TEXT_BYTES = 0xFFFF;         // Longest text a record holds, in modified UTF-8
+
+    private final Library library;                                 // Library the records are applied to
+    private final Map<Long, Book> books = new HashMap<>();         // Every book seen so far, by catalog ID
+    private final Map<Integer, Member> members = new HashMap<>();  // Every member seen so far, by member ID
+    private final Map<Long, Loan> loans = new HashMap<>();         // Every loan seen so far, by loan ID
+    private Map<Integer, Long> historyWatermark;  // Loan history records per month the checkpoint includes, or null
+
+    /**
+     * Creates a replayer that applies records to the given library.
+     * The library should be empty, or hold only the books of a mapped catalog file, which the records then refer
+     * to by catalog ID, and must not have a journal attached while records are replayed.
+     *
+     * @param library the library to rebuild
+     */
+    JournalRecords(Library library) {
+        this.library = library;
+    }
+
+    /**
+     * Checks that a book's title and author fit in a record, so that adding the book can fail before anything has
+     * changed rather than leave it in the library without a record or a checkpoint that can hold it.
+     *
+     * @param book the book to check
+     * @throws IllegalArgumentException if the title or the author is too long
+     */
+    static void checkEncodable(Book book) {
+        checkText(book.getTitle(), "Book title");
+        checkText(book.getAuthor(), "Book author");
+    }
+
+    /**
+     * Checks that a member's name fits in a record.
+     *
+     * @param member the member to check
+     * @throws IllegalArgumentException if the name is too long
+     */
+    static void checkEncodable(Member member) {
+        checkText(member.getName(), "Member name");
+    }
+
+    private static void checkText(String text, String what) {
+        if (text == null || text.length() <= MAX_TEXT_BYTES / 3) {
+            return;  // Every character takes at most three bytes
+        }
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            bytes += c >= 0x800 ? 3 : c >= 0x80 || c == 0 ? 2 : 1;
+        }
+        if (bytes > MAX_TEXT_BYTES) {
+            throw new IllegalArgumentException(what + " is too long to be recorded.");
+        }
+    }
+
+    static byte[] bookAdded(Book book, int copies) {
+        return encode(out -> {
+            out.writeByte(BOOK_ADDED);
+            writeBook(out, book, copies);
+        });
+    }
+
+    static byte[] bookRemoved(Book book) {
+        return encode(out -> {
+            out.writeByte(BOOK_REMOVED);
+            out.writeLong(book.getId());
+        });
+    }
+
+    static byte[] memberAdded(Member member) {
+        return encode(out -> {
+            out.writeByte(MEMBER_ADDED);
+            writeMember(out, member);
+        });
+    }
+
+    static byte[] guestAdded(Member member) {
+        return encode(out -> {
+            out.writeByte(MEMBER_GUEST);
+            writeMember(out, member);
+        });
+    }
+
+    static byte[] memberRemoved(Member member) {
+        return encode(out -> {
+            out.writeByte(MEMBER_REMOVED);
+            out.writeInt(member.getId());
+        });
+    }
+
+    static byte[] loanAdded(Loan loan, boolean copyTaken) {
+        return encode(out -> {
+            out.writeByte(LOAN_ADDED);
+            writeLoan(out, loan);
+            out.writeBoolean(copyTaken);
+        });
+    }
+
+    static byte[] loanReturned(Loan loan, boolean copyReturned) {
+        return encode(out -> {
+            out.writeByte(LOAN_RETURNED);
+            out.writeLong(loan.getId());
+            out.writeLong(loan.getReturnDate().getTime());
+            out.writeBoolean(copyReturned);
+        });
+    }
+
+    static byte[] loanRemoved(Loan loan) {
+        return encode(out -> {
+            out.writeByte(LOAN_REMOVED);
+            out.writeLong(loan.getId());
+        });
+    }
+
+    static byte[] copiesChanged(Book book, int delta) {
+        return encode(out -> {
+            out.writeByte(COPIES_CHANGED);
+            out.writeLong(book.getId());
+            out.writeInt(delta);
+        });
+    }
+
+    /**
+     * Applies one log record to the library.
+     *
+     * @param record the encoded record
+     * @throws IOException if the record is malformed or refers to something that does not exist
+     */
+    void apply(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        switch (type) {
+            case BOOK_ADDED:
+                Book added = readBook(in);
+                books.put(added.getId(), library.addBook(added));
+                break;
+            case BOOK_REMOVED:
+                library.removeBook(requireBook(in.readLong()));
+                break;
+            case MEMBER_ADDED:
+                library.addMember(readMember(in));
+                break;
+            case MEMBER_REMOVED:
+                library.removeMember(requireMember(in.readInt()));
+                break;
+            case MEMBER_GUEST:
+                Member guest = library.addGuest(readMember(in));
+                members.put(guest.getId(), guest);
+                break;
+            case LOAN_ADDED:
+                Loan opened = readLoan(in);
+                library.addLoan(opened);
+                if (in.readBoolean()) {
+                    opened.getBook().replayCopies(-1);
+                }
+                break;
+            case LOAN_RETURNED:
+                Loan closed = requireLoan(in.readLong());
+                closed.restoreReturn(new Date(in.readLong()));
+                if (in.readBoolean()) {
+                    closed.getBook().replayCopies(1);
+                }
+                break;
+            case LOAN_REMOVED:
+                long removed = in.readLong();
+                if (historyWatermark != null && !loans.containsKey(removed)) {
+                    break;  // Removed from the library after the checkpoint moved it to the loan history
+                }
+                library.removeLoan(requireLoan(removed));
+                break;
+            case COPIES_CHANGED:
+                requireBook(in.readLong()).replayCopies(in.readInt());
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Writes a compact checkpoint of the library: its books, members, and open loans, plus the books and members
+     * that are no longer registered but are still referred to by an open loan. Returned loans are left out, since
+     * they have been moved to the loan history; the checkpoint records how far the history's partitions reached.
+     *
+     * @param library   the library to write
+     * @param out       the output to write to
+     * @param segment   the number of the last log segment whose records the checkpoint contains
+     * @param watermark the number of records of each loan history partition, by month number
+     * @throws IOException if writing fails
+     */
+    static void writeCheckpoint(Library library, DataOutput out, long segment, Map<Integer, Long> watermark)
+            throws IOException {
+        Snapshot<Book> catalog = library.books();
+        Snapshot<Member> registered = library.members();
+        List<Loan> loanRecords = new ArrayList<>();
+        for (Loan loan : library.loans()) {
+            if (loan.getReturnDate() == null) {
+                loanRecords.add(loan);
+            }
+        }
+
+        Map<Long, Book> retiredBooks = new LinkedHashMap<>();
+        Map<Integer, Member> retiredMembers = new LinkedHashMap<>();
+        for (Loan loan : loanRecords) {
+            Book book = loan.getBook();
+            if (!book.equals(library.findBookById(book.getId()))) {
+                retiredBooks.putIfAbsent(book.getId(), book);
+            }
+            Member member = loan.getMember();
+            if (library.findMemberById(member.getId()) == null) {
+                retiredMembers.putIfAbsent(member.getId(), member);
+            }
+        }
+
+        out.writeInt(CHECKPOINT_MAGIC);
+        out.writeLong(segment);
+        out.writeLong(library.lastBookId());
+        out.writeLong(library.lastLoanId());
+        out.writeInt(watermark.size());
+        for (Map.Entry<Integer, Long> partition : watermark.entrySet()) {
+            out.writeInt(partition.getKey());
+            out.writeLong(partition.getValue());
+        }
+
+        out.writeInt(catalog.size() + retiredBooks.size());
+        for (Book book : catalog) {
+            out.writeBoolean(true);
+            writeBook(out, book, book.getAmount());
+        }
+        for (Book book : retiredBooks.values()) {
+            out.writeBoolean(false);
+            writeBook(out, book, book.getAmount());
+        }
+
+        out.writeInt(registered.size() + retiredMembers.size());
+        for (Member member : registered) {
+            out.writeBoolean(true);
+            writeMember(out, member);
+        }
+        for (Member member : retiredMembers.values()) {
+            out.writeBoolean(false);
+            writeMember(out, member);
+        }
+
+        out.writeInt(loanRecords.size());
+        for (Loan loan : loanRecords) {
+            writeLoan(out, loan);
+        }
+    }
+
+    /**
+     * Loads a checkpoint written by {@link #writeCheckpoint} into the library.
+     *
+     * @param in the input to read from
+     * @return the number of the last log segment contained in the checkpoint
+     * @throws IOException if the checkpoint is malformed
+     */
+    long readCheckpoint(DataInput in) throws IOException {
+        if (in.readInt() != CHECKPOINT_MAGIC) {
+            throw new IOException("Not a library checkpoint");
+        }
+        long segment = in.readLong();
+        library.reserveIds(in.readLong(), in.readLong());
+        historyWatermark = new TreeMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            historyWatermark.put(in.readInt(), in.readLong());
+        }
+
+        Snapshot<Book> mapped = library.books();  // Books of a catalog file, which the checkpoint brings up to date
+        Set<Long> listed = new HashSet<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            boolean inCatalog = in.readBoolean();
+            Book book = readBook(in);
+            Book existing = inCatalog && !mapped.isEmpty() ? library.findBookById(book.getId()) : null;
+            if (existing != null) {
+                existing.replayCopies(book.getAmount() - existing.getAmount());
+                listed.add(book.getId());
+                books.put(book.getId(), existing);
+            } else {
+                books.put(book.getId(), inCatalog ? library.addBook(book) : book);
+            }
+        }
+        for (Book book : mapped) {
+            if (!listed.contains(book.getId())) {
+                library.removeBook(book);  // Removed from the catalog after the file was written
+            }
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            boolean registered = in.readBoolean();
+            Member member = readMember(in);
+            if (registered) {
+                library.addMember(member);
+            }
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            library.addLoan(readLoan(in));
+        }
+        return segment;
+    }
+
+    /**
+     * Gets how far the loan history reached when the checkpoint that was read was taken.
+     *
+     * @return the number of records of each partition by month number, or null if no checkpoint was read
+     */
+    Map<Integer, Long> getHistoryWatermark() {
+        return historyWatermark;
+    }
+
+    private Book readBook(DataInput in) throws IOException {
+        long id = in.readLong();
+        Book book = new Book(in.readUTF(), in.readUTF(), in.readInt(), in.readInt());
+        book.assignId(id);
+        return book;
+    }
+
+    private Member readMember(DataInput in) throws IOException {
+        Member member = new Member(in.readUTF(), in.readInt());
+        members.put(member.getId(), member);
+        return member;
+    }
+
+    private Loan readLoan(DataInput in) throws IOException {
+        long id = in.readLong();
+        Member member = requireMember(in.readInt());
+        Book book = requireBook(in.readLong());
+        Date loanDate = new Date(in.readLong());
+        long returned = in.readLong();
+        Date dueDate = new Date(in.readLong());
+        int copy = in.readInt();
+        Loan loan = new Loan(id, member, book, copy, loanDate, dueDate,
+                returned == NO_DATE ? null : new Date(returned));
+        member.addLoan(loan);
+        loans.put(id, loan);
+        return loan;
+    }
+
+    private Book requireBook(long id) throws IOException {
+        Book book = books.computeIfAbsent(id, library::findBookById);  // Books of a mapped catalog are not logged
+        if (book == null) {
+            throw new IOException("Journal refers to unknown book " + id);
+        }
+        return book;
+    }
+
+    private Member requireMember(int id) throws IOException {
+        Member member = members.get(id);
+        if (member == null) {
+            throw new IOException("Journal refers to unknown member " + id);
+        }
+        return member;
+    }
+
+    private Loan requireLoan(long id) throws IOException {
+        Loan loan = loans.get(id);
+        if (loan == null) {
+            throw new IOException("Journal refers to unknown loan " + id);
+        }
+        return loan;
+    }
+
+    private static void writeBook(DataOutput out, Book book, int copies) throws IOException {
+        out.writeLong(book.getId());
+        out.writeUTF(book.getTitle());
+        out.writeUTF(book.getAuthor());
+        out.writeInt(book.getYear());
+        out.writeInt(copies);
+    }
+
+    private static void writeMember(DataOutput out, Member member) throws IOException {
+        out.writeUTF(member.getName());
+        out.writeInt(member.getId());
+    }
+
+    private static void writeLoan(DataOutput out, Loan loan) throws IOException {
+        out.writeLong(loan.getId());
+        out.writeInt(loan.getMember().getId());
+        out.writeLong(loan.getBook().getId());
+        out.writeLong(loan.getLoanDate().getTime());
+        Date returned = loan.getReturnDate();
+        out.writeLong(returned == null ? NO_DATE : returned.getTime());
+        out.writeLong(loan.getDueDate().getTime());
+        out.writeInt(loan.getCopy());
+    }
+
+    /**
+     * Writes the body of a record.
+     */
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // Only text too long for writeUTF, which checkEncodable rejects
+        }
+        return bytes.toByteArray();
+    }
+}
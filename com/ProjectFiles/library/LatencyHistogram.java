@@ -0,0 +1,120 @@
+package com.ProjectFiles.library;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts recorded values, typically latencies in nanoseconds, in log-linear buckets so that percentiles can be
+ * read back with a bounded relative error, in the manner of an HDR histogram.
+ * <p>
+ * Values below 128 get a bucket each. Above that, every power of two is split into 64 equal buckets, so a
+ * percentile is never off by more than about 1.6% of its value, and the whole range of a long fits in a few
+ * thousand counters. Recording is a handful of arithmetic operations and one atomic increment, without locks or
+ * allocation, so it can be done on every call of a hot path from any number of threads. Reading a percentile
+ * scans the buckets and may race with recording; the result is then off by the values recorded meanwhile.
+ */
+final class LatencyHistogram {
+    private static final int EXACT = 128;     // Values below this are counted exactly
+    private static final int SUB_BITS = 6;    // Each power of two above EXACT is split into 2^SUB_BITS buckets
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int FIRST_EXPONENT = 7;  // log2(EXACT)
+    private static final int BUCKETS = EXACT + (63 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();  // Sum of all recorded values, for the mean
+    private final AtomicLong max = new AtomicLong();  // Largest value recorded
+
+    /**
+     * Records one value; negative values are recorded as 0.
+     *
+     * @param value the value
+     */
+    void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(bucket(v));
+        total.add(v);
+        long current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {  // Retries only if another thread raised it meanwhile
+            current = max.get();
+        }
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return the count
+     */
+    long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return the mean, or 0 if nothing was recorded
+     */
+    double mean() {
+        long count = count();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    /**
+     * Gets the largest value recorded.
+     *
+     * @return the maximum, or 0 if nothing was recorded
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * Gets the value below or at which the given fraction of the recorded values lie.
+     *
+     * @param quantile the fraction, from 0 to 1
+     * @return the highest value that falls in the same bucket as that percentile, or 0 if nothing was recorded
+     */
+    long percentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int bucket(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);  // The bits after the leading one
+        return EXACT + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    private static long highestInBucket(int bucket) {
+        if (bucket < EXACT) {
+            return bucket;
+        }
+        int exponent = FIRST_EXPONENT + (bucket - EXACT) / SUB_BUCKETS;
+        long sub = (bucket - EXACT) % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lowest + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
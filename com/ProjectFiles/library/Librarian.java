@@ -6,6 +6,8 @@ package com.ProjectFiles.library;
  * ensuring that object creation is centralized and can be managed or modified independently of the system's use cases.
  */
 public class Librarian {
+    /** Longest title, author, or member name accepted, in characters. */
+    public static final int MAX_TEXT_LENGTH = 1000;
 
     /**
      * Creates a new book with the specified title, author, year, and amount of copies.
@@ -17,12 +19,17 @@ public class Librarian {
      * @param year   the year of publication of the book
      * @param amount the initial number of copies of the book, must be non-negative
      * @return a new instance of Book
-     * @throws IllegalArgumentException if title or author are null/empty or amount is negative
+     * @throws IllegalArgumentException if title or author are null/empty or longer than {@link #MAX_TEXT_LENGTH},
+     *                                  or amount is negative
      */
     public Book createBook(String title, String author, int year, int amount) {
         if (title == null || title.isEmpty() || author == null || author.isEmpty()) {
             throw new IllegalArgumentException("Book title and author must not be empty.");
         }
+        if (title.length() > MAX_TEXT_LENGTH || author.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("Book title and author must not be longer than " + MAX_TEXT_LENGTH
+                    + " characters.");
+        }
         if (amount < 0) {
             throw new IllegalArgumentException("Book amount cannot be negative.");
         }
@@ -37,12 +44,17 @@ public class Librarian {
      * @param name the name of the member to be created, should not be null or empty
      * @param id   the unique identifier for the member, must be a positive integer
      * @return a new instance of Member
-     * @throws IllegalArgumentException if the name is null/empty or if the ID is not positive
+     * @throws IllegalArgumentException if the name is null/empty or longer than {@link #MAX_TEXT_LENGTH}, or if the
+     *                                  ID is not positive
      */
     public Member createMember(String name, int id) {
         if (name == null || name.isEmpty()) {
             throw new IllegalArgumentException("Member name must not be empty.");
         }
+        if (name.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("Member name must not be longer than " + MAX_TEXT_LENGTH
+                    + " characters.");
+        }
         if (id <= 0) {
             throw new IllegalArgumentException("Member ID must be positive.");
         }
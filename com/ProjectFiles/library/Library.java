@@ -1,29 +1,101 @@
 package com.ProjectFiles.library;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Represents the central management system of a library.
  * This class is implemented as a Singleton to ensure that only one instance of the library exists throughout the application.
  * It handles the operations for managing books, members, loans, and user accounts.
+ * <p>
+ * Each collection is published as an immutable {@link Snapshot}, so reads never copy the collection and are not
+ * disturbed by writes that happen while they run. Writers of different collections use separate locks, and the
+ * lookup indexes are concurrent maps, so many circulation desks can use the library at the same time.
+ * Books are kept by a pluggable {@link BookStore}: ordinary heap objects by default, primitive columns after
+ * {@link #useColumnarStore()}, or a memory-mapped catalog file opened with {@link #openCatalog(Path)}.
+ * Status totals are kept as live counters that the checkout, check-in, and add/remove paths update as they go.
+ * When a {@link LibraryJournal} is attached, every mutation is made durable in its write-ahead log before the
+ * mutating call returns. Borrowing, returning, the lookups, and the status summary are timed by the library's
+ * {@link LibraryMetrics}.
  */
 public class Library {
-    private static Library instance;  // Singleton instance of the library for global access
-    private List<Book> books;         // List to store all books in the library
-    private List<Member> members;     // List to store all registered members
-    private List<Loan> loans;         // List to store all loans
-    private List<User> users;         // List to store all users including librarians and members
+    private volatile BookStore bookStore;       // Storage and lookup indexes for all books in the library
+    private volatile Snapshot<Member> members;  // Snapshot of all registered members
+    private volatile Snapshot<Loan> loans;      // Snapshot of all loans
+    private volatile Snapshot<User> users;      // Snapshot of all users including librarians and members
+    private final Object bookLock = new Object();    // Serializes writers of the book store
+    private final Object memberLock = new Object();  // Serializes writers of the member snapshot
+    private final Object loanLock = new Object();    // Serializes writers of the loan snapshot
+    private final Object userLock = new Object();    // Serializes writers of the user snapshot
+    private final Map<Integer, Member> membersById;       // Primary index of members keyed by their ID
+    private final Map<Integer, Member> guests = new ConcurrentHashMap<>();  // Other shards' borrowers, by ID
+    private final LoanLedger openLoans = new LoanLedger();  // Loans still out, by member and by book
+    private final OverdueTracker overdueLoans = new OverdueTracker(Clock.systemUTC());  // Due dates of open loans
+    private final HoldQueues holds = new HoldQueues(Clock.systemUTC());  // Members waiting for books, by book
+    private final LongAdder availableBooks = new LongAdder();  // Books with at least one copy on hand
+    private final LongAdder copiesOnHand = new LongAdder();    // Copies on hand across all books
+    private final LongAdder activeLoans = new LongAdder();     // Registered loans that are not returned yet
+    private final AtomicLong bookIds = new AtomicLong();  // Highest catalog ID handed out to a book
+    private final AtomicLong loanIds = new AtomicLong();  // Highest ID handed out to a registered loan
+    private volatile LibraryJournal journal;              // Write-ahead log for mutations, null if not journaled
+    private volatile Path catalogFile;                    // Catalog file the books are mapped from, null if none
+    private LoanHistory loanHistory;                      // Returned loans moved out by checkpoints, guarded by loanLock
+    private volatile BookSearchIndex searchIndex;         // Full-text index, built on the first search
+    private volatile CompletionIndex titleCompletions;    // Title completions, built on the first suggestion or fuzzy lookup
+    private volatile CompletionIndex authorCompletions;   // Author completions, built with the title completions
+    private final LibraryMetrics metrics = new LibraryMetrics();  // Latencies and counts of the hot paths
+    private final List<Consumer<LibraryEvent>> changeListeners = new CopyOnWriteArrayList<>();  // Told of each change
+    private final LibraryMetrics.Timer borrowTimer = metrics.timer("circulation.borrow");
+    private final LibraryMetrics.Timer returnTimer = metrics.timer("circulation.return");
+    private final LibraryMetrics.Counter borrowsRefused = metrics.counter("circulation.borrowRefused");
+    private final LibraryMetrics.Counter returnsUnmatched = metrics.counter("circulation.returnUnmatched");
+    private final LibraryMetrics.Timer titleLookupTimer = metrics.timer("lookup.title");
+    private final LibraryMetrics.Timer authorLookupTimer = metrics.timer("lookup.author");
+    private final LibraryMetrics.Timer fuzzyLookupTimer = metrics.timer("lookup.fuzzy");
+    private final LibraryMetrics.Timer searchTimer = metrics.timer("lookup.search");
+    private final LibraryMetrics.Timer suggestTimer = metrics.timer("lookup.suggest");
+    private final LibraryMetrics.Counter lookupMisses = metrics.counter("lookup.misses");
+    private final LibraryMetrics.Timer statusTimer = metrics.timer("status.summary");
 
     /**
-     * Private constructor to prevent instantiation from outside the class.
-     * Initializes lists for managing books, members, loans, and users.
+     * Constructor hidden from outside the package; the application uses the Singleton returned by {@link #getInstance()}.
+     * Package code builds private instances, for example to fold the journal into a new checkpoint.
+     * Initializes an in-memory book store and empty snapshots for members, loans, and users.
      */
-    private Library() {
-        books = new ArrayList<>();
-        members = new ArrayList<>();
-        loans = new ArrayList<>();
-        users = new ArrayList<>();
+    Library() {
+        bookStore = new MemoryBookStore();
+        members = Snapshot.empty();
+        loans = Snapshot.empty();
+        users = Snapshot.empty();
+        membersById = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Holds the Singleton instance; the JVM initializes it lazily and safely on first use.
+     */
+    private static final class Holder {
+        private static final Library INSTANCE = new Library();  // Singleton instance of the library for global access
     }
 
     /**
@@ -32,42 +104,481 @@ public class Library {
      *
      * @return the single, static instance of the Library
      */
-    public static synchronized Library getInstance() {
-        if (instance == null) {
-            instance = new Library();
-        }
-        return instance;
+    public static Library getInstance() {
+        return Holder.INSTANCE;
     }
 
     /**
-     * Adds a book to the library's book list.
+     * Adds a book to the library's book list and registers it in the title and author indexes.
+     * A book without a catalog ID is given the next free one.
+     * <p>
+     * With the columnar store, the library keeps the book as a view of its columns rather than as the given object.
+     * The view is returned, and further checkouts and check-ins must go through it or through a later lookup.
      *
      * @param book the book to be added to the library
+     * @return the book as the library keeps it
+     * @throws IllegalArgumentException if the book already belongs to a library, or its title or author is too
+     *                                  long to be journaled
      */
-    public void addBook(Book book) {
-        books.add(book);
+    public Book addBook(Book book) {
+        if (book.getOwner() != null) {
+            throw new IllegalArgumentException("Book already belongs to a library.");
+        }
+        JournalRecords.checkEncodable(book);
+        List<CompletableFuture<Void>> pending = new ArrayList<>(1);
+        Book stored;
+        synchronized (bookLock) {
+            stored = storeBook(book, pending);
+        }
+        awaitDurable(pending);
+        publish(LibraryEvent.Type.BOOK_ADDED, stored);
+        return stored;
     }
 
     /**
-     * Removes a book from the library.
+     * Adds a batch of books in one go, for bulk loads. The book lock is taken once for the whole batch, and the
+     * call waits for the journal once, so the batch shares its group commits instead of paying for one each.
+     * Books that bring a catalog ID already used by a book of the library, or by an earlier book of the batch,
+     * are skipped; books without an ID are given the next free ones, in batch order.
+     *
+     * @param batch the books to add, in order
+     * @return the books that were skipped, empty if all were added
+     * @throws IllegalArgumentException if a book already belongs to a library, or its title or author is too long
+     *                                  to be journaled, in which case none are added
+     */
+    public List<Book> addBooks(List<Book> batch) {
+        for (Book book : batch) {
+            if (book.getOwner() != null) {
+                throw new IllegalArgumentException("Book already belongs to a library.");
+            }
+            JournalRecords.checkEncodable(book);
+        }
+        List<CompletableFuture<Void>> pending = new ArrayList<>(batch.size());
+        List<Book> added = new ArrayList<>(batch.size());
+        List<Book> skipped = new ArrayList<>();
+        synchronized (bookLock) {
+            for (Book book : batch) {
+                if (book.getId() != 0 && bookStore.findById(book.getId()) != null) {
+                    skipped.add(book);
+                } else {
+                    added.add(storeBook(book, pending));
+                }
+            }
+        }
+        awaitDurable(pending);
+        for (Book book : added) {
+            publish(LibraryEvent.Type.BOOK_ADDED, book);
+        }
+        return skipped;
+    }
+
+    /**
+     * Adds a book to the store, the counters, and the indexes, and logs it. Must be called while holding the book
+     * lock, for a book already checked with {@link JournalRecords#checkEncodable(Book)}, so that logging cannot fail
+     * once the book is attached and counted.
+     *
+     * @param book    the book to add
+     * @param pending collects the journal record's future, if the library is journaled
+     * @return the book as the store keeps it
+     */
+    private Book storeBook(Book book, List<CompletableFuture<Void>> pending) {
+        assignBookId(book);
+        int copies = book.attach(this);
+        countCopies(0, copies);
+        CompletableFuture<Void> logged = record(() -> JournalRecords.bookAdded(book, copies));
+        if (logged != null) {
+            pending.add(logged);
+        }
+        Book stored = bookStore.add(book);
+        if (searchIndex != null) {
+            searchIndex.add(stored);
+        }
+        if (titleCompletions != null) {
+            titleCompletions.add(stored);
+            authorCompletions.add(stored);
+        }
+        return stored;
+    }
+
+    /**
+     * Removes a book from the library and from the title and author indexes.
      *
      * @param book the book to be removed from the library
      */
     public void removeBook(Book book) {
-        books.remove(book);
+        CompletableFuture<Void> pending = null;
+        boolean removed;
+        synchronized (bookLock) {
+            removed = bookStore.remove(book);
+            if (removed) {
+                if (searchIndex != null) {
+                    searchIndex.remove(book);
+                }
+                if (titleCompletions != null) {
+                    titleCompletions.remove(book);
+                    authorCompletions.remove(book);
+                }
+                countCopies(book.detach(), 0);
+                pending = record(() -> JournalRecords.bookRemoved(book));
+            }
+        }
+        LibraryJournal.awaitDurable(pending);
+        if (removed) {
+            publish(LibraryEvent.Type.BOOK_REMOVED, book);
+        }
+    }
+
+    /**
+     * Finds the book with the given catalog ID.
+     *
+     * @param id the catalog ID of the book
+     * @return the book with that ID, or null if no such book is in the library
+     */
+    public Book findBookById(long id) {
+        return bookStore.findById(id);
+    }
+
+    /**
+     * Replaces the library's books with the catalog in the given file, which is memory-mapped rather than loaded.
+     * Opening takes the same short time whatever the size of the catalog: books are resolved as lightweight views
+     * when they are read, lookups run against the indexes stored in the file, and the status counters start from
+     * the totals recorded in its header. Copy changes are made to a private mapping and never written back to the file.
+     * Books added later are kept in memory next to the mapped ones.
+     * <p>
+     * To keep the changes across restarts, open the catalog before {@link LibraryJournal#open(Library, Path)}: the
+     * journal then replays the changes made since on top of the mapped books, and its checkpoints map the same file
+     * again as the base they are rebuilt on, so the file must not be replaced while the journal refers to it.
+     *
+     * @param file a catalog file written by {@link #writeCatalog(Path)}
+     * @throws IOException           if the file cannot be mapped or is not a catalog file
+     * @throws IllegalStateException if the library already has books or its journal is already attached
+     */
+    public void openCatalog(Path file) throws IOException {
+        synchronized (bookLock) {
+            if (!bookStore.snapshot().isEmpty() || journal != null) {
+                throw new IllegalStateException("A catalog must be opened into an empty library before its journal.");
+            }
+            MappedCatalog catalog = MappedCatalog.open(file, this);
+            catalogFile = file;
+            bookIds.accumulateAndGet(catalog.lastId(), Math::max);
+            copiesOnHand.add(catalog.totalCopies());
+            availableBooks.add(catalog.availableBooks());
+            bookStore = catalog;
+            searchIndex = null;
+            titleCompletions = null;
+            authorCompletions = null;
+        }
+    }
+
+    /**
+     * Switches the library to a storage engine that keeps books in primitive columns instead of one object each.
+     * Titles and authors are dictionary-encoded, the columns grow in fixed-size chunks, and books are handed out
+     * as flyweight views. This uses a fraction of the heap for large catalogs and lets year and availability
+     * queries scan contiguous arrays. The switch must happen before any books are added, for example before
+     * a journal is replayed into the library.
+     *
+     * @throws IllegalStateException if the library already has books
+     */
+    public void useColumnarStore() {
+        synchronized (bookLock) {
+            if (!bookStore.snapshot().isEmpty()) {
+                throw new IllegalStateException("The book store can only be changed while the library has no books.");
+            }
+            bookStore = new ColumnarBookStore(this);
+            searchIndex = null;
+            titleCompletions = null;
+            authorCompletions = null;
+        }
+    }
+
+    /**
+     * Writes all books of the library to a compact catalog file that {@link #openCatalog(Path)} can map.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCatalog(Path file) throws IOException {
+        MappedCatalog.write(bookStore.snapshot(), file);
+    }
+
+    /**
+     * Gets the catalog file the library's books were mapped from, which its journal rebuilds the library on.
+     *
+     * @return the file given to {@link #openCatalog(Path)}, or null if no catalog was opened
+     */
+    Path getCatalogFile() {
+        return catalogFile;
+    }
+
+    /**
+     * Finds all books whose title matches the given title, ignoring case and surrounding whitespace.
+     * The lookup is served from the title index and does not copy the book list.
+     *
+     * @param title the title to look up
+     * @return an unmodifiable list of matching books, empty if there are none
+     */
+    public List<Book> findBooksByTitle(String title) {
+        long start = System.nanoTime();
+        long allocated = LibraryMetrics.allocatedBytes();
+        List<Book> books = title == null ? Collections.emptyList() : bookStore.findByTitle(normalize(title));
+        titleLookupTimer.record(start, allocated);
+        if (books.isEmpty()) {
+            lookupMisses.increment();
+        }
+        return books;
+    }
+
+    /**
+     * Finds all books written by the given author, ignoring case and surrounding whitespace.
+     * The lookup is served from the author index and does not copy the book list.
+     *
+     * @param author the author to look up
+     * @return an unmodifiable list of matching books, empty if there are none
+     */
+    public List<Book> findBooksByAuthor(String author) {
+        long start = System.nanoTime();
+        long allocated = LibraryMetrics.allocatedBytes();
+        List<Book> books = author == null ? Collections.emptyList() : bookStore.findByAuthor(normalize(author));
+        authorLookupTimer.record(start, allocated);
+        if (books.isEmpty()) {
+            lookupMisses.increment();
+        }
+        return books;
+    }
+
+    /**
+     * Finds all books published within the given range of years.
+     *
+     * @param fromYear the first publication year of the range, inclusive
+     * @param toYear   the last publication year of the range, inclusive
+     * @return an unmodifiable list of matching books, empty if there are none
+     */
+    public List<Book> findBooksPublishedBetween(int fromYear, int toYear) {
+        return bookStore.findByYears(fromYear, toYear);
+    }
+
+    /**
+     * Finds all books that have at least one copy on hand.
+     *
+     * @return an unmodifiable list of available books, empty if there are none
+     */
+    public List<Book> findAvailableBooks() {
+        return bookStore.findAvailable();
+    }
+
+    /**
+     * Searches the titles and authors of all books for the given terms, best matches first.
+     * Terms are matched without regard to case or accents, each term also matches longer words it is a prefix of,
+     * and a book must match every term. The full-text index is built on the first search and kept up to date
+     * as books are added and removed.
+     *
+     * @param query the search terms
+     * @param limit the maximum number of books to return
+     * @return an unmodifiable list of matching books, empty if nothing matches
+     * @throws IllegalArgumentException if limit is negative
+     */
+    public List<Book> searchBooks(String query, int limit) {
+        long start = System.nanoTime();
+        long allocated = LibraryMetrics.allocatedBytes();
+        BookSearchIndex index = searchIndex;
+        if (index == null) {
+            synchronized (bookLock) {
+                if (searchIndex == null) {
+                    BookSearchIndex built = new BookSearchIndex(this);
+                    bookStore.snapshot().forEach(built::add);
+                    searchIndex = built;
+                }
+                index = searchIndex;
+            }
+        }
+        List<Book> books = index.search(query, limit);
+        searchTimer.record(start, allocated);
+        return books;
+    }
+
+    /**
+     * Suggests titles that start with the given text, the titles with the most copies on hand first.
+     * Case and leading whitespace are ignored, and books with the same title share one suggestion.
+     * The completions are built on the first suggestion and kept up to date as books are added, removed,
+     * borrowed, and returned, so this is cheap enough to call on every keystroke.
+     *
+     * @param prefix the start of the title
+     * @param limit  the maximum number of titles to return
+     * @return an unmodifiable list of titles, empty if none starts with the prefix
+     * @throws IllegalArgumentException if limit is negative
+     */
+    public List<String> suggestTitles(String prefix, int limit) {
+        return suggest(prefix, limit, false);
+    }
+
+    /**
+     * Suggests author names that start with the given text, the authors with the most copies on hand first.
+     * Works like {@link #suggestTitles(String, int)}.
+     *
+     * @param prefix the start of the author name
+     * @param limit  the maximum number of names to return
+     * @return an unmodifiable list of author names, empty if none starts with the prefix
+     * @throws IllegalArgumentException if limit is negative
+     */
+    public List<String> suggestAuthors(String prefix, int limit) {
+        return suggest(prefix, limit, true);
+    }
+
+    /**
+     * Finds the books whose title is at most the given number of edits away from the given title, ignoring case
+     * and surrounding whitespace. An edit inserts, deletes, or replaces one character, so this finds titles with
+     * typos in them. Books with the closest titles come first, and among equally close titles those with the
+     * most copies on hand. The lookup shares its index with {@link #suggestTitles(String, int)} and only visits
+     * titles that start out close to the given one, so one or two edits stay cheap in large catalogs.
+     *
+     * @param title    the title, possibly misspelled
+     * @param maxEdits the largest number of edits allowed
+     * @return an unmodifiable list of matching books, nearest first, empty if there are none
+     * @throws IllegalArgumentException if maxEdits is negative
+     */
+    public List<Book> findBooksApprox(String title, int maxEdits) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("The number of edits must not be negative.");
+        }
+        if (title == null) {
+            return Collections.emptyList();
+        }
+        long start = System.nanoTime();
+        long allocated = LibraryMetrics.allocatedBytes();
+        List<Book> books = new ArrayList<>();
+        for (String match : completions(false).nearest(normalize(title), maxEdits)) {
+            books.addAll(bookStore.findByTitle(match));
+        }
+        fuzzyLookupTimer.record(start, allocated);
+        return Collections.unmodifiableList(books);
+    }
+
+    private List<String> suggest(String prefix, int limit, boolean authors) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit must not be negative.");
+        }
+        if (prefix == null) {
+            return Collections.emptyList();
+        }
+        long started = System.nanoTime();
+        long allocated = LibraryMetrics.allocatedBytes();
+        String start = prefix.stripLeading().toLowerCase(Locale.ROOT);  // A trailing space ends a word
+        List<String> suggestions = limit == 0 ? List.of() : completions(authors).complete(start, limit);
+        suggestTimer.record(started, allocated);
+        return suggestions;
+    }
+
+    /**
+     * Returns the title or author completions, building both on first use.
+     */
+    private CompletionIndex completions(boolean authors) {
+        if (titleCompletions == null) {
+            synchronized (bookLock) {
+                if (titleCompletions == null) {
+                    Snapshot<Book> books = bookStore.snapshot();
+                    authorCompletions = new CompletionIndex(Book::getAuthor, books);
+                    titleCompletions = new CompletionIndex(Book::getTitle, books);  // Published last
+                }
+            }
+        }
+        return authors ? authorCompletions : titleCompletions;
+    }
+
+    /**
+     * Finds the first book with the given title and publication year.
+     *
+     * @param title the title of the book
+     * @param year  the publication year of the book
+     * @return the matching book, or null if no such book exists
+     */
+    public Book findBook(String title, int year) {
+        return findBooksByTitle(title).stream()
+                .filter(b -> b.getYear() == year)
+                .findFirst().orElse(null);
     }
 
     /**
      * Adds a new member to the library. Ensures that each member has a unique ID.
      *
      * @param member the new member to add to the library
-     * @throws IllegalArgumentException if the member ID is not unique
+     * @throws IllegalArgumentException if the member ID is not unique, or the name is too long to be journaled
      */
     public void addMember(Member member) {
-        if (!isMemberIdUnique(member.getId())) {
-            throw new IllegalArgumentException("Member ID must be unique.");
+        JournalRecords.checkEncodable(member);
+        CompletableFuture<Void> pending;
+        synchronized (memberLock) {
+            if (membersById.putIfAbsent(member.getId(), member) != null) {
+                throw new IllegalArgumentException("Member ID must be unique.");
+            }
+            members = members.with(member);
+            pending = record(() -> JournalRecords.memberAdded(member));
+        }
+        LibraryJournal.awaitDurable(pending);
+        publish(LibraryEvent.Type.MEMBER_ADDED, member);
+    }
+
+    /**
+     * Adds a batch of members in one go, for bulk loads. The member lock is taken once and the member snapshot
+     * is published once for the whole batch, and the call waits for the journal once.
+     * Members whose ID is already taken, by a registered member or by an earlier member of the batch, are skipped;
+     * the ID index is what detects them, so checking a batch does not depend on the number of members.
+     *
+     * @param batch the members to add, in order
+     * @return the members that were skipped, empty if all were added
+     * @throws IllegalArgumentException if a name is too long to be journaled, in which case none are added
+     */
+    public List<Member> addMembers(List<Member> batch) {
+        for (Member member : batch) {
+            JournalRecords.checkEncodable(member);
+        }
+        List<CompletableFuture<Void>> pending = new ArrayList<>(batch.size());
+        List<Member> added = new ArrayList<>(batch.size());
+        List<Member> skipped = new ArrayList<>();
+        synchronized (memberLock) {
+            for (Member member : batch) {
+                if (membersById.putIfAbsent(member.getId(), member) != null) {
+                    skipped.add(member);
+                    continue;
+                }
+                added.add(member);
+                CompletableFuture<Void> logged = record(() -> JournalRecords.memberAdded(member));
+                if (logged != null) {
+                    pending.add(logged);
+                }
+            }
+            members = members.withAll(added);
+        }
+        awaitDurable(pending);
+        for (Member member : added) {
+            publish(LibraryEvent.Type.MEMBER_ADDED, member);
         }
-        members.add(member);
+        return skipped;
+    }
+
+    /**
+     * Finds or adds a member of another shard of a {@link ShardedLibrary} who borrows a book this shard keeps.
+     * Loans live on the shard of their book, so this shard needs the borrower; a guest is journaled, so its loans
+     * can be replayed, but it is not registered here: it is not listed, counted, or found by ID.
+     *
+     * @param member the borrower
+     * @return the member registered under the same ID, or the guest known by it, or else the given member
+     * @throws IllegalArgumentException if the name is too long to be journaled
+     */
+    Member addGuest(Member member) {
+        JournalRecords.checkEncodable(member);
+        CompletableFuture<Void> pending;
+        synchronized (memberLock) {
+            Member known = membersById.get(member.getId());
+            if (known == null) {
+                known = guests.putIfAbsent(member.getId(), member);
+            }
+            if (known != null) {
+                return known;
+            }
+            pending = record(() -> JournalRecords.guestAdded(member));
+        }
+        LibraryJournal.awaitDurable(pending);
+        return member;
     }
 
     /**
@@ -77,43 +588,391 @@ public class Library {
      * @return true if the ID is unique, false otherwise
      */
     public boolean isMemberIdUnique(int id) {
-        return members.stream().noneMatch(m -> m.getId() == id);
+        return !membersById.containsKey(id);
     }
 
     /**
-     * Removes a member from the library.
+     * Finds the member registered under the given ID.
+     *
+     * @param id the ID of the member
+     * @return the member with that ID, or null if no such member exists
+     */
+    public Member findMemberById(int id) {
+        return membersById.get(id);
+    }
+
+    /**
+     * Removes a member from the library and from the member index.
      *
      * @param member the member to remove
      */
     public void removeMember(Member member) {
-        members.remove(member);
+        CompletableFuture<Void> pending = null;
+        boolean removed;
+        synchronized (memberLock) {
+            Snapshot<Member> remaining = members.without(member);
+            removed = remaining != members;
+            if (removed) {
+                members = remaining;
+                membersById.remove(member.getId(), member);
+                pending = record(() -> JournalRecords.memberRemoved(member));
+            }
+        }
+        LibraryJournal.awaitDurable(pending);
+        if (removed) {
+            publish(LibraryEvent.Type.MEMBER_REMOVED, member);
+        }
     }
 
     /**
-     * Returns a list of all books in the library.
+     * Returns a read-only list of all books in the library.
+     * The list is a view of the current snapshot; it is not copied and does not reflect later changes.
      *
      * @return a list containing all the books
      */
     public List<Book> getBooks() {
-        return new ArrayList<>(books);
+        return bookStore.snapshot().asList();
     }
 
     /**
-     * Returns a list of all registered members.
+     * Returns the current snapshot of all books in the library.
+     *
+     * @return an immutable snapshot of the books
+     */
+    public Snapshot<Book> books() {
+        return bookStore.snapshot();
+    }
+
+    /**
+     * Returns one page of the library's books, in insertion order, without copying the catalog.
+     *
+     * @param offset the position of the first book of the page
+     * @param limit  the maximum number of books to return
+     * @return a read-only list with at most {@code limit} books
+     */
+    public List<Book> books(int offset, int limit) {
+        return bookStore.snapshot().page(offset, limit);
+    }
+
+    /**
+     * Performs the given action for every book in the current snapshot.
+     *
+     * @param action the action to perform for each book
+     */
+    public void forEachBook(Consumer<? super Book> action) {
+        bookStore.snapshot().forEach(action);
+    }
+
+    /**
+     * Returns a stream over the current snapshot of books. The stream splits evenly when run in parallel.
+     *
+     * @return a stream of all books
+     */
+    public Stream<Book> bookStream() {
+        return bookStore.snapshot().stream();
+    }
+
+    /**
+     * Gets the number of books in the library.
+     *
+     * @return the number of books
+     */
+    public int getBookCount() {
+        return bookStore.snapshot().size();
+    }
+
+    /**
+     * Returns a read-only list of all registered members.
+     * The list is a view of the current snapshot; it is not copied and does not reflect later changes.
      *
      * @return a list containing all the members
      */
     public List<Member> getMembers() {
-        return new ArrayList<>(members);
+        return members.asList();
+    }
+
+    /**
+     * Returns the current snapshot of all registered members.
+     *
+     * @return an immutable snapshot of the members
+     */
+    public Snapshot<Member> members() {
+        return members;
+    }
+
+    /**
+     * Returns one page of the registered members, in registration order, without copying the member list.
+     *
+     * @param offset the position of the first member of the page
+     * @param limit  the maximum number of members to return
+     * @return a read-only list with at most {@code limit} members
+     */
+    public List<Member> members(int offset, int limit) {
+        return members.page(offset, limit);
+    }
+
+    /**
+     * Performs the given action for every member in the current snapshot.
+     *
+     * @param action the action to perform for each member
+     */
+    public void forEachMember(Consumer<? super Member> action) {
+        members.forEach(action);
+    }
+
+    /**
+     * Returns a stream over the current snapshot of members.
+     *
+     * @return a stream of all members
+     */
+    public Stream<Member> memberStream() {
+        return members.stream();
+    }
+
+    /**
+     * Gets the number of registered members.
+     *
+     * @return the number of members
+     */
+    public int getMemberCount() {
+        return members.size();
+    }
+
+    /**
+     * Lends a copy of a book to a member. The copy is taken atomically, and the new loan is registered with the
+     * library and added to the member's loan history. Copies set aside for holds only go to their holders.
+     *
+     * @param member the borrowing member
+     * @param book   the book to borrow
+     * @return the new loan, or null if no copy was available to this member
+     */
+    public Loan borrowBook(Member member, Book book) {
+        long start = System.nanoTime();
+        long allocated = LibraryMetrics.allocatedBytes();
+        Loan loan = null;
+        int copy = holds.tryCheckOut(member, book);
+        if (copy != CopyInventory.NO_COPY) {
+            loan = new Loan(member, book, copy);
+            member.addLoan(loan);
+            addLoan(loan, true);
+        } else {
+            borrowsRefused.increment();
+        }
+        borrowTimer.record(start, allocated);
+        return loan;
+    }
+
+    /**
+     * Takes back a copy of a book from a member, returning one of the member's open loans of the book.
+     * The loan is found through the open-loan index, so this takes constant time however long the member's
+     * history is, and loans that were already returned are never matched.
+     *
+     * @param member the returning member
+     * @param book   the book being returned
+     * @return the loan that was returned, or null if the member has no open loan of the book
+     */
+    public Loan returnBook(Member member, Book book) {
+        long start = System.nanoTime();
+        long allocated = LibraryMetrics.allocatedBytes();
+        Loan returned = null;
+        for (Loan loan; returned == null && (loan = openLoans.find(member.getId(), book.getId())) != null; ) {
+            if (loan.markAsReturned()) {
+                returned = loan;
+            } else {
+                openLoans.closed(loan);  // Returned concurrently and not yet unindexed
+            }
+        }
+        if (returned == null) {
+            returnsUnmatched.increment();
+        }
+        returnTimer.record(start, allocated);
+        return returned;
+    }
+
+    /**
+     * Finds one of a member's open loans of a book.
+     *
+     * @param member the member
+     * @param book   the book
+     * @return an open loan, or null if the member has not borrowed the book
+     */
+    public Loan findOpenLoan(Member member, Book book) {
+        return openLoans.find(member.getId(), book.getId());
+    }
+
+    /**
+     * Lists the loans a member has not returned yet.
+     *
+     * @param memberId the ID of the member
+     * @return an unmodifiable list of open loans, empty if there are none
+     */
+    public List<Loan> findOpenLoansByMember(int memberId) {
+        return openLoans.byMember(memberId);
+    }
+
+    /**
+     * Lists the loans of a book that have not been returned yet.
+     *
+     * @param book the book
+     * @return an unmodifiable list of open loans, empty if there are none
+     */
+    public List<Loan> findOpenLoansByBook(Book book) {
+        return openLoans.byBook(book.getId());
+    }
+
+    /**
+     * Puts a member in the queue for a book, typically one with no copy on hand. Holds are served in the order
+     * they were placed: each returned copy is set aside for the next waiting member, who can then borrow it until
+     * the pickup deadline three days later, after which it passes on to the next member in the queue.
+     * A member has at most one hold per book.
+     *
+     * @param member the member
+     * @param book   the book
+     * @return the new hold, or the member's existing hold on the book
+     */
+    public Hold placeHold(Member member, Book book) {
+        return holds.place(member, book);
+    }
+
+    /**
+     * Withdraws a hold. If a copy was set aside for it, the copy passes on to the next member in the queue.
+     *
+     * @param hold the hold to cancel
+     * @return true if the hold was cancelled, false if it had already ended
+     */
+    public boolean cancelHold(Hold hold) {
+        return holds.cancel(hold);
+    }
+
+    /**
+     * Finds a member's waiting or ready hold on a book.
+     *
+     * @param member the member
+     * @param book   the book
+     * @return the hold, or null if the member has no active hold on the book
+     */
+    public Hold findHold(Member member, Book book) {
+        return holds.find(member.getId(), book.getId());
+    }
+
+    /**
+     * Gets the position of a hold in its queue, counting only holds that are still waiting.
+     *
+     * @param hold the hold
+     * @return 1 if the hold gets the next returned copy and so on, 0 if a copy is ready for pickup,
+     *         or -1 if the hold has ended
+     */
+    public int getHoldPosition(Hold hold) {
+        return holds.position(hold);
+    }
+
+    /**
+     * Gets the number of members waiting for a book, not counting holds whose copy is ready for pickup.
+     *
+     * @param book the book
+     * @return the length of the book's hold queue
+     */
+    public int getHoldQueueLength(Book book) {
+        return holds.waiting(book.getId());
+    }
+
+    /**
+     * Registers a listener that is told whenever a copy has been set aside for a hold, for example to notify the
+     * member. Listeners are called on the thread that returned the copy or expired the previous hold.
+     *
+     * @param listener the listener to call with each hold that became ready
+     */
+    public void addHoldReadyListener(Consumer<Hold> listener) {
+        holds.addListener(listener);
+    }
+
+    /**
+     * Starts checking the due dates of open loans in the background, once a minute.
+     * Each loan that passes its due date is then reported once to the overdue listeners.
+     * Calling this again has no effect.
+     */
+    public void startOverdueChecks() {
+        overdueLoans.start();
+    }
+
+    /**
+     * Stops the background checks of due dates, for a private library that is being discarded.
+     */
+    void stopOverdueChecks() {
+        overdueLoans.stop();
+    }
+
+    /**
+     * Registers a listener that is told about each loan that becomes overdue, for example to notify the member
+     * or to charge a fine. Listeners are called on the background thread started by {@link #startOverdueChecks()}.
+     *
+     * @param listener the listener to call with each overdue loan
+     */
+    public void addOverdueListener(Consumer<Loan> listener) {
+        overdueLoans.addListener(listener);
+    }
+
+    /**
+     * Gets the number of open loans that are past their due date, as of the last overdue check.
+     *
+     * @return the number of overdue loans
+     */
+    public int getOverdueLoanCount() {
+        return overdueLoans.overdueCount();
+    }
+
+    /**
+     * Lists the open loans that are past their due date, as of the last overdue check.
+     *
+     * @return an unmodifiable list of overdue loans, in no particular order
+     */
+    public List<Loan> findOverdueLoans() {
+        return overdueLoans.overdueLoans();
     }
 
     /**
      * Adds a loan record when a book is borrowed.
+     * Loans that are still out are also indexed by member and by book until they are returned.
      *
      * @param loan the loan record to add
      */
     public void addLoan(Loan loan) {
-        loans.add(loan);
+        addLoan(loan, false);
+    }
+
+    /**
+     * Adds a loan record, and logs it together with the copy the loan took, if it took one, so that a crash can
+     * never keep the one without the other.
+     *
+     * @param loan      the loan record to add
+     * @param copyTaken whether a copy was taken for the loan without logging it
+     */
+    private void addLoan(Loan loan, boolean copyTaken) {
+        CompletableFuture<Void> pending;
+        boolean active;
+        synchronized (loanLock) {
+            if (loan.getId() == 0) {
+                loan.assignId(loanIds.incrementAndGet());
+            } else {
+                loanIds.accumulateAndGet(loan.getId(), Math::max);
+            }
+            loans = loans.with(loan);
+            synchronized (loan) {  // A concurrent return is logged and unindexed only after the loan itself
+                active = loan.register(this);
+                if (active) {
+                    openLoans.opened(loan);
+                    overdueLoans.schedule(loan);
+                }
+                pending = record(() -> JournalRecords.loanAdded(loan, copyTaken));
+            }
+        }
+        if (active) {
+            activeLoans.increment();
+        }
+        LibraryJournal.awaitDurable(pending);
+        if (active) {
+            publish(LibraryEvent.Type.LOAN_OPENED, loan);
+        }
     }
 
     /**
@@ -122,16 +981,344 @@ public class Library {
      * @param loan the loan record to remove
      */
     public void removeLoan(Loan loan) {
-        loans.remove(loan);
+        synchronized (loanLock) {
+            Snapshot<Loan> remaining = loans.without(loan);
+            if (remaining == loans) {
+                return;
+            }
+            loans = remaining;
+        }
+        boolean wasActive = loan.unregister(this);
+        if (wasActive) {
+            openLoans.closed(loan);
+            overdueLoans.cancel(loan);
+            activeLoans.decrement();
+        }
+        LibraryJournal.awaitDurable(record(() -> JournalRecords.loanRemoved(loan)));
+        if (wasActive) {
+            publish(LibraryEvent.Type.LOAN_CLOSED, loan);
+        }
+    }
+
+    /**
+     * Called by a registered loan once it has been returned.
+     *
+     * @param loan         the loan that was returned
+     * @param copyReturned whether the loan's copy was checked in without logging it, for the return to log
+     */
+    void loanClosed(Loan loan, boolean copyReturned) {
+        openLoans.closed(loan);
+        overdueLoans.cancel(loan);
+        activeLoans.decrement();
+        LibraryJournal.awaitDurable(record(() -> JournalRecords.loanReturned(loan, copyReturned)));
+        publish(LibraryEvent.Type.LOAN_CLOSED, loan);
+    }
+
+    /**
+     * Called by an attached book whenever its number of available copies changes.
+     *
+     * @param book   the book whose copies changed
+     * @param before the number of copies available before the change
+     * @param after  the number of copies available after the change
+     * @param logged whether to log the change, false if the record of the loan that took or returned the copy
+     *               carries it
+     */
+    void copiesChanged(Book book, int before, int after, boolean logged) {
+        countCopies(before, after);
+        if (titleCompletions != null) {
+            titleCompletions.adjust(book, after - before);
+            authorCompletions.adjust(book, after - before);
+        }
+        if (after > before) {
+            holds.copyReturned(book);
+        }
+        if (logged) {
+            LibraryJournal.awaitDurable(record(() -> JournalRecords.copiesChanged(book, after - before)));
+        }
+        publish(LibraryEvent.Type.COPIES_CHANGED, book);
+    }
+
+    /**
+     * Registers a listener that is told about every change to the catalog, the members, and the open loans, for
+     * example to keep a view of the library up to date without reloading it. Listeners are called on the thread that
+     * made the change, once it is durable, and must return quickly; a user interface should hand the events over to
+     * its own thread, in batches, as {@link SwingEventBatcher} does for Swing.
+     *
+     * @param listener the listener to call with each change
+     */
+    public void addChangeListener(Consumer<LibraryEvent> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addChangeListener(Consumer)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeChangeListener(Consumer<LibraryEvent> listener) {
+        changeListeners.remove(listener);
+    }
+
+    private void publish(LibraryEvent.Type type, Book book) {
+        if (!changeListeners.isEmpty()) {
+            publish(LibraryEvent.of(type, book));
+        }
+    }
+
+    private void publish(LibraryEvent.Type type, Loan loan) {
+        if (!changeListeners.isEmpty()) {
+            publish(LibraryEvent.of(type, loan));
+        }
+    }
+
+    private void publish(LibraryEvent.Type type, Member member) {
+        if (!changeListeners.isEmpty()) {
+            publish(LibraryEvent.of(type, member));
+        }
+    }
+
+    private void publish(LibraryEvent event) {
+        for (Consumer<LibraryEvent> listener : changeListeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {  // A failing listener must not fail the change, which is already made
+                Thread current = Thread.currentThread();
+                current.getUncaughtExceptionHandler().uncaughtException(current, e);
+            }
+        }
+    }
+
+    /**
+     * Attaches the write-ahead log that receives every subsequent mutation, or detaches it when given null.
+     *
+     * @param journal the journal to attach, or null to stop journaling
+     */
+    void setJournal(LibraryJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Renumbers the copies of every book with open loans once the journal has been replayed, so the copies out keep
+     * the numbers their loans name and the copies on hand take the numbers left. Replayed copy changes cannot
+     * tell which copy they took, and the checkpoint keeps only the number of copies on hand.
+     */
+    void restoreCopies() {
+        Map<Book, List<Loan>> open = new HashMap<>();
+        for (Loan loan : loans) {
+            if (loan.getReturnDate() == null) {
+                open.computeIfAbsent(loan.getBook(), book -> new ArrayList<>()).add(loan);
+            }
+        }
+        open.forEach((book, out) ->
+                book.inventory().restore(book.getAmount(), out.stream().mapToInt(Loan::getCopy).toArray()));
+    }
+
+    /**
+     * Attaches the loan history that the journal's checkpoints move returned loans to, and makes its records
+     * visible to history queries.
+     *
+     * @param history the history
+     */
+    void setLoanHistory(LoanHistory history) {
+        synchronized (loanLock) {
+            history.publish();
+            loanHistory = history;
+        }
+    }
+
+    /**
+     * Drops returned loans that a checkpoint has moved to the loan history from the loan snapshot and from their
+     * members' loan lists, and publishes the history records in the same step, so a {@linkplain #loanView() view}
+     * sees each loan exactly once. Rebuilding the snapshot costs one pass over it, once per checkpoint.
+     *
+     * @param archived the IDs of the loans now in the history
+     */
+    void archiveLoans(long[] archived) {
+        long[] ids = archived.clone();
+        Arrays.sort(ids);
+        synchronized (loanLock) {
+            List<Loan> kept = new ArrayList<>(loans.size());
+            Map<Member, Set<Loan>> dropped = new HashMap<>();
+            for (Loan loan : loans) {
+                if (loan.getReturnDate() != null && Arrays.binarySearch(ids, loan.getId()) >= 0) {
+                    dropped.computeIfAbsent(loan.getMember(), member -> new HashSet<>()).add(loan);
+                } else {
+                    kept.add(loan);
+                }
+            }
+            loans = Snapshot.of(kept);
+            dropped.forEach((member, gone) -> member.removeLoans(gone));
+            loanHistory.publish();
+        }
+    }
+
+    /**
+     * Takes a consistent view of all loans: those the library keeps and those moved to the loan history.
+     *
+     * @return the view
+     */
+    LoanHistory.View loanView() {
+        synchronized (loanLock) {
+            return loanHistory == null ? LoanHistory.liveOnly(loans) : loanHistory.view().withLive(loans);
+        }
+    }
+
+    /**
+     * Gets the highest catalog ID handed out so far.
+     *
+     * @return the last assigned book ID
+     */
+    long lastBookId() {
+        return bookIds.get();
     }
 
     /**
-     * Returns a list of all active loans in the library.
+     * Gets the highest loan ID handed out so far.
      *
-     * @return a list of all loans
+     * @return the last assigned loan ID
+     */
+    long lastLoanId() {
+        return loanIds.get();
+    }
+
+    /**
+     * Makes sure that IDs handed out from now on are greater than the given ones, for example after recovery.
+     *
+     * @param lastBookId the highest book ID already in use
+     * @param lastLoanId the highest loan ID already in use
+     */
+    void reserveIds(long lastBookId, long lastLoanId) {
+        bookIds.accumulateAndGet(lastBookId, Math::max);
+        loanIds.accumulateAndGet(lastLoanId, Math::max);
+    }
+
+    /**
+     * Appends a record to the journal, if one is attached.
+     *
+     * @param record supplies the encoded record; only called when a journal is attached
+     * @return a future completing once the record is durable, or null if the library is not journaled
+     */
+    private CompletableFuture<Void> record(Supplier<byte[]> record) {
+        LibraryJournal current = journal;
+        return current == null ? null : current.append(record.get());
+    }
+
+    /**
+     * Waits until all of the given journal records are durable.
+     *
+     * @param pending the futures returned when the records were appended
+     */
+    private static void awaitDurable(List<CompletableFuture<Void>> pending) {
+        for (CompletableFuture<Void> logged : pending) {
+            LibraryJournal.awaitDurable(logged);
+        }
+    }
+
+    private void assignBookId(Book book) {
+        if (book.getId() == 0) {
+            book.assignId(bookIds.incrementAndGet());
+        } else {
+            bookIds.accumulateAndGet(book.getId(), Math::max);
+        }
+    }
+
+    /**
+     * Applies a change in a book's copies on hand to the live counters.
+     *
+     * @param before the book's copies before the change, 0 when the book is being added
+     * @param after  the book's copies after the change, 0 when the book is being removed
+     */
+    private void countCopies(int before, int after) {
+        copiesOnHand.add(after - before);
+        if (before <= 0 && after > 0) {
+            availableBooks.increment();
+        } else if (before > 0 && after <= 0) {
+            availableBooks.decrement();
+        }
+    }
+
+    /**
+     * Returns a read-only list of all loans in the library.
+     * The list is a view of the current snapshot; it is not copied and does not reflect later changes.
+     * In a journaled library, returned loans leave the list at the next checkpoint, for the loan history;
+     * {@link #findLoansOfMember(int, Date, Date)} and {@link #findReturns(Date, Date)} search both.
+     *
+     * @return a list of all loans not moved to the loan history
      */
     public List<Loan> getLoans() {
-        return new ArrayList<>(loans);
+        return loans.asList();
+    }
+
+    /**
+     * Returns the current snapshot of all loans in the library, apart from those moved to the loan history.
+     *
+     * @return an immutable snapshot of the loans
+     */
+    public Snapshot<Loan> loans() {
+        return loans;
+    }
+
+    /**
+     * Returns a stream over the current snapshot of loans, apart from those moved to the loan history.
+     *
+     * @return a stream of the loans
+     */
+    public Stream<Loan> loanStream() {
+        return loans.stream();
+    }
+
+    /**
+     * Finds the loans a member made in a range of time, whether the library still keeps them or has moved them to
+     * the loan history. Only the history partitions of the months in the range are read; the loans the library
+     * keeps are scanned, which after a checkpoint are only those still out and those returned since.
+     *
+     * @param memberId the member's ID
+     * @param from     the earliest loan date
+     * @param to       the loan date to stop before
+     * @return the loans, by loan date
+     * @throws UncheckedIOException if the loan history cannot be read
+     */
+    public List<LoanRecord> findLoansOfMember(int memberId, Date from, Date to) {
+        LoanHistory.View view = loanView();
+        try {
+            List<LoanRecord> found = view.loansOfMember(memberId, from.getTime(), to.getTime());
+            for (Loan loan : view.live()) {
+                long made = loan.getLoanDate().getTime();
+                if (loan.getMember().getId() == memberId && made >= from.getTime() && made < to.getTime()) {
+                    found.add(LoanRecord.of(loan));
+                }
+            }
+            found.sort(Comparator.comparing(LoanRecord::getLoanDate).thenComparingLong(LoanRecord::getId));
+            return found;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Finds the loans returned in a range of time, whether the library still keeps them or has moved them to the
+     * loan history. History partitions whose returns all fall outside the range are not scanned.
+     *
+     * @param from the earliest return date
+     * @param to   the return date to stop before
+     * @return the loans, by return date
+     * @throws UncheckedIOException if the loan history cannot be read
+     */
+    public List<LoanRecord> findReturns(Date from, Date to) {
+        LoanHistory.View view = loanView();
+        try {
+            List<LoanRecord> found = view.returnsBetween(from.getTime(), to.getTime());
+            for (Loan loan : view.live()) {
+                Date returned = loan.getReturnDate();
+                if (returned != null && !returned.before(from) && returned.before(to)) {
+                    found.add(LoanRecord.of(loan));
+                }
+            }
+            found.sort(Comparator.comparing(LoanRecord::getReturnDate).thenComparingLong(LoanRecord::getId));
+            return found;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -140,28 +1327,86 @@ public class Library {
      * @param user the user to add
      */
     public void addUser(User user) {
-        users.add(user);
+        synchronized (userLock) {
+            users = users.with(user);
+        }
     }
 
     /**
-     * Returns a list of all users registered in the library system.
+     * Returns a read-only list of all users registered in the library system.
+     * The list is a view of the current snapshot; it is not copied and does not reflect later changes.
      *
      * @return a list containing all users
      */
     public List<User> getUsers() {
-        return new ArrayList<>(users);
+        return users.asList();
+    }
+
+    /**
+     * Gets the number of books that have at least one copy on hand.
+     *
+     * @return the number of available books
+     */
+    public long getAvailableBookCount() {
+        return availableBooks.sum();
+    }
+
+    /**
+     * Gets the total number of copies on hand across all books.
+     *
+     * @return the number of copies that can currently be borrowed
+     */
+    public long getCopiesOnHand() {
+        return copiesOnHand.sum();
+    }
+
+    /**
+     * Gets the number of registered loans that have not been returned yet.
+     *
+     * @return the number of active loans
+     */
+    public long getActiveLoanCount() {
+        return activeLoans.sum();
     }
 
     /**
-     * Generates a summary of the current status of the library, displaying counts of books, available books, members, and active loans.
+     * Generates a summary of the current status of the library, displaying counts of books, available books,
+     * copies on hand, members, active loans, and overdue loans. All figures come from live counters, so the call takes constant time.
      *
      * @return a formatted string representing the current status of the library
      */
     public String getLibraryStatus() {
-        return String.format("Total Books: %d, Available Books: %d, Total Members: %d, Active Loans: %d",
-                books.size(),
-                books.stream().filter(Book::isAvailable).count(),
+        long start = System.nanoTime();
+        long allocated = LibraryMetrics.allocatedBytes();
+        String status = String.format("Total Books: %d, Available Books: %d, Copies On Hand: %d, Total Members: %d, "
+                        + "Active Loans: %d, Overdue Loans: %d",
+                getBookCount(),
+                getAvailableBookCount(),
+                getCopiesOnHand(),
                 members.size(),
-                loans.stream().filter(loan -> loan.getReturnDate() == null).count());
+                getActiveLoanCount(),
+                getOverdueLoanCount());
+        statusTimer.record(start, allocated);
+        return status;
+    }
+
+    /**
+     * Returns the metrics the library records for its hot paths. Other components, such as the user interface,
+     * may add their own timers and counters to it.
+     *
+     * @return the library's metrics
+     */
+    public LibraryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Normalizes a title or author so that index keys ignore case and surrounding whitespace.
+     *
+     * @param text the text to normalize
+     * @return the normalized index key
+     */
+    static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
     }
 }
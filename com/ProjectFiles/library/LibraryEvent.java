@@ -0,0 +1,89 @@
+package com.ProjectFiles.library;
+
+/**
+ * Describes one change to a {@link Library}, as delivered to the listeners registered with
+ * {@link Library#addChangeListener(java.util.function.Consumer)}.
+ * <p>
+ * Book events carry the book, loan events the loan, and member events the member; the other subjects are null.
+ * A copies event is sent for every checkout and check-in, so a borrow produces a copies event followed by a
+ * loan-opened event.
+ */
+public final class LibraryEvent {
+    /**
+     * The kinds of change.
+     */
+    public enum Type {
+        BOOK_ADDED,
+        BOOK_REMOVED,
+        COPIES_CHANGED,
+        LOAN_OPENED,
+        LOAN_CLOSED,
+        MEMBER_ADDED,
+        MEMBER_REMOVED
+    }
+
+    private final Type type;
+    private final Book book;      // The book added, removed, or whose copies changed
+    private final Loan loan;      // The loan opened or closed
+    private final Member member;  // The member added or removed
+
+    private LibraryEvent(Type type, Book book, Loan loan, Member member) {
+        this.type = type;
+        this.book = book;
+        this.loan = loan;
+        this.member = member;
+    }
+
+    static LibraryEvent of(Type type, Book book) {
+        return new LibraryEvent(type, book, null, null);
+    }
+
+    static LibraryEvent of(Type type, Loan loan) {
+        return new LibraryEvent(type, null, loan, null);
+    }
+
+    static LibraryEvent of(Type type, Member member) {
+        return new LibraryEvent(type, null, null, member);
+    }
+
+    /**
+     * Gets the kind of change.
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the book of a book or copies event.
+     *
+     * @return the book, or null for other events
+     */
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * Gets the loan of a loan event.
+     *
+     * @return the loan, or null for other events
+     */
+    public Loan getLoan() {
+        return loan;
+    }
+
+    /**
+     * Gets the member of a member event.
+     *
+     * @return the member, or null for other events
+     */
+    public Member getMember() {
+        return member;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + (book != null ? book : loan != null ? "loan " + loan.getId() : member);
+    }
+}
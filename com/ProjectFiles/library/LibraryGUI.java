@@ -1,16 +1,31 @@
 package com.ProjectFiles.library;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
 
 /**
  * Main GUI class for the library application.
  * Handles user interactions and displays information based on user roles.
+ * Lookups, scans, and changes of the library run in the background through a {@link LibraryService}, so the
+ * window stays responsive however large the library is; a bar at the bottom shows what is running and can cancel it.
+ * The status tab follows the library's change events, applied once per frame, so it stays current without reloading.
  */
 public class LibraryGUI extends JFrame {
     private Library library;// Access to the library's management system
+    private LibraryService service;  // Runs the library operations off the event dispatch thread
     private JTextArea statusArea;// Area for displaying library status information
     private String userRole;// Role of the currently logged-in user
     private JLabel userLabel;// Label to display user information
@@ -18,10 +33,26 @@ public class LibraryGUI extends JFrame {
     private String currentUserName;// Name of the currently logged-in user
     private JPanel topPanel;// Top panel for displaying user information and logout option
     private JPanel statusPanel;   // Panel for displaying status information of the library
+    private final Set<CompletableFuture<?>> running = new LinkedHashSet<>();  // Background operations, EDT only
+    private final JPanel busyPanel = new JPanel(new BorderLayout());  // Shown while background operations run
+    private final JProgressBar busyBar = new JProgressBar();
+    private final JButton cancelButton = new JButton("Cancel");
+    private CompletableFuture<LibraryService.Status> statusLoad;  // The status refresh in progress, if any
+    private boolean statusStale;  // Whether the status changed while a refresh was scanning, EDT only
+    private boolean availableShown;  // Whether the available books shown are those of the last refresh, EDT only
+    private final SwingEventBatcher changes = new SwingEventBatcher(this::applyChanges);  // Library changes, per frame
 
     // Models for displaying list data
-    DefaultListModel<Member> membersModel = new DefaultListModel<>();
+    SnapshotListModel<Member> membersModel = new SnapshotListModel<>(Member::toString);
+    SnapshotListModel<Book> allBooksModel = new SnapshotListModel<>(LibraryGUI::describeBook);
+    SnapshotListModel<Book> availableBooksModel = new SnapshotListModel<>(
+            book -> describeBook(book) + " - Copies: " + book.getAmount());
+    JList<String> availableBooksList = createLazyList(availableBooksModel);
     JLabel totalMembersLabel = new JLabel("Total Members: ");
+    JLabel totalBooksLabel = new JLabel("Total Books: ");
+    JLabel availableBooksLabel = new JLabel("Available Books: ");
+    JLabel activeLoansLabel = new JLabel("Active Loans: ");
+    JLabel overdueLoansLabel = new JLabel("Overdue Loans: ");
 
 
     /**
@@ -29,6 +60,7 @@ public class LibraryGUI extends JFrame {
      */
     public LibraryGUI() {
         library = Library.getInstance();  // Ensures a single instance of Library is used through
+        service = new LibraryService(library);
         setupLoginAndUI();
     }
 
@@ -80,6 +112,14 @@ public class LibraryGUI extends JFrame {
         topPanel.add(logoutButton, BorderLayout.WEST);
         add(topPanel, BorderLayout.NORTH);
 
+        busyBar.setIndeterminate(true);
+        busyBar.setStringPainted(true);
+        busyPanel.add(busyBar, BorderLayout.CENTER);
+        cancelButton.addActionListener(e -> new ArrayList<>(running).forEach(operation -> operation.cancel(true)));
+        busyPanel.add(cancelButton, BorderLayout.EAST);
+        busyPanel.setVisible(false);
+        add(busyPanel, BorderLayout.SOUTH);
+
         JTabbedPane tabbedPane = new JTabbedPane();
 
         // Initialize statusPanel using createStatusPanel() and store the reference
@@ -106,6 +146,10 @@ public class LibraryGUI extends JFrame {
      * Logs out the current user and restarts the application to show the login screen again.
      */
     private void logout() {
+        library.removeChangeListener(changes);
+        changes.close();
+        running.forEach(operation -> operation.cancel(true));
+        service.close();
         this.dispose();
         new LibraryGUI().setVisible(true);
     }
@@ -120,119 +164,269 @@ public class LibraryGUI extends JFrame {
         contentPanel.setLayout(new BoxLayout(contentPanel, BoxLayout.Y_AXIS));
         panel.add(new JScrollPane(contentPanel), BorderLayout.CENTER);  // Scrollable content panel
 
-        // Active loans counter
-        long activeLoansCount = library.getLoans().stream().filter(loan -> loan.getReturnDate() == null).count();
-        JLabel activeLoansLabel = new JLabel("Active Loans: " + activeLoansCount);
+        // Summary line of all counters
+        statusArea = new JTextArea(2, 40);
+        statusArea.setEditable(false);
+        statusArea.setLineWrap(true);
+        statusArea.setWrapStyleWord(true);
+        panel.add(statusArea, BorderLayout.SOUTH);
+
+        // Loan counters
         contentPanel.add(activeLoansLabel);
+        contentPanel.add(overdueLoansLabel);
 
         // Total books count and list
-        JLabel totalBooksLabel = new JLabel("Total Books: ");
         contentPanel.add(totalBooksLabel);
-        DefaultListModel<String> allBooksModel = new DefaultListModel<>();
-        library.getBooks().forEach(book -> {
-            String bookDetails = book.getTitle() + " by " + book.getAuthor() + " (" + book.getYear() + ")";
-            allBooksModel.addElement(bookDetails);
-        });
-        JList<String> allBooksList = new JList<>(allBooksModel);
-        allBooksList.setVisibleRowCount(5);
-        contentPanel.add(new JScrollPane(allBooksList));
+        contentPanel.add(new JScrollPane(createLazyList(allBooksModel)));
 
         // Available books count and list
-        JLabel availableBooksLabel = new JLabel("Available Books: ");
         contentPanel.add(availableBooksLabel);
-        DefaultListModel<String> availableBooksModel = new DefaultListModel<>();
-        Map<String, Integer> bookAvailability = new HashMap<>();
-        library.getBooks().forEach(book -> {
-            if (book.isAvailable()) {
-                bookAvailability.merge(book.getTitle() + " by " + book.getAuthor() + " (" + book.getYear() + ")", book.getAmount(), Integer::sum);
-            }
-        });
-        bookAvailability.forEach((details, count) -> availableBooksModel.addElement(details + " - Copies: " + count));
-        JList<String> availableBooksList = new JList<>(availableBooksModel);
-        availableBooksList.setVisibleRowCount(5);
         contentPanel.add(new JScrollPane(availableBooksList));
 
         // Refresh button
         JButton refreshButton = new JButton("Refresh");
-        refreshButton.addActionListener(e -> refreshLibraryStatus(
-                allBooksModel,
-                availableBooksModel,
-                totalBooksLabel,
-                availableBooksLabel,
-                membersModel,
-                totalMembersLabel
-        ));
+        refreshButton.addActionListener(e -> refreshLibraryStatus());
         contentPanel.add(refreshButton);
 
         // Member details, only visible to the librarian
         if (userRole.equals("Librarian")) {
             contentPanel.add(totalMembersLabel);
-            library.getMembers().forEach(membersModel::addElement);
-            JList<Member> memberList = new JList<>(membersModel);
-            memberList.setVisibleRowCount(5);
-            contentPanel.add(new JScrollPane(memberList));
+            contentPanel.add(new JScrollPane(createLazyList(membersModel)));
         } else {
             contentPanel.add(totalMembersLabel);
         }
 
+        library.addChangeListener(changes);  // Subscribed before the first scan, so no change falls in between
+        refreshLibraryStatus();  // Fills the lists in the background
         return panel;
     }
 
-    private void refreshLibraryStatus(
-            DefaultListModel<String> allBooksModel,
-            DefaultListModel<String> availableBooksModel,
-            JLabel totalBooksLabel,
-            JLabel availableBooksLabel,
-            DefaultListModel<Member> membersModel,
-            JLabel totalMembersLabel) {
-
-        System.out.println("Refreshing library status...");  // Debug statement
-
-        // Clear existing models
-        allBooksModel.removeAllElements();
-        availableBooksModel.removeAllElements();
-        membersModel.removeAllElements();
-
-        // Fetch all books and populate lists
-        List<Book> allBooks = library.getBooks();
-        allBooks.forEach(book -> {
-            String bookDetails = book.getTitle() + " by " + book.getAuthor() + " (" + book.getYear() + ")";
-            allBooksModel.addElement(bookDetails);  // Add each book's details to the model
-            System.out.println("Added book: " + bookDetails);  // Debug each book added
+    /**
+     * Reloads the status lists in the background. At most one reload scans at a time: one requested meanwhile is
+     * run once the current one has finished, however many were requested.
+     */
+    private void refreshLibraryStatus() {
+        if (statusLoad != null && !statusLoad.isDone()) {
+            statusStale = true;
+            return;
+        }
+        long start = System.nanoTime();
+        statusStale = false;
+        availableShown = false;
+        statusLoad = service.loadStatus(count -> SwingUtilities.invokeLater(
+                () -> busyBar.setString(String.format("Refreshing... %,d items", count))));
+        runAsync("Refreshing...", statusLoad, status -> {
+            // The models show the snapshots directly and only announce what changed since the last refresh.
+            // Books and members may have moved on since the scan, through change events, so those lists take
+            // the current snapshots; the available books keep the snapshot their positions refer to.
+            allBooksModel.setSnapshot(library.books());
+            availableBooksModel.setFiltered(status.getBooks(), status.getAvailablePositions());
+            availableShown = true;
+            membersModel.setSnapshot(library.members());
+            availableBooksList.repaint();  // Copies may have changed without the positions changing
+            updateStatus();
+
+            // The refresh spans threads, so only its latency is recorded
+            library.getMetrics().timer("gui.statusRefresh").record(start, -1);
+            if (statusStale) {
+                refreshLibraryStatus();
+            }
         });
+    }
 
-        // Fetch available books and update the available books model
-        Map<String, Integer> bookAvailability = new HashMap<>();
-        allBooks.stream()
-                .filter(Book::isAvailable)
-                .forEach(book -> {
-                    String details = book.getTitle() + " by " + book.getAuthor() + " (" + book.getYear() + ")";
-                    bookAvailability.merge(details, book.getAmount(), Integer::sum);
-                });
-        bookAvailability.forEach((details, count) -> {
-            availableBooksModel.addElement(details + " - Copies: " + count);
-            System.out.println("Available book: " + details + " - Copies: " + count);  // Debug each available book added
-        });
+    /**
+     * Applies a batch of library changes to the status tab. The book and member lists take the current snapshots,
+     * which only fire events for the rows that changed. The available books are updated from the books whose copies
+     * changed and the books added at the end of the catalog; only when that is not possible is a background scan
+     * requested instead.
+     *
+     * @param batch the changes since the previous batch, in order
+     */
+    private void applyChanges(List<LibraryEvent> batch) {
+        long start = System.nanoTime();
+        boolean books = false;
+        boolean members = false;
+        boolean availability = false;
+        boolean removed = false;
+        Map<Long, Book> changed = new HashMap<>();  // Books whose copies changed, by catalog ID
+        for (LibraryEvent event : batch) {
+            switch (event.getType()) {
+                case BOOK_ADDED:
+                case BOOK_REMOVED:
+                    books = true;
+                    availability = true;
+                    removed |= event.getType() == LibraryEvent.Type.BOOK_REMOVED;  // Moves the later positions
+                    break;
+                case COPIES_CHANGED:
+                    changed.put(event.getBook().getId(), event.getBook());
+                    availability = true;
+                    break;
+                case MEMBER_ADDED:
+                case MEMBER_REMOVED:
+                    members = true;
+                    break;
+                default:  // Loans only change the counters
+                    break;
+            }
+        }
+        if (books) {
+            allBooksModel.setSnapshot(library.books());
+        }
+        if (members) {
+            membersModel.setSnapshot(library.members());
+        }
+        if (availability) {
+            availableBooksList.repaint();
+            if (removed || !updateAvailable(changed.values())) {
+                refreshLibraryStatus();
+            }
+        }
+        updateStatus();
+        library.getMetrics().timer("gui.changeBatch").record(start, -1);
+    }
 
-        // Fetch all members and update the members model
-        List<Member> members = library.getMembers();
-        members.forEach(member -> {
-            membersModel.addElement(member);
-            System.out.println("Added member: " + member);  // Debug each member added
-        });
+    /**
+     * Updates the positions of the available books in place: each changed book is found by a binary search on its
+     * catalog ID and shown or hidden as it now has copies or not, and the books appended to the catalog since the
+     * list was filled are added if they have copies. This costs a few lookups per change rather than a scan.
+     *
+     * @param changed the books whose copies changed
+     * @return false if the list has to be scanned again instead: the last scan is not shown yet, the catalog was not
+     * only appended to, or a book could not be found because the catalog is not in the order of its IDs
+     */
+    private boolean updateAvailable(Collection<Book> changed) {
+        if (!availableShown || statusStale) {
+            return false;
+        }
+        Snapshot<Book> shown = availableBooksModel.getSnapshot();
+        Snapshot<Book> current = library.books();
+        if (current != shown && (current.size() < shown.size() || !shown.sharesPrefixWith(current))) {
+            return false;
+        }
+        int[] positions = availableBooksModel.getPositions();
+        if (positions == null) {
+            return false;
+        }
+        TreeSet<Integer> toggled = new TreeSet<>();  // Positions to show that are hidden, or to hide that are shown
+        for (Book book : changed) {
+            int position = positionOf(current, book.getId());
+            if (position < 0) {
+                return false;
+            }
+            if (position < shown.size()
+                    && current.get(position).isAvailable() != Arrays.binarySearch(positions, position) >= 0) {
+                toggled.add(position);
+            }
+        }
+        for (int position = shown.size(); position < current.size(); position++) {
+            if (current.get(position).isAvailable()) {
+                toggled.add(position);
+            }
+        }
+        if (toggled.isEmpty() && current == shown) {
+            return true;
+        }
+        int[] next = new int[positions.length + toggled.size()];
+        int size = 0;
+        int i = 0;
+        for (int position : toggled) {  // Merges the two sorted lists, dropping the positions found in both
+            while (i < positions.length && positions[i] < position) {
+                next[size++] = positions[i++];
+            }
+            if (i < positions.length && positions[i] == position) {
+                i++;
+            } else {
+                next[size++] = position;
+            }
+        }
+        while (i < positions.length) {
+            next[size++] = positions[i++];
+        }
+        availableBooksModel.setFiltered(current, Arrays.copyOf(next, size));
+        return true;
+    }
+
+    /**
+     * Finds a book in a catalog snapshot by a binary search on its catalog ID.
+     *
+     * @return the position, or -1 if the book is not where a catalog in ID order would hold it
+     */
+    private static int positionOf(Snapshot<Book> books, long id) {
+        int low = 0;
+        int high = books.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = books.get(mid).getId();
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a list for a model that formats its rows on demand. The fixed cell size, taken from a prototype row,
+     * lets the list lay itself out without asking the model for any row it does not paint.
+     */
+    private static JList<String> createLazyList(SnapshotListModel<?> model) {
+        JList<String> list = new JList<>(model);
+        list.setPrototypeCellValue("A fairly long book title by a fairly long author name (2024) - Copies: 10");
+        list.setVisibleRowCount(5);
+        return list;
+    }
 
-        // Update labels with the latest counts
-        totalBooksLabel.setText("Total Books: " + allBooksModel.getSize());
-        availableBooksLabel.setText("Available Books: " + availableBooksModel.getSize());
-        totalMembersLabel.setText("Total Members: " + membersModel.getSize());
+    /**
+     * Describes a book as "title by author (year)".
+     */
+    private static String describeBook(Book book) {
+        return book.getTitle() + " by " + book.getAuthor() + " (" + book.getYear() + ")";
+    }
 
-        System.out.println("Refresh complete.");  // Confirm completion
+    /**
+     * Runs a background operation while the busy bar shows what is going on, and hands its result to an action on
+     * the event dispatch thread. Failures are reported in a dialog; cancelled operations are dropped silently.
+     *
+     * @param activity  what the operation does, shown in the busy bar
+     * @param operation the operation, as returned by the {@link LibraryService}
+     * @param onSuccess what to do with the result
+     * @param <T>       the type of the result
+     */
+    private <T> void runAsync(String activity, CompletableFuture<T> operation, Consumer<? super T> onSuccess) {
+        running.add(operation);
+        busyBar.setString(activity);
+        busyPanel.setVisible(true);
+        operation.whenCompleteAsync((result, failure) -> {
+            running.remove(operation);
+            busyPanel.setVisible(!running.isEmpty());
+            if (failure == null) {
+                onSuccess.accept(result);
+                return;
+            }
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof CancellationException) {
+                return;
+            }
+            String message = cause instanceof RejectedExecutionException
+                    ? "The library is busy. Please try again in a moment." : cause.getMessage();
+            JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
+        }, SwingUtilities::invokeLater);
     }
 
+    /**
+     * Updates the counters of the status tab from the library's running totals, which costs the same however large
+     * the library is.
+     */
     private void updateStatus() {
-        if (statusArea != null) {
-            statusArea.setText(library.getLibraryStatus());
-        }
+        statusArea.setText(library.getLibraryStatus());
+        totalBooksLabel.setText("Total Books: " + library.getBookCount());
+        availableBooksLabel.setText("Available Books: " + library.getAvailableBookCount());
+        totalMembersLabel.setText("Total Members: " + library.members().size());
+        activeLoansLabel.setText("Active Loans: " + library.getActiveLoanCount());
+        overdueLoansLabel.setText("Overdue Loans: " + library.getOverdueLoanCount());
     }
 
     // Method to create GridBagConstraints
@@ -263,6 +457,16 @@ public class LibraryGUI extends JFrame {
         panel.add(addButton, createGridBagConstraints(0, 2, 2));
         JButton removeButton = new JButton("Remove Member");
         panel.add(removeButton, createGridBagConstraints(0, 3, 2));
+        JButton importButton = new JButton("Import Members...");
+        panel.add(importButton, createGridBagConstraints(0, 4, 1));
+        JButton exportButton = new JButton("Export Members...");
+        panel.add(exportButton, createGridBagConstraints(1, 4, 1));
+
+        importButton.addActionListener(e -> runBulkTransfer("Importing members", false,
+                (loader, file, progress) -> describe(loader.importMembers(file, progress))));
+        exportButton.addActionListener(e -> runBulkTransfer("Exporting members", true,
+                (loader, file, progress) -> String.format("%,d members written to %s",
+                        loader.exportMembers(file, progress), file.getFileName())));
 
         addButton.addActionListener(e -> {
             String name = memberNameField.getText().trim();
@@ -276,11 +480,11 @@ public class LibraryGUI extends JFrame {
                 if (!library.isMemberIdUnique(id)) {
                     JOptionPane.showMessageDialog(this, "Error: Member with this ID already exists.", "Error", JOptionPane.ERROR_MESSAGE);
                 } else {
-                    Member member = new Member(name, id);
-                    library.addMember(member);
-                    JOptionPane.showMessageDialog(this, "Member added: " + name);
-                    memberNameField.setText("");
-                    memberIdField.setText("");
+                    runAsync("Adding member " + name + "...", service.addMember(new Member(name, id)), member -> {
+                        JOptionPane.showMessageDialog(this, "Member added: " + member.getName());
+                        memberNameField.setText("");
+                        memberIdField.setText("");
+                    });
                 }
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid ID format.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -290,13 +494,13 @@ public class LibraryGUI extends JFrame {
         removeButton.addActionListener(e -> {
             try {
                 int id = Integer.parseInt(memberIdField.getText().trim());
-                Member member = library.getMembers().stream().filter(m -> m.getId() == id).findFirst().orElse(null);
-                if (member != null) {
-                    library.removeMember(member);
-                    JOptionPane.showMessageDialog(this, "Member removed: " + member.getName());
-                } else {
-                    JOptionPane.showMessageDialog(this, "No such member exists!", "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                runAsync("Removing member " + id + "...", service.removeMember(id), member -> {
+                    if (member != null) {
+                        JOptionPane.showMessageDialog(this, "Member removed: " + member.getName());
+                    } else {
+                        JOptionPane.showMessageDialog(this, "No such member exists!", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid ID format.", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -314,6 +518,8 @@ public class LibraryGUI extends JFrame {
         JTextField amountField = new JTextField(15);
         JButton addButton = new JButton("Add Book");
         JButton deleteButton = new JButton("Delete Book");
+        SuggestionPopup.attach(titleField, library::suggestTitles);
+        SuggestionPopup.attach(authorField, library::suggestAuthors);
 
         panel.add(new JLabel("Title:"), createGridBagConstraints(0, 0, 1));
         panel.add(titleField, createGridBagConstraints(1, 0, 2));
@@ -332,6 +538,16 @@ public class LibraryGUI extends JFrame {
         gbcDeleteButton.insets.top = 10;  // Increase top margin for delete button
         panel.add(deleteButton, gbcDeleteButton);
 
+        JButton importButton = new JButton("Import Books...");
+        JButton exportButton = new JButton("Export Books...");
+        panel.add(importButton, createGridBagConstraints(0, 6, 1));
+        panel.add(exportButton, createGridBagConstraints(1, 6, 2));
+        importButton.addActionListener(e -> runBulkTransfer("Importing books", false,
+                (loader, file, progress) -> describe(loader.importBooks(file, progress))));
+        exportButton.addActionListener(e -> runBulkTransfer("Exporting books", true,
+                (loader, file, progress) -> String.format("%,d books written to %s",
+                        loader.exportBooks(file, progress), file.getFileName())));
+
         addButton.addActionListener(e -> {
             try {
                 String title = titleField.getText().trim();
@@ -342,13 +558,13 @@ public class LibraryGUI extends JFrame {
                     JOptionPane.showMessageDialog(this, "Title, author and amount cannot be empty, and amount must be greater than zero.", "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                Book book = new Book(title, author, year, amount);
-                library.addBook(book);
-                JOptionPane.showMessageDialog(this, "Book added: " + title + ", Copies: " + amount);
-                titleField.setText("");
-                authorField.setText("");
-                yearField.setText("");
-                amountField.setText("");
+                runAsync("Adding " + title + "...", service.addBook(new Book(title, author, year, amount)), book -> {
+                    JOptionPane.showMessageDialog(this, "Book added: " + title + ", Copies: " + amount);
+                    titleField.setText("");
+                    authorField.setText("");
+                    yearField.setText("");
+                    amountField.setText("");
+                });
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Please enter valid year and amount.", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -357,26 +573,106 @@ public class LibraryGUI extends JFrame {
         deleteButton.addActionListener(e -> {
             String title = titleField.getText().trim();
             int year = !yearField.getText().trim().isEmpty() ? Integer.parseInt(yearField.getText().trim()) : -1;
-            Book book = library.getBooks().stream()
-                    .filter(b -> b.getTitle().equals(title) && b.getYear() == year)
-                    .findFirst().orElse(null);
-            if (book != null) {
-                library.removeBook(book);
-                JOptionPane.showMessageDialog(this, "Book deleted: " + title);
-            } else {
-                JOptionPane.showMessageDialog(this, "No such book exists!", "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            runAsync("Looking up " + title + "...", service.findBooks(title, b -> year == -1 || b.getYear() == year),
+                    matches -> {
+                        // Without a year, even an exact title is confirmed, as several editions may share it
+                        Book book = year != -1 && matches.getExact() != null ? matches.getExact()
+                                : chooseSimilarBook(matches);
+                        if (book != null) {
+                            runAsync("Deleting " + book.getTitle() + "...", service.removeBook(book), removed ->
+                                    JOptionPane.showMessageDialog(this, "Book deleted: " + removed.getTitle()));
+                        } else {
+                            JOptionPane.showMessageDialog(this, "No such book exists!", "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    });
         });
 
         return panel;
     }
 
+    /**
+     * An import or export run by {@link #runBulkTransfer}.
+     */
+    private interface BulkTransfer {
+        String run(BulkLoader loader, Path file, LongConsumer progress) throws IOException;
+    }
+
+    /**
+     * Asks for a CSV or JSON-lines file and runs a bulk import or export on it in the background,
+     * showing the number of records handled so far and a summary at the end.
+     *
+     * @param title    the title of the progress window
+     * @param export   true to ask for a file to write, false for one to read
+     * @param transfer the import or export, returning the summary to show
+     */
+    private void runBulkTransfer(String title, boolean export, BulkTransfer transfer) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV or JSON lines", "csv", "jsonl", "ndjson", "json"));
+        int choice = export ? chooser.showSaveDialog(this) : chooser.showOpenDialog(this);
+        if (choice != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+
+        JProgressBar progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setString("Starting...");
+        JDialog progressDialog = new JDialog(this, title, false);
+        progressDialog.add(progressBar);
+        progressDialog.setSize(300, 70);
+        progressDialog.setLocationRelativeTo(this);
+        progressDialog.setVisible(true);
+
+        new SwingWorker<String, Long>() {
+            @Override
+            protected String doInBackground() throws IOException {
+                return transfer.run(new BulkLoader(library), file, count -> publish(count));
+            }
+
+            @Override
+            protected void process(List<Long> counts) {
+                progressBar.setString(String.format("%,d records", counts.get(counts.size() - 1)));
+            }
+
+            @Override
+            protected void done() {
+                progressDialog.dispose();
+                try {
+                    JOptionPane.showMessageDialog(LibraryGUI.this, get());
+                    updateStatus();
+                } catch (ExecutionException ex) {
+                    JOptionPane.showMessageDialog(LibraryGUI.this, "Transfer failed: " + ex.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Summarizes an import for display, listing the first few rejected records.
+     */
+    private static String describe(BulkLoader.Result result) {
+        StringBuilder summary = new StringBuilder(result.toString());
+        List<String> errors = result.getErrors();
+        for (int i = 0; i < Math.min(10, errors.size()); i++) {
+            summary.append('\n').append(errors.get(i));
+        }
+        if (result.getRejected() > 10) {
+            summary.append("\n...");
+        }
+        return summary.toString();
+    }
+
     private JPanel createLoanPanel() {
         JPanel panel = new JPanel(new GridBagLayout());
 
         JTextField bookTitleField = new JTextField(15);
         JButton borrowButton = new JButton("Borrow Book");
         JButton returnButton = new JButton("Return Book");
+        SuggestionPopup.attach(bookTitleField, library::suggestTitles);
 
         panel.add(new JLabel("Book Title:"), createGridBagConstraints(0, 0, 1));
         panel.add(bookTitleField, createGridBagConstraints(1, 0, 2));
@@ -394,14 +690,28 @@ public class LibraryGUI extends JFrame {
             String title = bookTitleField.getText().trim();
             try {
                 int memberId = userRole.equals("Librarian") ? Integer.parseInt(JOptionPane.showInputDialog(this, "Enter Member ID:")) : currentUserID;
-                Member member = library.getMembers().stream().filter(m -> m.getId() == memberId).findFirst().orElse(null);
-                Book book = library.getBooks().stream().filter(b -> b.getTitle().equals(title) && b.isAvailable()).findFirst().orElse(null);
-                if (member != null && book != null) {
-                    member.borrowBook(book);
-                    JOptionPane.showMessageDialog(this, "Book borrowed: " + title);
-                } else {
+                Member member = library.findMemberById(memberId);  // A hash lookup, fine on this thread
+                if (member == null) {
                     JOptionPane.showMessageDialog(this, "Book not available or Member not found", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
                 }
+                runAsync("Looking up " + title + "...", service.findBooks(title, Book::isAvailable), matches -> {
+                    // Fall back to similar titles for partial or misspelled ones
+                    Book book = matches.getExact() != null ? matches.getExact() : chooseSimilarBook(matches);
+                    if (book == null) {
+                        if (!offerHold(member, matches.getAnyWithTitle())) {
+                            JOptionPane.showMessageDialog(this, "Book not available or Member not found", "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                        return;
+                    }
+                    runAsync("Borrowing " + book.getTitle() + "...", service.borrowBook(member, book), loan -> {
+                        if (loan != null) {
+                            JOptionPane.showMessageDialog(this, "Book borrowed: " + book.getTitle());
+                        } else {
+                            offerHold(member, book);  // The last copy went to someone else meanwhile
+                        }
+                    });
+                });
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid Member ID", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -411,14 +721,26 @@ public class LibraryGUI extends JFrame {
             String title = bookTitleField.getText().trim();
             try {
                 int memberId = userRole.equals("Librarian") ? Integer.parseInt(JOptionPane.showInputDialog(this, "Enter Member ID:")) : currentUserID;
-                Member member = library.getMembers().stream().filter(m -> m.getId() == memberId).findFirst().orElse(null);
-                Book book = library.getBooks().stream().filter(b -> b.getTitle().equals(title) && !b.isAvailable()).findFirst().orElse(null);
-                if (member != null && book != null) {
-                    member.returnBook(book);
-                    JOptionPane.showMessageDialog(this, "Book returned: " + title);
-                } else {
+                Member member = library.findMemberById(memberId);
+                if (member == null) {
                     JOptionPane.showMessageDialog(this, "This book isn't borrowed by this member", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
                 }
+                Predicate<Book> borrowed = b -> library.findOpenLoan(member, b) != null;
+                runAsync("Looking up " + title + "...", service.findBooks(title, borrowed), matches -> {
+                    Book book = matches.getExact() != null ? matches.getExact() : chooseSimilarBook(matches);
+                    if (book == null) {
+                        JOptionPane.showMessageDialog(this, "This book isn't borrowed by this member", "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    runAsync("Returning " + book.getTitle() + "...", service.returnBook(member, book), loan -> {
+                        if (loan != null) {
+                            JOptionPane.showMessageDialog(this, "Book returned: " + book.getTitle());
+                        } else {
+                            JOptionPane.showMessageDialog(this, "This book isn't borrowed by this member", "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    });
+                });
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid Member ID", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -427,6 +749,63 @@ public class LibraryGUI extends JFrame {
         return panel;
     }
 
+    /**
+     * Offers to put a member in the hold queue for a book that has no copy for them right now,
+     * or tells them where they stand if they are already waiting.
+     *
+     * @param member the member who could not borrow the book
+     * @param book   the book, or null if no such book exists
+     * @return true if the member was offered a hold, false if there is no book to hold
+     */
+    private boolean offerHold(Member member, Book book) {
+        if (book == null) {
+            return false;
+        }
+        Hold hold = library.findHold(member, book);
+        if (hold != null) {
+            showHold(hold);
+            return true;
+        }
+        int answer = JOptionPane.showConfirmDialog(this, "No copy of " + book.getTitle() + " is free right now. "
+                + library.getHoldQueueLength(book) + " member(s) are waiting. Place a hold?", "Place Hold",
+                JOptionPane.YES_NO_OPTION);
+        if (answer == JOptionPane.YES_OPTION) {
+            runAsync("Placing hold on " + book.getTitle() + "...", service.placeHold(member, book), this::showHold);
+        }
+        return true;
+    }
+
+    private void showHold(Hold hold) {
+        int position = library.getHoldPosition(hold);
+        JOptionPane.showMessageDialog(this, position == 0
+                ? "A copy of " + hold.getBook().getTitle() + " is set aside until " + hold.getPickupDeadline() + "."
+                : "Hold on " + hold.getBook().getTitle() + ". Position in queue: " + position);
+    }
+
+    /**
+     * Offers the books whose titles come closest to the text the user entered and lets the user pick one.
+     * Titles that differ by a typo or two come first; if there are none, the full-text search results do. The
+     * question says whether the text matched a title exactly, as it does when the exact match is being confirmed.
+     *
+     * @param matches the books found for the text, as {@link LibraryService#findBooks} found them; the exact match,
+     *                if any, is offered first
+     * @return the chosen book, or null if nothing matched or the user cancelled
+     */
+    private Book chooseSimilarBook(LibraryService.BookMatches matches) {
+        List<Book> candidates = new ArrayList<>(matches.getSimilar());
+        if (matches.getExact() != null) {
+            candidates.add(0, matches.getExact());  // Offered for confirmation when the caller did not take it
+        }
+        Book[] similar = candidates.toArray(new Book[0]);
+        if (similar.length == 0) {
+            return null;
+        }
+        String question = matches.getExact() != null ? "Several books match; choose one."
+                : "No exact match. Did you mean one of these?";
+        return (Book) JOptionPane.showInputDialog(this, question, "Search Results",
+                JOptionPane.QUESTION_MESSAGE, null, similar, similar[0]);
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> new LibraryGUI().setVisible(true));
     }
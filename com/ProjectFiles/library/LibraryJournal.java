@@ -0,0 +1,534 @@
+package com.ProjectFiles.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Makes the state of a {@link Library} durable with a write-ahead log and periodic checkpoints.
+ * <p>
+ * Every mutation of the library is appended to the current log segment before the mutating call returns.
+ * A single writer thread drains all records queued while the previous write was in progress, writes them in one
+ * go, and forces them to disk with one fsync, so a busy desk pays for one fsync per batch rather than per record.
+ * Once a segment grows past its size limit the writer starts a new one, and a background thread folds the old
+ * segments into a compact binary checkpoint, after which they are deleted. The checkpoint is rebuilt by replaying
+ * the previous checkpoint and the old segments into a private library, so it is always consistent with the log
+ * without pausing the live library.
+ * <p>
+ * Each checkpoint also moves the loans returned in the folded segments to the {@link LoanHistory} in the
+ * {@code history} subdirectory and leaves them out of the new checkpoint, after which the live library drops them
+ * too. The checkpoint records how far every history partition reached, so the history appended by a checkpoint that
+ * did not complete is cut off again on startup.
+ * <p>
+ * On startup, {@link #open(Library, Path)} loads the checkpoint, replays the remaining segments, and then attaches
+ * the journal and the loan history to the library. A library opened on a catalog file beforehand is recovered on
+ * top of the mapped books: the checkpoint updates their copies and removes those it no longer lists.
+ * <p>
+ * A {@link ReplicationPrimary} attached to the journal is handed each batch of records once it is durable, in the
+ * order of the log, and catches new replicas up from a library rebuilt the way a checkpoint is.
+ */
+public final class LibraryJournal implements AutoCloseable {
+    private static final String CHECKPOINT_FILE = "checkpoint.bin";  // Name of the checkpoint file
+    private static final String HISTORY_DIRECTORY = "history";       // Subdirectory of the loan history
+    private static final String SEGMENT_PREFIX = "wal-";             // Prefix of log segment file names
+    private static final String SEGMENT_SUFFIX = ".log";             // Suffix of log segment file names
+    private static final long DEFAULT_SEGMENT_LIMIT = 64L << 20;     // Segment size that triggers a checkpoint
+    private static final int MAX_BATCH = 4096;                       // Most records written per fsync
+    private static final int MAX_RECORD = 1 << 24;                   // Larger lengths indicate a torn write
+
+    private final Library library;          // Library whose mutations are logged
+    private final Path directory;           // Directory holding the checkpoint and the log segments
+    private final LoanHistory history;      // Returned loans moved out of the library, appended by checkpoints
+    private final long segmentLimit;        // Size at which the writer rotates to a new segment
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();  // Records waiting to be written
+    private final Thread writer;            // Thread performing group commits
+    private final ExecutorService checkpointer;  // Thread folding old segments into the checkpoint
+    private final AtomicBoolean rotating = new AtomicBoolean();  // Set while a checkpoint is being taken
+    private volatile ReplicationPrimary replication;  // Receives the records once durable, null if not replicated
+    private boolean closed;                 // Set once the journal stops accepting records, guarded by this
+    private FileChannel segment;            // Current log segment, used only by the writer thread
+    private long segmentNumber;             // Number of the current segment, used only by the writer thread
+    private long segmentBytes;              // Bytes written to the current segment, used only by the writer thread
+    private IOException failure;            // Set once a torn write could not be cut off, used only by the writer
+
+    /**
+     * A record waiting to be written, or a request to rotate or stop when it has no data.
+     */
+    private static final class Entry {
+        private static final Entry STOP = new Entry(null, null, null);
+
+        private final byte[] data;                      // Encoded record, null for control entries
+        private final CompletableFuture<Long> done;     // Completes once the entry has been handled
+        private final Runnable rotated;                 // Run by the writer once a rotation is done, or null
+
+        private Entry(byte[] data, CompletableFuture<Long> done, Runnable rotated) {
+            this.data = data;
+            this.done = done;
+            this.rotated = rotated;
+        }
+    }
+
+    private LibraryJournal(Library library, Path directory, LoanHistory history, long segmentLimit, long segmentNumber)
+            throws IOException {
+        this.library = library;
+        this.directory = directory;
+        this.history = history;
+        this.segmentLimit = segmentLimit;
+        this.segmentNumber = segmentNumber;
+        this.segment = openSegment(segmentNumber);
+        this.writer = new Thread(this::runWriter, "library-journal-writer");
+        this.writer.setDaemon(true);
+        this.checkpointer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "library-journal-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Recovers the library from the given directory and starts journaling its mutations there.
+     *
+     * @param library   the library to recover; it should still be empty, or hold only the books of a catalog file
+     * @param directory the directory holding the checkpoint and log segments, created if missing
+     * @return the journal now attached to the library
+     * @throws IOException if the directory cannot be read or contains a malformed checkpoint or record
+     */
+    public static LibraryJournal open(Library library, Path directory) throws IOException {
+        return open(library, directory, DEFAULT_SEGMENT_LIMIT);
+    }
+
+    /**
+     * Recovers the library from the given directory and starts journaling its mutations there.
+     *
+     * @param library      the library to recover; it should still be empty, or hold only the books of a catalog file
+     * @param directory    the directory holding the checkpoint and log segments, created if missing
+     * @param segmentLimit the segment size, in bytes, after which a checkpoint is taken
+     * @return the journal now attached to the library
+     * @throws IOException if the directory cannot be read or contains a malformed checkpoint or record
+     */
+    public static LibraryJournal open(Library library, Path directory, long segmentLimit) throws IOException {
+        Files.createDirectories(directory);
+        LoanHistory history = LoanHistory.open(directory.resolve(HISTORY_DIRECTORY));
+        JournalRecords replayer = new JournalRecords(library);
+        long lastSegment = replay(replayer, directory, Long.MAX_VALUE);
+        history.truncate(replayer.getHistoryWatermark());
+        library.restoreCopies();
+        LibraryJournal journal = new LibraryJournal(library, directory, history, segmentLimit, lastSegment + 1);
+        library.setLoanHistory(history);
+        library.setJournal(journal);
+        journal.writer.start();
+        return journal;
+    }
+
+    /**
+     * Queues a record for the next group commit.
+     *
+     * @param record the encoded record
+     * @return a future that completes once the record has been forced to disk
+     */
+    CompletableFuture<Void> append(byte[] record) {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        if (!enqueue(new Entry(record, done, null))) {
+            done.completeExceptionally(new IllegalStateException("Library journal is closed."));
+        }
+        return done.thenApply(segment -> null);
+    }
+
+    /**
+     * Waits until a record returned by {@link #append(byte[])} is durable.
+     *
+     * @param pending the future returned when the record was appended, or null if nothing was appended
+     * @throws UncheckedIOException if the record could not be written
+     */
+    static void awaitDurable(CompletableFuture<Void> pending) {
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a new log segment and folds all earlier segments into the checkpoint in the background.
+     * Does nothing if a checkpoint is already in progress.
+     *
+     * @return a future that completes once the checkpoint has been written and old segments deleted
+     */
+    public CompletableFuture<Void> checkpoint() {
+        if (!rotating.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Long> rotated = new CompletableFuture<>();
+        if (!enqueue(new Entry(null, rotated, null))) {
+            rotating.set(false);
+            return CompletableFuture.completedFuture(null);
+        }
+        return rotated.thenAcceptAsync(this::fold, checkpointer)
+                .whenComplete((result, error) -> rotating.set(false));
+    }
+
+    /**
+     * Starts a new log segment and rebuilds, in the background, the library as it was when the segment started,
+     * for a replica to catch up from. The rebuild waits for any checkpoint in progress, so the segments it reads
+     * are not deleted under it.
+     *
+     * @param started run by the writer thread once the new segment has started and before any record is written
+     *                to it, so it sees the boundary between the records in the library and those after it
+     * @return a future that completes with the rebuilt library, which is not journaled
+     */
+    CompletableFuture<Library> snapshot(Runnable started) {
+        CompletableFuture<Long> rotated = new CompletableFuture<>();
+        if (!enqueue(new Entry(null, rotated, started))) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Library journal is closed."));
+        }
+        return rotated.thenApplyAsync(this::rebuild, checkpointer);
+    }
+
+    /**
+     * Attaches the replication of the library, or detaches it.
+     *
+     * @param replication the primary that ships the records to replicas, or null to stop replicating
+     */
+    void setReplication(ReplicationPrimary replication) {
+        this.replication = replication;
+    }
+
+    /**
+     * @return the library whose mutations are logged
+     */
+    Library getLibrary() {
+        return library;
+    }
+
+    /**
+     * Stops journaling: detaches the journal from the library, writes all queued records, and closes the log.
+     *
+     * @throws IOException if the log cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        library.setJournal(null);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(Entry.STOP);  // Every record accepted so far is ahead of the stop entry
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpointer.shutdown();
+        segment.close();
+    }
+
+    /**
+     * Adds an entry to the queue unless the journal has been closed.
+     *
+     * @param entry the entry to add
+     * @return true if the entry was queued, false if the journal is closed
+     */
+    private synchronized boolean enqueue(Entry entry) {
+        if (closed) {
+            return false;
+        }
+        queue.add(entry);
+        return true;
+    }
+
+    private void runWriter() {
+        List<Entry> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            running = commit(batch);
+            batch.clear();
+            if (segmentBytes >= segmentLimit) {
+                checkpoint();
+            }
+        }
+    }
+
+    /**
+     * Writes and forces a batch of records, handling control entries in order.
+     *
+     * @param batch the entries to handle
+     * @return false once the stop entry has been handled, true otherwise
+     */
+    private boolean commit(List<Entry> batch) {
+        int start = 0;
+        for (int i = 0; i <= batch.size(); i++) {
+            if (i < batch.size() && batch.get(i).data != null) {
+                continue;
+            }
+            write(batch.subList(start, i));
+            start = i + 1;
+            if (i == batch.size()) {
+                break;
+            }
+            Entry control = batch.get(i);
+            if (control == Entry.STOP) {
+                return false;
+            }
+            rotate(control);
+        }
+        return true;
+    }
+
+    /**
+     * Writes and forces records as one batch. If the write fails part way, the bytes it left behind are cut off the
+     * segment again, since replay stops at the first torn record and would drop every record written after them;
+     * if even that fails, the journal fails every record from then on rather than log records it could not replay.
+     */
+    private void write(List<Entry> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (failure != null) {
+            for (Entry entry : records) {
+                entry.done.completeExceptionally(failure);
+            }
+            return;
+        }
+        int size = 0;
+        for (Entry entry : records) {
+            size += 8 + entry.data.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (Entry entry : records) {
+            crc.reset();
+            crc.update(entry.data);
+            buffer.putInt(entry.data.length).putInt((int) crc.getValue()).put(entry.data);
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segment.force(false);
+            segmentBytes += size;
+            for (Entry entry : records) {
+                entry.done.complete(segmentNumber);
+            }
+        } catch (IOException e) {
+            for (Entry entry : records) {
+                entry.done.completeExceptionally(e);
+            }
+            try {
+                segment.truncate(segmentBytes);
+                segment.force(false);
+            } catch (IOException cut) {
+                cut.addSuppressed(e);
+                failure = cut;
+            }
+            return;
+        }
+        ReplicationPrimary primary = replication;
+        if (primary != null) {
+            List<byte[]> durable = new ArrayList<>(records.size());
+            for (Entry entry : records) {
+                durable.add(entry.data);
+            }
+            primary.committed(durable);
+        }
+    }
+
+    private void rotate(Entry control) {
+        if (failure != null) {
+            control.done.completeExceptionally(failure);
+            return;
+        }
+        try {
+            long finished = segmentNumber;
+            FileChannel next = openSegment(finished + 1);
+            segment.close();
+            segment = next;
+            segmentNumber = finished + 1;
+            segmentBytes = 0;
+            if (control.rotated != null) {
+                control.rotated.run();
+            }
+            control.done.complete(finished);
+        } catch (IOException e) {
+            control.done.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Folds the checkpoint and all segments up to the given one into a new checkpoint, then deletes those segments.
+     * The loans returned in those segments are appended to the loan history first, and dropped from the live
+     * library once the checkpoint no longer holds them.
+     *
+     * @param lastSegment the newest segment to fold
+     */
+    private void fold(long lastSegment) {
+        try {
+            Library scratch = rebuild(lastSegment);
+            List<Loan> returned = new ArrayList<>();
+            for (Loan loan : scratch.loans()) {
+                if (loan.getReturnDate() != null) {
+                    returned.add(loan);
+                }
+            }
+            history.append(returned);
+            Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(channel), 1 << 16));
+                JournalRecords.writeCheckpoint(scratch, out, lastSegment, history.watermark());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, directory.resolve(CHECKPOINT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (Path file : segments(directory).headMap(lastSegment, true).values()) {
+                Files.deleteIfExists(file);
+            }
+            long[] archived = new long[returned.size()];
+            for (int i = 0; i < archived.length; i++) {
+                archived[i] = returned.get(i).getId();
+            }
+            library.archiveLoans(archived);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Rebuilds the library from the checkpoint and the log segments up to the given one, into a private library.
+     * If the live library was opened on a catalog file, the private library maps the same file first, as the base
+     * the records apply to.
+     *
+     * @param lastSegment the newest segment to replay
+     * @return the rebuilt library
+     */
+    private Library rebuild(long lastSegment) {
+        Library scratch = new Library();
+        try {
+            Path catalog = library.getCatalogFile();
+            if (catalog != null) {
+                scratch.openCatalog(catalog);
+            }
+            replay(new JournalRecords(scratch), directory, lastSegment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return scratch;
+    }
+
+    /**
+     * Rebuilds a library from the checkpoint and the log segments in a directory.
+     *
+     * @param replayer    the replayer of the empty library to rebuild
+     * @param directory   the journal directory
+     * @param lastSegment the newest segment to replay
+     * @return the number of the newest segment that was replayed or already folded into the checkpoint
+     * @throws IOException if the checkpoint or a record is malformed
+     */
+    private static long replay(JournalRecords replayer, Path directory, long lastSegment) throws IOException {
+        long folded = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint), 1 << 16))) {
+                folded = replayer.readCheckpoint(in);
+            }
+        }
+        long newest = folded;
+        for (Map.Entry<Long, Path> file : segments(directory).subMap(folded, false, lastSegment, true).entrySet()) {
+            replaySegment(file.getValue(), replayer);
+            newest = file.getKey();
+        }
+        return newest;
+    }
+
+    /**
+     * Applies every intact record of a segment. Reading stops at the first torn or corrupt record,
+     * which can only be the tail of a segment that was being written when the process stopped.
+     */
+    private static void replaySegment(Path file, JournalRecords replayer) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                byte[] data;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_RECORD) {
+                        return;
+                    }
+                    checksum = in.readInt();
+                    data = new byte[length];
+                    in.readFully(data);
+                } catch (EOFException e) {
+                    return;
+                }
+                crc.reset();
+                crc.update(data);
+                if ((int) crc.getValue() != checksum) {
+                    return;
+                }
+                replayer.apply(data);
+            }
+        }
+    }
+
+    private static TreeMap<Long, Path> segments(Path directory) throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not a segment written by this class
+                }
+            }
+        }
+        return segments;
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        Path file = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
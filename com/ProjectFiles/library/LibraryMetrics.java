@@ -0,0 +1,374 @@
+package com.ProjectFiles.library;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects counters and latency histograms for the library's hot paths: borrowing, returning, lookups, and
+ * status queries.
+ * <p>
+ * A {@link Timer} measures each call of an operation: its latency goes into a {@link LatencyHistogram} and, where
+ * the JVM can count the bytes a thread allocates, the bytes the call allocated are added up as well. A
+ * {@link Counter} counts events such as refused checkouts. Both record without locks, so they can stay on in
+ * production. The metrics are published as platform MXBeans by {@link #registerMBeans()}, under
+ * {@code com.ProjectFiles.library:type=Timer,name=...} and {@code type=Counter}, and can be written to a file
+ * as text or JSON, once with {@link #toText()} and {@link #toJson()} or periodically with
+ * {@link #startDumping(Path, boolean, long)}.
+ */
+public final class LibraryMetrics {
+    static final String DOMAIN = "com.ProjectFiles.library";  // JMX domain of the metrics
+    private static final com.sun.management.ThreadMXBean ALLOCATION = allocationCounter();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final List<Object> registered = new CopyOnWriteArrayList<>();  // Timers and counters, in creation order
+    private volatile boolean published;            // Set once the metrics are registered with JMX
+    private ScheduledExecutorService dumper;       // Writes the periodic dump once started, guarded by this
+
+    /**
+     * Management interface of a timer.
+     */
+    public interface TimerMXBean {
+        long getCount();
+
+        double getMeanMicros();
+
+        double getP50Micros();
+
+        double getP90Micros();
+
+        double getP99Micros();
+
+        double getP999Micros();
+
+        double getMaxMicros();
+
+        /**
+         * @return the mean number of bytes allocated per call, or -1 if the JVM does not count allocations
+         */
+        double getAllocatedBytesPerCall();
+    }
+
+    /**
+     * Management interface of a counter.
+     */
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    /**
+     * Measures the latency and allocation of the calls of one operation.
+     * <pre>
+     * long start = System.nanoTime();
+     * long allocated = LibraryMetrics.allocatedBytes();
+     * ... the operation ...
+     * timer.record(start, allocated);
+     * </pre>
+     */
+    public static final class Timer implements TimerMXBean {
+        private final String name;
+        private final LatencyHistogram latencies = new LatencyHistogram();  // Nanoseconds per call
+        private final LongAdder allocated = new LongAdder();                // Bytes allocated by all calls
+        private final LongAdder measured = new LongAdder();                 // Calls whose allocation was counted
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records a call that started at the given time.
+         *
+         * @param startNanos     the value of {@link System#nanoTime()} when the call started
+         * @param startAllocated the value of {@link #allocatedBytes()} when the call started
+         */
+        public void record(long startNanos, long startAllocated) {
+            latencies.record(System.nanoTime() - startNanos);
+            if (startAllocated >= 0) {
+                allocated.add(allocatedBytes() - startAllocated);
+                measured.increment();
+            }
+        }
+
+        /**
+         * Records a duration that was not measured by a call on this thread, such as the delay of a change between
+         * two processes. No allocation is counted for it.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        void recordNanos(long nanos) {
+            latencies.record(nanos);
+        }
+
+        /**
+         * Gets the name of the timer.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the given percentile of the recorded latencies.
+         *
+         * @param quantile the fraction of calls, from 0 to 1
+         * @return the latency in nanoseconds
+         */
+        public long percentileNanos(double quantile) {
+            return latencies.percentile(quantile);
+        }
+
+        @Override
+        public long getCount() {
+            return latencies.count();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return latencies.mean() / 1e3;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return latencies.percentile(0.5) / 1e3;
+        }
+
+        @Override
+        public double getP90Micros() {
+            return latencies.percentile(0.9) / 1e3;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return latencies.percentile(0.99) / 1e3;
+        }
+
+        @Override
+        public double getP999Micros() {
+            return latencies.percentile(0.999) / 1e3;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return latencies.max() / 1e3;
+        }
+
+        @Override
+        public double getAllocatedBytesPerCall() {
+            long calls = measured.sum();
+            return calls == 0 ? -1 : (double) allocated.sum() / calls;
+        }
+    }
+
+    /**
+     * Counts events.
+     */
+    public static final class Counter implements CounterMXBean {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Counts one event.
+         */
+        public void increment() {
+            count.increment();
+        }
+
+        /**
+         * Gets the name of the counter.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Gets the number of bytes the current thread has allocated so far, for {@link Timer#record(long, long)}.
+     *
+     * @return the bytes allocated, or -1 if the JVM does not count allocations
+     */
+    public static long allocatedBytes() {
+        return ALLOCATION == null ? -1 : ALLOCATION.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Returns the timer with the given name, creating it on first use.
+     *
+     * @param name the name, such as {@code circulation.borrow}
+     * @return the timer
+     */
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, key -> register(new Timer(key)));
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use.
+     *
+     * @param name the name, such as {@code circulation.borrowRefused}
+     * @return the counter
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> register(new Counter(key)));
+    }
+
+    /**
+     * Registers all timers and counters, including those created later, with the platform MBean server.
+     *
+     * @throws IllegalStateException if another set of library metrics is already registered
+     */
+    public synchronized void registerMBeans() {
+        if (published) {
+            return;
+        }
+        published = true;
+        for (Object metric : registered) {
+            publish(metric);
+        }
+    }
+
+    /**
+     * Writes all metrics to a file periodically, replacing its contents each time.
+     *
+     * @param file         the file to write
+     * @param json         true to write JSON, false for text
+     * @param periodMillis the time between two dumps in milliseconds
+     * @throws IllegalStateException if dumping has already been started
+     */
+    public synchronized void startDumping(Path file, boolean json, long periodMillis) {
+        if (dumper != null) {
+            throw new IllegalStateException("Metrics are already being dumped.");
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            try {
+                Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.writeString(temporary, json ? toJson() : toText(), StandardCharsets.UTF_8);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {  // A failed dump must not cancel the later ones
+                Thread current = Thread.currentThread();
+                current.getUncaughtExceptionHandler().uncaughtException(current,
+                        e instanceof IOException ? new UncheckedIOException((IOException) e) : e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Formats all metrics as text, one line per timer or counter.
+     *
+     * @return the metrics as text
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Object metric : registered) {
+            if (metric instanceof Timer) {
+                Timer timer = (Timer) metric;
+                text.append(String.format(Locale.ROOT,
+                        "%-28s count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                        timer.getName(), timer.getCount(), timer.getMeanMicros(), timer.getP50Micros(),
+                        timer.getP90Micros(), timer.getP99Micros(), timer.getP999Micros(), timer.getMaxMicros()));
+                if (timer.getAllocatedBytesPerCall() >= 0) {
+                    text.append(String.format(Locale.ROOT, " alloc=%.0fB/call", timer.getAllocatedBytesPerCall()));
+                }
+            } else {
+                Counter counter = (Counter) metric;
+                text.append(String.format(Locale.ROOT, "%-28s count=%d", counter.getName(), counter.getCount()));
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Formats all metrics as one JSON object, with latencies in nanoseconds.
+     *
+     * @return the metrics as JSON
+     */
+    public String toJson() {
+        StringBuilder timerJson = new StringBuilder();
+        StringBuilder counterJson = new StringBuilder();
+        for (Object metric : registered) {
+            if (metric instanceof Timer) {
+                Timer timer = (Timer) metric;
+                timerJson.append(timerJson.length() == 0 ? "" : ",").append(String.format(Locale.ROOT,
+                        "\"%s\":{\"count\":%d,\"meanNanos\":%.0f,\"p50Nanos\":%d,\"p90Nanos\":%d,\"p99Nanos\":%d,"
+                                + "\"p999Nanos\":%d,\"maxNanos\":%d,\"allocatedBytesPerCall\":%.0f}",
+                        timer.getName(), timer.getCount(), timer.getMeanMicros() * 1e3, timer.percentileNanos(0.5),
+                        timer.percentileNanos(0.9), timer.percentileNanos(0.99), timer.percentileNanos(0.999),
+                        (long) (timer.getMaxMicros() * 1e3), timer.getAllocatedBytesPerCall()));
+            } else {
+                Counter counter = (Counter) metric;
+                counterJson.append(counterJson.length() == 0 ? "" : ",")
+                        .append(String.format(Locale.ROOT, "\"%s\":%d", counter.getName(), counter.getCount()));
+            }
+        }
+        return "{\"timestamp\":\"" + Instant.now() + "\",\"timers\":{" + timerJson + "},\"counters\":{"
+                + counterJson + "}}\n";
+    }
+
+    private synchronized <M> M register(M metric) {
+        registered.add(metric);
+        if (published) {
+            publish(metric);
+        }
+        return metric;
+    }
+
+    private static void publish(Object metric) {
+        String type = metric instanceof Timer ? "Timer" : "Counter";
+        String name = metric instanceof Timer ? ((Timer) metric).getName() : ((Counter) metric).getName();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(metric, new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name)));
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("Library metrics are already registered with JMX.", e);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metric " + name + " with JMX.", e);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+            if (counting.isThreadAllocatedMemorySupported() && counting.isThreadAllocatedMemoryEnabled()) {
+                return counting;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,372 @@
+package com.ProjectFiles.library;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A read-only copy of a library that follows a {@link ReplicationPrimary}, for serving lookups and status queries
+ * away from the library the circulation desks write to.
+ * <p>
+ * The replica loads the snapshot the primary sends when it connects into a private {@link Library}, then applies
+ * the primary's journal records as they arrive, in order, on a follower thread. If the connection fails the
+ * follower reconnects and loads a new snapshot into a new library, which replaces the old one once it is loaded,
+ * so reads keep being answered in the meantime. Loans returned after the snapshot stay in the replica's library
+ * until the next snapshot, since the primary's checkpoints do not move them on replicas.
+ * <p>
+ * Staleness is bounded: the replica knows the number of the newest record the primary has made durable from every
+ * frame it receives, heartbeats included. It is current as of the last time it had applied that record or, while
+ * records keep arriving, as of the time the primary committed the last record it applied, so that a stream of
+ * writes does not make a replica that keeps up look stale. Every lookup first checks that this is no longer ago than
+ * the bound given at connection, and throws {@link StaleReplicaException} otherwise, rather than answer from a
+ * replica that has lost its primary or fallen behind. The replica's metrics count the records and snapshots applied
+ * and time the delay from the primary's commit to the replica's apply as {@code replication.lag}. Both assume the
+ * two clocks agree, as they do for processes on one machine.
+ */
+public final class LibraryReplica implements AutoCloseable {
+    private static final long RETRY_MILLIS = 1000;  // Pause before reconnecting to the primary
+
+    private final String host;
+    private final int port;
+    private final long maxStalenessMillis;
+    private final LibraryMetrics metrics = new LibraryMetrics();  // Replication and serving, across snapshots
+    private final LibraryMetrics.Timer lag = metrics.timer("replication.lag");
+    private final LibraryMetrics.Counter applied = metrics.counter("replication.records");
+    private final LibraryMetrics.Counter snapshots = metrics.counter("replication.snapshots");
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();  // Completes with the first snapshot
+    private final Thread follower;
+    private volatile Library library;     // Library of the last snapshot loaded, with the records applied since
+    private volatile long sequence;       // Number of the last record applied
+    private volatile long primarySequence;  // Number of the newest record the primary last reported
+    private volatile long currentAt;      // System.nanoTime() as of which the replica has every durable record
+    private volatile boolean closed;
+    private Socket socket;                // Connection to the primary, guarded by this
+
+    private LibraryReplica(String host, int port, long maxStalenessMillis) {
+        this.host = host;
+        this.port = port;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.follower = new Thread(this::follow, "library-replica");
+        this.follower.setDaemon(true);
+    }
+
+    /**
+     * Connects to a primary and waits until its snapshot is loaded.
+     *
+     * @param host               the primary's host
+     * @param port               the primary's replication port
+     * @param maxStalenessMillis how far behind the primary, in milliseconds, the replica may be to answer reads
+     * @return the replica, following the primary
+     * @throws IOException              if the primary cannot be reached or its snapshot cannot be loaded
+     * @throws IllegalArgumentException if the staleness bound is not positive
+     */
+    public static LibraryReplica connect(String host, int port, long maxStalenessMillis) throws IOException {
+        if (maxStalenessMillis <= 0) {
+            throw new IllegalArgumentException("The staleness bound must be positive.");
+        }
+        LibraryReplica replica = new LibraryReplica(host, port, maxStalenessMillis);
+        replica.follower.start();
+        try {
+            replica.loaded.join();
+        } catch (CompletionException e) {
+            replica.close();
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        return replica;
+    }
+
+    /**
+     * Finds a book by its catalog ID.
+     *
+     * @param id the catalog ID
+     * @return the book, or null if there is none
+     * @throws StaleReplicaException if the replica is staler than its bound
+     */
+    public Book findBookById(long id) {
+        return current().findBookById(id);
+    }
+
+    /**
+     * Finds the books with a title.
+     *
+     * @param title the title
+     * @return the books
+     * @throws StaleReplicaException if the replica is staler than its bound
+     */
+    public List<Book> findBooksByTitle(String title) {
+        return current().findBooksByTitle(title);
+    }
+
+    /**
+     * Finds the books by an author.
+     *
+     * @param author the author
+     * @return the books
+     * @throws StaleReplicaException if the replica is staler than its bound
+     */
+    public List<Book> findBooksByAuthor(String author) {
+        return current().findBooksByAuthor(author);
+    }
+
+    /**
+     * Searches the titles and authors of the catalog, as {@link Library#searchBooks(String, int)} does.
+     *
+     * @param query the words to look for
+     * @param limit the most books to return
+     * @return the books, best match first
+     * @throws StaleReplicaException if the replica is staler than its bound
+     */
+    public List<Book> searchBooks(String query, int limit) {
+        return current().searchBooks(query, limit);
+    }
+
+    /**
+     * Finds a member by their ID.
+     *
+     * @param id the ID of the member
+     * @return the member, or null if there is none
+     * @throws StaleReplicaException if the replica is staler than its bound
+     */
+    public Member findMemberById(int id) {
+        return current().findMemberById(id);
+    }
+
+    /**
+     * Finds a member's open loans.
+     *
+     * @param memberId the ID of the member
+     * @return the loans
+     * @throws StaleReplicaException if the replica is staler than its bound
+     */
+    public List<Loan> findOpenLoansByMember(int memberId) {
+        return current().findOpenLoansByMember(memberId);
+    }
+
+    /**
+     * Gets the status of the library, as {@link Library#getLibraryStatus()} does.
+     *
+     * @return the status
+     * @throws StaleReplicaException if the replica is staler than its bound
+     */
+    public String getLibraryStatus() {
+        return current().getLibraryStatus();
+    }
+
+    /**
+     * Gets the replica's library after checking that it is within the staleness bound. The library must only be
+     * read: it is changed by the records from the primary alone.
+     *
+     * @return the library
+     * @throws StaleReplicaException if the replica is staler than its bound
+     */
+    Library current() {
+        long staleness = getStalenessMillis();
+        if (staleness > maxStalenessMillis) {
+            throw new StaleReplicaException("The replica is " + staleness + " ms behind the primary, more than "
+                    + maxStalenessMillis + " ms.");
+        }
+        return library;
+    }
+
+    /**
+     * @return the number of the last record from the primary that the replica has applied
+     */
+    public long getAppliedSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the number of records the primary had last reported that the replica has not applied yet
+     */
+    public long getLagRecords() {
+        return Math.max(0, primarySequence - sequence);
+    }
+
+    /**
+     * Gets how long ago the replica last had every record the primary had made durable. While the replica is caught
+     * up this is about the time since the last heartbeat or the replication lag of the last records; it grows while
+     * the replica falls behind or cannot reach the primary.
+     *
+     * @return the staleness in milliseconds
+     */
+    public long getStalenessMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - currentAt);
+    }
+
+    /**
+     * @return how far behind the primary, in milliseconds, the replica may be to answer reads
+     */
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    /**
+     * Waits until the replica has applied a record, for instance to read a change just made on the primary.
+     *
+     * @param sequence      the number of the record, as given by {@link ReplicationPrimary#getSequence()}
+     * @param timeoutMillis the longest time to wait
+     * @return true if the record has been applied, false if the time ran out first
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (this) {
+            while (this.sequence < sequence) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the metrics of replication: the records and snapshots applied and the replication lag
+     */
+    public LibraryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Disconnects from the primary and stops following it. The library keeps answering reads until the staleness
+     * bound has passed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // The follower stops either way
+                }
+            }
+        }
+        follower.interrupt();
+        Library last = library;
+        if (last != null) {
+            last.stopOverdueChecks();
+        }
+    }
+
+    private void follow() {
+        while (!closed) {
+            try (Socket connection = new Socket()) {
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    socket = connection;
+                }
+                connection.connect(new InetSocketAddress(host, port));
+                connection.setTcpNoDelay(true);
+                receive(new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16)));
+            } catch (IOException e) {
+                if (!loaded.isDone()) {
+                    loaded.completeExceptionally(e);
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Loads the snapshot the primary sends first, then applies the frames that follow until the connection ends.
+     */
+    private void receive(DataInputStream in) throws IOException {
+        if (in.readInt() != ReplicationPrimary.MAGIC || in.readByte() != ReplicationPrimary.SNAPSHOT) {
+            throw new IOException("Not a library replication stream");
+        }
+        long start = in.readLong();
+        Library next = new Library();
+        JournalRecords records = new JournalRecords(next);
+        records.readCheckpoint(in);
+        next.restoreCopies();
+        next.startOverdueChecks();
+        Library previous = library;
+        library = next;
+        if (previous != null) {
+            previous.stopOverdueChecks();
+        }
+        snapshots.increment();
+        advance(start, start, System.nanoTime());
+        loaded.complete(null);
+        while (true) {
+            byte type = in.readByte();
+            if (type == ReplicationPrimary.HEARTBEAT) {
+                advance(sequence, in.readLong(), currentAt);
+                continue;
+            }
+            if (type != ReplicationPrimary.RECORDS) {
+                throw new IOException("Unknown replication frame " + type);
+            }
+            long first = in.readLong();
+            long newest = in.readLong();
+            long committedMillis = in.readLong();
+            if (first != sequence + 1) {
+                throw new IOException("Expected record " + (sequence + 1) + " but received " + first);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+                records.apply(record);
+                applied.increment();
+            }
+            long lagNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - committedMillis);
+            lag.recordNanos(lagNanos);
+            advance(first + count - 1, newest, System.nanoTime() - Math.max(0, lagNanos));
+        }
+    }
+
+    /**
+     * Notes the last record applied and the newest record of the primary, and wakes up readers waiting for it.
+     * Both only grow while the connection lasts; a new connection starts again from its snapshot. The replica is
+     * current now if it has applied the newest record, and otherwise as of committedAt, the System.nanoTime() at
+     * which the primary committed the last record applied: it had every durable record then.
+     */
+    private synchronized void advance(long appliedSequence, long newest, long committedAt) {
+        sequence = appliedSequence;
+        primarySequence = newest;
+        if (appliedSequence >= primarySequence) {
+            currentAt = System.nanoTime();
+        } else if (committedAt - currentAt > 0) {
+            currentAt = committedAt;
+        }
+        notifyAll();
+    }
+
+    @Override
+    public String toString() {
+        return "Replica of " + host + ":" + port + " at record " + sequence;
+    }
+
+    /**
+     * Thrown by a read when the replica is staler than its bound, so callers can tell it from other failures and
+     * try the primary or another replica instead.
+     */
+    public static final class StaleReplicaException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        StaleReplicaException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,619 @@
+package com.ProjectFiles.library;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves a {@link Library} over HTTP with JSON bodies, for clients such as self-checkout kiosks and the web
+ * catalog, without the Swing user interface.
+ * <p>
+ * The server is the JDK's built-in {@link HttpServer}, which keeps connections alive and answers pipelined
+ * requests in order. Requests are handled on virtual threads where the JVM has them (Java 21 and later) and on a
+ * pool of platform threads otherwise; either way a handler may block, for instance while a borrow waits for its
+ * journal record to reach the disk, without holding up other connections. The JDK server writes a response's
+ * headers and body separately, and unless the JVM runs with {@code -Dsun.net.httpserver.nodelay=true} the body
+ * waits for the client's delayed ACK, adding about 40 ms to every response; {@code Main} sets the property in its
+ * server modes, and an application embedding the server should set it too. The operations are:
+ * <pre>
+ * GET    /status                        counts of books, copies, members, and loans, and the last book ID
+ * GET    /books?title=|author=|q=[&amp;limit=]   books by exact title or author, or by full-text query
+ * POST   /books  {"title":"...","author":"...","year":1965,"amount":3[,"id":7]}   adds a book
+ * GET    /books/{id}                    one book
+ * DELETE /books/{id}                    removes a book
+ * POST   /members   {"id":1,"name":"..."}   registers a member
+ * GET    /members/{id}                  a member and their open loans
+ * DELETE /members/{id}                  removes a member
+ * POST   /loans  {"member":1,"book":2[,"name":"..."]}   borrows a copy; 409 if none is available to the member;
+ *                                       the name is only read by a shard
+ * GET    /loans?member=                 a member's open loans
+ * POST   /returns   {"member":1,"book":2}   returns a copy; 409 if the member has no open loan of the book
+ * GET    /metrics                       the library's metrics, as {@link LibraryMetrics#toJson()} writes them
+ * GET    /reports/circulation[?limit=]  a {@link CirculationReport}, with rankings of limit entries, 10 by default
+ * </pre>
+ * Failures are answered with a status code and a body of the form {@code {"error":"..."}}.
+ * <p>
+ * A server started with {@link #startShard} is a shard of a {@link ShardedLibrary}, which sends it the same
+ * requests. A loan is kept by the shard of its book, so a borrower registered on another shard is named in the loan
+ * request and kept here as a guest. A server started with {@link #start(Library, InetSocketAddress)} has no other
+ * shards and answers 404 for a borrower it does not know, whatever name the request gives. Requests are dispatched
+ * without reference to HTTP, so {@link ShardTransport#loopback(Library)} can hand them to a shard that is not bound
+ * to any address.
+ * <p>
+ * A server started for a {@link LibraryReplica} answers only GET requests, from the replica's library, and
+ * answers 503 while the replica is staler than its bound; its status adds the replica's lag behind the primary.
+ */
+public final class LibraryServer implements AutoCloseable {
+    private static final int MAX_BODY = 64 * 1024;  // Largest request body accepted, in bytes
+    private static final int DEFAULT_LIMIT = 20;    // Books listed by a search without an explicit limit
+    private static final int MAX_LIMIT = 1000;      // Most books listed by one search
+
+    private final Library library;           // Null for a server of a replica, whose library is replaced on resync
+    private final LibraryReplica replica;    // Replica served read-only, or null
+    private final CirculationAnalytics analytics;  // Keeps its tallies between reports, null for a replica
+    private final HttpServer server;         // Null for a server handling requests in-process
+    private final ExecutorService handlers;  // Runs the request handlers, null for a server in-process
+    private final LibraryMetrics metrics;    // The library's, or the replica's
+    private final LibraryMetrics.Counter errors;
+    private final Map<String, Route> routes = new HashMap<>();  // By path prefix, such as "/books"
+    private final Librarian librarian = new Librarian();  // Validates new books and members, as the bulk loader does
+    private final boolean shard;             // Whether loan requests may name a guest, as a router's do
+
+    private LibraryServer(Library library, LibraryReplica replica, HttpServer server, ExecutorService handlers,
+                          boolean shard) {
+        this.library = library;
+        this.replica = replica;
+        this.shard = shard;
+        this.analytics = replica == null ? new CirculationAnalytics(library) : null;
+        this.server = server;
+        this.handlers = handlers;
+        this.metrics = replica == null ? library.getMetrics() : replica.getMetrics();
+        this.errors = metrics.counter("http.errors");
+        route("/status", "http.status", this::status);
+        route("/books", "http.books", this::books);
+        route("/members", "http.members", this::members);
+        route("/loans", "http.borrow", this::borrow);
+        route("/returns", "http.return", this::giveBack);
+        route("/metrics", "http.metrics", this::metrics);
+        if (analytics != null) {
+            route("/reports", "http.reports", this::reports);
+        }
+    }
+
+    /**
+     * Starts serving a library.
+     *
+     * @param library the library to serve
+     * @param address the address to listen on; port 0 picks a free port
+     * @return the running server
+     * @throws IOException if the address cannot be bound
+     */
+    public static LibraryServer start(Library library, InetSocketAddress address) throws IOException {
+        return start(library, null, address, false);
+    }
+
+    /**
+     * Starts serving a library as a shard of a {@link ShardedLibrary}, whose loan requests may name a borrower
+     * registered on another shard.
+     *
+     * @param library the library to serve
+     * @param address the address to listen on; port 0 picks a free port
+     * @return the running server
+     * @throws IOException if the address cannot be bound
+     */
+    public static LibraryServer startShard(Library library, InetSocketAddress address) throws IOException {
+        return start(library, null, address, true);
+    }
+
+    /**
+     * Starts serving a replica, read-only.
+     *
+     * @param replica the replica to serve
+     * @param address the address to listen on; port 0 picks a free port
+     * @return the running server
+     * @throws IOException if the address cannot be bound
+     */
+    public static LibraryServer start(LibraryReplica replica, InetSocketAddress address) throws IOException {
+        return start(null, replica, address, false);
+    }
+
+    private static LibraryServer start(Library library, LibraryReplica replica, InetSocketAddress address,
+                                       boolean shard) throws IOException {
+        HttpServer server = HttpServer.create(address, 1024);
+        ExecutorService handlers = handlerExecutor();
+        LibraryServer libraryServer = new LibraryServer(library, replica, server, handlers, shard);
+        server.createContext("/", libraryServer::serve);
+        server.setExecutor(handlers);
+        server.start();
+        return libraryServer;
+    }
+
+    /**
+     * Creates a shard that is not bound to any address and handles requests passed to {@link #handle} on the
+     * caller's thread.
+     *
+     * @param library the library to serve
+     * @return the server
+     */
+    static LibraryServer local(Library library) {
+        return new LibraryServer(library, null, null, null, true);
+    }
+
+    /**
+     * Handles a request in-process, as it would be handled if it came over HTTP.
+     *
+     * @param method the HTTP method
+     * @param target the path and query
+     * @param body   the JSON body, or null if there is none
+     * @return the answer
+     */
+    ShardTransport.Reply handle(String method, String target, String body) {
+        Response response = dispatch(new Request(method, URI.create(target),
+                new ByteArrayInputStream(body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8))));
+        return new ShardTransport.Reply(response.status, response.body.toString());
+    }
+
+    /**
+     * Gets the port the server listens on, useful when it was started on port 0.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, gives the requests in progress a moment to finish, and stops the handler threads.
+     */
+    @Override
+    public void close() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        handlers.shutdown();
+        try {
+            handlers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Response status(Request request, String path) {
+        requireMethod(request, "GET");
+        requireEnd(path);
+        Library library = library();
+        StringBuilder json = new StringBuilder(String.format("{\"books\":%d,\"availableBooks\":%d,"
+                        + "\"copiesOnHand\":%d,\"members\":%d,\"activeLoans\":%d,\"overdueLoans\":%d,\"lastBookId\":%d",
+                library.getBookCount(), library.getAvailableBookCount(), library.getCopiesOnHand(),
+                library.getMemberCount(), library.getActiveLoanCount(), library.getOverdueLoanCount(),
+                library.lastBookId()));
+        if (replica != null) {
+            json.append(String.format(",\"replicaSequence\":%d,\"lagRecords\":%d,\"stalenessMillis\":%d",
+                    replica.getAppliedSequence(), replica.getLagRecords(), replica.getStalenessMillis()));
+        }
+        return Response.ok(json.append('}'));
+    }
+
+    private Response books(Request request, String path) throws IOException {
+        if (path.isEmpty() && requireMethod(request, "GET", "POST").equals("POST")) {
+            return addBook(request);
+        }
+        if (!path.isEmpty()) {
+            Book book = library().findBookById(id(path, "book"));
+            if (book == null) {
+                return Response.error(404, "No such book.");
+            }
+            if (requireMethod(request, "GET", "DELETE").equals("DELETE")) {
+                library().removeBook(book);
+            }
+            return Response.ok(appendBook(new StringBuilder(), book));
+        }
+        Map<String, String> query = query(request.uri.getRawQuery());
+        int limit = query.containsKey("limit") ? number(query.get("limit"), "limit") : DEFAULT_LIMIT;
+        if (limit < 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("The limit must be between 0 and " + MAX_LIMIT + ".");
+        }
+        List<Book> found;
+        if (query.containsKey("title")) {
+            found = library().findBooksByTitle(query.get("title"));
+        } else if (query.containsKey("author")) {
+            found = library().findBooksByAuthor(query.get("author"));
+        } else if (query.containsKey("q")) {
+            found = library().searchBooks(query.get("q"), limit);
+        } else {
+            throw new IllegalArgumentException("Give a title, author, or q parameter.");
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < Math.min(limit, found.size()); i++) {
+            appendBook(json.append(i == 0 ? "" : ","), found.get(i));
+        }
+        return Response.ok(json.append(']'));
+    }
+
+    private Response addBook(Request request) throws IOException {
+        Map<String, String> body = body(request);
+        Book book = librarian.createBook(body.get("title"), body.get("author"), number(body.get("year"), "year"),
+                number(body.get("amount"), "amount"));
+        if (body.get("id") != null) {
+            long id = longNumber(body.get("id"), "id");
+            if (id <= 0) {
+                throw new IllegalArgumentException("A book ID must be positive.");
+            }
+            book.assignId(id);
+        }
+        if (!library().addBooks(List.of(book)).isEmpty()) {
+            return Response.error(409, "Book ID must be unique.");
+        }
+        return new Response(201, appendBook(new StringBuilder(), library().findBookById(book.getId())));
+    }
+
+    private Response members(Request request, String path) throws IOException {
+        if (path.isEmpty()) {
+            requireMethod(request, "POST");
+            Map<String, String> body = body(request);
+            Member member = librarian.createMember(body.get("name"), number(body.get("id"), "id"));
+            if (!library().addMembers(List.of(member)).isEmpty()) {
+                return Response.error(409, "Member ID must be unique.");
+            }
+            return new Response(201, appendMember(new StringBuilder(), member));
+        }
+        String method = requireMethod(request, "GET", "DELETE");
+        long id = id(path, "member");
+        Member member = id == (int) id ? library().findMemberById((int) id) : null;
+        if (member == null) {
+            return Response.error(404, "No such member.");
+        }
+        if (method.equals("DELETE")) {
+            library().removeMember(member);
+        }
+        return Response.ok(appendMember(new StringBuilder(), member));
+    }
+
+    private Response borrow(Request request, String path) throws IOException {
+        requireEnd(path);
+        if (requireMethod(request, "POST", "GET").equals("GET")) {
+            Map<String, String> query = query(request.uri.getRawQuery());
+            return Response.ok(appendLoans(new StringBuilder(),
+                    library().findOpenLoansByMember(number(query.get("member"), "member"))));
+        }
+        Map<String, String> body = body(request);
+        Member member = borrower(body);
+        Book book = library().findBookById(longNumber(body.get("book"), "book"));
+        if (member == null || book == null) {
+            return Response.error(404, member == null ? "No such member." : "No such book.");
+        }
+        Loan loan = library().borrowBook(member, book);
+        return loan == null ? Response.error(409, "No copy is available to this member.")
+                : new Response(201, appendLoan(new StringBuilder(), loan));
+    }
+
+    private Response giveBack(Request request, String path) throws IOException {
+        requireMethod(request, "POST");
+        requireEnd(path);
+        Map<String, String> body = body(request);
+        Member member = borrower(body);
+        Book book = library().findBookById(longNumber(body.get("book"), "book"));
+        if (member == null || book == null) {
+            return Response.error(404, member == null ? "No such member." : "No such book.");
+        }
+        Loan loan = library().returnBook(member, book);
+        return loan == null ? Response.error(409, "The member has no open loan of this book.")
+                : Response.ok(appendLoan(new StringBuilder(), loan));
+    }
+
+    /**
+     * Finds the member a loan request names: a member registered here or, on a shard whose request also gives a
+     * name, a member of another shard, who is then kept here as a guest.
+     */
+    private Member borrower(Map<String, String> body) {
+        int id = number(body.get("member"), "member");
+        Member member = library().findMemberById(id);
+        String name = body.get("name");
+        if (member == null && shard && name != null && !name.isBlank()) {
+            member = library().addGuest(librarian.createMember(name, id));
+        }
+        return member;
+    }
+
+    private Response metrics(Request request, String path) {
+        requireMethod(request, "GET");
+        requireEnd(path);
+        return Response.ok(metrics.toJson());
+    }
+
+    private Response reports(Request request, String path) {
+        requireMethod(request, "GET");
+        if (!path.equals("circulation")) {
+            return Response.error(404, "No such report.");
+        }
+        Map<String, String> query = query(request.uri.getRawQuery());
+        int limit = query.containsKey("limit") ? number(query.get("limit"), "limit") : 10;
+        if (limit < 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("The limit must be between 0 and " + MAX_LIMIT + ".");
+        }
+        return Response.ok(analytics.report(limit).toJson());
+    }
+
+    /**
+     * Gets the library to answer from: the server's, or the replica's current library once it is known to be
+     * within its staleness bound.
+     */
+    private Library library() {
+        return replica == null ? library : replica.current();
+    }
+
+    private void route(String prefix, String timerName, Handler handler) {
+        routes.put(prefix, new Route(metrics.timer(timerName), handler));
+    }
+
+    /**
+     * Answers a request that came over HTTP.
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        Response response = dispatch(new Request(exchange.getRequestMethod(), exchange.getRequestURI(),
+                exchange.getRequestBody()));
+        if (response.allow != null) {
+            exchange.getResponseHeaders().set("Allow", response.allow);
+        }
+        byte[] bytes = response.body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Passes a request to the handler of its route, given the path after the route's prefix, and turns failures
+     * into error answers.
+     */
+    private Response dispatch(Request request) {
+        String path = request.uri.getPath();
+        int slash = path.indexOf('/', 1);
+        Route route = routes.get(slash < 0 ? path : path.substring(0, slash));
+        if (route == null) {
+            errors.increment();
+            return Response.error(404, "No such resource.");
+        }
+        long start = System.nanoTime();
+        long allocated = LibraryMetrics.allocatedBytes();
+        Response response;
+        try {
+            if (replica != null && !request.method.equals("GET")) {
+                throw new MethodNotAllowed("GET");
+            }
+            response = route.handler.handle(request, slash < 0 ? "" : path.substring(slash + 1));
+        } catch (MethodNotAllowed e) {
+            response = Response.error(405, e.getMessage());
+            response.allow = e.allow;
+        } catch (IllegalArgumentException e) {
+            response = Response.error(400, e.getMessage());
+        } catch (LibraryReplica.StaleReplicaException e) {
+            response = Response.error(503, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+            response = Response.error(500, "Internal error.");
+        }
+        if (response.status >= 400) {
+            errors.increment();
+        }
+        route.timer.record(start, allocated);
+        return response;
+    }
+
+    /**
+     * Checks that a request uses one of the methods a route supports.
+     *
+     * @return the request's method
+     */
+    private static String requireMethod(Request request, String... methods) {
+        for (String method : methods) {
+            if (request.method.equals(method)) {
+                return method;
+            }
+        }
+        throw new MethodNotAllowed(String.join(", ", methods));
+    }
+
+    private static void requireEnd(String path) {
+        if (!path.isEmpty()) {
+            throw new IllegalArgumentException("Unexpected path segment: " + path);
+        }
+    }
+
+    private static long id(String path, String what) {
+        if (path.indexOf('/') >= 0) {
+            throw new IllegalArgumentException("Unexpected path segment: " + path);
+        }
+        return longNumber(path, what);
+    }
+
+    private static int number(String value, String what) {
+        long number = longNumber(value, what);
+        if (number != (int) number) {
+            throw new IllegalArgumentException("The " + what + " is out of range.");
+        }
+        return (int) number;
+    }
+
+    private static long longNumber(String value, String what) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + what + ".");
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The " + what + " must be a whole number.");
+        }
+    }
+
+    private static Map<String, String> body(Request request) throws IOException {
+        try (InputStream in = request.body) {
+            byte[] bytes = in.readNBytes(MAX_BODY + 1);
+            if (bytes.length > MAX_BODY) {
+                throw new IllegalArgumentException("The request body is too large.");
+            }
+            return BulkLoader.parseJson(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.putIfAbsent(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static StringBuilder appendBook(StringBuilder json, Book book) {
+        json.append("{\"id\":").append(book.getId()).append(",\"title\":");
+        BulkLoader.quoteJson(json, book.getTitle());
+        json.append(",\"author\":");
+        BulkLoader.quoteJson(json, book.getAuthor());
+        return json.append(",\"year\":").append(book.getYear())
+                .append(",\"amount\":").append(book.getAmount()).append('}');
+    }
+
+    private StringBuilder appendMember(StringBuilder json, Member member) {
+        json.append("{\"id\":").append(member.getId()).append(",\"name\":");
+        BulkLoader.quoteJson(json, member.getName());
+        json.append(",\"openLoans\":");
+        return appendLoans(json, library().findOpenLoansByMember(member.getId())).append('}');
+    }
+
+    private static StringBuilder appendLoans(StringBuilder json, List<Loan> loans) {
+        json.append('[');
+        for (int i = 0; i < loans.size(); i++) {
+            appendLoan(json.append(i == 0 ? "" : ","), loans.get(i));
+        }
+        return json.append(']');
+    }
+
+    private static StringBuilder appendLoan(StringBuilder json, Loan loan) {
+        json.append("{\"id\":").append(loan.getId())
+                .append(",\"member\":").append(loan.getMember().getId())
+                .append(",\"book\":").append(loan.getBook().getId())
+                .append(",\"copy\":").append(loan.getCopy())
+                .append(",\"loanDate\":\"").append(loan.getLoanDate().toInstant())
+                .append("\",\"dueDate\":\"").append(loan.getDueDate().toInstant()).append('"');
+        if (loan.getReturnDate() != null) {
+            json.append(",\"returnDate\":\"").append(loan.getReturnDate().toInstant()).append('"');
+        }
+        return json.append('}');
+    }
+
+    /**
+     * Creates the executor for the request handlers: one virtual thread per request where the JVM supports them,
+     * looked up reflectively so the library still builds for Java 17, and otherwise a pool of platform threads
+     * large enough that handlers blocked on the journal do not starve the rest.
+     */
+    private static ExecutorService handlerExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(Math.max(16, 4 * Runtime.getRuntime().availableProcessors()), task -> {
+                Thread thread = new Thread(task, "library-http-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Handles the requests of one route, given the path after the route's prefix.
+     */
+    private interface Handler {
+        Response handle(Request request, String path) throws IOException;
+    }
+
+    /**
+     * The handler of a route and the timer of its requests.
+     */
+    private static final class Route {
+        final LibraryMetrics.Timer timer;
+        final Handler handler;
+
+        Route(LibraryMetrics.Timer timer, Handler handler) {
+            this.timer = timer;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * A request, over HTTP or in-process.
+     */
+    private static final class Request {
+        final String method;
+        final URI uri;
+        final InputStream body;
+
+        Request(String method, URI uri, InputStream body) {
+            this.method = method;
+            this.uri = uri;
+            this.body = body;
+        }
+    }
+
+    /**
+     * A status code and JSON body to send.
+     */
+    private static final class Response {
+        final int status;
+        final CharSequence body;
+        String allow;  // Methods the route supports, for a 405 answer
+
+        Response(int status, CharSequence body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response ok(CharSequence body) {
+            return new Response(200, body);
+        }
+
+        static Response error(int status, String message) {
+            StringBuilder body = new StringBuilder("{\"error\":");
+            BulkLoader.quoteJson(body, message);
+            return new Response(status, body.append('}'));
+        }
+    }
+
+    /**
+     * Thrown when a route does not support the request's method.
+     */
+    private static final class MethodNotAllowed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final String allow;  // The methods the route supports, comma-separated
+
+        MethodNotAllowed(String allow) {
+            super("Use " + allow.replace(", ", " or ") + ".");
+            this.allow = allow;
+        }
+    }
+}
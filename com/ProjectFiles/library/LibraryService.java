@@ -0,0 +1,385 @@
+package com.ProjectFiles.library;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Runs {@link Library} operations in the background and hands back their results as {@link CompletableFuture}s,
+ * so that a user interface never scans the catalog or waits for the journal on its own thread.
+ * <p>
+ * Operations run on a small pool of daemon threads with a bounded queue; when the queue is full the returned
+ * future fails with a {@link java.util.concurrent.RejectedExecutionException} rather than piling up work. A future
+ * can be cancelled with {@code cancel(true)}, which also interrupts the operation if it is running: long scans check
+ * for this every {@link #CHECK_INTERVAL} items and stop with a {@link CancellationException}, while short operations
+ * run to completion and only their result is dropped. Callers choose where the results are delivered, for instance
+ * with {@code thenAcceptAsync(action, SwingUtilities::invokeLater)} for Swing.
+ */
+public final class LibraryService implements AutoCloseable {
+    static final int CHECK_INTERVAL = 4096;  // Items scanned between checks for cancellation and progress reports
+    private static final int MAX_SIMILAR = 10;  // Similar books offered when no title matches exactly
+
+    private final Library library;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * A background operation that reports how many items it has handled so far.
+     *
+     * @param <T> the type of the result
+     */
+    public interface Task<T> {
+        T run(LongConsumer progress) throws Exception;
+    }
+
+    /**
+     * What a status page shows, taken at one point in time. The books and members are the library's own
+     * snapshots, not copies, so a status costs the same however large the library is, apart from the positions
+     * of the available books.
+     */
+    public static final class Status {
+        private final Snapshot<Book> books;
+        private final int[] available;
+        private final Snapshot<Member> members;
+        private final long activeLoans;
+        private final long overdueLoans;
+
+        Status(Snapshot<Book> books, int[] available, Snapshot<Member> members, long activeLoans, long overdueLoans) {
+            this.books = books;
+            this.available = available;
+            this.members = members;
+            this.activeLoans = activeLoans;
+            this.overdueLoans = overdueLoans;
+        }
+
+        /**
+         * @return all books, in catalog order
+         */
+        public Snapshot<Book> getBooks() {
+            return books;
+        }
+
+        /**
+         * @return the positions in {@link #getBooks()} of the books that had a copy on hand, in catalog order
+         */
+        public int[] getAvailablePositions() {
+            return available;
+        }
+
+        /**
+         * @return all members, in registration order
+         */
+        public Snapshot<Member> getMembers() {
+            return members;
+        }
+
+        /**
+         * @return the number of loans not returned yet
+         */
+        public long getActiveLoans() {
+            return activeLoans;
+        }
+
+        /**
+         * @return the number of overdue loans
+         */
+        public long getOverdueLoans() {
+            return overdueLoans;
+        }
+    }
+
+    /**
+     * The books found for a title that a user typed.
+     */
+    public static final class BookMatches {
+        private final Book exact;
+        private final List<Book> similar;
+        private final Book anyWithTitle;
+
+        BookMatches(Book exact, List<Book> similar, Book anyWithTitle) {
+            this.exact = exact;
+            this.similar = similar;
+            this.anyWithTitle = anyWithTitle;
+        }
+
+        /**
+         * @return the first usable book with exactly this title, or null if there is none
+         */
+        public Book getExact() {
+            return exact;
+        }
+
+        /**
+         * @return usable books with similar titles, closest first; empty if there is an exact match
+         */
+        public List<Book> getSimilar() {
+            return similar;
+        }
+
+        /**
+         * @return the first book with exactly this title whether usable or not, or null if there is none
+         */
+        public Book getAnyWithTitle() {
+            return anyWithTitle;
+        }
+    }
+
+    /**
+     * Creates a service with one thread per processor, at least two, and room for 64 waiting operations.
+     *
+     * @param library the library to operate on
+     */
+    public LibraryService(Library library) {
+        this(library, Math.max(2, Runtime.getRuntime().availableProcessors()), 64);
+    }
+
+    /**
+     * Creates a service.
+     *
+     * @param library       the library to operate on
+     * @param threads       the number of operations that may run at once
+     * @param queueCapacity the number of operations that may wait to run
+     */
+    public LibraryService(Library library, int threads, int queueCapacity) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("The service needs at least one thread and one queue slot.");
+        }
+        this.library = library;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+            Thread thread = new Thread(task, "library-service-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);  // An idle user interface keeps no threads around
+    }
+
+    /**
+     * Runs an operation in the background.
+     *
+     * @param task     the operation
+     * @param progress receives the number of items handled so far, on the background thread
+     * @param <T>      the type of the result
+     * @return the result; cancelling it interrupts the operation
+     */
+    public <T> CompletableFuture<T> submit(Task<T> task, LongConsumer progress) {
+        Operation<T> result = new Operation<>();
+        try {
+            result.running = executor.submit(() -> {
+                try {
+                    result.complete(task.run(progress));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {  // Rejected because the queue is full or the service is closed
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Takes the book and member snapshots and loan counts of a status page, and finds the available books.
+     *
+     * @param progress receives the number of books scanned so far
+     * @return the status
+     */
+    public CompletableFuture<Status> loadStatus(LongConsumer progress) {
+        return submit(report -> {
+            Snapshot<Book> books = library.books();
+            int[] available = new int[Math.min(books.size(), 1024)];
+            int count = 0;
+            long scanned = 0;
+            for (Book book : books) {
+                if (book.isAvailable()) {
+                    if (count == available.length) {
+                        available = Arrays.copyOf(available, count + (count >> 1) + 1);
+                    }
+                    available[count++] = (int) scanned;
+                }
+                scanned = checkpoint(scanned, report);
+            }
+            return new Status(books, Arrays.copyOf(available, count), library.members(),
+                    library.getActiveLoanCount(), library.getOverdueLoanCount());
+        }, progress);
+    }
+
+    /**
+     * Finds the books a typed title may refer to: the first usable book with exactly that title or, failing that,
+     * usable books whose titles differ by a typo or two, or else those the full-text search finds.
+     *
+     * @param title  the title as typed
+     * @param usable which books may be offered
+     * @return the matches
+     */
+    public CompletableFuture<BookMatches> findBooks(String title, Predicate<Book> usable) {
+        return submit(report -> {
+            List<Book> withTitle = library.findBooksByTitle(title);
+            Book any = withTitle.isEmpty() ? null : withTitle.get(0);
+            for (Book book : withTitle) {
+                if (usable.test(book)) {
+                    return new BookMatches(book, Collections.emptyList(), any);
+                }
+            }
+            int maxEdits = title.length() < 5 ? 1 : 2;  // Two typos in a very short title would match almost anything
+            List<Book> similar = usableOnly(library.findBooksApprox(title, maxEdits), usable);
+            if (similar.isEmpty()) {
+                similar = usableOnly(library.searchBooks(title, MAX_SIMILAR), usable);
+            }
+            return new BookMatches(null, similar, any);
+        }, count -> { });
+    }
+
+    /**
+     * Registers a new member.
+     *
+     * @param member the member
+     * @return the member; fails with an {@link IllegalArgumentException} if the ID is taken
+     */
+    public CompletableFuture<Member> addMember(Member member) {
+        return submit(report -> {
+            library.addMember(member);
+            return member;
+        }, count -> { });
+    }
+
+    /**
+     * Removes a member.
+     *
+     * @param id the member's ID
+     * @return the removed member, or null if there is no such member
+     */
+    public CompletableFuture<Member> removeMember(int id) {
+        return submit(report -> {
+            Member member = library.findMemberById(id);
+            if (member != null) {
+                library.removeMember(member);
+            }
+            return member;
+        }, count -> { });
+    }
+
+    /**
+     * Adds a book to the catalog.
+     *
+     * @param book the book
+     * @return the book as the library keeps it
+     */
+    public CompletableFuture<Book> addBook(Book book) {
+        return submit(report -> library.addBook(book), count -> { });
+    }
+
+    /**
+     * Removes a book from the catalog.
+     *
+     * @param book the book
+     * @return the removed book
+     */
+    public CompletableFuture<Book> removeBook(Book book) {
+        return submit(report -> {
+            library.removeBook(book);
+            return book;
+        }, count -> { });
+    }
+
+    /**
+     * Lends a copy of a book to a member.
+     *
+     * @param member the member
+     * @param book   the book
+     * @return the new loan, or null if no copy was available to the member
+     */
+    public CompletableFuture<Loan> borrowBook(Member member, Book book) {
+        return submit(report -> library.borrowBook(member, book), count -> { });
+    }
+
+    /**
+     * Takes back a copy of a book from a member.
+     *
+     * @param member the member
+     * @param book   the book
+     * @return the returned loan, or null if the member has no open loan of the book
+     */
+    public CompletableFuture<Loan> returnBook(Member member, Book book) {
+        return submit(report -> library.returnBook(member, book), count -> { });
+    }
+
+    /**
+     * Puts a member in the queue for a book.
+     *
+     * @param member the member
+     * @param book   the book
+     * @return the hold
+     */
+    public CompletableFuture<Hold> placeHold(Member member, Book book) {
+        return submit(report -> library.placeHold(member, book), count -> { });
+    }
+
+    /**
+     * Stops the background threads; operations already submitted still run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Counts one scanned item and, every {@link #CHECK_INTERVAL} items, reports progress and stops if the
+     * operation was cancelled.
+     *
+     * @param scanned  the items scanned before this one
+     * @param progress receives the count
+     * @return the items scanned including this one
+     * @throws CancellationException if the operation was cancelled
+     */
+    static long checkpoint(long scanned, LongConsumer progress) {
+        long count = scanned + 1;
+        if (count % CHECK_INTERVAL == 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Cancelled after " + count + " items.");
+            }
+            progress.accept(count);
+        }
+        return count;
+    }
+
+    private static List<Book> usableOnly(List<Book> books, Predicate<Book> usable) {
+        List<Book> result = new ArrayList<>(MAX_SIMILAR);
+        for (Book book : books) {
+            if (usable.test(book)) {
+                result.add(book);
+                if (result.size() == MAX_SIMILAR) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A future that interrupts the operation computing it when cancelled.
+     */
+    private static final class Operation<T> extends CompletableFuture<T> {
+        volatile Future<?> running;  // The queued or running operation, set before the future is handed out
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<?> task = running;
+            if (cancelled && task != null) {
+                task.cancel(mayInterruptIfRunning);  // A queued operation is dropped, a running one interrupted
+            }
+            return cancelled;
+        }
+    }
+}
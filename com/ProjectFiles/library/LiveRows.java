@@ -0,0 +1,150 @@
+package com.ProjectFiles.library;
+
+import java.util.Arrays;
+
+/**
+ * The rows of a book store that have not been removed, up to a limit, as an immutable rank structure, so that a
+ * snapshot can list the live rows in order without the store keeping an array of them.
+ * <p>
+ * Rows are grouped in blocks of 4,096. A version keeps the tombstone bits of each block that has any, and the
+ * number of live rows before each block; the bits of every block but the one a change touches are shared with the
+ * version it was made from. A removal therefore copies one block's bits and the block counts, a few tens of
+ * kilobytes on a catalog of ten million rows, rather than a pass over every row. Finding the row at a position takes
+ * a binary search over the blocks and a scan of one block's bits.
+ */
+final class LiveRows {
+    private static final int BLOCK_BITS = 12;                // log2 of the rows per block
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    private static final int WORDS = BLOCK_SIZE / 64;         // Tombstone words per block
+
+    private final int limit;         // Rows covered, from 0 to limit - 1
+    private final long[][] removed;  // Tombstone bits by block, null for a block without any
+    private final int[] liveBefore;  // Live rows in the blocks before each block, and in all of them at the end
+
+    private LiveRows(int limit, long[][] removed, int[] liveBefore) {
+        this.limit = limit;
+        this.removed = removed;
+        this.liveBefore = liveBefore;
+    }
+
+    /**
+     * Creates the set of the rows below a limit, all of them live.
+     *
+     * @param limit the number of rows
+     * @return the rows
+     */
+    static LiveRows all(int limit) {
+        int blocks = blocks(limit);
+        int[] liveBefore = new int[blocks + 1];
+        for (int block = 0; block < blocks; block++) {
+            liveBefore[block + 1] = liveBefore[block] + rows(limit, block);
+        }
+        return new LiveRows(limit, new long[blocks][], liveBefore);
+    }
+
+    /**
+     * @return the number of rows covered, live or not
+     */
+    int limit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of live rows
+     */
+    int size() {
+        return liveBefore[removed.length];
+    }
+
+    /**
+     * Checks whether a row has been removed. Rows at or above the limit are live.
+     *
+     * @param row the row
+     * @return true if the row is tombstoned
+     */
+    boolean isRemoved(int row) {
+        long[] words = row < limit ? removed[row >>> BLOCK_BITS] : null;
+        return words != null && (words[(row & BLOCK_MASK) >>> 6] & 1L << row) != 0;
+    }
+
+    /**
+     * Finds the row at a position in the order of the live rows.
+     *
+     * @param position the position, from 0 to {@link #size()} - 1
+     * @return the row
+     */
+    int row(int position) {
+        if (size() == limit) {
+            return position;  // Nothing removed
+        }
+        int low = 0;
+        int high = removed.length - 1;
+        while (low < high) {  // Finds the last block with at most position live rows before it
+            int mid = (low + high + 1) >>> 1;
+            if (liveBefore[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int skip = position - liveBefore[low];
+        long[] words = removed[low];
+        if (words == null) {
+            return (low << BLOCK_BITS) + skip;
+        }
+        for (int word = 0; ; word++) {
+            long live = ~words[word];
+            int count = Long.bitCount(live);
+            if (skip < count) {
+                for (; skip > 0; skip--) {
+                    live &= live - 1;
+                }
+                return (low << BLOCK_BITS) + (word << 6) + Long.numberOfTrailingZeros(live);
+            }
+            skip -= count;
+        }
+    }
+
+    /**
+     * Makes a version in which a row is removed or live again. The version covers at least the given number of
+     * rows, and the rows it adds above the current limit are live.
+     *
+     * @param row    the row, below the new limit
+     * @param remove true to tombstone the row, false to bring it back
+     * @param rows   the number of rows the version covers at least
+     * @return the new version, or this one if the row already was as asked and the limit does not grow
+     */
+    LiveRows with(int row, boolean remove, int rows) {
+        int covered = Math.max(limit, rows);
+        int change = isRemoved(row) == remove ? 0 : remove ? 1 : -1;
+        if (change == 0 && covered == limit) {
+            return this;
+        }
+        int blocks = blocks(covered);
+        long[][] tombstones = Arrays.copyOf(removed, blocks);
+        int block = row >>> BLOCK_BITS;
+        if (change != 0) {
+            long[] words = tombstones[block] == null ? new long[WORDS] : tombstones[block].clone();
+            words[(row & BLOCK_MASK) >>> 6] ^= 1L << row;
+            tombstones[block] = words;
+        }
+        int[] counts = new int[blocks + 1];
+        for (int b = 0; b < blocks; b++) {
+            int dead = b < removed.length ? rows(limit, b) - (liveBefore[b + 1] - liveBefore[b]) : 0;
+            if (b == block) {
+                dead += change;
+            }
+            counts[b + 1] = counts[b] + rows(covered, b) - dead;
+        }
+        return new LiveRows(covered, tombstones, counts);
+    }
+
+    private static int blocks(int limit) {
+        return (limit + BLOCK_MASK) >>> BLOCK_BITS;
+    }
+
+    private static int rows(int limit, int block) {
+        return Math.min(BLOCK_SIZE, limit - (block << BLOCK_BITS));
+    }
+}
@@ -1,38 +1,171 @@
 package com.ProjectFiles.library;
 
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a loan of a book to a member in the library.
  * This class tracks essential details such as the book loaned, the member to whom the book is loaned,
- * the date when the loan started, and the date when the book was returned.
+ * the date when the loan started, the date the book is due back, and the date when the book was returned.
+ * A loan made through a library also knows which physical copy of the book it took.
+ * A loan can be returned only once, even if several threads try to return it at the same time.
  */
 public class Loan {
-    private Book book;            // The book that is loaned
-    private Member member;        // The member who has taken the loan
-    private Date loanDate;        // The date on which the loan was initiated
-    private Date returnDate;      // The date on which the book was returned, null if the book is still out
+    /** Number of days a book may be kept before the loan is overdue. */
+    public static final int LOAN_PERIOD_DAYS = 14;
+
+    private volatile long id;           // ID assigned when the loan is registered, 0 until then
+    private final Book book;            // The book that is loaned
+    private final Member member;        // The member who has taken the loan
+    private final int copy;             // Number of the copy taken, CopyInventory.NO_COPY if not known
+    private final Date loanDate;        // The date on which the loan was initiated
+    private final Date dueDate;         // The date by which the book has to be returned
+    private volatile Date returnDate;   // The date on which the book was returned, null if the book is still out
+    private Library ledger;             // Library counting this loan as active, null if it is not registered
 
     /**
      * Constructs a new Loan object for a given book and member.
-     * Automatically sets the loan date to the current date, indicating when the loan was created.
+     * Automatically sets the loan date to the current date, indicating when the loan was created,
+     * and makes the book due back {@link #LOAN_PERIOD_DAYS} days later.
      *
      * @param member the member to whom the book is loaned
      * @param book   the book that is being loaned
      */
     public Loan(Member member, Book book) {
+        this(member, book, CopyInventory.NO_COPY);
+    }
+
+    /**
+     * Constructs a new loan of a copy that has just been taken, due back {@link #LOAN_PERIOD_DAYS} days from now.
+     *
+     * @param member the member to whom the book is loaned
+     * @param book   the book that is being loaned
+     * @param copy   the number of the copy taken
+     */
+    Loan(Member member, Book book, int copy) {
         this.member = member;
         this.book = book;
+        this.copy = copy;
         this.loanDate = new Date();  // Capture the current time as the loan date
+        this.dueDate = new Date(loanDate.getTime() + TimeUnit.DAYS.toMillis(LOAN_PERIOD_DAYS));
+    }
+
+    /**
+     * Constructs a new Loan object that is due back on the given date.
+     *
+     * @param member  the member to whom the book is loaned
+     * @param book    the book that is being loaned
+     * @param dueDate the date by which the book has to be returned
+     */
+    public Loan(Member member, Book book, Date dueDate) {
+        this.member = member;
+        this.book = book;
+        this.copy = CopyInventory.NO_COPY;
+        this.loanDate = new Date();
+        this.dueDate = dueDate;
+    }
+
+    /**
+     * Constructs a loan restored from persistent storage, keeping its original ID and dates.
+     *
+     * @param id         the ID of the loan
+     * @param member     the member to whom the book was loaned
+     * @param book       the book that was loaned
+     * @param loanDate   the date the loan was made
+     * @param dueDate    the date the book was due back
+     * @param returnDate the date the book was returned, or null if it is still out
+     */
+    Loan(long id, Member member, Book book, Date loanDate, Date dueDate, Date returnDate) {
+        this(id, member, book, CopyInventory.NO_COPY, loanDate, dueDate, returnDate);
+    }
+
+    /**
+     * Constructs a loan of a known copy restored from persistent storage, keeping its original ID and dates.
+     *
+     * @param id         the ID of the loan
+     * @param member     the member to whom the book was loaned
+     * @param book       the book that was loaned
+     * @param copy       the number of the copy loaned, or {@link CopyInventory#NO_COPY} if not known
+     * @param loanDate   the date the loan was made
+     * @param dueDate    the date the book was due back
+     * @param returnDate the date the book was returned, or null if it is still out
+     */
+    Loan(long id, Member member, Book book, int copy, Date loanDate, Date dueDate, Date returnDate) {
+        this.id = id;
+        this.member = member;
+        this.book = book;
+        this.copy = copy;
+        this.loanDate = loanDate;
+        this.dueDate = dueDate;
+        this.returnDate = returnDate;
     }
 
     /**
      * Marks the loan as returned by setting the return date to the current date.
      * Also updates the book's status to indicate that it is available again.
+     * Only the first call has any effect, so a copy is never checked in twice for the same loan.
+     *
+     * @return true if this call returned the loan, false if it had already been returned
      */
-    public void markAsReturned() {
-        this.returnDate = new Date();  // Record the current time as the return date
-        book.checkIn();  // Notify the book that it has been returned
+    public boolean markAsReturned() {
+        return close(new Date(), true);  // Record the current time as the return date
+    }
+
+    /**
+     * Restores the return of the loan from persistent storage without checking the copy back in,
+     * which the journal replays from the record of the return.
+     *
+     * @param date the date on which the book was returned
+     * @return true if the loan was still open, false otherwise
+     */
+    boolean restoreReturn(Date date) {
+        return close(date, false);
+    }
+
+    private boolean close(Date date, boolean checkIn) {
+        Library registeredWith;
+        synchronized (this) {
+            if (returnDate != null) {
+                return false;
+            }
+            this.returnDate = date;
+            registeredWith = ledger;
+        }
+        if (checkIn) {
+            book.checkIn(copy, registeredWith == null);  // Put the copy back; a registered loan logs it itself
+        }
+        if (registeredWith != null) {
+            registeredWith.loanClosed(this, checkIn);
+        }
+        return true;
+    }
+
+    /**
+     * Registers the loan with a library, which then counts it as active until it is returned.
+     *
+     * @param library the library recording the loan
+     * @return true if the library should count the loan as active, false if it is already returned or registered
+     */
+    synchronized boolean register(Library library) {
+        if (returnDate != null || ledger != null) {
+            return false;
+        }
+        ledger = library;
+        return true;
+    }
+
+    /**
+     * Removes the loan's registration with a library.
+     *
+     * @param library the library that recorded the loan
+     * @return true if the library was counting the loan as active, false otherwise
+     */
+    synchronized boolean unregister(Library library) {
+        if (ledger != library) {
+            return false;
+        }
+        ledger = null;
+        return returnDate == null;
     }
 
     /**
@@ -45,6 +178,33 @@ public class Loan {
         return returnDate;
     }
 
+    /**
+     * Gets the ID of the loan. The library assigns it when the loan is registered.
+     *
+     * @return the loan ID, or 0 if the loan has never been registered
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Sets the ID of the loan.
+     *
+     * @param id the ID to use
+     */
+    void assignId(long id) {
+        this.id = id;
+    }
+
+    /**
+     * Retrieves the member who took out this loan.
+     *
+     * @return the borrowing member
+     */
+    public Member getMember() {
+        return member;
+    }
+
     /**
      * Retrieves the book involved in this loan.
      * This method allows access to the book object that is associated with this loan.
@@ -55,6 +215,15 @@ public class Loan {
         return book;
     }
 
+    /**
+     * Gets the number of the physical copy that was loaned, from 0 to the book's copy count - 1.
+     *
+     * @return the number of the copy, or -1 if the loan was made without taking a known copy
+     */
+    public int getCopy() {
+        return copy;
+    }
+
     /**
      * Retrieves the date the loan was made.
      * This method provides the date when the loan transaction was initiated.
@@ -64,4 +233,22 @@ public class Loan {
     public Date getLoanDate() {
         return loanDate;
     }
+
+    /**
+     * Retrieves the date by which the book has to be returned.
+     *
+     * @return the due date of the loan
+     */
+    public Date getDueDate() {
+        return dueDate;
+    }
+
+    /**
+     * Checks whether the book is still out although its due date has passed.
+     *
+     * @return true if the loan is open and overdue, false otherwise
+     */
+    public boolean isOverdue() {
+        return returnDate == null && System.currentTimeMillis() > dueDate.getTime();
+    }
 }
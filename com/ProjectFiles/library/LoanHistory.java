@@ -0,0 +1,418 @@
+package com.ProjectFiles.library;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The returned loans of a library, moved out of the library's live structures into append-only files, one per month
+ * in which the loans were made.
+ * <p>
+ * Each partition file is a sequence of fixed-width records holding the loan's ID, the book and member IDs, and the
+ * loan, due, and return dates. Loans are appended in batches when the journal takes a checkpoint, so the files only
+ * ever grow, and a partition keeps receiving records for as long as loans made in its month come back. Readers never
+ * go through the write path: every partition is read through a read-only memory mapping, which for the months that
+ * no longer change is made once and then served from the page cache. Queries for a range of time open only the
+ * partitions of the months in that range; a query for returns also skips the partitions whose return dates, which
+ * each partition summarizes when first asked, do not reach into the range.
+ * <p>
+ * Appended records become visible to queries only when {@linkplain #publish() published}, which the library does in
+ * the same step in which it drops the loans from its live structures, so that no reader counts a loan twice.
+ */
+final class LoanHistory {
+    static final int RECORD_SIZE = 44;    // Bytes per loan record
+    private static final int ID = 0;       // Record offset of the loan ID
+    private static final int BOOK = 8;     // Record offset of the book's catalog ID
+    private static final int MEMBER = 16;  // Record offset of the member ID
+    private static final int LOANED = 20;  // Record offset of the loan date, in epoch milliseconds
+    private static final int DUE = 28;     // Record offset of the due date
+    private static final int RETURNED = 36;  // Record offset of the return date
+    private static final String PREFIX = "loans-";  // Partition files are named loans-YYYY-MM.seg
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private final ConcurrentSkipListMap<Integer, Partition> partitions = new ConcurrentSkipListMap<>();  // By month
+    private volatile View published = liveOnly(Snapshot.empty());
+
+    private LoanHistory(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the history in a directory, creating the directory if needed. Nothing is visible until
+     * {@link #truncate(Map)} has cut the partitions back to what the checkpoint knows about and the history has
+     * been {@linkplain #publish() published}.
+     *
+     * @param directory the directory of the partition files
+     * @return the history
+     * @throws IOException if the directory cannot be read
+     */
+    static LoanHistory open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        LoanHistory history = new LoanHistory(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    String month = name.substring(PREFIX.length(), name.length() - SUFFIX.length());
+                    Partition partition = new Partition(monthNumber(YearMonth.parse(month)), file);
+                    partition.written = Files.size(file) / RECORD_SIZE;
+                    history.partitions.put(partition.month, partition);
+                } catch (RuntimeException e) {
+                    // Not a partition written by this class
+                }
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Cuts every partition back to the number of records a checkpoint was taken with, dropping what a checkpoint
+     * that did not complete appended after it.
+     *
+     * @param watermark the records per month number, as returned by {@link #watermark()} when the checkpoint was
+     *                  taken; null if the checkpoint predates the history, which then starts out empty
+     * @throws IOException if a partition cannot be truncated
+     */
+    void truncate(Map<Integer, Long> watermark) throws IOException {
+        for (Partition partition : new ArrayList<>(partitions.values())) {
+            long kept = watermark == null ? 0 : watermark.getOrDefault(partition.month, 0L);
+            long size = Files.size(partition.file);
+            if (size < kept * RECORD_SIZE) {
+                throw new IOException("Loan history partition " + partition.file + " is shorter than the checkpoint");
+            }
+            if (kept == 0) {
+                Files.deleteIfExists(partition.file);
+                partitions.remove(partition.month);
+            } else if (size > kept * RECORD_SIZE) {
+                try (FileChannel channel = FileChannel.open(partition.file, StandardOpenOption.WRITE)) {
+                    channel.truncate(kept * RECORD_SIZE);
+                    channel.force(true);
+                }
+            }
+            partition.written = kept;
+        }
+    }
+
+    /**
+     * Gets the number of records written to each partition, for the checkpoint to remember.
+     *
+     * @return the records per month number
+     */
+    Map<Integer, Long> watermark() {
+        Map<Integer, Long> watermark = new TreeMap<>();
+        partitions.forEach((month, partition) -> watermark.put(month, partition.written));
+        return watermark;
+    }
+
+    /**
+     * Appends returned loans to the partitions of the months they were made in and forces them to disk. The records
+     * stay invisible until published. If writing fails, the partitions keep their previous length as far as later
+     * appends and the watermark are concerned, and the next append overwrites what was partly written.
+     * Only one thread may append at a time.
+     *
+     * @param loans the returned loans
+     * @throws IOException if a partition cannot be written
+     */
+    void append(Collection<Loan> loans) throws IOException {
+        Map<Integer, List<Loan>> byMonth = new TreeMap<>();
+        for (Loan loan : loans) {
+            byMonth.computeIfAbsent(monthNumber(loan.getLoanDate().getTime()), month -> new ArrayList<>()).add(loan);
+        }
+        Map<Partition, Long> grown = new TreeMap<>((a, b) -> Integer.compare(a.month, b.month));
+        for (Map.Entry<Integer, List<Loan>> month : byMonth.entrySet()) {
+            Partition partition = partitions.get(month.getKey());
+            if (partition == null) {
+                String name = PREFIX + monthOf(month.getKey()) + SUFFIX;
+                partition = new Partition(month.getKey(), directory.resolve(name));
+            }
+            List<Loan> records = month.getValue();
+            if ((partition.written + records.size()) * RECORD_SIZE > Integer.MAX_VALUE) {
+                throw new IOException("Loan history partitions are limited to 2 GB, reached by " + partition.file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(records.size() * RECORD_SIZE);
+            for (Loan loan : records) {
+                buffer.putLong(loan.getId()).putLong(loan.getBook().getId()).putInt(loan.getMember().getId())
+                        .putLong(loan.getLoanDate().getTime()).putLong(loan.getDueDate().getTime())
+                        .putLong(loan.getReturnDate().getTime());
+            }
+            buffer.flip();
+            try (FileChannel channel = FileChannel.open(partition.file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE)) {
+                long position = partition.written * RECORD_SIZE;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                channel.force(false);
+            }
+            grown.put(partition, partition.written + records.size());
+        }
+        grown.forEach((partition, written) -> {
+            partition.written = written;
+            partitions.putIfAbsent(partition.month, partition);
+        });
+    }
+
+    /**
+     * Makes every record appended so far visible to {@link #view()}.
+     */
+    void publish() {
+        List<Partition> visible = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            if (partition.written > 0) {
+                visible.add(partition);
+            }
+        }
+        long[] records = new long[visible.size()];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = visible.get(i).written;
+        }
+        published = new View(visible.toArray(new Partition[0]), records, Snapshot.empty());
+    }
+
+    /**
+     * Gets the published records.
+     *
+     * @return the partitions and their lengths as of the last publication
+     */
+    View view() {
+        return published;
+    }
+
+    /**
+     * Gets a view of a library without a history.
+     *
+     * @param loans the loans the library keeps
+     * @return a view holding only those loans
+     */
+    static View liveOnly(Snapshot<Loan> loans) {
+        return new View(new Partition[0], new long[0], loans);
+    }
+
+    /**
+     * Gets the month number of a point in time, in UTC: the number of months since the start of year 0.
+     */
+    static int monthNumber(long epochMillis) {
+        return monthNumber(YearMonth.from(Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC)));
+    }
+
+    private static int monthNumber(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private static YearMonth monthOf(int monthNumber) {
+        return YearMonth.of(Math.floorDiv(monthNumber, 12), Math.floorMod(monthNumber, 12) + 1);
+    }
+
+    /**
+     * The file of one month, its length, and the mapping and return-date summary readers share.
+     */
+    private static final class Partition {
+        final int month;
+        final Path file;
+        volatile long written;               // Records in the file, published or not
+        private MappedByteBuffer mapping;    // Read-only mapping of the first mappedRecords records, guarded by this
+        private long mappedRecords;
+        private long summarized;             // Records folded into the return-date range, guarded by this
+        private long firstReturn = Long.MAX_VALUE;
+        private long lastReturn = Long.MIN_VALUE;
+
+        Partition(int month, Path file) {
+            this.month = month;
+            this.file = file;
+        }
+
+        /**
+         * Gets a read-only mapping of at least the given number of records, mapping the file again only if it has
+         * grown past the current mapping. Readers use absolute gets only, so they may share the buffer.
+         */
+        synchronized ByteBuffer map(long records) throws IOException {
+            if (mapping == null || mappedRecords < records) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, records * RECORD_SIZE);
+                }
+                mappedRecords = records;
+            }
+            return mapping;
+        }
+
+        /**
+         * Checks whether any of the first records was returned in a range of time, extending the summary of the
+         * return dates to them first.
+         */
+        synchronized boolean mayHaveReturns(long records, long from, long to) throws IOException {
+            if (summarized < records) {
+                ByteBuffer buffer = map(records);
+                for (long i = summarized; i < records; i++) {
+                    long returned = buffer.getLong((int) (i * RECORD_SIZE + RETURNED));
+                    firstReturn = Math.min(firstReturn, returned);
+                    lastReturn = Math.max(lastReturn, returned);
+                }
+                summarized = records;
+            }
+            return firstReturn < to && lastReturn >= from;
+        }
+    }
+
+    /**
+     * A consistent view of the loans: the published records of the history, and the loans still kept by the library
+     * when the view was taken.
+     */
+    static final class View {
+        private final Partition[] partitions;  // Sorted by month
+        private final long[] records;          // Published records of each partition
+        private final Snapshot<Loan> live;
+
+        private View(Partition[] partitions, long[] records, Snapshot<Loan> live) {
+            this.partitions = partitions;
+            this.records = records;
+            this.live = live;
+        }
+
+        /**
+         * Pairs the history with the library's current loans.
+         *
+         * @param loans the loans the library keeps
+         * @return the combined view
+         */
+        View withLive(Snapshot<Loan> loans) {
+            return new View(partitions, records, loans);
+        }
+
+        /**
+         * @return the loans the library kept when the view was taken, none of which are in the history
+         */
+        Snapshot<Loan> live() {
+            return live;
+        }
+
+        /**
+         * @return the number of partitions with published records
+         */
+        int partitionCount() {
+            return partitions.length;
+        }
+
+        /**
+         * @return the month number of a partition
+         */
+        int month(int partition) {
+            return partitions[partition].month;
+        }
+
+        /**
+         * @return the number of published records of a partition
+         */
+        long records(int partition) {
+            return records[partition];
+        }
+
+        /**
+         * Maps the published records of a partition.
+         *
+         * @param partition the partition
+         * @return the records, to be read with the static accessors of {@link LoanHistory}
+         * @throws IOException if the partition cannot be mapped
+         */
+        ByteBuffer map(int partition) throws IOException {
+            return partitions[partition].map(records[partition]);
+        }
+
+        /**
+         * Finds the archived loans of a member made in a range of time, reading only the partitions of that range.
+         *
+         * @param memberId the member's ID
+         * @param from     the earliest loan date, in epoch milliseconds
+         * @param to       the loan date to stop before
+         * @return the loans, oldest month first
+         * @throws IOException if a partition cannot be read
+         */
+        List<LoanRecord> loansOfMember(int memberId, long from, long to) throws IOException {
+            List<LoanRecord> found = new ArrayList<>();
+            if (from >= to) {
+                return found;
+            }
+            int first = monthNumber(from);
+            int last = monthNumber(to - 1);
+            for (int p = 0; p < partitions.length; p++) {
+                if (partitions[p].month < first || partitions[p].month > last) {
+                    continue;
+                }
+                ByteBuffer buffer = map(p);
+                for (int offset = 0; offset < records[p] * RECORD_SIZE; offset += RECORD_SIZE) {
+                    long loaned = buffer.getLong(offset + LOANED);
+                    if (buffer.getInt(offset + MEMBER) == memberId && loaned >= from && loaned < to) {
+                        found.add(record(buffer, offset));
+                    }
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Finds the archived loans returned in a range of time. Partitions of months after the range cannot hold
+         * such loans, and partitions whose return dates all fall outside it are skipped without being scanned.
+         *
+         * @param from the earliest return date, in epoch milliseconds
+         * @param to   the return date to stop before
+         * @return the loans, oldest month first
+         * @throws IOException if a partition cannot be read
+         */
+        List<LoanRecord> returnsBetween(long from, long to) throws IOException {
+            List<LoanRecord> found = new ArrayList<>();
+            if (from >= to) {
+                return found;
+            }
+            int last = monthNumber(to - 1);  // Loans are returned after they are made
+            for (int p = 0; p < partitions.length && partitions[p].month <= last; p++) {
+                if (!partitions[p].mayHaveReturns(records[p], from, to)) {
+                    continue;
+                }
+                ByteBuffer buffer = map(p);
+                for (int offset = 0; offset < records[p] * RECORD_SIZE; offset += RECORD_SIZE) {
+                    long returned = buffer.getLong(offset + RETURNED);
+                    if (returned >= from && returned < to) {
+                        found.add(record(buffer, offset));
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    static long bookId(ByteBuffer records, int offset) {
+        return records.getLong(offset + BOOK);
+    }
+
+    static int memberId(ByteBuffer records, int offset) {
+        return records.getInt(offset + MEMBER);
+    }
+
+    static long loanMillis(ByteBuffer records, int offset) {
+        return records.getLong(offset + LOANED);
+    }
+
+    static long returnMillis(ByteBuffer records, int offset) {
+        return records.getLong(offset + RETURNED);
+    }
+
+    private static LoanRecord record(ByteBuffer records, int offset) {
+        return new LoanRecord(records.getLong(offset + ID), records.getLong(offset + BOOK),
+                records.getInt(offset + MEMBER), records.getLong(offset + LOANED), records.getLong(offset + DUE),
+                records.getLong(offset + RETURNED));
+    }
+}
@@ -0,0 +1,106 @@
+package com.ProjectFiles.library;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Indexes the library's open loans by member and by book, so that a member's loans, a book's loans, and the
+ * loan to close when a member hands a book back are all found without scanning.
+ * <p>
+ * Only loans that are still out are indexed; a loan leaves the ledger as soon as it is returned or removed, while
+ * the library's loan snapshot keeps the full history. Each member's open loans are grouped by book, so returning
+ * a book looks at one small set no matter how many loans the member or the book has had.
+ * All methods may be called from any thread.
+ */
+final class LoanLedger {
+    private final Map<Integer, Map<Long, Set<Loan>>> byMember = new ConcurrentHashMap<>();  // By member, then book ID
+    private final Map<Long, Set<Loan>> byBook = new ConcurrentHashMap<>();                  // By book ID
+
+    /**
+     * Adds a loan that has just been registered and is still out.
+     *
+     * @param loan the open loan
+     */
+    void opened(Loan loan) {
+        long bookId = loan.getBook().getId();
+        // Sets are added to and dropped inside compute, so a concurrent close never drops a set being added to
+        byMember.compute(loan.getMember().getId(), (id, books) -> {
+            Map<Long, Set<Loan>> held = books == null ? new ConcurrentHashMap<>() : books;
+            held.compute(bookId, (book, loans) -> with(loans, loan));
+            return held;
+        });
+        byBook.compute(bookId, (id, loans) -> with(loans, loan));
+    }
+
+    /**
+     * Drops a loan that has been returned or removed; does nothing if the loan is not open.
+     *
+     * @param loan the loan that is no longer out
+     */
+    void closed(Loan loan) {
+        long bookId = loan.getBook().getId();
+        byMember.computeIfPresent(loan.getMember().getId(), (id, books) -> {
+            books.computeIfPresent(bookId, (book, loans) -> without(loans, loan));
+            return books.isEmpty() ? null : books;
+        });
+        byBook.computeIfPresent(bookId, (id, loans) -> without(loans, loan));
+    }
+
+    /**
+     * Finds one of a member's open loans of a book.
+     *
+     * @param memberId the ID of the member
+     * @param bookId   the catalog ID of the book
+     * @return an open loan, or null if the member does not have the book
+     */
+    Loan find(int memberId, long bookId) {
+        Map<Long, Set<Loan>> books = byMember.get(memberId);
+        Set<Loan> loans = books == null ? null : books.get(bookId);
+        if (loans == null) {
+            return null;
+        }
+        Iterator<Loan> open = loans.iterator();
+        return open.hasNext() ? open.next() : null;
+    }
+
+    /**
+     * Lists a member's open loans.
+     *
+     * @param memberId the ID of the member
+     * @return an unmodifiable list of the member's open loans, empty if there are none
+     */
+    List<Loan> byMember(int memberId) {
+        Map<Long, Set<Loan>> books = byMember.get(memberId);
+        if (books == null) {
+            return Collections.emptyList();
+        }
+        return books.values().stream().flatMap(Set::stream).collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Lists the open loans of a book.
+     *
+     * @param bookId the catalog ID of the book
+     * @return an unmodifiable list of the book's open loans, empty if there are none
+     */
+    List<Loan> byBook(long bookId) {
+        Set<Loan> loans = byBook.get(bookId);
+        return loans == null ? Collections.emptyList() : List.copyOf(loans);
+    }
+
+    private static Set<Loan> with(Set<Loan> loans, Loan loan) {
+        Set<Loan> open = loans == null ? ConcurrentHashMap.newKeySet() : loans;
+        open.add(loan);
+        return open;
+    }
+
+    private static Set<Loan> without(Set<Loan> loans, Loan loan) {
+        loans.remove(loan);
+        return loans.isEmpty() ? null : loans;
+    }
+}
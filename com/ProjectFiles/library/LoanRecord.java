@@ -0,0 +1,86 @@
+package com.ProjectFiles.library;
+
+import java.util.Date;
+
+/**
+ * A loan as found by a history query: the IDs of the book and member and the dates of the loan, whether the loan is
+ * still in the library or has been moved to the loan history. Unlike a {@link Loan} it does not hold on to the book
+ * and member, which may have been removed since; look them up by ID when needed.
+ */
+public final class LoanRecord {
+    private final long id;
+    private final long bookId;
+    private final int memberId;
+    private final long loanMillis;
+    private final long dueMillis;
+    private final long returnMillis;  // Negative if the loan is still open
+
+    LoanRecord(long id, long bookId, int memberId, long loanMillis, long dueMillis, long returnMillis) {
+        this.id = id;
+        this.bookId = bookId;
+        this.memberId = memberId;
+        this.loanMillis = loanMillis;
+        this.dueMillis = dueMillis;
+        this.returnMillis = returnMillis;
+    }
+
+    /**
+     * Describes a loan still kept by the library.
+     *
+     * @param loan the loan
+     * @return the record
+     */
+    static LoanRecord of(Loan loan) {
+        Date returned = loan.getReturnDate();
+        return new LoanRecord(loan.getId(), loan.getBook().getId(), loan.getMember().getId(),
+                loan.getLoanDate().getTime(), loan.getDueDate().getTime(), returned == null ? -1 : returned.getTime());
+    }
+
+    /**
+     * @return the ID of the loan
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the catalog ID of the book
+     */
+    public long getBookId() {
+        return bookId;
+    }
+
+    /**
+     * @return the ID of the member
+     */
+    public int getMemberId() {
+        return memberId;
+    }
+
+    /**
+     * @return the date the loan was made
+     */
+    public Date getLoanDate() {
+        return new Date(loanMillis);
+    }
+
+    /**
+     * @return the date the book was due back
+     */
+    public Date getDueDate() {
+        return new Date(dueMillis);
+    }
+
+    /**
+     * @return the date the book was returned, or null if it is still out
+     */
+    public Date getReturnDate() {
+        return returnMillis < 0 ? null : new Date(returnMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "Loan " + id + " of book " + bookId + " to member " + memberId + " on " + getLoanDate()
+                + (returnMillis < 0 ? ", not returned" : ", returned " + getReturnDate());
+    }
+}
@@ -67,9 +67,7 @@ public class LoginDialog extends JDialog {
         // Attempt to parse user ID and handle member authentication or creation
         try {
             int parsedId = Integer.parseInt(userId);
-            Member existingMember = library.getMembers().stream()
-                    .filter(m -> m.getId() == parsedId)
-                    .findFirst().orElse(null);
+            Member existingMember = library.findMemberById(parsedId);
 
             if (existingMember != null) {
                 if (!existingMember.getName().equals(userName)) {
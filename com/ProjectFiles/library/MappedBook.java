@@ -0,0 +1,80 @@
+package com.ProjectFiles.library;
+
+/**
+ * A lightweight view of one record in a {@link MappedCatalog}.
+ * The view holds nothing but its position: every property is read from the mapped file when asked for, and checkouts
+ * update the record's copy state in place. Two views of the same record are equal, so views can be created freely.
+ */
+final class MappedBook extends Book {
+    private final MappedCatalog catalog;  // Catalog holding the record
+    private final int row;                // Position of the record in the catalog
+
+    /**
+     * Creates a view of a catalog record.
+     *
+     * @param catalog the catalog holding the record
+     * @param row     the position of the record
+     */
+    MappedBook(MappedCatalog catalog, int row) {
+        this.catalog = catalog;
+        this.row = row;
+    }
+
+    MappedCatalog catalog() {
+        return catalog;
+    }
+
+    int row() {
+        return row;
+    }
+
+    @Override
+    public long getId() {
+        return catalog.id(row);
+    }
+
+    @Override
+    public String getTitle() {
+        return catalog.title(row);
+    }
+
+    @Override
+    public String getAuthor() {
+        return catalog.author(row);
+    }
+
+    @Override
+    public int getYear() {
+        return catalog.year(row);
+    }
+
+    @Override
+    long state() {
+        return catalog.state(row);
+    }
+
+    @Override
+    boolean compareAndSetState(long expected, long updated) {
+        return catalog.compareAndSetState(row, expected, updated);
+    }
+
+    @Override
+    CopyInventory inventory() {
+        return catalog.inventory(row);
+    }
+
+    @Override
+    Library getOwner() {
+        return catalog.owner();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MappedBook && ((MappedBook) other).catalog == catalog && ((MappedBook) other).row == row;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(catalog) + row;
+    }
+}
@@ -0,0 +1,376 @@
+package com.ProjectFiles.library;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A book store backed by a memory-mapped catalog file, so that opening even a very large catalog takes milliseconds
+ * and the books live in the page cache rather than on the heap.
+ * <p>
+ * The file holds a header with the catalog totals, one fixed-width record per book sorted by catalog ID, two
+ * offset indexes listing the records in order of normalized title and of normalized author, and a string pool in
+ * which every distinct title and author is stored once. Books are handed out as {@link MappedBook} views that read
+ * their record on demand; their copy state is updated in place with atomic operations on a private mapping, so
+ * checkouts never reach the file. Lookups by ID, title, and author are binary searches over the file.
+ * <p>
+ * Books added after the catalog was opened are kept in an in-memory store next to it, and removed records are
+ * tombstoned in a {@link LiveRows}, which the snapshot lists the remaining records through. The inventories of the copies are kept on the heap, only for records that have circulated.
+ */
+final class MappedCatalog implements BookStore {
+    private static final int MAGIC = 0x4C434154;  // "LCAT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 128;   // Bytes reserved for the header
+    private static final int RECORD_SIZE = 32;    // Bytes per book record
+    private static final int ID = 0;              // Record offset of the catalog ID
+    private static final int TITLE = 8;           // Record offset of the title's string reference
+    private static final int AUTHOR = 12;         // Record offset of the author's string reference
+    private static final int YEAR = 16;           // Record offset of the publication year
+    private static final int STATE = 24;          // Record offset of the copy state, 8-byte aligned
+    private static final VarHandle STATE_HANDLE =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final MappedByteBuffer buffer;   // Private mapping of the whole file
+    private final Library owner;             // Library told about copy changes of attached records
+    private final int count;                 // Number of records in the file
+    private final long lastId;               // Highest catalog ID in the file
+    private final long totalCopies;          // Copies on hand when the file was written
+    private final long availableBooks;       // Records with copies on hand when the file was written
+    private final int titleIndex;            // File position of the records sorted by normalized title
+    private final int authorIndex;           // File position of the records sorted by normalized author
+    private final int stringOffsets;         // File position of the string pool's offset table
+    private final int stringBytes;           // File position of the string pool's UTF-8 bytes
+    private final MemoryBookStore added = new MemoryBookStore();  // Books added after the catalog was opened
+    private volatile LiveRows live;                   // Records still in the catalog, replaced on every removal
+    private volatile Snapshot<Book> snapshot;         // Current snapshot of mapped and added books
+    private final Map<Integer, CopyInventory> inventories = new ConcurrentHashMap<>();  // By row, once circulated
+
+    private MappedCatalog(MappedByteBuffer buffer, Library owner) throws IOException {
+        this.buffer = buffer;
+        this.owner = owner;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a library catalog file");
+        }
+        this.count = buffer.getInt(8);
+        this.lastId = buffer.getLong(16);
+        this.totalCopies = buffer.getLong(24);
+        this.availableBooks = buffer.getLong(32);
+        this.titleIndex = (int) buffer.getLong(40);
+        this.authorIndex = (int) buffer.getLong(48);
+        this.stringOffsets = (int) buffer.getLong(56);
+        this.stringBytes = (int) buffer.getLong(64);
+        if (buffer.getLong(72) != buffer.capacity()) {
+            throw new IOException("Library catalog file is truncated");
+        }
+        this.live = LiveRows.all(count);
+        this.snapshot = buildSnapshot();
+    }
+
+    /**
+     * Maps a catalog file.
+     *
+     * @param file  the catalog file
+     * @param owner the library the catalog's books belong to
+     * @return the mapped catalog
+     * @throws IOException if the file cannot be mapped or is not a catalog file
+     */
+    static MappedCatalog open(Path file, Library owner) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Library catalog files are limited to 2 GB");
+            }
+            return new MappedCatalog(channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size()), owner);
+        }
+    }
+
+    /**
+     * Writes books to a catalog file. The file is written next to its destination and moved into place when complete.
+     *
+     * @param books the books to write; each must have a catalog ID
+     * @param file  the file to write
+     * @throws IOException if the file cannot be written or would exceed 2 GB
+     */
+    static void write(Iterable<Book> books, Path file) throws IOException {
+        List<Book> records = new ArrayList<>();
+        books.forEach(records::add);
+        records.sort(Comparator.comparingLong(Book::getId));
+        int count = records.size();
+
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[] titleRefs = new int[count];
+        int[] authorRefs = new int[count];
+        String[] titleKeys = new String[count];
+        String[] authorKeys = new String[count];
+        long copies = 0;
+        long available = 0;
+        for (int row = 0; row < count; row++) {
+            Book book = records.get(row);
+            titleRefs[row] = intern(book.getTitle(), stringIds, strings);
+            authorRefs[row] = intern(book.getAuthor(), stringIds, strings);
+            titleKeys[row] = Library.normalize(book.getTitle());
+            authorKeys[row] = Library.normalize(book.getAuthor());
+            copies += book.getAmount();
+            available += book.isAvailable() ? 1 : 0;
+        }
+
+        long titleIndex = HEADER_SIZE + (long) count * RECORD_SIZE;
+        long authorIndex = titleIndex + 4L * count;
+        long stringOffsets = authorIndex + 4L * count;
+        long stringBytes = stringOffsets + 4L * (strings.size() + 1);
+        long length = stringBytes;
+        for (byte[] string : strings) {
+            length += string.length;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Library catalog files are limited to 2 GB");
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(strings.size());
+            out.writeLong(count == 0 ? 0 : records.get(count - 1).getId());
+            out.writeLong(copies);
+            out.writeLong(available);
+            out.writeLong(titleIndex);
+            out.writeLong(authorIndex);
+            out.writeLong(stringOffsets);
+            out.writeLong(stringBytes);
+            out.writeLong(length);
+            out.write(new byte[HEADER_SIZE - 80]);
+
+            for (int row = 0; row < count; row++) {
+                Book book = records.get(row);
+                out.writeLong(book.getId());
+                out.writeInt(titleRefs[row]);
+                out.writeInt(authorRefs[row]);
+                out.writeInt(book.getYear());
+                out.writeInt(0);
+                out.writeLong(Book.ATTACHED | book.getAmount());
+            }
+            for (int row : sortedRows(titleKeys)) {
+                out.writeInt(row);
+            }
+            for (int row : sortedRows(authorKeys)) {
+                out.writeInt(row);
+            }
+            int offset = 0;
+            for (byte[] string : strings) {
+                out.writeInt(offset);
+                offset += string.length;
+            }
+            out.writeInt(offset);
+            for (byte[] string : strings) {
+                out.write(string);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Gets the highest catalog ID in the file.
+     *
+     * @return the highest catalog ID
+     */
+    long lastId() {
+        return lastId;
+    }
+
+    /**
+     * Gets the number of copies on hand recorded when the file was written.
+     *
+     * @return the total copies on hand
+     */
+    long totalCopies() {
+        return totalCopies;
+    }
+
+    /**
+     * Gets the number of books with copies on hand recorded when the file was written.
+     *
+     * @return the number of available books
+     */
+    long availableBooks() {
+        return availableBooks;
+    }
+
+    @Override
+    public Snapshot<Book> snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public Book add(Book book) {
+        added.add(book);
+        snapshot = buildSnapshot();
+        return book;
+    }
+
+    @Override
+    public boolean remove(Book book) {
+        if (book instanceof MappedBook && ((MappedBook) book).catalog() == this) {
+            int row = ((MappedBook) book).row();
+            if (live.isRemoved(row)) {
+                return false;
+            }
+            live = live.with(row, true, count);
+        } else if (!added.remove(book)) {
+            return false;
+        }
+        snapshot = buildSnapshot();
+        return true;
+    }
+
+    @Override
+    public Book findById(long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = id(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return live.isRemoved(mid) ? added.findById(id) : new MappedBook(this, mid);
+            }
+        }
+        return added.findById(id);
+    }
+
+    @Override
+    public List<Book> findByTitle(String title) {
+        return find(titleIndex, TITLE, title, added.findByTitle(title));
+    }
+
+    @Override
+    public List<Book> findByAuthor(String author) {
+        return find(authorIndex, AUTHOR, author, added.findByAuthor(author));
+    }
+
+    long id(int row) {
+        return buffer.getLong(record(row) + ID);
+    }
+
+    String title(int row) {
+        return string(buffer.getInt(record(row) + TITLE));
+    }
+
+    String author(int row) {
+        return string(buffer.getInt(record(row) + AUTHOR));
+    }
+
+    int year(int row) {
+        return buffer.getInt(record(row) + YEAR);
+    }
+
+    long state(int row) {
+        return (long) STATE_HANDLE.getVolatile(buffer, record(row) + STATE);
+    }
+
+    boolean compareAndSetState(int row, long expected, long updated) {
+        return STATE_HANDLE.compareAndSet(buffer, record(row) + STATE, expected, updated);
+    }
+
+    CopyInventory inventory(int row) {
+        return inventories.computeIfAbsent(row, key -> new CopyInventory(Book.copies(state(key))));
+    }
+
+    Library owner() {
+        return owner;
+    }
+
+    /**
+     * Collects the records whose key equals the given one, using one of the sorted offset indexes.
+     */
+    private List<Book> find(int index, int field, String key, List<Book> extra) {
+        int low = 0;
+        int high = count;
+        while (low < high) {  // Finds the first position whose key is not less than the given one
+            int mid = (low + high) >>> 1;
+            if (key(index, field, mid).compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        LiveRows tombstones = live;
+        List<Book> matches = new ArrayList<>(extra);
+        for (int position = low; position < count && key(index, field, position).equals(key); position++) {
+            int row = buffer.getInt(index + 4 * position);
+            if (!tombstones.isRemoved(row)) {
+                matches.add(new MappedBook(this, row));
+            }
+        }
+        return matches.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(matches);
+    }
+
+    private String key(int index, int field, int position) {
+        int row = buffer.getInt(index + 4 * position);
+        return Library.normalize(string(buffer.getInt(record(row) + field)));
+    }
+
+    private String string(int ref) {
+        int start = buffer.getInt(stringOffsets + 4 * ref);
+        byte[] bytes = new byte[buffer.getInt(stringOffsets + 4 * (ref + 1)) - start];
+        buffer.get(stringBytes + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int record(int row) {
+        return HEADER_SIZE + row * RECORD_SIZE;
+    }
+
+    private Snapshot<Book> buildSnapshot() {
+        LiveRows rows = live;
+        int mapped = rows.size();
+        Snapshot<Book> extra = added.snapshot();
+        return Snapshot.indexed(mapped + extra.size(), i -> {
+            if (i >= mapped) {
+                return extra.get(i - mapped);
+            }
+            return new MappedBook(this, rows.row(i));
+        });
+    }
+
+    private static int intern(String string, Map<String, Integer> ids, List<byte[]> strings) {
+        return ids.computeIfAbsent(string, s -> {
+            strings.add(s.getBytes(StandardCharsets.UTF_8));
+            return strings.size() - 1;
+        });
+    }
+
+    private static Integer[] sortedRows(String[] keys) {
+        Integer[] rows = new Integer[keys.length];
+        Arrays.setAll(rows, i -> i);
+        Arrays.sort(rows, Comparator.comparing(row -> keys[row]));
+        return rows;
+    }
+}
@@ -1,16 +1,20 @@
 package com.ProjectFiles.library;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Represents a library member with a unique ID and name.
  * Members can borrow and return books, which are tracked as loans.
+ * Loans of books in a library go through that library's loan ledger, and the member keeps its own loan history.
+ * Borrowing and returning are safe to call from several threads at once.
  */
 public class Member {
     private String name;       // Name of the member
     private int id;            // Unique identifier for the member
-    private List<Loan> loans;  // List of loans associated with the member, representing borrowed books
+    private Queue<Loan> loans; // Loans associated with the member, oldest first; appended without copying
 
     /**
      * Constructs a new Member with the specified name and ID.
@@ -22,7 +26,7 @@ public class Member {
     public Member(String name, int id) {
         this.name = name;
         this.id = id;
-        this.loans = new ArrayList<>(); // Initializes with an empty list of loans
+        this.loans = new ConcurrentLinkedQueue<>(); // Initializes with no loans
     }
 
     /**
@@ -44,12 +48,32 @@ public class Member {
     }
 
     /**
-     * Retrieves the list of all loans associated with the member.
+     * Retrieves the list of all loans associated with the member, including the ones already returned.
+     * In a journaled library, returned loans leave the list at the next checkpoint, for the loan history; see
+     * {@link Library#findLoansOfMember(int, java.util.Date, java.util.Date)}.
      *
-     * @return a list containing all loans of the member
+     * @return an unmodifiable copy of the member's loans, oldest first
      */
     public List<Loan> getLoans() {
-        return loans;
+        return List.copyOf(loans);
+    }
+
+    /**
+     * Adds a loan to the member's history. Borrowing appends in constant time, however long the history is.
+     *
+     * @param loan the loan
+     */
+    void addLoan(Loan loan) {
+        loans.add(loan);
+    }
+
+    /**
+     * Removes loans from the member's history, once they have moved to the loan history.
+     *
+     * @param gone the loans to remove
+     */
+    void removeLoans(Collection<Loan> gone) {
+        loans.removeAll(gone);
     }
 
     /**
@@ -65,28 +89,45 @@ public class Member {
 
     /**
      * Allows the member to borrow a book if it is available.
-     * Adds a new loan to their list of loans and updates the book's availability.
+     * Takes a copy of the book atomically and, if that succeeds, adds a new loan to their list of loans.
+     * Books in a library are lent through {@link Library#borrowBook(Member, Book)}, which registers the loan; a book
+     * that has been removed from its library is no longer lent through it.
      *
      * @param book the book that the member wishes to borrow
+     * @return true if the book was borrowed, false if no copy was available
      */
-    public void borrowBook(Book book) {
-        if (book.isAvailable()) {
-            Loan loan = new Loan(this, book);
-            loans.add(loan);
-            book.checkOut();
+    public boolean borrowBook(Book book) {
+        Library library = book.getOwner();
+        if (library != null && book.isAttached()) {
+            return library.borrowBook(this, book) != null;
         }
+        int copy = book.takeCopy();
+        if (copy == CopyInventory.NO_COPY) {
+            return false;
+        }
+        addLoan(new Loan(this, book, copy));
+        return true;
     }
 
     /**
      * Allows the member to return a book they have borrowed.
-     * Identifies the corresponding loan and marks it as returned.
+     * Identifies the corresponding open loan and marks it as returned. Books in a library are returned through
+     * {@link Library#returnBook(Member, Book)}, which finds the open loan without scanning the member's history.
+     * A book removed from its library is found in the history instead.
      *
      * @param book the book that is being returned
+     * @return true if an open loan for the book was returned, false otherwise
      */
-    public void returnBook(Book book) {
-        loans.stream()
-                .filter(loan -> loan.getBook().equals(book))
-                .findFirst()
-                .ifPresent(Loan::markAsReturned);  // If the loan is found, mark it as returned
+    public boolean returnBook(Book book) {
+        Library library = book.getOwner();
+        if (library != null && book.isAttached()) {
+            return library.returnBook(this, book) != null;
+        }
+        for (Loan loan : loans) {
+            if (loan.getBook().equals(book) && loan.markAsReturned()) {
+                return true;  // Returns the first loan that was still open
+            }
+        }
+        return false;
     }
 }
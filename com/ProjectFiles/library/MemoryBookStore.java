@@ -0,0 +1,80 @@
+package com.ProjectFiles.library;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps books as ordinary heap objects in a {@link Snapshot}, together with hashed indexes by catalog ID,
+ * normalized title, and normalized author. This is the store a library starts with.
+ */
+final class MemoryBookStore implements BookStore {
+    private volatile Snapshot<Book> books = Snapshot.empty();  // Snapshot of all books in the store
+    private final Map<Long, Book> booksById = new ConcurrentHashMap<>();                // Primary index by catalog ID
+    private final Map<String, Snapshot<Book>> booksByTitle = new ConcurrentHashMap<>();   // Secondary index by normalized title
+    private final Map<String, Snapshot<Book>> booksByAuthor = new ConcurrentHashMap<>();  // Secondary index by normalized author
+
+    @Override
+    public Snapshot<Book> snapshot() {
+        return books;
+    }
+
+    @Override
+    public Book add(Book book) {
+        books = books.with(book);
+        booksById.put(book.getId(), book);
+        addToIndex(booksByTitle, Library.normalize(book.getTitle()), book);
+        addToIndex(booksByAuthor, Library.normalize(book.getAuthor()), book);
+        return book;
+    }
+
+    @Override
+    public boolean remove(Book book) {
+        Snapshot<Book> remaining = books.without(book);
+        if (remaining == books) {
+            return false;
+        }
+        books = remaining;
+        booksById.remove(book.getId(), book);
+        removeFromIndex(booksByTitle, Library.normalize(book.getTitle()), book);
+        removeFromIndex(booksByAuthor, Library.normalize(book.getAuthor()), book);
+        return true;
+    }
+
+    @Override
+    public Book findById(long id) {
+        return booksById.get(id);
+    }
+
+    @Override
+    public List<Book> findByTitle(String title) {
+        return lookup(booksByTitle, title);
+    }
+
+    @Override
+    public List<Book> findByAuthor(String author) {
+        return lookup(booksByAuthor, author);
+    }
+
+    private static List<Book> lookup(Map<String, Snapshot<Book>> index, String key) {
+        Snapshot<Book> matches = index.get(key);
+        return matches == null ? Collections.emptyList() : matches.asList();
+    }
+
+    private static void addToIndex(Map<String, Snapshot<Book>> index, String key, Book book) {
+        index.put(key, index.getOrDefault(key, Snapshot.empty()).with(book));
+    }
+
+    private static void removeFromIndex(Map<String, Snapshot<Book>> index, String key, Book book) {
+        Snapshot<Book> bucket = index.get(key);
+        if (bucket != null) {
+            Snapshot<Book> remaining = bucket.without(book);
+            if (remaining.isEmpty()) {
+                index.remove(key);
+            } else {
+                index.put(key, remaining);
+            }
+        }
+    }
+}
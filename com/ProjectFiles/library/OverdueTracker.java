@@ -0,0 +1,218 @@
+package com.ProjectFiles.library;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the due dates of open loans and reports each loan once when it becomes overdue.
+ * <p>
+ * Open loans are kept in a hashed timing wheel: a ring of slots, one per tick, where a loan sits in the slot of the
+ * tick after its due date. Scheduling and cancelling a loan touch one slot, and each tick only looks at the loans
+ * of its own slot, so the cost per loan is constant no matter how many loans are out. Loans due more than one
+ * revolution ahead share a slot with earlier ones and are simply left in place until their turn comes around.
+ * <p>
+ * The slots are guarded by {@value #STRIPES} striped locks, so desks scheduling and cancelling loans due at
+ * different times do not contend. The wheel advances one slot at a time under its stripe, and a loan is scheduled
+ * under the stripe of its slot, so a loan is either in its slot before that slot is checked or found overdue at
+ * once. The tracker's own monitor only keeps two advances from running at the same time.
+ * <p>
+ * Loans that have passed their due date move to the overdue set, which answers the status queries without
+ * scanning, and the listeners are told about them on the thread that advances the wheel. Loans leave both the
+ * wheel and the overdue set when they are returned.
+ */
+final class OverdueTracker {
+    private static final int SLOTS = 1 << 14;                              // Ticks per revolution, a power of two
+    private static final int STRIPES = 64;                                 // Locks over the slots, a power of two
+    private static final long DEFAULT_TICK = TimeUnit.MINUTES.toMillis(1);  // Resolution of the overdue checks
+
+    private final Clock clock;       // Source of the current time
+    private final long tickMillis;   // Length of one tick
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Set<Loan>[] slots = new Set[SLOTS];  // Open loans by the tick they fall due, guarded by stripes
+    private final Object[] stripes = new Object[STRIPES];  // Lock of every slot whose number matches in the low bits
+    private final Set<Loan> overdue = ConcurrentHashMap.newKeySet();  // Open loans past their due date
+    private final Queue<Loan> reported = new ConcurrentLinkedQueue<>();  // Overdue loans not reported yet
+    private final List<Consumer<Loan>> listeners = new CopyOnWriteArrayList<>();
+    private volatile long processed; // Last tick whose slot has been checked, changed under that slot's stripe
+    private ScheduledExecutorService scheduler;  // Advances the wheel every tick once started, guarded by this
+
+    /**
+     * Creates a tracker that checks the due dates every minute.
+     *
+     * @param clock the source of the current time
+     */
+    OverdueTracker(Clock clock) {
+        this(clock, DEFAULT_TICK);
+    }
+
+    /**
+     * Creates a tracker with the given resolution.
+     *
+     * @param clock      the source of the current time
+     * @param tickMillis the length of one tick in milliseconds
+     */
+    OverdueTracker(Clock clock, long tickMillis) {
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.processed = clock.millis() / tickMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Starts advancing the wheel on a background thread, once every tick.
+     */
+    synchronized void start() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "overdue-loans");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops advancing the wheel. Loans are still watched, and reported once the wheel is started again.
+     */
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Registers a listener that is called once for each loan that becomes overdue.
+     *
+     * @param listener the listener, called on the thread that advances the wheel
+     */
+    void addListener(Consumer<Loan> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts watching an open loan. A loan that is already overdue is reported on the next tick.
+     *
+     * @param loan the open loan
+     */
+    void schedule(Loan loan) {
+        long due = dueTick(loan);
+        int slot = (int) (due & (SLOTS - 1));
+        synchronized (stripe(slot)) {
+            if (due <= processed) {
+                overdue.add(loan);
+                reported.add(loan);
+                return;
+            }
+            if (slots[slot] == null) {
+                slots[slot] = new HashSet<>();
+            }
+            slots[slot].add(loan);
+        }
+    }
+
+    /**
+     * Stops watching a loan that has been returned or removed.
+     *
+     * @param loan the loan
+     */
+    void cancel(Loan loan) {
+        int slot = (int) (dueTick(loan) & (SLOTS - 1));
+        synchronized (stripe(slot)) {
+            if (slots[slot] != null) {
+                slots[slot].remove(loan);
+            }
+            overdue.remove(loan);
+        }
+    }
+
+    /**
+     * Checks the slots of every tick that has passed since the last call and reports the loans that became overdue.
+     */
+    void advance() {
+        List<Loan> due = new ArrayList<>();
+        synchronized (this) {
+            long now = clock.millis() / tickMillis;
+            long last = processed;
+            for (long tick = last + 1; tick <= now && tick <= last + SLOTS; tick++) {
+                int position = (int) (tick & (SLOTS - 1));
+                synchronized (stripe(position)) {
+                    Set<Loan> slot = slots[position];
+                    if (slot != null) {
+                        for (Iterator<Loan> loans = slot.iterator(); loans.hasNext(); ) {
+                            Loan loan = loans.next();
+                            if (dueTick(loan) <= now) {  // Later loans wait for a later revolution
+                                loans.remove();
+                                overdue.add(loan);
+                                reported.add(loan);
+                            }
+                        }
+                    }
+                    processed = tick;
+                }
+            }
+            if (processed < now) {
+                processed = now;  // The clock jumped more than a revolution, every slot has been checked
+            }
+            for (Loan loan; (loan = reported.poll()) != null; ) {
+                due.add(loan);
+            }
+        }
+        for (Loan loan : due) {
+            if (overdue.contains(loan)) {  // Not returned in the meantime
+                for (Consumer<Loan> listener : listeners) {
+                    try {
+                        listener.accept(loan);
+                    } catch (RuntimeException e) {  // A failing listener must not stop the wheel
+                        Thread current = Thread.currentThread();
+                        current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of open loans that are past their due date.
+     *
+     * @return the number of overdue loans
+     */
+    int overdueCount() {
+        return overdue.size();
+    }
+
+    /**
+     * Lists the open loans that are past their due date.
+     *
+     * @return an unmodifiable list of overdue loans, in no particular order
+     */
+    List<Loan> overdueLoans() {
+        return List.copyOf(overdue);
+    }
+
+    private Object stripe(int slot) {
+        return stripes[slot & (STRIPES - 1)];
+    }
+
+    /**
+     * Returns the first tick at whose start the loan is past due.
+     */
+    private long dueTick(Loan loan) {
+        return loan.getDueDate().getTime() / tickMillis + 1;
+    }
+}
@@ -0,0 +1,264 @@
+package com.ProjectFiles.library;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams the mutations of a journaled {@link Library} to {@link LibraryReplica} instances over TCP, so that read
+ * traffic such as catalog browsing can be served by replicas while the circulation desks write to the primary.
+ * <p>
+ * The change log is the journal itself: each batch of records the {@link LibraryJournal} has forced to disk is
+ * numbered in log order and queued for every connected replica, so a replica never sees a change the primary could
+ * still lose, and applies the changes in the order the primary logged them. A replica that connects is first sent
+ * a snapshot: the journal starts a new segment, the sender is subscribed to the records that follow it, and the
+ * library is rebuilt from the checkpoint and the older segments and sent in the checkpoint format. A replica that
+ * reconnects is caught up the same way, as the primary keeps no records in memory once they are sent.
+ * <p>
+ * Each replica has its own sender thread and a bounded queue of batches. The journal's writer only ever adds to the
+ * queues; a replica that falls so far behind that its queue is full is disconnected, and catches up from a new
+ * snapshot when it reconnects. While there is nothing to send the sender sends a heartbeat every
+ * {@value #HEARTBEAT_MILLIS} ms with the number of the newest record, from which a replica knows how stale it is
+ * even when the library is idle. Each batch carries the time it was committed, which bounds the staleness of a
+ * replica that has applied it while newer batches are still on their way.
+ * <p>
+ * The stream opens with {@link #MAGIC} and then consists of frames, each starting with a type byte:
+ * <pre>
+ * SNAPSHOT   sequence:long checkpoint        the library as of record number sequence
+ * RECORDS    first:long newest:long committedMillis:long count:int (length:int record:byte[])*
+ * HEARTBEAT  newest:long
+ * </pre>
+ */
+public final class ReplicationPrimary implements AutoCloseable {
+    static final int MAGIC = 0x4C495231;  // "LIR1", opens the stream so a replica knows it reached a primary
+    static final byte SNAPSHOT = 1;       // The library as of a record number, in the checkpoint format
+    static final byte RECORDS = 2;        // A batch of records made durable together
+    static final byte HEARTBEAT = 3;      // The number of the newest record, sent while there are no records
+    static final long HEARTBEAT_MILLIS = 100;
+    private static final int MAX_BACKLOG = 1 << 14;  // Batches queued for a replica before it is disconnected
+
+    private final LibraryJournal journal;
+    private final ServerSocket listener;
+    private final Thread acceptor;  // Accepts replicas and starts their senders
+    private final List<Replica> replicas = new CopyOnWriteArrayList<>();  // Replicas receiving records
+    private final LibraryMetrics.Timer snapshotTimer;
+    private final LibraryMetrics.Counter dropped;
+    private final AtomicInteger senders = new AtomicInteger();  // Numbers the sender threads
+    private volatile long newest;      // Number of the newest record handed over by the journal, written by its writer
+    private volatile boolean closed;
+
+    /**
+     * A connected replica: its connection and the batches waiting to be sent to it.
+     */
+    private static final class Replica {
+        final Socket socket;
+        final BlockingQueue<Batch> backlog = new ArrayBlockingQueue<>(MAX_BACKLOG);
+        long start;                 // Number of the last record in the replica's snapshot, set by the journal writer
+        volatile boolean overrun;   // Set once the backlog was full and a batch had to be dropped
+
+        Replica(Socket socket) {
+            this.socket = socket;
+        }
+    }
+
+    /**
+     * Records made durable together, numbered first, first + 1, and so on.
+     */
+    private static final class Batch {
+        final long first;
+        final long committedMillis;
+        final List<byte[]> records;
+
+        Batch(long first, long committedMillis, List<byte[]> records) {
+            this.first = first;
+            this.committedMillis = committedMillis;
+            this.records = records;
+        }
+    }
+
+    private ReplicationPrimary(LibraryJournal journal, ServerSocket listener) {
+        this.journal = journal;
+        this.listener = listener;
+        LibraryMetrics metrics = journal.getLibrary().getMetrics();
+        this.snapshotTimer = metrics.timer("replication.snapshot");
+        this.dropped = metrics.counter("replication.replicaDropped");
+        this.acceptor = new Thread(this::accept, "library-replication-accept");
+        this.acceptor.setDaemon(true);
+    }
+
+    /**
+     * Starts replicating a journaled library to the replicas that connect to the given address.
+     *
+     * @param journal the journal of the library
+     * @param address the address to listen on; port 0 picks a free port
+     * @return the running primary
+     * @throws IOException if the address cannot be bound
+     */
+    public static ReplicationPrimary start(LibraryJournal journal, InetSocketAddress address) throws IOException {
+        ServerSocket listener = new ServerSocket();
+        listener.bind(address);
+        ReplicationPrimary primary = new ReplicationPrimary(journal, listener);
+        journal.setReplication(primary);
+        primary.acceptor.start();
+        return primary;
+    }
+
+    /**
+     * Gets the port the primary listens on, useful when it was started on port 0.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return listener.getLocalPort();
+    }
+
+    /**
+     * @return the number of replicas currently receiving records
+     */
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * Gets the number of the newest durable record, which a replica has applied once its
+     * {@link LibraryReplica#getAppliedSequence()} reaches it. Records are numbered from 1 each time the primary
+     * starts.
+     *
+     * @return the record number, 0 if nothing has been logged since the primary started
+     */
+    public long getSequence() {
+        return newest;
+    }
+
+    /**
+     * Stops accepting replicas and disconnects those connected. The journal and the library are left running.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        journal.setReplication(null);
+        try {
+            listener.close();
+        } catch (IOException e) {
+            // Closing only fails if the socket is already closed
+        }
+        for (Replica replica : replicas) {
+            disconnect(replica);
+        }
+    }
+
+    /**
+     * Numbers a batch of durable records and queues it for every replica. Called by the journal's writer thread,
+     * in log order, so it never blocks.
+     *
+     * @param records the records, in log order
+     */
+    void committed(List<byte[]> records) {
+        Batch batch = new Batch(newest + 1, System.currentTimeMillis(), records);
+        newest += records.size();
+        for (Replica replica : replicas) {
+            if (!replica.backlog.offer(batch)) {
+                replica.overrun = true;
+                replicas.remove(replica);
+            }
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = listener.accept();
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                if (!closed) {
+                    Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, new UncheckedIOException(e));
+                }
+                return;
+            }
+            Thread sender = new Thread(() -> send(new Replica(socket)),
+                    "library-replication-" + senders.incrementAndGet());
+            sender.setDaemon(true);
+            sender.start();
+        }
+    }
+
+    /**
+     * Sends a replica its snapshot and then the records that follow it, until the replica disconnects, falls too
+     * far behind, or the primary is closed.
+     */
+    private void send(Replica replica) {
+        try (Socket socket = replica.socket) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            out.writeInt(MAGIC);
+            long start = System.nanoTime();
+            long allocated = LibraryMetrics.allocatedBytes();
+            Library snapshot = journal.snapshot(() -> {
+                replica.start = newest;
+                replicas.add(replica);
+            }).join();
+            out.writeByte(SNAPSHOT);
+            out.writeLong(replica.start);
+            JournalRecords.writeCheckpoint(snapshot, out, 0, Map.of());
+            out.flush();
+            snapshotTimer.record(start, allocated);
+            while (!closed) {
+                Batch batch = replica.backlog.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if (replica.overrun) {
+                    dropped.increment();
+                    return;
+                }
+                if (batch == null) {
+                    out.writeByte(HEARTBEAT);
+                    out.writeLong(newest);
+                }
+                for (; batch != null; batch = replica.backlog.poll()) {
+                    out.writeByte(RECORDS);
+                    out.writeLong(batch.first);
+                    out.writeLong(newest);
+                    out.writeLong(batch.committedMillis);
+                    out.writeInt(batch.records.size());
+                    for (byte[] record : batch.records) {
+                        out.writeInt(record.length);
+                        out.write(record);
+                    }
+                }
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // The replica disconnected, or the primary was closed
+        } catch (IOException | CompletionException | IllegalStateException e) {
+            if (!closed) {
+                Thread current = Thread.currentThread();
+                current.getUncaughtExceptionHandler().uncaughtException(current,
+                        e instanceof IOException ? new UncheckedIOException((IOException) e) : e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            replicas.remove(replica);
+        }
+    }
+
+    private static void disconnect(Replica replica) {
+        try {
+            replica.socket.close();
+        } catch (IOException e) {
+            // The sender stops either way
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ProjectFiles.library;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A consistent-hash ring that assigns keys, such as catalog and member IDs, to named shards.
+ * <p>
+ * Each shard is placed at {@value #POINTS_PER_SHARD} points of a 64-bit ring derived from its name, and a key
+ * belongs to the shard of the first point at or after the key's hash, wrapping around at the end. The points of
+ * the shards interleave, so keys spread evenly, and adding or removing a shard moves only the keys that fall just
+ * before its points: about one key in n for n shards, all of them to or from that shard. The ring depends on the
+ * shard names alone, not on their order, so every router given the same names routes every key alike.
+ */
+final class ShardRing {
+    static final int POINTS_PER_SHARD = 160;  // Enough that each shard's share stays within a few percent
+
+    private final long[] points;  // Hashes of the points, ascending
+    private final int[] owners;   // Position of the owning shard in the list given, by point
+
+    /**
+     * Places shards on the ring.
+     *
+     * @param shards the names of the shards
+     * @throws IllegalArgumentException if there are no shards or two have the same name
+     */
+    ShardRing(List<String> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A sharded library needs at least one shard.");
+        }
+        if (new HashSet<>(shards).size() != shards.size()) {
+            throw new IllegalArgumentException("Shard names must be unique.");
+        }
+        List<long[]> placed = new ArrayList<>(shards.size() * POINTS_PER_SHARD);
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int point = 0; point < POINTS_PER_SHARD; point++) {
+                placed.add(new long[]{hash(shards.get(shard) + "#" + point), shard});
+            }
+        }
+        placed.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                : shards.get((int) a[1]).compareTo(shards.get((int) b[1])));  // Ties go by name, not position
+        points = new long[placed.size()];
+        owners = new int[placed.size()];
+        for (int i = 0; i < placed.size(); i++) {
+            points[i] = placed.get(i)[0];
+            owners[i] = (int) placed.get(i)[1];
+        }
+    }
+
+    /**
+     * Finds the shard a key belongs to.
+     *
+     * @param key the key
+     * @return the position of the shard in the list the ring was built from
+     */
+    int shardOf(long key) {
+        int point = Arrays.binarySearch(points, mix(key));
+        if (point < 0) {
+            point = -point - 1;
+        }
+        return owners[point == points.length ? 0 : point];
+    }
+
+    /**
+     * Hashes a name with 64-bit FNV-1a over its UTF-8 bytes, then mixes the result so that names differing only in
+     * their last characters land far apart.
+     */
+    private static long hash(String name) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Spreads the bits of a key over the whole word, with the finalizer of MurmurHash3, so that sequential IDs
+     * land all around the ring.
+     */
+    private static long mix(long key) {
+        long h = key;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+}
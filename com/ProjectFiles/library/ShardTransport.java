@@ -0,0 +1,81 @@
+package com.ProjectFiles.library;
+
+import java.io.IOException;
+
+/**
+ * Carries the requests of a {@link ShardedLibrary} to one shard, in the HTTP/JSON protocol of
+ * {@link LibraryServer}: a shard is a library served by a {@code LibraryServer}, in another process or in this one.
+ * <p>
+ * {@link #connect(String, int)} reaches a shard over the network, for instance one started with
+ * {@code java -Dlibrary.data=shard-1 Main --shard 8081}. {@link #loopback(Library)} hands the requests to the
+ * server's handlers in this JVM without a socket, so a sharded library can be tried and tested in one process with
+ * the same requests and answers it exchanges with remote shards.
+ */
+public interface ShardTransport extends AutoCloseable {
+    /**
+     * Sends a request to the shard and waits for its answer.
+     *
+     * @param method the HTTP method
+     * @param target the path and query, for example {@code /books?title=Dune}
+     * @param body   the JSON body, or null if there is none
+     * @return the answer
+     * @throws IOException if the shard cannot be reached
+     */
+    Reply send(String method, String target, String body) throws IOException;
+
+    /**
+     * Releases the transport's connections, if it has any.
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Creates a transport to a shard served over HTTP.
+     *
+     * @param host the shard's host
+     * @param port the shard's port
+     * @return the transport
+     */
+    static ShardTransport connect(String host, int port) {
+        return new HttpShardTransport(host, port);
+    }
+
+    /**
+     * Creates a transport to a shard in this JVM, which the transport serves itself.
+     *
+     * @param library the shard
+     * @return the transport
+     */
+    static ShardTransport loopback(Library library) {
+        LibraryServer server = LibraryServer.local(library);
+        return server::handle;
+    }
+
+    /**
+     * A shard's answer to a request.
+     */
+    final class Reply {
+        private final int status;
+        private final String body;
+
+        Reply(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        /**
+         * @return the HTTP status code
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the JSON body
+         */
+        public String getBody() {
+            return body;
+        }
+    }
+}
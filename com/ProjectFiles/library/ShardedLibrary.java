@@ -0,0 +1,417 @@
+package com.ProjectFiles.library;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A library partitioned across several branches, each a {@link Library} served as a shard by a
+ * {@link LibraryServer}, with the operations of a single library routed to the shards that hold the data.
+ * <p>
+ * Books are placed by catalog ID and members by member ID on a consistent-hash {@link ShardRing} of the branch
+ * names, so a lookup, borrow, or return goes to one shard, and adding a branch moves only about one ID in n to it.
+ * The router does not move data itself: shards are expected to be added or removed together with a migration of
+ * the IDs that change shards, and until then those books and members are not found. Catalog IDs are assigned by
+ * the router, continuing after the highest ID of any shard, so that the ID can pick the shard before the book
+ * exists. Several routers may add books to the same shards: an ID that another router took meanwhile is refused by
+ * its shard, and the router then learns the highest IDs of the shards again and tries the next free one.
+ * <p>
+ * A loan is kept by the shard of its book, which checks the copy out and journals the loan together. A borrower
+ * registered on another shard is named in the request and kept on the book's shard as a guest, so each loan is a
+ * single-shard operation and no loan spans two journals. Title and author searches, a member's open loans, and the
+ * library status ask every shard, in parallel, and merge the answers.
+ * <p>
+ * Books, members, and loans returned by the router are copies made from the shards' answers: changing them does
+ * not change the shards. A shard that cannot be reached, or fails, surfaces as an {@link UncheckedIOException}.
+ */
+public final class ShardedLibrary implements AutoCloseable {
+    private static final int SEARCH_LIMIT = 1000;  // Most books a shard lists for one search
+    private static final int MAX_ID_ATTEMPTS = 8;  // Catalog IDs tried for a new book before giving up
+    private static final AtomicInteger ROUTERS = new AtomicInteger();  // Numbers the scatter threads
+
+    private final List<String> names;             // Branch names, in the order given
+    private final List<ShardTransport> shards;    // By position in names
+    private final ShardRing ring;
+    private final AtomicLong lastBookId;          // Highest catalog ID assigned or seen
+    private final ExecutorService scatter;        // Sends the requests of a scatter-gather to all shards at once
+
+    private ShardedLibrary(Map<String, ShardTransport> shards) {
+        this.names = List.copyOf(shards.keySet());
+        this.shards = List.copyOf(shards.values());
+        this.ring = new ShardRing(names);
+        this.lastBookId = new AtomicLong();
+        int router = ROUTERS.incrementAndGet();
+        AtomicInteger count = new AtomicInteger();
+        this.scatter = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "shard-router-" + router + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Connects to the shards of a library and learns the highest catalog ID in use.
+     *
+     * @param shards the transports to the shards, by branch name; the names place the shards on the ring, so
+     *               every router of the library must be given the same names for the same shards
+     * @return the library
+     * @throws IOException              if a shard cannot be reached
+     * @throws IllegalArgumentException if no shard is given
+     */
+    public static ShardedLibrary connect(Map<String, ShardTransport> shards) throws IOException {
+        ShardedLibrary library = new ShardedLibrary(shards);
+        try {
+            library.syncLastBookId();
+        } catch (UncheckedIOException e) {
+            library.close();
+            throw e.getCause();
+        }
+        return library;
+    }
+
+    /**
+     * Learns the highest catalog ID in use on any shard, which other routers may have raised.
+     */
+    private void syncLastBookId() {
+        for (Map<String, String> status : gather("GET", "/status", BulkLoader::parseJson)) {
+            lastBookId.accumulateAndGet(Long.parseLong(status.get("lastBookId")), Math::max);
+        }
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Finds the branch that holds a book and its loans.
+     *
+     * @param bookId the catalog ID of the book
+     * @return the name of the branch
+     */
+    public String getBranchOfBook(long bookId) {
+        return names.get(ring.shardOf(bookId));
+    }
+
+    /**
+     * Finds the branch a member is registered with.
+     *
+     * @param memberId the ID of the member
+     * @return the name of the branch
+     */
+    public String getBranchOfMember(int memberId) {
+        return names.get(ring.shardOf(memberId));
+    }
+
+    /**
+     * Adds a book to the shard of its catalog ID. A book without an ID is given the next one, as
+     * {@link Library#addBook(Book)} does; if another router has taken that ID meanwhile, the book is given the
+     * next free one instead.
+     *
+     * @param book the book to add
+     * @return the book as the shard keeps it
+     * @throws IllegalArgumentException if the book is invalid or a book with its given ID already exists
+     * @throws IllegalStateException    if no free catalog ID was found after several attempts
+     */
+    public Book addBook(Book book) {
+        if (book.getId() != 0) {
+            lastBookId.accumulateAndGet(book.getId(), Math::max);
+            Book stored = send(book);
+            if (stored == null) {
+                throw new IllegalArgumentException("Book ID must be unique.");
+            }
+            return stored;
+        }
+        for (int attempt = 0; attempt < MAX_ID_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                syncLastBookId();  // Another router took the ID
+            }
+            book.assignId(lastBookId.incrementAndGet());
+            Book stored = send(book);
+            if (stored != null) {
+                return stored;
+            }
+        }
+        book.assignId(0);
+        throw new IllegalStateException("No free catalog ID was found for the book.");
+    }
+
+    /**
+     * Adds a book with a catalog ID to the shard of that ID.
+     *
+     * @return the book as the shard keeps it, or null if the shard already has a book with that ID
+     */
+    private Book send(Book book) {
+        StringBuilder body = new StringBuilder("{\"id\":").append(book.getId()).append(",\"title\":");
+        BulkLoader.quoteJson(body, book.getTitle());
+        body.append(",\"author\":");
+        BulkLoader.quoteJson(body, book.getAuthor());
+        body.append(",\"year\":").append(book.getYear()).append(",\"amount\":").append(book.getAmount()).append('}');
+        ShardTransport.Reply reply = call(ring.shardOf(book.getId()), "POST", "/books", body.toString());
+        if (reply.getStatus() == 409) {
+            return null;
+        }
+        return book(BulkLoader.parseJson(reply.getBody()));
+    }
+
+    /**
+     * Removes a book from its shard, if it is there.
+     *
+     * @param book the book to remove
+     */
+    public void removeBook(Book book) {
+        call(ring.shardOf(book.getId()), "DELETE", "/books/" + book.getId(), null);
+    }
+
+    /**
+     * Finds a book by its catalog ID.
+     *
+     * @param id the catalog ID
+     * @return the book, or null if no shard has it
+     */
+    public Book findBookById(long id) {
+        ShardTransport.Reply reply = call(ring.shardOf(id), "GET", "/books/" + id, null);
+        return reply.getStatus() == 404 ? null : book(BulkLoader.parseJson(reply.getBody()));
+    }
+
+    /**
+     * Finds the books with a title on every shard.
+     *
+     * @param title the title
+     * @return the books, by catalog ID
+     */
+    public List<Book> findBooksByTitle(String title) {
+        return findBooks("title", title);
+    }
+
+    /**
+     * Finds the books by an author on every shard.
+     *
+     * @param author the author
+     * @return the books, by catalog ID
+     */
+    public List<Book> findBooksByAuthor(String author) {
+        return findBooks("author", author);
+    }
+
+    private List<Book> findBooks(String field, String value) {
+        String target = "/books?" + field + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8)
+                + "&limit=" + SEARCH_LIMIT;
+        List<Book> found = new ArrayList<>();
+        for (List<Map<String, String>> books : gather("GET", target, body -> BulkLoader.parseJsonArray(body, false))) {
+            for (Map<String, String> book : books) {
+                found.add(book(book));
+            }
+        }
+        found.sort(Comparator.comparingLong(Book::getId));
+        return found;
+    }
+
+    /**
+     * Registers a member with the shard of their ID.
+     *
+     * @param member the member
+     * @throws IllegalArgumentException if the member is invalid or a member with their ID already exists
+     */
+    public void addMember(Member member) {
+        StringBuilder body = new StringBuilder("{\"id\":").append(member.getId()).append(",\"name\":");
+        BulkLoader.quoteJson(body, member.getName());
+        body.append('}');
+        ShardTransport.Reply reply = call(ring.shardOf(member.getId()), "POST", "/members", body.toString());
+        if (reply.getStatus() == 409) {
+            throw new IllegalArgumentException("Member ID must be unique.");
+        }
+    }
+
+    /**
+     * Finds a member by their ID.
+     *
+     * @param id the ID of the member
+     * @return the member, or null if their shard does not have them
+     */
+    public Member findMemberById(int id) {
+        ShardTransport.Reply reply = call(ring.shardOf(id), "GET", "/members/" + id, null);
+        if (reply.getStatus() == 404) {
+            return null;
+        }
+        Map<String, String> member = BulkLoader.parseJson(reply.getBody(), true);
+        return new Member(member.get("name"), Integer.parseInt(member.get("id")));
+    }
+
+    /**
+     * Removes a member from their shard, if they are there. Loans they hold on other shards are kept.
+     *
+     * @param member the member
+     */
+    public void removeMember(Member member) {
+        call(ring.shardOf(member.getId()), "DELETE", "/members/" + member.getId(), null);
+    }
+
+    /**
+     * Lends a copy of a book to a member, on the shard of the book.
+     *
+     * @param member the member
+     * @param book   the book
+     * @return the loan, or null if no copy is available to the member
+     * @throws IllegalArgumentException if the book is not in the library
+     */
+    public Loan borrowBook(Member member, Book book) {
+        ShardTransport.Reply reply = call(ring.shardOf(book.getId()), "POST", "/loans", loanRequest(member, book));
+        if (reply.getStatus() == 404) {
+            throw new IllegalArgumentException("The book is not in the library.");
+        }
+        return reply.getStatus() == 409 ? null : loan(member, book, reply.getBody());
+    }
+
+    /**
+     * Returns a member's copy of a book to the shard of the book.
+     *
+     * @param member the member
+     * @param book   the book
+     * @return the returned loan, or null if the member has no open loan of the book
+     */
+    public Loan returnBook(Member member, Book book) {
+        ShardTransport.Reply reply = call(ring.shardOf(book.getId()), "POST", "/returns", loanRequest(member, book));
+        return reply.getStatus() == 404 || reply.getStatus() == 409 ? null : loan(member, book, reply.getBody());
+    }
+
+    /**
+     * Finds a member's open loans on every shard.
+     *
+     * @param memberId the ID of the member
+     * @return the loans, by loan date
+     */
+    public List<LoanRecord> findOpenLoansByMember(int memberId) {
+        List<LoanRecord> found = new ArrayList<>();
+        for (List<Map<String, String>> loans
+                : gather("GET", "/loans?member=" + memberId, body -> BulkLoader.parseJsonArray(body, false))) {
+            for (Map<String, String> loan : loans) {
+                found.add(new LoanRecord(Long.parseLong(loan.get("id")), Long.parseLong(loan.get("book")),
+                        memberId, millis(loan.get("loanDate")), millis(loan.get("dueDate")), -1));
+            }
+        }
+        found.sort(Comparator.comparing(LoanRecord::getLoanDate));
+        return found;
+    }
+
+    /**
+     * Sums the status of every shard. Members are counted by the shard they are registered with, so a guest
+     * borrower is not counted twice.
+     *
+     * @return the status, in the form of {@link Library#getLibraryStatus()}
+     */
+    public String getLibraryStatus() {
+        long[] totals = new long[6];
+        String[] keys = {"books", "availableBooks", "copiesOnHand", "members", "activeLoans", "overdueLoans"};
+        for (Map<String, String> status : gather("GET", "/status", BulkLoader::parseJson)) {
+            for (int i = 0; i < keys.length; i++) {
+                totals[i] += Long.parseLong(status.get(keys[i]));
+            }
+        }
+        return String.format("Total Books: %d, Available Books: %d, Copies On Hand: %d, Total Members: %d, "
+                        + "Active Loans: %d, Overdue Loans: %d",
+                totals[0], totals[1], totals[2], totals[3], totals[4], totals[5]);
+    }
+
+    /**
+     * Closes the transports to the shards and stops the scatter threads. The shards themselves keep running.
+     */
+    @Override
+    public void close() {
+        scatter.shutdown();
+        shards.forEach(ShardTransport::close);
+    }
+
+    /**
+     * Sends a request to one shard, turning a failure of the shard into an exception.
+     *
+     * @return the answer, which is a success, 404, or 409
+     * @throws IllegalArgumentException if the shard rejects the request as invalid
+     * @throws UncheckedIOException     if the shard cannot be reached or fails
+     */
+    private ShardTransport.Reply call(int shard, String method, String target, String body) {
+        ShardTransport.Reply reply;
+        try {
+            reply = shards.get(shard).send(method, target, body);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard " + names.get(shard) + " cannot be reached.", e);
+        }
+        int status = reply.getStatus();
+        if (status == 400) {
+            throw new IllegalArgumentException(BulkLoader.parseJson(reply.getBody()).get("error"));
+        }
+        if (status >= 300 && status != 404 && status != 409) {
+            throw new UncheckedIOException(new IOException("Shard " + names.get(shard) + " answered " + status
+                    + " to " + method + " " + target + ": " + reply.getBody()));
+        }
+        return reply;
+    }
+
+    /**
+     * Sends a request to every shard in parallel and parses the answers.
+     *
+     * @return the parsed answers, by shard
+     */
+    private <T> List<T> gather(String method, String target, Function<String, T> parse) {
+        List<CompletableFuture<T>> answers = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            int s = shard;
+            answers.add(CompletableFuture.supplyAsync(() -> parse.apply(call(s, method, target, null).getBody()),
+                    scatter));
+        }
+        List<T> gathered = new ArrayList<>(answers.size());
+        try {
+            for (CompletableFuture<T> answer : answers) {
+                gathered.add(answer.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return gathered;
+    }
+
+    private static String loanRequest(Member member, Book book) {
+        StringBuilder body = new StringBuilder("{\"member\":").append(member.getId())
+                .append(",\"book\":").append(book.getId()).append(",\"name\":");
+        BulkLoader.quoteJson(body, member.getName());
+        return body.append('}').toString();
+    }
+
+    private static Book book(Map<String, String> fields) {
+        Book book = new Book(fields.get("title"), fields.get("author"), Integer.parseInt(fields.get("year")),
+                Integer.parseInt(fields.get("amount")));
+        book.assignId(Long.parseLong(fields.get("id")));
+        return book;
+    }
+
+    private static Loan loan(Member member, Book book, String json) {
+        Map<String, String> fields = BulkLoader.parseJson(json);
+        String returned = fields.get("returnDate");
+        return new Loan(Long.parseLong(fields.get("id")), member, book, Integer.parseInt(fields.get("copy")),
+                new Date(millis(fields.get("loanDate"))), new Date(millis(fields.get("dueDate"))),
+                returned == null ? null : new Date(millis(returned)));
+    }
+
+    private static long millis(String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+}
@@ -0,0 +1,305 @@
+package com.ProjectFiles.library;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Represents an immutable, point-in-time view of one of the library's collections.
+ * Reading a snapshot never copies its elements: pages, iterators, and streams are all served straight from
+ * the backing array, and changes made to the library after the snapshot was taken are not visible through it.
+ * <p>
+ * Appending to the newest snapshot reuses the spare capacity of the backing array, so a new snapshot can be
+ * published after every write without copying the collection. Only the library creates new snapshots.
+ * <p>
+ * Storage engines that keep their elements outside the heap publish indexed snapshots instead, which resolve each
+ * element on demand from its position.
+ *
+ * @param <E> the type of the elements in the snapshot
+ */
+public final class Snapshot<E> implements Iterable<E> {
+    private static final Snapshot<?> EMPTY = new Snapshot<>(new Object[0], 0);
+
+    private final Object[] elements;                // Backing array, possibly shared with newer snapshots beyond size
+    private final IntFunction<? extends E> resolver;  // Resolves elements by position, null for array snapshots
+    private final int size;                         // Number of elements visible through this snapshot
+
+    private Snapshot(Object[] elements, int size) {
+        this.elements = elements;
+        this.resolver = null;
+        this.size = size;
+    }
+
+    private Snapshot(IntFunction<? extends E> resolver, int size) {
+        this.elements = null;
+        this.resolver = resolver;
+        this.size = size;
+    }
+
+    /**
+     * Returns a snapshot whose elements are resolved on demand rather than stored.
+     * The resolver must keep returning equal elements for the same position for as long as the snapshot is used.
+     *
+     * @param size     the number of elements
+     * @param resolver resolves the element at a position
+     * @param <E>      the type of the elements in the snapshot
+     * @return an indexed snapshot
+     */
+    static <E> Snapshot<E> indexed(int size, IntFunction<? extends E> resolver) {
+        return new Snapshot<>(resolver, size);
+    }
+
+    /**
+     * Returns the empty snapshot.
+     *
+     * @param <E> the type of the elements in the snapshot
+     * @return a snapshot containing no elements
+     */
+    @SuppressWarnings("unchecked")
+    static <E> Snapshot<E> empty() {
+        return (Snapshot<E>) EMPTY;
+    }
+
+    /**
+     * Returns a snapshot holding the given elements in order.
+     *
+     * @param elements the elements of the new snapshot
+     * @param <E>      the type of the elements in the snapshot
+     * @return a snapshot of the given elements
+     */
+    static <E> Snapshot<E> of(List<? extends E> elements) {
+        Object[] array = elements.toArray();
+        return new Snapshot<>(array, array.length);
+    }
+
+    /**
+     * Returns a snapshot that has the given element appended to this one.
+     * Must only be called on the newest snapshot of a collection, while holding that collection's write lock.
+     *
+     * @param element the element to append
+     * @return the new snapshot
+     */
+    Snapshot<E> with(E element) {
+        requireArray();
+        Object[] target = elements;
+        if (size == target.length) {
+            target = Arrays.copyOf(target, Math.max(16, size + (size >> 1)));
+        }
+        target[size] = element;
+        return new Snapshot<>(target, size + 1);
+    }
+
+    /**
+     * Returns a snapshot that has all of the given elements appended to this one.
+     * Must only be called on the newest snapshot of a collection, while holding that collection's write lock.
+     *
+     * @param batch the elements to append, in order
+     * @return the new snapshot
+     */
+    Snapshot<E> withAll(List<? extends E> batch) {
+        requireArray();
+        Object[] target = elements;
+        int newSize = size + batch.size();
+        if (newSize > target.length) {
+            target = Arrays.copyOf(target, Math.max(newSize, size + (size >> 1)));
+        }
+        int i = size;
+        for (E element : batch) {
+            target[i++] = element;
+        }
+        return new Snapshot<>(target, newSize);
+    }
+
+    /**
+     * Returns a snapshot that no longer contains the first occurrence of the given element.
+     * Removal copies the remaining elements into a fresh array so that older snapshots stay intact.
+     *
+     * @param element the element to remove
+     * @return the new snapshot, or this snapshot if the element was not present
+     */
+    Snapshot<E> without(Object element) {
+        requireArray();
+        int index = indexOf(element);
+        if (index < 0) {
+            return this;
+        }
+        Object[] target = new Object[Math.max(size - 1, 0)];
+        System.arraycopy(elements, 0, target, 0, index);
+        System.arraycopy(elements, index + 1, target, index, size - index - 1);
+        return new Snapshot<>(target, target.length);
+    }
+
+    /**
+     * Returns the position of the first occurrence of the given element.
+     *
+     * @param element the element to search for
+     * @return the index of the element, or -1 if it is not present
+     */
+    int indexOf(Object element) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(element(i), element)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether this snapshot and another share their backing array, in which case the shorter of the two is
+     * a prefix of the longer, since appending only ever writes past the end of the newest snapshot.
+     *
+     * @param other the other snapshot
+     * @return true if the shorter snapshot is known to be a prefix of the longer one
+     */
+    boolean sharesPrefixWith(Snapshot<?> other) {
+        return elements != null && elements == other.elements;
+    }
+
+    private void requireArray() {
+        if (elements == null) {
+            throw new UnsupportedOperationException("Indexed snapshots cannot be modified.");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private E element(int index) {
+        return elements != null ? (E) elements[index] : resolver.apply(index);
+    }
+
+    private Spliterator<E> spliterator(int from, int to) {
+        if (elements != null) {
+            return Spliterators.spliterator(elements, from, to, Spliterator.ORDERED | Spliterator.IMMUTABLE);
+        }
+        return IntStream.range(from, to).<E>mapToObj(resolver::apply).spliterator();
+    }
+
+    /**
+     * Gets the number of elements in the snapshot.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the snapshot contains no elements.
+     *
+     * @return true if the snapshot is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the element at the given position.
+     *
+     * @param index the position of the element
+     * @return the element at that position
+     * @throws IndexOutOfBoundsException if the index is outside the snapshot
+     */
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        return element(index);
+    }
+
+    /**
+     * Returns a page of the snapshot as a read-only list backed by the snapshot itself.
+     *
+     * @param offset the position of the first element of the page
+     * @param limit  the maximum number of elements in the page
+     * @return the requested page, empty if the offset lies beyond the end of the snapshot
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    public List<E> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit cannot be negative.");
+        }
+        int from = Math.min(offset, size);
+        int to = (int) Math.min((long) from + limit, size);
+        return new Range(from, to);
+    }
+
+    /**
+     * Returns the whole snapshot as a read-only list without copying it.
+     *
+     * @return a list view of the snapshot
+     */
+    public List<E> asList() {
+        return new Range(0, size);
+    }
+
+    /**
+     * Performs the given action for each element of the snapshot, in order.
+     *
+     * @param action the action to perform
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(element(i));
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return asList().iterator();
+    }
+
+    /**
+     * Returns a spliterator over the snapshot. It splits evenly, so parallel streams scale with the snapshot size.
+     *
+     * @return a spliterator over the snapshot's elements
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return spliterator(0, size);
+    }
+
+    /**
+     * Returns a sequential stream over the snapshot.
+     *
+     * @return a stream of the snapshot's elements
+     */
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Read-only list over a range of the backing array.
+     */
+    private final class Range extends AbstractList<E> {
+        private final int from;
+        private final int to;
+
+        private Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public E get(int index) {
+            Objects.checkIndex(index, to - from);
+            return element(from + index);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public Spliterator<E> spliterator() {
+            return Snapshot.this.spliterator(from, to);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.ProjectFiles.library;
+
+import javax.swing.AbstractListModel;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * List model that shows a {@link Snapshot} of the library directly, instead of copying it into a
+ * {@link javax.swing.DefaultListModel}.
+ * <p>
+ * Rows are formatted only when the list asks for them, which with a fixed cell height, or a prototype cell value,
+ * means only for the visible cells; the model itself holds nothing but the snapshot and, for a filtered list, the
+ * positions of the elements shown. When a newer snapshot is set the model works out what changed and fires the
+ * narrowest events it can: appended elements become one interval-added event, a removed element one interval-removed
+ * event, and only other changes fall back to a contents-changed event from the first difference on. Must be used on
+ * the event dispatch thread, like any Swing model.
+ *
+ * @param <E> the type of the elements in the snapshot
+ */
+final class SnapshotListModel<E> extends AbstractListModel<String> {
+    private static final long serialVersionUID = 1L;
+
+    private final Function<? super E, String> format;  // Turns an element into the text of its row
+    private Snapshot<E> snapshot = Snapshot.empty();
+    private int[] positions;                            // Positions in the snapshot of the rows shown, null for all
+
+    /**
+     * Creates an empty model.
+     *
+     * @param format turns an element into the text of its row
+     */
+    SnapshotListModel(Function<? super E, String> format) {
+        this.format = format;
+    }
+
+    @Override
+    public int getSize() {
+        return positions == null ? snapshot.size() : positions.length;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return format.apply(getElement(index));
+    }
+
+    /**
+     * @return the snapshot the rows are taken from
+     */
+    Snapshot<E> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets the positions in the snapshot of the rows shown. The array is the model's own and must not be changed.
+     *
+     * @return the positions, or null if every element is shown
+     */
+    int[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Gets the element shown in a row.
+     *
+     * @param index the row
+     * @return the element
+     */
+    E getElement(int index) {
+        return snapshot.get(positions == null ? index : positions[index]);
+    }
+
+    /**
+     * Shows every element of a snapshot.
+     *
+     * @param next the snapshot to show
+     */
+    void setSnapshot(Snapshot<E> next) {
+        Snapshot<E> previous = snapshot;
+        int oldRows = getSize();
+        boolean wasFiltered = positions != null;
+        snapshot = next;
+        positions = null;
+        if (wasFiltered) {
+            fireResized(oldRows, next.size(), 0);
+            return;
+        }
+        int first = firstDifference(previous, next);
+        if (first < 0) {
+            return;
+        }
+        int oldSize = previous.size();
+        int newSize = next.size();
+        if (first == oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);  // Appended
+        } else if (newSize < oldSize && sameFrom(previous, first + oldSize - newSize, next, first)) {
+            fireIntervalRemoved(this, first, first + oldSize - newSize - 1);  // Removed from the middle
+        } else {
+            fireResized(oldSize, newSize, first);
+        }
+    }
+
+    /**
+     * Shows some elements of a snapshot.
+     *
+     * @param next      the snapshot
+     * @param positions the positions in the snapshot of the elements to show, in the order to show them
+     */
+    void setFiltered(Snapshot<E> next, int[] positions) {
+        int oldSize = getSize();
+        boolean sameElements = snapshot == next || firstDifference(snapshot, next) < 0;
+        int first = this.positions == null || !sameElements ? 0
+                : Arrays.mismatch(this.positions, positions);
+        snapshot = next;
+        this.positions = positions;
+        if (first < 0) {
+            return;
+        }
+        if (first == oldSize) {
+            fireIntervalAdded(this, oldSize, positions.length - 1);
+        } else {
+            fireResized(oldSize, positions.length, first);
+        }
+    }
+
+    /**
+     * Fires the events for a list whose rows may all have changed from a given row on.
+     */
+    private void fireResized(int oldSize, int newSize, int first) {
+        if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        } else if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        }
+        if (first < Math.min(oldSize, newSize)) {
+            fireContentsChanged(this, first, Math.min(oldSize, newSize) - 1);
+        }
+    }
+
+    /**
+     * Finds the first position at which two snapshots hold different elements. A snapshot appended to the other
+     * shares its backing array, so that case is recognized without comparing the elements.
+     *
+     * @return the position, the size of the shorter one if it is a prefix of the other, or -1 if they are equal
+     */
+    private static int firstDifference(Snapshot<?> a, Snapshot<?> b) {
+        int common = Math.min(a.size(), b.size());
+        int first = a.sharesPrefixWith(b) ? common : 0;
+        while (first < common && a.get(first) == b.get(first)) {
+            first++;
+        }
+        return first == common && a.size() == b.size() ? -1 : first;
+    }
+
+    /**
+     * Checks whether a snapshot from one position on holds the same elements as another from another position on.
+     */
+    private static boolean sameFrom(Snapshot<?> a, int fromA, Snapshot<?> b, int fromB) {
+        if (a.size() - fromA != b.size() - fromB) {
+            return false;
+        }
+        for (int i = fromA, j = fromB; i < a.size(); i++, j++) {
+            if (a.get(i) != b.get(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
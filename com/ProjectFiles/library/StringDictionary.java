@@ -0,0 +1,100 @@
+package com.ProjectFiles.library;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Assigns each distinct string a small integer code, so that columns can store the code instead of a reference.
+ * Codes are handed out densely in order starting at 0 and never change, which lets other columns be indexed by code.
+ * <p>
+ * The strings are kept in chunks that are never copied, and the lookup from string to code is an open-addressing
+ * table of codes, so the dictionary adds no per-entry objects beyond the strings themselves.
+ * Only one thread at a time may encode; lookups and decoding may happen concurrently from any thread.
+ */
+final class StringDictionary {
+    private static final int CHUNK_BITS = 12;                     // log2 of the strings per chunk
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private volatile String[][] chunks = new String[16][];  // Strings by code, in chunks
+    private volatile int[] table = new int[1 << 10];         // Code + 1 of each string by hash slot, 0 if free
+    private int size;                                        // Number of codes handed out
+
+    /**
+     * Returns the code of the given string, assigning the next free code if the string is new.
+     *
+     * @param string the string to encode
+     * @return its code
+     */
+    int encode(String string) {
+        int code = find(string);
+        if (code >= 0) {
+            return code;
+        }
+        code = size++;
+        String[][] directory = chunks;
+        int chunk = code >>> CHUNK_BITS;
+        if (chunk == directory.length) {
+            directory = Arrays.copyOf(directory, directory.length * 2);
+        }
+        if (directory[chunk] == null) {
+            directory[chunk] = new String[CHUNK_MASK + 1];
+        }
+        directory[chunk][code & CHUNK_MASK] = string;
+        chunks = directory;
+        if (size * 2 > table.length) {
+            int[] grown = new int[table.length * 2];
+            for (int existing = 0; existing < code; existing++) {
+                insert(grown, decode(existing), existing);
+            }
+            table = grown;
+        }
+        insert(table, string, code);
+        return code;
+    }
+
+    /**
+     * Looks up the code of a string without assigning one.
+     *
+     * @param string the string to look up
+     * @return its code, or -1 if the string has never been encoded
+     */
+    int find(String string) {
+        int[] slots = table;
+        int mask = slots.length - 1;
+        for (int slot = hash(string) & mask; ; slot = (slot + 1) & mask) {
+            int entry = (int) SLOTS.getAcquire(slots, slot);
+            if (entry == 0) {
+                return -1;
+            }
+            if (decode(entry - 1).equals(string)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the string with the given code.
+     *
+     * @param code a code returned by {@link #encode(String)}
+     * @return the string
+     */
+    String decode(int code) {
+        return chunks[code >>> CHUNK_BITS][code & CHUNK_MASK];
+    }
+
+    private static void insert(int[] slots, String string, int code) {
+        int mask = slots.length - 1;
+        int slot = hash(string) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        SLOTS.setRelease(slots, slot, code + 1);  // Publishes the string together with its code
+    }
+
+    private static int hash(String string) {
+        int h = string.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,170 @@
+package com.ProjectFiles.library;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+/**
+ * Type-ahead list shown under a text field while the user types.
+ * <p>
+ * Suggestions are looked up once typing pauses, on a background thread so the field stays responsive however
+ * large the library is. Results that arrive after the text has changed again are dropped. Up and Down move
+ * through the list, Enter or a click puts the suggestion into the field, and Escape closes the list.
+ */
+final class SuggestionPopup {
+    private static final int DELAY_MILLIS = 150;   // Pause in typing before suggestions are looked up
+    private static final int LIMIT = 8;            // Suggestions shown at most
+    private static final ExecutorService LOOKUPS = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "suggestions");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final JTextField field;  // Field the suggestions are for
+    private final BiFunction<String, Integer, List<String>> suggestions;  // Looks up suggestions for a prefix
+    private final DefaultListModel<String> model = new DefaultListModel<>();
+    private final JList<String> list = new JList<>(model);
+    private final JPopupMenu popup = new JPopupMenu();
+    private final Timer timer;       // Restarted on every edit, fires once typing pauses
+    private int generation;          // Incremented on every edit, so stale lookups can be recognized
+    private boolean accepting;       // Set while a suggestion is written into the field
+
+    private SuggestionPopup(JTextField field, BiFunction<String, Integer, List<String>> suggestions) {
+        this.field = field;
+        this.suggestions = suggestions;
+        this.timer = new Timer(DELAY_MILLIS, e -> lookUp());
+        timer.setRepeats(false);
+
+        list.setFocusable(false);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                accept();
+            }
+        });
+        popup.setFocusable(false);
+        popup.add(new JScrollPane(list));
+
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                edited();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                edited();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        bind(KeyEvent.VK_DOWN, "suggestion.next", () -> move(1));
+        bind(KeyEvent.VK_UP, "suggestion.previous", () -> move(-1));
+        bind(KeyEvent.VK_ENTER, "suggestion.accept", this::accept);
+        bind(KeyEvent.VK_ESCAPE, "suggestion.close", this::close);
+    }
+
+    /**
+     * Shows suggestions for the given field while the user types in it.
+     *
+     * @param field       the text field
+     * @param suggestions looks up at most the given number of suggestions for the text typed so far;
+     *                    called off the event dispatch thread
+     */
+    static void attach(JTextField field, BiFunction<String, Integer, List<String>> suggestions) {
+        new SuggestionPopup(field, suggestions);
+    }
+
+    private void edited() {
+        generation++;
+        if (accepting) {
+            return;
+        }
+        if (field.getText().isBlank()) {
+            timer.stop();
+            close();
+        } else {
+            timer.restart();
+        }
+    }
+
+    private void lookUp() {
+        int requested = generation;
+        String prefix = field.getText();
+        LOOKUPS.execute(() -> {
+            List<String> found = suggestions.apply(prefix, LIMIT);
+            SwingUtilities.invokeLater(() -> show(requested, found));
+        });
+    }
+
+    private void show(int requested, List<String> found) {
+        if (requested != generation || !field.isShowing()) {
+            return;  // The text changed while the suggestions were looked up
+        }
+        model.clear();
+        found.forEach(model::addElement);
+        if (found.isEmpty()) {
+            close();
+            return;
+        }
+        list.setVisibleRowCount(Math.min(LIMIT, found.size()));
+        list.clearSelection();
+        popup.setPopupSize(field.getWidth(), popup.getPreferredSize().height);
+        popup.show(field, 0, field.getHeight());
+        popup.pack();
+    }
+
+    private void move(int step) {
+        if (!popup.isVisible()) {
+            return;
+        }
+        int index = Math.floorMod(list.getSelectedIndex() + step, model.getSize());
+        list.setSelectedIndex(index);
+        list.ensureIndexIsVisible(index);
+    }
+
+    private void accept() {
+        String chosen = list.getSelectedValue();
+        if (popup.isVisible() && chosen != null) {
+            accepting = true;
+            field.setText(chosen);
+            accepting = false;
+        }
+        close();
+    }
+
+    private void close() {
+        popup.setVisible(false);
+    }
+
+    /**
+     * Binds a key on the field; while no suggestions are shown the key keeps its usual action.
+     */
+    private void bind(int key, String name, Runnable action) {
+        KeyStroke stroke = KeyStroke.getKeyStroke(key, 0);
+        Object previous = field.getInputMap().get(stroke);
+        Action fallback = previous == null ? null : field.getActionMap().get(previous);
+        field.getInputMap().put(stroke, name);
+        field.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (popup.isVisible()) {
+                    action.run();
+                } else if (fallback != null) {
+                    fallback.actionPerformed(e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,76 @@
+package com.ProjectFiles.library;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Collects {@link LibraryEvent}s from whatever threads change the library and hands them to the event dispatch
+ * thread in batches, at most one per frame.
+ * <p>
+ * The first event after a batch schedules the next one {@link #FRAME_MILLIS} later; events arriving in the meantime
+ * only join the queue. A bulk import of a hundred thousand books therefore reaches the user interface as a few dozen
+ * batches, and the views are updated and repainted once per batch rather than once per book. Register an instance
+ * with {@link Library#addChangeListener(Consumer)}.
+ */
+final class SwingEventBatcher implements Consumer<LibraryEvent> {
+    static final int FRAME_MILLIS = 16;  // Time events are collected before a batch is delivered
+
+    private final Consumer<List<LibraryEvent>> onBatch;  // Applies a batch, on the event dispatch thread
+    private final Queue<LibraryEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();  // Whether a batch is due already
+    private final Timer timer;
+    private volatile boolean closed;
+
+    /**
+     * Creates a batcher.
+     *
+     * @param onBatch applies the events of a batch, in the order they happened, on the event dispatch thread
+     */
+    SwingEventBatcher(Consumer<List<LibraryEvent>> onBatch) {
+        this.onBatch = onBatch;
+        this.timer = new Timer(FRAME_MILLIS, e -> flush());
+        timer.setRepeats(false);
+    }
+
+    @Override
+    public void accept(LibraryEvent event) {
+        if (closed) {
+            return;
+        }
+        pending.add(event);
+        if (scheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(timer::restart);
+        }
+    }
+
+    /**
+     * Drops the events not delivered yet and delivers no further ones.
+     */
+    void close() {
+        closed = true;
+        SwingUtilities.invokeLater(() -> {
+            timer.stop();
+            pending.clear();
+        });
+    }
+
+    private void flush() {
+        scheduled.set(false);  // Cleared first, so an event queued while draining schedules the next batch
+        if (closed) {
+            return;
+        }
+        List<LibraryEvent> batch = new ArrayList<>();
+        for (LibraryEvent event; (event = pending.poll()) != null; ) {
+            batch.add(event);
+        }
+        if (!batch.isEmpty()) {
+            onBatch.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.ProjectFiles.library;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs thousands of borrows and returns from several desks at once and checks that no update is lost: for every
+ * book, the copies on hand plus the open loans add up to its stock, and the library's counters agree with the books.
+ */
+class CirculationStressTest {
+    private static final int DESKS = 8;
+    private static final int OPERATIONS = 5_000;  // Borrows or returns per desk
+    private static final int COPIES = 3;
+
+    @Test
+    void parallelBorrowsAndReturnsLoseNoUpdates() throws Exception {
+        for (int titles : new int[]{1, 16}) {
+            Library library = new Library();
+            List<Book> books = new ArrayList<>();
+            for (int i = 0; i < titles; i++) {
+                books.add(library.addBook(new Book("Title " + i, "Author " + i, 2000, COPIES)));
+            }
+            List<Member> members = new ArrayList<>();
+            for (int i = 1; i <= DESKS * 4; i++) {
+                Member member = new Member("Member " + i, i);
+                library.addMember(member);
+                members.add(member);
+            }
+
+            ExecutorService desks = Executors.newFixedThreadPool(DESKS);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> borrowed = new ArrayList<>();
+            for (int desk = 0; desk < DESKS; desk++) {
+                borrowed.add(desks.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int loans = 0;
+                    start.await();
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        Member member = members.get(random.nextInt(members.size()));
+                        Book book = books.get(random.nextInt(books.size()));
+                        if (library.returnBook(member, book) == null && library.borrowBook(member, book) != null) {
+                            loans++;
+                        }
+                    }
+                    return loans;
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> desk : borrowed) {
+                total += desk.get();
+            }
+            desks.shutdown();
+            assertTrue(desks.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(total > 0, "Some borrows must succeed");
+
+            long openLoans = 0;
+            long onHand = 0;
+            for (Book book : books) {
+                int open = library.findOpenLoansByBook(book).size();
+                assertEquals(COPIES, book.getAmount() + open, book.getTitle() + ": copies on hand plus open loans");
+                openLoans += open;
+                onHand += book.getAmount();
+            }
+            assertEquals(onHand, library.getCopiesOnHand());
+            assertEquals(openLoans, library.getActiveLoanCount());
+            assertEquals((long) titles * COPIES, library.getCopiesOnHand() + library.getActiveLoanCount());
+            long byMember = 0;
+            for (Member member : members) {
+                byMember += library.findOpenLoansByMember(member.getId()).size();
+            }
+            assertEquals(openLoans, byMember);
+        }
+    }
+}
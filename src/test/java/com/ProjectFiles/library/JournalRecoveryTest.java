@@ -0,0 +1,75 @@
+package com.ProjectFiles.library;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Stops the journal at every point of its log, as a crash would, and checks that recovery never loses or makes up a
+ * copy: for every book, the copies on hand plus the open loans add up to its stock, whichever records survived.
+ */
+class JournalRecoveryTest {
+    private static final int COPIES = 2;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void crashAtAnyPointKeepsCopiesAndLoansTogether() throws IOException {
+        Path logged = directory.resolve("logged");
+        Library library = new Library();
+        LibraryJournal journal = LibraryJournal.open(library, logged);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            books.add(library.addBook(new Book("Title " + i, "Author " + i, 2000, COPIES)));
+        }
+        List<Member> members = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Member member = new Member("Member " + i, i);
+            library.addMember(member);
+            members.add(member);
+        }
+        for (int i = 0; i < 12; i++) {
+            Member member = members.get(i % members.size());
+            Book book = books.get(i * 7 % books.size());
+            if (library.returnBook(member, book) == null) {
+                library.borrowBook(member, book);
+            }
+        }
+        books.get(0).checkOut();  // A copy taken without a loan is logged on its own
+        journal.close();
+
+        Path segment;
+        try (Stream<Path> files = Files.list(logged)) {
+            segment = files.filter(file -> file.getFileName().toString().startsWith("wal-")).findFirst().get();
+        }
+        long size = Files.size(segment);
+        for (long cut = 0; cut <= size; cut++) {
+            Path crashed = directory.resolve("crashed-" + cut);
+            Files.createDirectories(crashed);
+            Path copy = Files.copy(segment, crashed.resolve(segment.getFileName()));
+            try (FileChannel channel = FileChannel.open(copy, StandardOpenOption.WRITE)) {
+                channel.truncate(cut);
+            }
+
+            Library recovered = new Library();
+            LibraryJournal.open(recovered, crashed).close();
+            for (Book book : recovered.books()) {
+                int open = recovered.findOpenLoansByBook(book).size();
+                int loose = book.getId() == books.get(0).getId() && cut == size ? 1 : 0;
+                assertEquals(COPIES, book.getAmount() + open + loose,
+                        book.getTitle() + " after a crash at byte " + cut + " of " + size);
+            }
+        }
+    }
+}